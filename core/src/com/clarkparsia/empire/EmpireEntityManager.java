@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Extension of the JPA {@link EntityManager} interface with operations specific to Empire.</p>
+ *
+ * <p>The bulk operations, {@link #persistAll} and {@link #mergeAll}, are equivalent to calling persist or merge for each
+ * object, including lifecycle callbacks and cascades, but work through the objects in batches: the database is
+ * queried once for all the objects of a batch, and the changes made to them are written at once.  Objects of a batch
+ * written before an error remain written.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public interface EmpireEntityManager extends EntityManager {
+
+	/**
+	 * Persist all the objects
+	 * @param theObjs the objects to persist
+	 * @throws javax.persistence.EntityExistsException if any of the objects of a batch already exist, no objects of
+	 * that batch are persisted
+	 * @throws IllegalArgumentException if any of the objects are not valid entities
+	 * @throws javax.persistence.PersistenceException if there is an error writing to the database
+	 * @see EntityManager#persist
+	 */
+	public void persistAll(Collection<?> theObjs);
+
+	/**
+	 * Merge all the objects
+	 * @param theObjs the objects to merge
+	 * @param <T> the type of the objects
+	 * @return the merged objects
+	 * @throws IllegalArgumentException if any of the objects are not valid entities
+	 * @throws javax.persistence.PersistenceException if there is an error writing to the database
+	 * @see EntityManager#merge
+	 */
+	public <T> List<T> mergeAll(Collection<T> theObjs);
+}
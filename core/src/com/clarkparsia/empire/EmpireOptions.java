@@ -20,7 +20,7 @@ package com.clarkparsia.empire;
  *
  * @author Michael Grove
  * @since 0.1
- * @version 0.7
+ * @version 0.8
  */
 public final class EmpireOptions {
 
@@ -77,4 +77,29 @@ public final class EmpireOptions {
 	 * logged as warnings to the logger.
 	 */
 	public static boolean STRICT_MODE = true;
+
+	/**
+	 * The maximum number of related objects which are fetched from the database in a single query when the eager
+	 * relations of an object are loaded.  Rather than querying for each related object individually, the
+	 * descriptions of all of them are retrieved with as few queries as possible.  This is also the number of lazy
+	 * proxies created by the same load which are initialized together when one of them is first accessed.  A value
+	 * of one or less disables batch fetching.  The default value is 100.
+	 */
+	public static int BATCH_FETCH_SIZE = 100;
+
+	/**
+	 * Objects whose class specifies a {@link com.clarkparsia.empire.annotation.NamedGraph} are read from that named
+	 * graph.  Enable this flag if some of your data is not kept in the named graphs of its classes, such as 3rd party
+	 * data loaded into the default graph; objects with no statements in their named graph are then read from the
+	 * database as a whole, at the cost of a second query.  The default value is false.
+	 */
+	public static boolean ENABLE_NAMED_GRAPH_FALLBACK = false;
+
+	/**
+	 * The number of statements the record of changes made during a transaction on a
+	 * {@link com.clarkparsia.empire.ds.impl.TransactionalDataSource} can hold in memory.  Larger transactions move the
+	 * record to a temporary file, which is read back should the transaction be rolled back.  A negative value keeps
+	 * the record in memory regardless of its size.  The default value is 100,000.
+	 */
+	public static int TRANSACTION_JOURNAL_THRESHOLD = 100000;
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Annotation for specifying that instances of a class may be kept in the second level cache shared by the
+ * EntityManagers of a factory, when the factory has a {@link com.clarkparsia.empire.impl.EntityCache cache}.  Classes
+ * which are not annotated are always loaded from the database.  Subclasses inherit the setting, and can turn it off
+ * with <code>&#64;Cacheable(false)</code>.</p>
+ * <p>
+ * Usage:<br/>
+ * <code><pre>
+ * &#64;RdfsClass("space:LaunchSite")
+ * &#64;Cacheable
+ * public class LaunchSite implements SupportsRdfId {
+ *   ...
+ * }
+ * </pre></code>
+ * </p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+	/**
+	 * Whether or not instances of the class can be cached
+	 * @return true if they can be cached, false otherwise
+	 */
+	public boolean value() default true;
+}
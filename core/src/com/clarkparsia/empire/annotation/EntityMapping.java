@@ -0,0 +1,665 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.annotation;
+
+import com.clarkparsia.common.util.PrefixMapping;
+import com.clarkparsia.empire.codegen.AccessorGenerator;
+import com.clarkparsia.empire.codegen.PropertyAccessor;
+import com.clarkparsia.empire.util.BeanReflectUtil;
+
+import com.google.common.collect.Maps;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import javax.persistence.Transient;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>The resolved mapping between a Java bean and its RDF representation.  Figuring out which accessors map to which
+ * properties, expanding their qnames, and working out the element types of collections all require a fair bit of
+ * reflection, so it is done once per class and the immutable result is cached and shared by every conversion to and
+ * from RDF.</p>
+ *
+ * <p>Namespaces are resolved when the mapping is first created, after the {@link Namespaces} on the class have been
+ * registered, so qnames should not rely on prefixes which are added to {@link PrefixMapping#GLOBAL} afterwards.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class EntityMapping {
+
+	/**
+	 * The base URI for properties of fields without an {@link RdfProperty} annotation when the subject is not a URI
+	 */
+	static final String DEFAULT_BASE = "urn:empire:clark-parsia:";
+
+	private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+	/**
+	 * The mappings which have been created so far, keyed by the class they describe
+	 */
+	private static final ConcurrentMap<Class<?>, EntityMapping> MAPPINGS = new ConcurrentHashMap<Class<?>, EntityMapping>();
+
+	/**
+	 * The mapped class
+	 */
+	private final Class<?> mClass;
+
+	/**
+	 * The rdf:type of the class from its {@link RdfsClass} annotation, or null if it does not have one
+	 */
+	private final URI mType;
+
+	/**
+	 * The accessors which are used to read the values of the properties from an instance, the annotated fields and
+	 * (inferred) getters of the class.
+	 */
+	private final List<PropertyMapping> mProperties;
+
+	/**
+	 * The accessors used to assign values to an instance keyed by the property they map to
+	 */
+	private final Map<URI, PropertyMapping> mSetters;
+
+	/**
+	 * The fields without an {@link RdfProperty} annotation keyed by name; the property they map to depends on the
+	 * namespace of the instance
+	 */
+	private final Map<String, PropertyMapping> mUnmappedFields;
+
+	private EntityMapping(final Class<?> theClass) {
+		mClass = theClass;
+
+		RdfGenerator.addNamespaces(theClass);
+
+		RdfsClass aClass = BeanReflectUtil.getAnnotation(theClass, RdfsClass.class);
+		mType = aClass == null ? null : FACTORY.createURI(PrefixMapping.GLOBAL.uri(aClass.value()));
+
+		Map<URI, PropertyMapping> aSetters = Maps.newHashMap();
+		Map<String, PropertyMapping> aUnmappedFields = Maps.newHashMap();
+		Collection<AccessibleObject> aReadAccessors = new HashSet<AccessibleObject>();
+
+		for (Field aField : BeanReflectUtil.getAnnotatedFields(theClass)) {
+			PropertyMapping aMapping = new PropertyMapping(theClass, aField);
+
+			if (aMapping.getProperty() != null) {
+				aSetters.put(aMapping.getProperty(), aMapping);
+			}
+			else {
+				aUnmappedFields.put(aField.getName(), aMapping);
+			}
+
+			aReadAccessors.add(aField);
+		}
+
+		// setters win over fields mapped to the same property
+		for (Method aMethod : BeanReflectUtil.getAnnotatedSetters(theClass, true)) {
+			PropertyMapping aMapping = new PropertyMapping(theClass, aMethod);
+
+			if (aMapping.getProperty() != null) {
+				aSetters.put(aMapping.getProperty(), aMapping);
+			}
+		}
+
+		aReadAccessors.addAll(BeanReflectUtil.getAnnotatedGetters(theClass, true));
+
+		List<PropertyMapping> aProperties = new ArrayList<PropertyMapping>();
+		for (AccessibleObject aAccessor : aReadAccessors) {
+			aProperties.add(new PropertyMapping(theClass, aAccessor));
+		}
+
+		mProperties = Collections.unmodifiableList(aProperties);
+		mSetters = Collections.unmodifiableMap(aSetters);
+		mUnmappedFields = Collections.unmodifiableMap(aUnmappedFields);
+	}
+
+	/**
+	 * Return the mapping for the given class
+	 * @param theClass the class
+	 * @return the class's mapping
+	 */
+	public static EntityMapping of(final Class<?> theClass) {
+		EntityMapping aMapping = MAPPINGS.get(theClass);
+
+		if (aMapping == null) {
+			aMapping = new EntityMapping(theClass);
+
+			EntityMapping aExisting = MAPPINGS.putIfAbsent(theClass, aMapping);
+			if (aExisting != null) {
+				aMapping = aExisting;
+			}
+		}
+
+		return aMapping;
+	}
+
+	/**
+	 * Return the class described by this mapping
+	 * @return the mapped class
+	 */
+	public Class<?> getMappedClass() {
+		return mClass;
+	}
+
+	/**
+	 * Return the rdf:type instances of the class are given
+	 * @return the rdf:type of the class, or null if it is not annotated with {@link RdfsClass}
+	 */
+	public URI getRdfType() {
+		return mType;
+	}
+
+	/**
+	 * Return the accessors which read the persistent values from an instance of the class, its annotated fields
+	 * and getters.
+	 * @return the readable properties of the class
+	 */
+	public List<PropertyMapping> getProperties() {
+		return mProperties;
+	}
+
+	/**
+	 * Return the accessor which should be used to assign the values of the property to an instance
+	 * @param theProperty the property
+	 * @param theSubject the identifier of the instance
+	 * @return the mapping for the property, or null if the property is not mapped by the class
+	 */
+	public PropertyMapping getSetter(final URI theProperty, final Resource theSubject) {
+		PropertyMapping aMapping = mSetters.get(theProperty);
+
+		if (aMapping == null && !mUnmappedFields.isEmpty()) {
+			String aBase = theSubject instanceof URI ? ((URI) theSubject).getNamespace() : DEFAULT_BASE;
+			String aProp = theProperty.stringValue();
+
+			if (aProp.startsWith(aBase)) {
+				aMapping = mUnmappedFields.get(aProp.substring(aBase.length()));
+			}
+		}
+
+		return aMapping;
+	}
+
+	/**
+	 * <p>The mapping of a single accessor, a {@link Field} or a bean-style {@link Method}, to its RDF property.</p>
+	 */
+	public static final class PropertyMapping {
+		private final Object mAccessor;
+		private final URI mProperty;
+		private final String mName;
+		private final RdfProperty mAnnotation;
+
+		private final Class<?> mType;
+		private final boolean mCollection;
+		private final Class<?> mElementType;
+		private final boolean mEntityElement;
+
+		private final boolean mTransient;
+		private final boolean mLazy;
+		private final boolean mPersistCascade;
+		private final boolean mMergeCascade;
+		private final boolean mRemoveCascade;
+		private final boolean mRefreshCascade;
+
+		/**
+		 * Whether or not the accessor was made accessible when the mapping was created
+		 */
+		private final boolean mAccessible;
+
+		/**
+		 * The generated accessor for the property, or null if one could not be generated and reflection must be used
+		 */
+		private final PropertyAccessor mGenerated;
+
+		/**
+		 * The type of the values the generated accessor will accept, boxed when the property is a primitive
+		 */
+		private final Class<?> mGeneratedValueType;
+
+		/**
+		 * The class the accessor belongs to, or null if the accessor is not part of a mapped class
+		 */
+		private final Class<?> mOwner;
+
+		/**
+		 * The accessor which can assign the value read by this accessor, lazily computed
+		 */
+		private volatile AccessibleObject mSetter;
+
+		private PropertyMapping(final Class<?> theOwner, final Object theAccessor) {
+			mOwner = theOwner;
+			mAccessor = theAccessor;
+			mAnnotation = BeanReflectUtil.getAnnotation(theAccessor, RdfProperty.class);
+
+			if (mAnnotation != null) {
+				mProperty = FACTORY.createURI(PrefixMapping.GLOBAL.uri(mAnnotation.value()));
+			}
+			else {
+				mProperty = null;
+			}
+
+			mName = theAccessor instanceof Field ? ((Field) theAccessor).getName() : null;
+
+			mType = typeOf(theAccessor);
+			mCollection = Collection.class.isAssignableFrom(mType);
+			mElementType = elementType(theAccessor, mType);
+			mEntityElement = BeanReflectUtil.hasAnnotation(mElementType, RdfsClass.class);
+
+			mTransient = theAccessor instanceof AccessibleObject
+						 && (((AccessibleObject) theAccessor).isAnnotationPresent(Transient.class)
+							 || (theAccessor instanceof Field && Modifier.isTransient(((Field) theAccessor).getModifiers())));
+
+			mLazy = BeanReflectUtil.isFetchTypeLazy(theAccessor);
+			mPersistCascade = BeanReflectUtil.isPersistCascade(theAccessor);
+			mMergeCascade = BeanReflectUtil.isMergeCascade(theAccessor);
+			mRemoveCascade = BeanReflectUtil.isRemoveCascade(theAccessor);
+			mRefreshCascade = BeanReflectUtil.isRefreshCascade(theAccessor);
+
+			mAccessible = makeAccessible(theAccessor);
+
+			// accessors are only generated for mappings of entity classes which are cached, mappings created on the fly
+			// for query results would otherwise create a new class each time
+			mGenerated = theOwner != null && theAccessor instanceof AccessibleObject
+						 ? AccessorGenerator.generateAccessor((AccessibleObject) theAccessor)
+						 : null;
+
+			mGeneratedValueType = mGenerated == null ? null : boxed(mType);
+		}
+
+		/**
+		 * Create a mapping for an accessor which is not part of a mapped class, such as the type of a query result.
+		 * @param theAccessor the accessor, a Field, Method, or Class
+		 * @return the mapping of the accessor
+		 */
+		static PropertyMapping forAccessor(final Object theAccessor) {
+			return new PropertyMapping(null, theAccessor);
+		}
+
+		/**
+		 * Return the underlying accessor; a Field, Method or Class
+		 * @return the accessor
+		 */
+		public Object getAccessor() {
+			return mAccessor;
+		}
+
+		/**
+		 * Return the RDF property this accessor is mapped to
+		 * @return the property, or null if the accessor does not have an {@link RdfProperty} annotation.
+		 */
+		public URI getProperty() {
+			return mProperty;
+		}
+
+		/**
+		 * Return the property this accessor is mapped to for the given subject.  Fields without an {@link RdfProperty}
+		 * annotation are mapped to a property in the supplied namespace.
+		 * @param theBase the namespace to use for un-annotated fields
+		 * @return the property
+		 */
+		public URI getProperty(final String theBase) {
+			if (mProperty != null || mName == null) {
+				return mProperty;
+			}
+			else {
+				return FACTORY.createURI(theBase + mName);
+			}
+		}
+
+		/**
+		 * Return the (possibly inferred) {@link RdfProperty} annotation of the accessor
+		 * @return the annotation, or null if there is not one
+		 */
+		public RdfProperty getAnnotation() {
+			return mAnnotation;
+		}
+
+		/**
+		 * Return the declared type of the property
+		 * @return the type
+		 */
+		public Class<?> getType() {
+			return mType;
+		}
+
+		/**
+		 * Return whether or not the property is a collection
+		 * @return true if the declared type is a Collection, false otherwise
+		 */
+		public boolean isCollection() {
+			return mCollection;
+		}
+
+		/**
+		 * Return the type of the values of the property.  For collections this is the declared type of its elements
+		 * if it can be determined, otherwise it is the type of the property.
+		 * @return the value type
+		 */
+		public Class<?> getElementType() {
+			return mElementType;
+		}
+
+		/**
+		 * Return whether or not the values of the property are mapped entities
+		 * @return true if the {@link #getElementType element type} has an {@link RdfsClass} annotation
+		 */
+		public boolean isEntityElement() {
+			return mEntityElement;
+		}
+
+		/**
+		 * Return whether or not the values should be serialized as an rdf:List
+		 * @return true if the values are an rdf:List, false otherwise
+		 */
+		public boolean isList() {
+			return mAnnotation != null && mAnnotation.isList();
+		}
+
+		public boolean isTransient() {
+			return mTransient;
+		}
+
+		public boolean isLazy() {
+			return mLazy;
+		}
+
+		public boolean isPersistCascade() {
+			return mPersistCascade;
+		}
+
+		public boolean isMergeCascade() {
+			return mMergeCascade;
+		}
+
+		public boolean isRemoveCascade() {
+			return mRemoveCascade;
+		}
+
+		public boolean isRefreshCascade() {
+			return mRefreshCascade;
+		}
+
+		/**
+		 * Return the accessor which can assign the value of this property on an instance of the mapped class
+		 * @return the setter, or null if one cannot be found
+		 * @see BeanReflectUtil#asSetter
+		 */
+		public AccessibleObject getSetter() {
+			if (mSetter == null && mOwner != null && mAccessor instanceof AccessibleObject) {
+				mSetter = BeanReflectUtil.asSetter(mOwner, (AccessibleObject) mAccessor);
+			}
+
+			return mSetter;
+		}
+
+		/**
+		 * Get the value of this property from the object
+		 * @param theObj the object
+		 * @return the value
+		 * @throws InvocationTargetException if there is an error invoking the getter
+		 */
+		public Object get(final Object theObj) throws InvocationTargetException {
+			if (mGenerated != null) {
+				try {
+					return mGenerated.get(theObj);
+				}
+				catch (RuntimeException e) {
+					throw wrap(e);
+				}
+			}
+
+			if (!mAccessible) {
+				return BeanReflectUtil.safeGet((AccessibleObject) mAccessor, theObj);
+			}
+
+			try {
+				return BeanReflectUtil.get((AccessibleObject) mAccessor, theObj);
+			}
+			catch (IllegalAccessException e) {
+				// we should not get this since the accessor was made accessible
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Set the value of this property on the object
+		 * @param theObj the object
+		 * @param theValue the new value
+		 * @throws InvocationTargetException if there is an error invoking the setter
+		 */
+		public void set(final Object theObj, final Object theValue) throws InvocationTargetException {
+			// values which are not exactly of the type of the property go through reflection which will apply any widening
+			// conversion, or fail the same way it always has
+			if (mGenerated != null && (theValue == null ? !mType.isPrimitive() : mGeneratedValueType.isInstance(theValue))) {
+				try {
+					mGenerated.set(theObj, theValue);
+					return;
+				}
+				catch (RuntimeException e) {
+					throw wrap(e);
+				}
+			}
+
+			if (!mAccessible) {
+				BeanReflectUtil.safeSet((AccessibleObject) mAccessor, theObj, theValue);
+				return;
+			}
+
+			try {
+				BeanReflectUtil.set((AccessibleObject) mAccessor, theObj, theValue);
+			}
+			catch (IllegalAccessException e) {
+				// we should not get this since the accessor was made accessible
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		@Override
+		public String toString() {
+			return String.valueOf(mAccessor);
+		}
+
+		/**
+		 * Methods invoked through reflection report their exceptions as an InvocationTargetException, generated accessors
+		 * for methods do the same.  Exceptions from field access are not wrapped.
+		 * @param theException the exception raised by the generated accessor
+		 * @return the exception to throw
+		 */
+		private InvocationTargetException wrap(final RuntimeException theException) {
+			if (mAccessor instanceof Method) {
+				return new InvocationTargetException(theException);
+			}
+
+			throw theException;
+		}
+
+		/**
+		 * Make the accessor accessible once, rather than toggling its accessibility on every use, which is both slow
+		 * and not safe when the accessor is shared between threads.
+		 * @param theAccessor the accessor
+		 * @return true if the accessor is now accessible, false otherwise
+		 */
+		private static boolean makeAccessible(final Object theAccessor) {
+			if (!(theAccessor instanceof AccessibleObject)) {
+				return false;
+			}
+
+			try {
+				((AccessibleObject) theAccessor).setAccessible(true);
+				return true;
+			}
+			catch (SecurityException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Return the wrapper type of a primitive type, or the type itself if it is not a primitive
+		 * @param theType the type
+		 * @return the boxed type
+		 */
+		private static Class<?> boxed(final Class<?> theType) {
+			if (!theType.isPrimitive()) {
+				return theType;
+			}
+			else if (boolean.class.equals(theType)) {
+				return Boolean.class;
+			}
+			else if (int.class.equals(theType)) {
+				return Integer.class;
+			}
+			else if (long.class.equals(theType)) {
+				return Long.class;
+			}
+			else if (float.class.equals(theType)) {
+				return Float.class;
+			}
+			else if (double.class.equals(theType)) {
+				return Double.class;
+			}
+			else if (short.class.equals(theType)) {
+				return Short.class;
+			}
+			else if (byte.class.equals(theType)) {
+				return Byte.class;
+			}
+			else if (char.class.equals(theType)) {
+				return Character.class;
+			}
+			else {
+				return Void.class;
+			}
+		}
+
+		/**
+		 * Return the declared type of an accessor
+		 * @param theAccessor the accessor
+		 * @return its type
+		 */
+		private static Class<?> typeOf(final Object theAccessor) {
+			if (theAccessor instanceof Method && ((Method) theAccessor).getParameterTypes().length == 0) {
+				return ((Method) theAccessor).getReturnType();
+			}
+			else {
+				return BeanReflectUtil.classFrom(theAccessor);
+			}
+		}
+
+		/**
+		 * Figure out the type of the values of the accessor.  If the accessor is a collection, this tries to figure
+		 * out the type of its elements from the generic type or the target entity of its JPA annotation.
+		 * @param theAccessor the accessor
+		 * @param theClass the declared type of the accessor
+		 * @return the type of the values
+		 */
+		private static Class<?> elementType(final Object theAccessor, final Class<?> theClass) {
+			Class aClass = theClass;
+
+			if (Collection.class.isAssignableFrom(aClass)) {
+				// if the field we're assigning from is a collection, try and figure out the type of the thing
+				// we're creating from the collection
+
+				Type[] aTypes = null;
+
+				if (theAccessor instanceof Field && ((Field)theAccessor).getGenericType() instanceof ParameterizedType) {
+					aTypes = ((ParameterizedType) ((Field)theAccessor).getGenericType()).getActualTypeArguments();
+				}
+				else if (theAccessor instanceof Method) {
+					aTypes = ((Method) theAccessor).getGenericParameterTypes();
+				}
+
+				if (aTypes != null && aTypes.length >= 1) {
+					// first type argument to a collection is usually the one we care most about
+					if (aTypes[0] instanceof ParameterizedType && ((ParameterizedType)aTypes[0]).getActualTypeArguments().length > 0) {
+						Type aType = ((ParameterizedType)aTypes[0]).getActualTypeArguments()[0];
+
+						if (aType instanceof Class) {
+							aClass = (Class) aType;
+						}
+						else if (aType instanceof WildcardType) {
+							WildcardType aWildcard = (WildcardType) aType;
+							// trying to suss out super v extends w/o resorting to string munging.
+							if (aWildcard.getLowerBounds().length == 0 && aWildcard.getUpperBounds().length > 0) {
+								// no lower bounds afaik indicates ? extends Foo
+								aClass = ((Class)aWildcard.getUpperBounds()[0]);
+							}
+							else if (aWildcard.getLowerBounds().length > 0) {
+								// lower & upper bounds I believe indicates something of the form Foo super Bar
+								aClass = ((Class)aWildcard.getLowerBounds()[0]);
+							}
+							else {
+								// shoot, we'll try the string hack that Adrian posted on the mailing list.
+								try {
+									aClass = Class.forName(aType.toString().split(" ")[2].substring(0, aTypes[0].toString().split(" ")[2].length()-1));
+								}
+								catch (Exception e) {
+									// everything has failed, let aClass be the default (theClass) and hope for the best
+								}
+							}
+						}
+						else {
+							// punt? wtf else could it be?
+							try {
+								aClass = Class.forName(aType.toString());
+							}
+							catch (ClassNotFoundException e) {
+								// oh well, we did the best we can
+							}
+						}
+					}
+					else if (aTypes[0] instanceof Class) {
+						aClass = (Class) aTypes[0];
+					}
+				}
+				else {
+					// could not figure out the type from the generics assertions on the Collection, they are either
+					// not present, or my algorithm is not bullet proof.  So lets try checking on the annotations
+					// for a type hint.
+
+					Class aTarget = BeanReflectUtil.getTargetEntity(theAccessor);
+					if (aTarget != null) {
+						aClass = aTarget;
+					}
+				}
+			}
+
+			return aClass;
+		}
+	}
+}
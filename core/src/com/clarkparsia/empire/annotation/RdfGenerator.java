@@ -16,6 +16,7 @@
 package com.clarkparsia.empire.annotation;
 
 import com.clarkparsia.openrdf.Graphs;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.ObjectArrays;
 import org.openrdf.model.BNode;
@@ -29,23 +30,19 @@ import org.openrdf.model.Graph;
 
 import org.openrdf.model.util.GraphUtil;
 import org.openrdf.model.vocabulary.RDF;
-import org.openrdf.model.vocabulary.XMLSchema;
-import org.openrdf.model.vocabulary.RDFS;
 
-import java.lang.reflect.Type;
 
-import java.util.Arrays;
-
-import java.util.Date;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Modifier;
 
@@ -55,7 +52,9 @@ import java.util.Iterator;
 import java.util.Locale;
 import java.util.ArrayList;
 
-import java.net.URISyntaxException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.openrdf.model.impl.ValueFactoryImpl;
 
@@ -63,38 +62,36 @@ import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
 import com.clarkparsia.empire.ds.QueryException;
 import com.clarkparsia.empire.ds.DataSourceUtil;
+import com.clarkparsia.empire.ds.SupportsNamedGraphs;
 import com.clarkparsia.empire.EmpireOptions;
 import com.clarkparsia.empire.EmpireGenerated;
 import com.clarkparsia.empire.SupportsRdfId;
 import com.clarkparsia.empire.Empire;
 import com.clarkparsia.empire.Dialect;
 import com.clarkparsia.empire.annotation.runtime.Proxy;
+import com.clarkparsia.empire.annotation.runtime.ProxyBatch;
 
 import com.clarkparsia.empire.impl.serql.SerqlDialect;
 
-import static com.clarkparsia.empire.util.BeanReflectUtil.set;
-import static com.clarkparsia.empire.util.BeanReflectUtil.setAccessible;
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedFields;
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedGetters;
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedSetters;
-import static com.clarkparsia.empire.util.BeanReflectUtil.get;
-
 import com.clarkparsia.empire.util.BeanReflectUtil;
 import com.clarkparsia.empire.util.EmpireUtil;
+import com.clarkparsia.empire.util.LiteralConverter;
+import com.clarkparsia.empire.util.LiteralConverters;
 import static com.clarkparsia.empire.util.EmpireUtil.asPrimaryKey;
 import com.clarkparsia.openrdf.util.ResourceBuilder;
 import com.clarkparsia.openrdf.util.GraphBuilder;
 import com.clarkparsia.openrdf.ExtGraph;
 import com.clarkparsia.common.util.PrefixMapping;
 import com.clarkparsia.common.base.Strings2;
-import com.clarkparsia.common.base.Dates;
 import com.clarkparsia.common.net.NetUtils;
 import com.clarkparsia.common.collect.Iterables2;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.inject.ProvisionException;
@@ -110,7 +107,6 @@ import javassist.util.proxy.MethodFilter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.reflect.generics.reflectiveObjects.WildcardTypeImpl;
 
 /**
  * <p>Description: Utility for creating RDF from a compliant Java Bean, and for turning RDF (the results of a describe
@@ -146,43 +142,52 @@ public final class RdfGenerator {
 
 	private static final ContainsResourceValues CONTAINS_RESOURCES = new ContainsResourceValues();
 
-	private static final LanguageFilter LANG_FILTER = new LanguageFilter(getLanguageForLocale());
-
 	/**
 	 * The logger
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(RdfGenerator.class.getName());
 
 	/**
-	 * Map from rdf:type URI's to the Java class which corresponds to that resource.
+	 * Map from rdf:type URI's to the Java class which corresponds to that resource.  All access must be synchronized
+	 * on the map itself, use {@link #classesForType} to read from it.
 	 */
 	private final static Multimap<URI, Class> TYPE_TO_CLASS = HashMultimap.create();
 
 	/**
-	 * Map to keep a record of what instances are currently being created in order to prevent cycles.  Keys are the
-	 * identifiers of the instances and the values are the instances
+	 * The set of classes whose {@link Namespaces} have already been added to the global prefix mapping
 	 */
-	public final static Map<Object, Object> OBJECT_M = new HashMap<Object, Object>();
-
-	private final static Set<Class<?>> REGISTERED_FOR_NS = new HashSet<Class<?>>();
+	private final static Set<Class<?>> REGISTERED_FOR_NS = Sets.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 
 	/**
 	 * Initialize some parameters in the RdfGenerator.  This caches namespace and type mapping information locally
 	 * which will be used in subsequent rdf generation requests.
 	 * @param theClasses the list of classes to be handled by the RdfGenerator
 	 */
-	public static synchronized void init(Collection<Class<?>> theClasses) {
+	public static void init(Collection<Class<?>> theClasses) {
 		for (Class<?> aClass : theClasses) {
 			RdfsClass aAnnotation = aClass.getAnnotation(RdfsClass.class);
 
 			if (aAnnotation != null) {
 				addNamespaces(aClass);
 
-				TYPE_TO_CLASS.put(FACTORY.createURI(PrefixMapping.GLOBAL.uri(aAnnotation.value())), aClass);
+				synchronized (TYPE_TO_CLASS) {
+					TYPE_TO_CLASS.put(FACTORY.createURI(PrefixMapping.GLOBAL.uri(aAnnotation.value())), aClass);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Return a snapshot of the Java classes which are mapped to the given rdf:type
+	 * @param theType the rdf:type
+	 * @return the classes mapped to the type, or an empty collection if there are none
+	 */
+	private static Collection<Class> classesForType(final URI theType) {
+		synchronized (TYPE_TO_CLASS) {
+			return new ArrayList<Class>(TYPE_TO_CLASS.get(theType));
+		}
+	}
+
 	/**
 	 * Create an instance of the specified class and instantiate it's data from the given data source using the RDF
 	 * instance specified by the given URI
@@ -225,6 +230,69 @@ public final class RdfGenerator {
 	 * @throws DataSourceException thrown if there is an error while retrieving data from the graph
 	 */
 	public static <T> T fromRdf(Class<T> theClass, SupportsRdfId.RdfKey theId, DataSource theSource) throws InvalidRdfException, DataSourceException {
+		return fromRdf(theClass, theId, theSource, new HydrationContext(), null, null);
+	}
+
+	/**
+	 * Create an instance of the specified class and instantiate it's data from the given description of the RDF
+	 * individual, as returned by {@link DataSourceUtil#describe}.  The description is used to determine the type of the
+	 * new instance as well as its data, so the data source is only queried for related objects.
+	 * @param theClass the class to create
+	 * @param theId the id of the RDF individual containing the data for the new instance
+	 * @param theSource the KB to get the data of related objects from
+	 * @param theGraph the statements about the individual, read from the data source as a whole
+	 * @param <T> the type of the instance to create
+	 * @return a new instance
+	 * @throws InvalidRdfException thrown if the class does not support RDF JPA operations, or does not provide sufficient access to its fields/data.
+	 * @throws DataSourceException thrown if there is an error while retrieving data from the graph
+	 */
+	public static <T> T fromRdf(Class<T> theClass, SupportsRdfId.RdfKey theId, DataSource theSource, Graph theGraph) throws InvalidRdfException, DataSourceException {
+		return fromRdf(theClass, theId, theSource, null, theGraph);
+	}
+
+	/**
+	 * Create an instance of the specified class and instantiate it's data from the given description of the RDF
+	 * individual, as returned by {@link DataSourceUtil#describe}.  The description is used to determine the type of the
+	 * new instance as well as its data, so the data source is only queried for related objects.  If the individual
+	 * turns out to be of a subclass which keeps its data in a different named graph than the one the description was
+	 * read from, it is described again from that graph.
+	 * @param theClass the class to create
+	 * @param theId the id of the RDF individual containing the data for the new instance
+	 * @param theSource the KB to get the data of related objects from
+	 * @param theNamedGraph the named graph the description was read from, as returned by
+	 * {@link #namedGraphOf(Class, SupportsRdfId.RdfKey, DataSource)}
+	 * @param theGraph the statements about the individual
+	 * @param <T> the type of the instance to create
+	 * @return a new instance
+	 * @throws InvalidRdfException thrown if the class does not support RDF JPA operations, or does not provide sufficient access to its fields/data.
+	 * @throws DataSourceException thrown if there is an error while retrieving data from the graph
+	 */
+	public static <T> T fromRdf(Class<T> theClass, SupportsRdfId.RdfKey theId, DataSource theSource, java.net.URI theNamedGraph, Graph theGraph) throws InvalidRdfException, DataSourceException {
+		return fromRdf(theClass, theId, theSource, new HydrationContext(), theNamedGraph, theGraph);
+	}
+
+	/**
+	 * Create an instance of the specified class and instantiate it's data from the given data source as part of the
+	 * larger load described by the {@link HydrationContext}.
+	 * @param theClass the class to create
+	 * @param theId the id of the RDF individual containing the data for the new instance
+	 * @param theSource the KB to get the RDF data from
+	 * @param theContext the context of the current load
+	 * @param theNamedGraph the named graph the statements about the individual were read from
+	 * @param theGraph the statements about the individual, or null if they should be retrieved from the data source
+	 * @param <T> the type of the instance to create
+	 * @return a new instance
+	 * @throws InvalidRdfException thrown if the class does not support RDF JPA operations, or does not provide sufficient access to its fields/data.
+	 * @throws DataSourceException thrown if there is an error while retrieving data from the graph
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T fromRdf(Class<T> theClass, SupportsRdfId.RdfKey theId, DataSource theSource, HydrationContext theContext, java.net.URI theNamedGraph, Graph theGraph) throws InvalidRdfException, DataSourceException {
+		if (theContext.isLoading(theId)) {
+			// TODO: this is probably a safe cast, i dont see how something w/ the same URI, which should be the same
+			// object would change types
+			return (T) theContext.get(theId);
+		}
+
 		T aObj;
 
 		long start = System.currentTimeMillis();
@@ -289,9 +357,14 @@ public final class RdfGenerator {
 		}
 
 		start = System.currentTimeMillis();
-		
-		Class<T> aNewClass = determineClass(theClass, aObj, theSource);
-		
+
+		java.net.URI aNamedGraph = theGraph != null ? theNamedGraph : namedGraphOf(theSource, aObj);
+
+		// the description of the individual provides both its types and its data, so its fetched once, up front
+		Graph aGraph = theGraph != null ? theGraph : theContext.describe(theSource, aObj, aNamedGraph);
+
+		Class<T> aNewClass = determineClass(theClass, EmpireUtil.asResource(asSupportsRdfId(aObj)), aGraph);
+
 		if (!aNewClass.equals(aObj.getClass())) {
 			try {
 	            aObj = aNewClass.newInstance();
@@ -307,23 +380,82 @@ public final class RdfGenerator {
 			}
 
 			asSupportsRdfId(aObj).setRdfId(theId);
+
+			java.net.URI aNewNamedGraph = namedGraphOf(theSource, aObj);
+
+			if (!Objects.equal(aNamedGraph, aNewNamedGraph)) {
+				// the new class keeps its data in a different named graph
+				aGraph = describe(theSource, theId, aNewNamedGraph);
+			}
 		}
 
-		return fromRdf(aObj, theSource);
+		return fromRdf(aObj, theSource, theContext, aGraph);
 	}
 	
+	/**
+	 * Return the named graph the object is described from in the data source.  Instances generated by Empire are
+	 * described from the named graph of the class they were generated for.
+	 * @param theSource the data source
+	 * @param theObj the object
+	 * @return the named graph, or null if the default graph is used
+	 */
+	private static java.net.URI namedGraphOf(final DataSource theSource, final Object theObj) {
+		Class<?> aClass = theObj instanceof EmpireGenerated ? ((EmpireGenerated) theObj).getInterfaceClass() : theObj.getClass();
+
+		return namedGraphOf(aClass, EmpireUtil.asSupportsRdfId(theObj).getRdfId(), theSource);
+	}
+
+	/**
+	 * Return the named graph an individual is described from in the data source when it is loaded as an instance of
+	 * the class.  Interfaces are implemented by a generated class which does not carry their annotations, so, as when
+	 * such instances are written, their individuals are described from the default graph.
+	 * @param theClass the class of the instance
+	 * @param theId the id of the individual
+	 * @param theSource the data source
+	 * @return the named graph, or null if the default graph is used
+	 */
+	public static java.net.URI namedGraphOf(final Class<?> theClass, final SupportsRdfId.RdfKey theId, final DataSource theSource) {
+		return theSource instanceof SupportsNamedGraphs && !theClass.isInterface() ? EmpireUtil.getNamedGraph(theClass, theId) : null;
+	}
+
+	/**
+	 * Return the statements about the individual in the named graph.  When there are none, the individual is described
+	 * from the data source as a whole instead if {@link EmpireOptions#ENABLE_NAMED_GRAPH_FALLBACK} is enabled.
+	 * @param theSource the data source
+	 * @param theId the id of the individual
+	 * @param theNamedGraph the named graph, or null for the data source as a whole
+	 * @return the statements about the individual
+	 * @throws QueryException if there is an error querying for the statements
+	 */
+	private static Graph describe(final DataSource theSource, final SupportsRdfId.RdfKey theId, final java.net.URI theNamedGraph) throws QueryException {
+		Resource aResource = EmpireUtil.asResource(new SupportsRdfIdImpl(theId));
+
+		Graph aGraph = DataSourceUtil.describe(theSource, aResource, theNamedGraph);
+
+		if (aGraph.isEmpty() && theNamedGraph != null && EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK) {
+			aGraph = DataSourceUtil.describe(theSource, aResource, null);
+		}
+
+		return aGraph;
+	}
+
+	/**
+	 * Determine the most specific class which can be used to represent the individual, based on its rdf:type's
+	 * @param theOrigClass the class requested by the caller
+	 * @param theResource the individual
+	 * @param theGraph the statements about the individual
+	 * @param <T> the requested type
+	 * @return the class to use for the individual, always an {@link EmpireGenerated} class
+	 * @throws InvalidRdfException if an implementation of the class cannot be generated
+	 */
 	@SuppressWarnings("unchecked")
-    private static <T> Class<T> determineClass(Class<T> theOrigClass, T theObj, DataSource theSource) throws InvalidRdfException, DataSourceException {
+	private static <T> Class<T> determineClass(Class<T> theOrigClass, Resource theResource, Graph theGraph) throws InvalidRdfException {
 		Class aResult = theOrigClass;
-		final SupportsRdfId aTmpSupportsRdfId = asSupportsRdfId(theObj);
-	 
-//		ExtGraph aGraph = new ExtGraph(DataSourceUtil.describe(theSource, theObj));
-		final Collection<Value> aTypes = DataSourceUtil.getValues(theSource, EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj)), RDF.TYPE);
-		
+
+		final Collection<Value> aTypes = GraphUtil.getObjects(theGraph, theResource, RDF.TYPE);
+
 		// right now, our best match is the original class (we will refine later)
-		
-//		final Resource aTmpRes = EmpireUtil.asResource(aTmpSupportsRdfId);
-				
+
 		// iterate for all rdf:type triples in the data
 		// There may be multiple rdf:type triples, which can then translate onto multiple candidate Java classes
 		// some of the Java classes may belong to the same class hierarchy, whereas others can have no common
@@ -337,7 +469,7 @@ public final class RdfGenerator {
 			
 			URI aType = (URI) aValue;
 						
-			for (Class aCandidateClass : TYPE_TO_CLASS.get(aType)) {
+			for (Class aCandidateClass : classesForType(aType)) {
 				if (aCandidateClass.equals(aResult)) {
 					// it is mapped to the same Java class, that we have; ignore
 					continue;
@@ -369,13 +501,15 @@ public final class RdfGenerator {
 	 * Populate the fields of the current instance from the RDF indiviual with the given URI
 	 * @param theObj the Java object to populate
 	 * @param theSource the KB to get the RDF data from
+	 * @param theContext the context of the current load, used to detect cycles in the object graph
+	 * @param theGraph the statements about the individual
 	 * @param <T> the type of the class being populated
 	 * @return theObj, populated from the specified DataSource
 	 * @throws InvalidRdfException thrown if the object does not support the RDF JPA API.
 	 * @throws DataSourceException thrown if there is an error retrieving data from the database
 	 */
 	@SuppressWarnings("unchecked")
-	private synchronized static <T> T fromRdf(T theObj, DataSource theSource) throws InvalidRdfException, DataSourceException {
+	private static <T> T fromRdf(T theObj, DataSource theSource, HydrationContext theContext, Graph theGraph) throws InvalidRdfException, DataSourceException {
 		final SupportsRdfId aTmpSupportsRdfId = asSupportsRdfId(theObj);
 		final SupportsRdfId.RdfKey theKeyObj = aTmpSupportsRdfId.getRdfId();
 
@@ -383,17 +517,15 @@ public final class RdfGenerator {
 			LOGGER.debug("Converting {} to RDF.", theObj);
 		}
 		
-		if (OBJECT_M.containsKey(theKeyObj)) {
-			// TODO: this is probably a safe cast, i dont see how something w/ the same URI, which should be the same
-			// object would change types
-			return (T) OBJECT_M.get(theKeyObj);
+		if (theContext.isLoading(theKeyObj)) {
+			return (T) theContext.get(theKeyObj);
 		}
 
 		try {
 
-			OBJECT_M.put(theKeyObj, theObj);
+			theContext.loading(theKeyObj, theObj);
 
-			Graph aGraph = DataSourceUtil.describe(theSource, theObj);
+			Graph aGraph = theGraph;
 
 			if (aGraph.size() == 0) {
 				return theObj;
@@ -416,108 +548,38 @@ public final class RdfGenerator {
 			
 			aEmpireGenerated.setAllTriples(aGraph);		
 			
-			OBJECT_M.put(theKeyObj, theObj);
 			final Resource aRes = EmpireUtil.asResource(aSupportsRdfId);
-			
-			Collection<Field> aFields = getAnnotatedFields(theObj.getClass());
-			Collection<Method> aMethods = getAnnotatedSetters(theObj.getClass(), true);
 
-			addNamespaces(theObj.getClass());
+			EntityMapping aMapping = EntityMapping.of(theObj.getClass());
 
-			final Map<URI, AccessibleObject> aAccessMap = new HashMap<URI, AccessibleObject>();
-
-			Iterables2.each(aFields, new Predicate<Field>() {
-				public boolean apply(final Field theField) {
-					if (theField.getAnnotation(RdfProperty.class) != null) {
-						aAccessMap.put(FACTORY.createURI(PrefixMapping.GLOBAL.uri(theField.getAnnotation(RdfProperty.class).value())),
-									   theField);
-					}
-					else {
-						String aBase = "urn:empire:clark-parsia:";
-						if (aRes instanceof URI) {
-							aBase = ((URI)aRes).getNamespace();
-						}
-
-						aAccessMap.put(FACTORY.createURI(aBase + theField.getName()),
-									   theField);
-					}
-
-					return true;
-				}
-			});
-
-			Iterables2.each(aMethods, new Predicate<Method>() {
-				public boolean apply(final Method theMethod) {
-					RdfProperty aAnnotation = BeanReflectUtil.getAnnotation(theMethod, RdfProperty.class);
-					if (aAnnotation != null) {
-						aAccessMap.put(FACTORY.createURI(PrefixMapping.GLOBAL.uri(aAnnotation.value())),
-									   theMethod);
-					}
+			if (EmpireOptions.BATCH_FETCH_SIZE > 1) {
+				prefetchRelations(theSource, aMapping, aRes, aProps, aGraph, theContext);
+			}
 
-					return true;
-				}
-			});			
-			
 			Set<URI> aUsedProps = new HashSet<URI>();
 
 			for (URI aProp : aProps) {
-				AccessibleObject aAccess = aAccessMap.get(aProp);
-
-				if (aAccess == null && RDF.TYPE.equals(aProp)) {
-					// TODO: the following block should be entirely removed (leaving continue only)
-					// right now, leaving it until the code review: code review before removing the following block
-					
-					// my understanding is that the following block was only necessary when having a support for a single-typed objects,
-					// which is no longer the case 					
-					
-					// we can skip the rdf:type property.  it's basically assigned in the @RdfsClass annotation on the
-					// java class, so we can figure it out later if need be. TODO: of course, if something has multiple types
-					// that information is lost, which is not good.
-
-					
-					/*
-					URI aType = (URI) aGraph.getValue(aRes, aProp);
-					if (!TYPE_TO_CLASS.containsKey(aType) ||
-						!TYPE_TO_CLASS.get(aType).isAssignableFrom(theObj.getClass())) {
-
-						if (TYPE_TO_CLASS.containsKey(aType) && !TYPE_TO_CLASS.get(aType).getName().equals(theObj.getClass().getName())) {
-							// TODO: this might just be an error
-							LOGGER.warn("Asserted rdf:type of the individual does not match the rdf:type annotation on the object. " + aType + " " + TYPE_TO_CLASS.get(aType) + " " + theObj.getClass() + " " +TYPE_TO_CLASS.get(aType).isAssignableFrom(theObj.getClass())+ " " +TYPE_TO_CLASS.get(aType).equals(theObj.getClass()) + " " + TYPE_TO_CLASS.get(aType).getName().equals(theObj.getClass().getName()));
-						}
-						else {
-							// if they're not equals() or isAssignableFrom, but have the same name, this is usually
-							// means that the class loaders don't match.  so probably not an error, so no warning.
-						}
-					}
-					*/
+				EntityMapping.PropertyMapping aAccess = aMapping.getSetter(aProp, aRes);
 
-					continue;
-				}
-				else if (aAccess == null) {
-					// this must be data that is not covered by the bean (perhaps accessible by a different view/bean for a differnent type of an individual)					
+				if (aAccess == null) {
+					// this must be data that is not covered by the bean (perhaps accessible by a different view/bean for a differnent type of an individual)
+					// or the rdf:type, which is assigned via the @RdfsClass annotation on the java class.
 					continue;
 				}
 
 				aUsedProps.add(aProp);
 				
-				ToObjectFunction aFunc = new ToObjectFunction(theSource, aRes, aAccess, aProp);
+				ToObjectFunction aFunc = new ToObjectFunction(theSource, aRes, aAccess, aProp, theContext);
 
 				Object aValue = aFunc.apply(GraphUtil.getObjects(aGraph, aRes, aProp));
 
-				boolean aOldAccess = aAccess.isAccessible();
-
 				try {
-					setAccessible(aAccess, true);					
-					set(aAccess, theObj, aValue);				
+					aAccess.set(theObj, aValue);
 				}				
 				catch (InvocationTargetException e) {
 					// oh crap
 					throw new InvalidRdfException(e);
 				}
-				catch (IllegalAccessException e) {
-					// this should not happen since we toggle the accessibility of the field, but we'll re-throw regardless
-					throw new InvalidRdfException(e);
-				}
 				catch (IllegalArgumentException e) {
 					// this is "likely" to happen.  we'll get this exception if the rdf does not match the java.  for example
 					// if something is specified to be an int in the java class, but it typed as a float (though down conversion
@@ -534,9 +596,6 @@ public final class RdfGenerator {
 					// this was probably an error converting from a Value to an Object
 					throw new InvalidRdfException(e);
 				}
-				finally {
-					setAccessible(aAccess, aOldAccess);
-				}
 			}
 			
 			sIter = aGraph.match(aTmpRes, null, null);
@@ -555,11 +614,65 @@ public final class RdfGenerator {
 			return theObj;
 		}
 		finally {
-			OBJECT_M.remove(theKeyObj);
+			theContext.loaded(theKeyObj);
 		}
 	}
 
 
+	/**
+	 * Fetch the descriptions of all the objects referenced by the eager relations of an individual with as few queries
+	 * as possible, rather than one query per referenced object as they are loaded.  The objects are described from the
+	 * named graph of their class, those which share a named graph are fetched together; objects kept in a graph of
+	 * their own, such as with {@link NamedGraph.NamedGraphType#Instance}, are left to be described as they are loaded.
+	 * @param theSource the data source
+	 * @param theMapping the mapping of the class of the object being loaded
+	 * @param theRes the individual
+	 * @param theProps the properties of the individual
+	 * @param theGraph the statements about the individual
+	 * @param theContext the context of the current load
+	 * @throws QueryException if there is an error querying for the descriptions
+	 */
+	private static void prefetchRelations(final DataSource theSource, final EntityMapping theMapping, final Resource theRes,
+										  final Collection<URI> theProps, final Graph theGraph, final HydrationContext theContext) throws QueryException {
+		Map<java.net.URI, Set<URI>> aRelated = new LinkedHashMap<java.net.URI, Set<URI>>();
+
+		for (URI aProp : theProps) {
+			EntityMapping.PropertyMapping aAccess = theMapping.getSetter(aProp, theRes);
+
+			if (aAccess == null || aAccess.isLazy() || !aAccess.isEntityElement()) {
+				continue;
+			}
+
+			for (Value aValue : GraphUtil.getObjects(theGraph, theRes, aProp)) {
+				if (!(aValue instanceof URI)) {
+					continue;
+				}
+
+				SupportsRdfId.RdfKey aKey = asPrimaryKey(java.net.URI.create(aValue.toString()));
+
+				java.net.URI aNamedGraph = namedGraphOf(aAccess.getElementType(), aKey, theSource);
+
+				if (!theContext.isLoading(aKey) && !theContext.isDescribed(aNamedGraph, aKey)) {
+					Set<URI> aGroup = aRelated.get(aNamedGraph);
+
+					if (aGroup == null) {
+						aGroup = new LinkedHashSet<URI>();
+						aRelated.put(aNamedGraph, aGroup);
+					}
+
+					aGroup.add((URI) aValue);
+				}
+			}
+		}
+
+		for (Map.Entry<java.net.URI, Set<URI>> aGroup : aRelated.entrySet()) {
+			// a single related object is no better off in a batch
+			if (aGroup.getValue().size() > 1) {
+				theContext.prefetch(theSource, aGroup.getKey(), aGroup.getValue());
+			}
+		}
+	}
+
 	/**
 	 * Return the RdfClass annotation on the object.
 	 * @param theObj the object to get that annotation from
@@ -621,6 +734,24 @@ public final class RdfGenerator {
 			return EmpireUtil.asResource(aSupport);
 		}
 
+		// objects can be serialized concurrently, and an object referenced by several of them must only get one id
+		synchronized (aSupport) {
+			if (aSupport.getRdfId() == null) {
+				return newId(theObj, aSupport);
+			}
+		}
+
+		return EmpireUtil.asResource(aSupport);
+	}
+
+	/**
+	 * Create the rdf:ID of an object which does not have one yet, and set it on the object
+	 * @param theObj the object
+	 * @param theSupport the object as a {@link SupportsRdfId}
+	 * @return the new rdf:ID
+	 * @throws InvalidRdfException thrown if the object has an id field without a value
+	 */
+	private static Resource newId(Object theObj, SupportsRdfId theSupport) throws InvalidRdfException {
 		Field aIdField = BeanReflectUtil.getIdField(theObj.getClass());
 
 		String aValue = hash(Strings2.getRandomString(10));
@@ -667,7 +798,7 @@ public final class RdfGenerator {
 			aIdField.setAccessible(aOldAccess);
 		}
 
-		aSupport.setRdfId(new SupportsRdfId.URIKey(java.net.URI.create(aURI.toString())));
+		theSupport.setRdfId(new SupportsRdfId.URIKey(java.net.URI.create(aURI.toString())));
 
 		return aURI;
 	}
@@ -681,11 +812,10 @@ public final class RdfGenerator {
 			return;
 		}
 
-		REGISTERED_FOR_NS.add(theObj);
-
 		Namespaces aNS = BeanReflectUtil.getAnnotation(theObj, Namespaces.class);
 
 		if (aNS == null) {
+			REGISTERED_FOR_NS.add(theObj);
 			return;
 		}
 
@@ -699,6 +829,9 @@ public final class RdfGenerator {
 			PrefixMapping.GLOBAL.addMapping(aPrefix, aURI);
 			aIndex += 2;
 		}
+
+		// only mark the class as registered once its namespaces are available to other threads
+		REGISTERED_FOR_NS.add(theObj);
 	}
 
 	/**
@@ -712,103 +845,56 @@ public final class RdfGenerator {
 			return null;
 		}
 
-		Object aObj = theObj;
-
-		if (aObj instanceof ProxyHandler) {
-			aObj = ((ProxyHandler)aObj).mProxy.value();
-		}
-		else {
-			try {
-				if (aObj.getClass().getDeclaredField("handler") != null) {
-					Field aProxy =  aObj.getClass().getDeclaredField("handler");
-					aObj = ((ProxyHandler)BeanReflectUtil.safeGet(aProxy, aObj)).mProxy.value();
-				}
-			}
-			catch (InvocationTargetException e) {
-				// this is probably an error, we know its a proxy object, but can't get the proxied object
-				throw new InvalidRdfException("Could not access proxy object", e);
-			}
-			catch (NoSuchFieldException e) {
-				// this is probably ok.
-			}
-		}
+		Object aObj = unproxy(theObj);
 
-		RdfsClass aClass = asValidRdfClass(aObj);
+		asValidRdfClass(aObj);
 
 		Resource aSubj = id(aObj);
 
-		addNamespaces(aObj.getClass());
+		SerializationPlan aPlan = SerializationPlan.of(aObj.getClass());
 
 		GraphBuilder aBuilder = new GraphBuilder();
 
-		Collection<AccessibleObject> aAccessors = new HashSet<AccessibleObject>();
-		aAccessors.addAll(getAnnotatedFields(aObj.getClass()));
-		aAccessors.addAll(getAnnotatedGetters(aObj.getClass(), true));
-
 		try {
-			ResourceBuilder aRes = aBuilder.instance(aBuilder.getValueFactory().createURI(PrefixMapping.GLOBAL.uri(aClass.value())),
-													 aSubj);
+			ResourceBuilder aRes = aBuilder.instance(aPlan.mType, aSubj);
 
-			for (AccessibleObject aAccess : aAccessors) {
+			for (PropertyPlan aProp : aPlan.mProperties) {
 				if (LOGGER.isDebugEnabled()) {
-					LOGGER.debug("Getting rdf for : {}", aAccess);
+					LOGGER.debug("Getting rdf for : {}", aProp.mAccess);
 				}
 
-				AsValueFunction aFunc = new AsValueFunction(aAccess);
-
-				if (aAccess.isAnnotationPresent(Transient.class)
-					|| (aAccess instanceof Field
-						&& Modifier.isTransient( ((Field)aAccess).getModifiers() ))) {
+				Object aValue = aProp.mAccess.get(aObj);
 
-					// transient fields or accessors with the Transient annotation do not get converted.
+				if (aValue == null || isEmptyValue(aValue)) {
 					continue;
 				}
+				else if (aValue instanceof Collection) {
+					Collection<?> aCollection = (Collection<?>) aValue;
 
-				RdfProperty aPropertyAnnotation = BeanReflectUtil.getAnnotation(aAccess, RdfProperty.class);
-				String aBase = "urn:empire:clark-parsia:";
-				if (aRes instanceof URI) {
-					aBase = ((URI)aRes).getNamespace();
-				}
-
-				URI aProperty = aPropertyAnnotation != null
-								? aBuilder.getValueFactory().createURI(PrefixMapping.GLOBAL.uri(aPropertyAnnotation.value()))
-								: (aAccess instanceof Field ? aBuilder.getValueFactory().createURI(aBase + ((Field)aAccess).getName()) : null);
-
-				boolean aOldAccess = aAccess.isAccessible();
-				setAccessible(aAccess, true);
-
-				Object aValue = get(aAccess, aObj);
-
-				setAccessible(aAccess, aOldAccess);
-
-				if (aValue == null || aValue.toString().equals("")) {
-					continue;
-				}
-				else if (Collection.class.isAssignableFrom(aValue.getClass())) {
-					@SuppressWarnings("unchecked")
-					List<Value> aValueList = asList(aAccess, (Collection<?>) Collection.class.cast(aValue));
-
-					if (aValueList.isEmpty()) {
+					if (aCollection.isEmpty()) {
 						continue;
 					}
 
-					if (aPropertyAnnotation.isList()) {
-						aRes.addProperty(aProperty, aValueList);
+					if (aProp.mAccess.isList()) {
+						List<Value> aValueList = new ArrayList<Value>(aCollection.size());
+
+						for (Object aElem : aCollection) {
+							aValueList.add(aProp.mValueFunction.apply(aElem));
+						}
+
+						aRes.addProperty(aProp.mProperty, aValueList);
 					}
 					else {
-						for (Value aVal : aValueList) {
-							aRes.addProperty(aProperty, aVal);
+						for (Object aElem : aCollection) {
+							aRes.addProperty(aProp.mProperty, aProp.mValueFunction.apply(aElem));
 						}
 					}
 				}
 				else {
-					aRes.addProperty(aProperty, aFunc.apply(aValue));
+					aRes.addProperty(aProp.mProperty, aProp.mValueFunction.apply(aValue));
 				}
 			}
 		}
-		catch (IllegalAccessException e) {
-			throw new InvalidRdfException(e);
-		}
 		catch (RuntimeException e) {
 			throw new InvalidRdfException(e);
 		}
@@ -820,18 +906,73 @@ public final class RdfGenerator {
 	}
 
 	/**
-	 * Transform a list of Java Objects into the corresponding RDF values
-	 * @param theAccess the accessor for the value
-	 * @param theCollection the collection to transform
-	 * @return the collection as a list of RDF values
-	 * @throws InvalidRdfException thrown if any of the values cannot be transformed
+	 * Load the lazy references which {@link #asRdf serializing} the object would load: the object itself, and the values
+	 * of its properties.  Loading a reference queries the data source it was created for, so an object which is to be
+	 * serialized on another thread is resolved first on the thread which owns the data source.
+	 * @param theObj the object
+	 * @return the object, with its lazy references loaded
+	 * @throws InvalidRdfException thrown if the values of the object's properties cannot be read
 	 */
-	private static List<Value> asList(AccessibleObject theAccess, Collection<?> theCollection) throws InvalidRdfException {
+	public static Object resolveProxies(final Object theObj) throws InvalidRdfException {
+		Object aObj = unproxy(theObj);
+
+		if (aObj == null) {
+			return null;
+		}
+
 		try {
-			return Lists.newArrayList(Collections2.transform(theCollection, new AsValueFunction(theAccess)));
+			for (PropertyPlan aProp : SerializationPlan.of(aObj.getClass()).mProperties) {
+				Object aValue = aProp.mAccess.get(aObj);
+
+				if (aValue instanceof Collection) {
+					for (Object aElem : (Collection<?>) aValue) {
+						unproxy(aElem);
+					}
+				}
+				else {
+					unproxy(aValue);
+				}
+			}
 		}
 		catch (RuntimeException e) {
-			throw new InvalidRdfException(e.getMessage());
+			throw new InvalidRdfException(e);
+		}
+		catch (InvocationTargetException e) {
+			throw new InvalidRdfException("Cannot invoke method", e);
+		}
+
+		return aObj;
+	}
+
+	/**
+	 * Return the object a lazy reference stands in for, loading it if need be.  Objects which are not
+	 * {@link #getProxyOrDbObject lazy references} are returned as-is.
+	 * @param theObj the object
+	 * @return the proxied object, or the object itself
+	 */
+	private static Object unproxy(final Object theObj) {
+		if (theObj instanceof ProxyHandler) {
+			return ((ProxyHandler) theObj).mProxy.value();
+		}
+		else if (theObj instanceof ProxyObject && ((ProxyObject) theObj).getHandler() instanceof ProxyHandler) {
+			return ((ProxyHandler) ((ProxyObject) theObj).getHandler()).mProxy.value();
+		}
+		else {
+			return theObj;
+		}
+	}
+
+	/**
+	 * Return whether or not the value is empty, and should not be serialized.
+	 * @param theValue the value
+	 * @return true if the value is an empty string or URI
+	 */
+	private static boolean isEmptyValue(final Object theValue) {
+		if (theValue instanceof CharSequence) {
+			return ((CharSequence) theValue).length() == 0;
+		}
+		else {
+			return theValue instanceof java.net.URI && theValue.toString().length() == 0;
 		}
 	}
 
@@ -874,18 +1015,18 @@ public final class RdfGenerator {
 
 	private static class CollectionProxy {
 		private Collection mCollection;
-		private AccessibleObject mField;
+		private EntityMapping.PropertyMapping mField;
 		private Collection<Value> theList;
 		private ValueToObject valueToObject;
 
-		public CollectionProxy(final AccessibleObject theField, final Collection<Value> theTheList, final ValueToObject theValueToObject) {
+		public CollectionProxy(final EntityMapping.PropertyMapping theField, final Collection<Value> theTheList, final ValueToObject theValueToObject) {
 			mField = theField;
 			theList = theTheList;
 			valueToObject = theValueToObject;
 		}
 
 		private void init() {
-			Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(mField));
+			Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(mField.getType());
 
 			for (Value aValue : theList) {
 				Object aListValue = valueToObject.apply(aValue);
@@ -933,23 +1074,23 @@ public final class RdfGenerator {
 		/**
 		 * Reference to the Type which the values will be assigned
 		 */
-		private AccessibleObject mField;
+		private EntityMapping.PropertyMapping mField;
 
-		public ToObjectFunction(final DataSource theSource, Resource theResource, final AccessibleObject theField, final URI theProp) {
-			valueToObject = new ValueToObject(theSource, theResource, theField, theProp);
+		public ToObjectFunction(final DataSource theSource, Resource theResource, final EntityMapping.PropertyMapping theField, final URI theProp, final HydrationContext theContext) {
+			valueToObject = new ValueToObject(theSource, theResource, theField, theProp, theContext);
 
 			mField = theField;
 		}
 
 		public Object apply(final Collection<Value> theList) {
 			if (theList == null || theList.isEmpty()) {
-				return BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(mField));
+				return BeanReflectUtil.instantiateCollectionFromField(mField.getType());
 			}
-			if (Collection.class.isAssignableFrom(BeanReflectUtil.classFrom(mField))) {
+			if (mField.isCollection()) {
 				try {
 
-					if (PROXY_COLLECTIONS && !BeanReflectUtil.isPrimitive(refineClass(mField, BeanReflectUtil.classFrom(mField), null, null))) {
-						Object aColType = BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(mField));
+					if (PROXY_COLLECTIONS && !BeanReflectUtil.isPrimitive(mField.getElementType())) {
+						Object aColType = BeanReflectUtil.instantiateCollectionFromField(mField.getType());
 
 						ProxyFactory aFactory = new ProxyFactory();
 						aFactory.setInterfaces(aColType.getClass().getInterfaces());
@@ -961,7 +1102,12 @@ public final class RdfGenerator {
 						return aResult;
 					}
 					else {
-						Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(mField));
+						Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(mField.getType());
+
+						// all the values are converted before any is added to the collection, sorted collections compare
+						// their elements as they are added which would initialize lazy proxies one by one rather than
+						// in a batch
+						List<Object> aListValues = new ArrayList<Object>(theList.size());
 
 						for (Value aValue : theList) {
 							Object aListValue = valueToObject.apply(aValue);
@@ -969,7 +1115,11 @@ public final class RdfGenerator {
 							if (aListValue == null) {
 								throw new RuntimeException("Error converting a list value.");
 							}
-							
+
+							aListValues.add(aListValue);
+						}
+
+						for (Object aListValue : aListValues) {
 							if (aListValue instanceof Collection) {
 								aValues.addAll(((Collection) aListValue));
 							}
@@ -1011,8 +1161,7 @@ public final class RdfGenerator {
 					Collection<Value> aLangFiltered = Collections2.filter(aList, new Predicate<Value>() { public boolean apply(final Value theValue) { return ((Literal)theValue).getLanguage() == null; }});
 
 					if (aLangFiltered.isEmpty()) {
-						LANG_FILTER.setLangCode(getLanguageForLocale());
-						aLangFiltered = Collections2.filter(aList, LANG_FILTER);
+						aLangFiltered = Collections2.filter(aList, new LanguageFilter(getLanguageForLocale()));
 					}
 
 					if (!aLangFiltered.isEmpty()) {
@@ -1020,8 +1169,7 @@ public final class RdfGenerator {
 					}
 				}
 				else {
-					LANG_FILTER.setLangCode(mField.getAnnotation(RdfProperty.class).language());
-					aList = Collections2.filter(aList, LANG_FILTER);
+					aList = Collections2.filter(aList, new LanguageFilter(mField.getAnnotation().language()));
 				}
 			}
 
@@ -1045,7 +1193,7 @@ public final class RdfGenerator {
 			if (aList.isEmpty()) {
 				// yes, we checked for emptiness to begin the method, but we might have done some filtering based on the
 				// language tags, so we need to check again.
-				return BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(mField));
+				return BeanReflectUtil.instantiateCollectionFromField(mField.getType());
 			}
 			else if (aList.size() == 1) {
 				// collection of one element, just convert the single element and send that back
@@ -1065,78 +1213,18 @@ public final class RdfGenerator {
 				  : Locale.getDefault().toString());
 	}
 
-	private static Class refineClass(final Object theAccessor, final Class theClass, final DataSource theSource, final Resource theId) {
-		Class aClass = theClass;
-
-		if (Collection.class.isAssignableFrom(aClass)) {
-			// if the field we're assigning from is a collection, try and figure out the type of the thing
-			// we're creating from the collection
-
-			Type[] aTypes = null;
-
-			if (theAccessor instanceof Field && ((Field)theAccessor).getGenericType() instanceof ParameterizedType) {
-				aTypes = ((ParameterizedType) ((Field)theAccessor).getGenericType()).getActualTypeArguments();
-			}
-			else if (theAccessor instanceof Method) {
-				aTypes = ((Method) theAccessor).getGenericParameterTypes();
-			}
-
-			if (aTypes != null && aTypes.length >= 1) {
-				// first type argument to a collection is usually the one we care most about
-				if (aTypes[0] instanceof ParameterizedType && ((ParameterizedType)aTypes[0]).getActualTypeArguments().length > 0) {
-					Type aType = ((ParameterizedType)aTypes[0]).getActualTypeArguments()[0];
-
-					if (aType instanceof Class) {
-						aClass = (Class) aType;
-					}
-					else if (aType instanceof WildcardTypeImpl) {
-						WildcardTypeImpl aWildcard = (WildcardTypeImpl) aType;
-							// trying to suss out super v extends w/o resorting to string munging.
-							if (aWildcard.getLowerBounds().length == 0 && aWildcard.getUpperBounds().length > 0) {
-								// no lower bounds afaik indicates ? extends Foo
-								aClass = ((Class)aWildcard.getUpperBounds()[0]);
-							}
-							else if (aWildcard.getLowerBounds().length > 0) {
-								// lower & upper bounds I believe indicates something of the form Foo super Bar
-								aClass = ((Class)aWildcard.getLowerBounds()[0]);
-							}
-							else {
-								// shoot, we'll try the string hack that Adrian posted on the mailing list.
-								try {
-									aClass = Class.forName(aType.toString().split(" ")[2].substring(0, aTypes[0].toString().split(" ")[2].length()-1));
-								}
-								catch (Exception e) {
-									// everything has failed, let aClass be the default (theClass) and hope for the best
-								}
-							}
-					}
-					else {
-						// punt? wtf else could it be?
-						try {
-							aClass = Class.forName(aType.toString());
-						}
-						catch (ClassNotFoundException e) {
-							// oh well, we did the best we can
-						}
-					}
-				}
-				else if (aTypes[0] instanceof Class) {
-					aClass = (Class) aTypes[0];
-				}
-			}
-			else {
-				// could not figure out the type from the generics assertions on the Collection, they are either
-				// not present, or my algorithm is not bullet proof.  So lets try checking on the annotations
-				// for a type hint.
-
-				Class aTarget = BeanReflectUtil.getTargetEntity(theAccessor);
-				if (aTarget != null) {
-					aClass = aTarget;
-				}
-			}
-		}
+	/**
+	 * Return the class of the Java object which should be created for the value of the property.  This is the element
+	 * type of the property if it is a mapped entity, otherwise we'll try to use the rdf:type of the value.
+	 * @param theAccessor the property the value will be assigned to
+	 * @param theSource the data source
+	 * @param theId the value
+	 * @return the class to create
+	 */
+	private static Class refineClass(final EntityMapping.PropertyMapping theAccessor, final DataSource theSource, final Resource theId) {
+		Class aClass = theAccessor.getElementType();
 
-		if (!BeanReflectUtil.hasAnnotation(aClass, RdfsClass.class)) {
+		if (!theAccessor.isEntityElement()) {
 			// k, so either the parameter of the collection or the declared type of the field does
 			// not map to an instance/bean type.  this is most likely an error, but lets try and find
 			// the rdf:type of the field, and see if we can map that to a class in the path and we'll
@@ -1147,7 +1235,7 @@ public final class RdfGenerator {
 
 			// k, so now we know the type, if we can match the type to a class then we're in business
 			if (aType != null && aType instanceof URI) {
-				for (Class aTypeClass : TYPE_TO_CLASS.get( (URI) aType)) {
+				for (Class aTypeClass : classesForType((URI) aType)) {
 					if (BeanReflectUtil.hasAnnotation(aTypeClass, RdfsClass.class)) {
 						// lets try this one
 						aClass = aTypeClass;
@@ -1161,24 +1249,22 @@ public final class RdfGenerator {
 	}
 
 	public static class ValueToObject implements Function<Value, Object> {
-		static final List<URI> integerTypes = Arrays.asList(XMLSchema.INT, XMLSchema.INTEGER, XMLSchema.POSITIVE_INTEGER,
-													  XMLSchema.NEGATIVE_INTEGER, XMLSchema.NON_NEGATIVE_INTEGER,
-													  XMLSchema.NON_POSITIVE_INTEGER, XMLSchema.UNSIGNED_INT);
-		static final List<URI> longTypes = Arrays.asList(XMLSchema.LONG, XMLSchema.UNSIGNED_LONG);
-		static final List<URI> floatTypes = Arrays.asList(XMLSchema.FLOAT, XMLSchema.DECIMAL);
-		static final List<URI> shortTypes = Arrays.asList(XMLSchema.SHORT, XMLSchema.UNSIGNED_SHORT);
-		static final List<URI> byteTypes = Arrays.asList(XMLSchema.BYTE, XMLSchema.UNSIGNED_BYTE);
-
 		private URI mProperty;
-		private Object mAccessor;
+		private EntityMapping.PropertyMapping mAccessor;
 		private DataSource mSource;
 		private Resource mResource;
+		private HydrationContext mContext;
 
 		public ValueToObject(final DataSource theSource, Resource theResource, final Object theAccessor, final URI theProp) {
+			this(theSource, theResource, theAccessor == null ? null : EntityMapping.PropertyMapping.forAccessor(theAccessor), theProp, new HydrationContext());
+		}
+
+		private ValueToObject(final DataSource theSource, Resource theResource, final EntityMapping.PropertyMapping theAccessor, final URI theProp, final HydrationContext theContext) {
 			mResource = theResource;
 			mSource = theSource;
 			mAccessor = theAccessor;
 			mProperty = theProp;
+			mContext = theContext;
 		}
 
 		public Object apply(final Value theValue) {
@@ -1188,55 +1274,24 @@ public final class RdfGenerator {
 
 			if (theValue instanceof Literal) {
 				Literal aLit = (Literal) theValue;
-				URI aDatatype = aLit.getDatatype() != null ? aLit.getDatatype() : null;
-				if (aDatatype == null || XMLSchema.STRING.equals(aDatatype) || RDFS.LITERAL.equals(aDatatype)) {
+				URI aDatatype = aLit.getDatatype();
+
+				if (aDatatype == null) {
 					return aLit.getLabel();
 				}
-				else if (XMLSchema.BOOLEAN.equals(aDatatype)) {
-					return Boolean.valueOf(aLit.getLabel());
-				}
-				else if (integerTypes.contains(aDatatype)) {
-					return Integer.parseInt(aLit.getLabel());
-				}
-				else if (longTypes.contains(aDatatype)) {
-					return Long.parseLong(aLit.getLabel());
-				}
-				else if (XMLSchema.DOUBLE.equals(aDatatype)) {
-					return Double.valueOf(aLit.getLabel());
-				}
-				else if (floatTypes.contains(aDatatype)) {
-					return Float.valueOf(aLit.getLabel());
-				}
-				else if (shortTypes.contains(aDatatype)) {
-					return Short.valueOf(aLit.getLabel());
-				}
-				else if (byteTypes.contains(aDatatype)) {
-					return Byte.valueOf(aLit.getLabel());
-				}
-				else if (XMLSchema.ANYURI.equals(aDatatype)) {
-					try {
-						return new java.net.URI(aLit.getLabel());
-					}
-					catch (URISyntaxException e) {
-						LOGGER.warn("URI syntax exception converting literal value which is not a valid URI {} ", aLit.getLabel());
-						return null;
-					}
-				}
-				else if (XMLSchema.DATE.equals(aDatatype) || XMLSchema.DATETIME.equals(aDatatype)) {
-					return Dates.asDate(aLit.getLabel());
-				}
-				else if (XMLSchema.TIME.equals(aDatatype)) {
-					return new Date(Long.parseLong(aLit.getLabel()));
+
+				LiteralConverter<?> aConverter = LiteralConverters.forDatatype(aDatatype, mAccessor.getElementType());
+
+				if (aConverter != null) {
+					return aConverter.fromLiteral(aLit);
 				}
-				else {
+				else if (mAccessor.getType().isAssignableFrom(String.class)) {
 					// no idea what this value is from its data type.  if the field takes a string
 					// we'll just assign the plain string, otherwise its an error
-					if (BeanReflectUtil.classFrom(mAccessor).isAssignableFrom(String.class)) {
-						return aLit.getLabel();
-					}
-					else {
-						throw new RuntimeException("Unsupported or unknown literal datatype");
-					}
+					return aLit.getLabel();
+				}
+				else {
+					throw new RuntimeException("Unsupported or unknown literal datatype");
 				}
 			}
 			else if (theValue instanceof BNode) {
@@ -1245,13 +1300,9 @@ public final class RdfGenerator {
 				BNode aBNode = (BNode) theValue;
 
 				// we need to figure out what type of bean this instance maps to.
-				Class<?> aClass = BeanReflectUtil.classFrom(mAccessor);
-
-				aClass = refineClass(mAccessor, aClass, mSource, aBNode);
+				Class<?> aClass = refineClass(mAccessor, mSource, aBNode);
 
-				if (Collection.class.isAssignableFrom(BeanReflectUtil.classFrom(mAccessor))) {
-					AccessibleObject aAccess = (AccessibleObject) mAccessor;
-					RdfProperty aPropAnnotation = aAccess.getAnnotation(RdfProperty.class);
+				if (mAccessor.isCollection()) {
 
 					// the field takes a collection, lets create a new instance of said collection, and hopefully the
 					// bnode is a list.  this approach will only work if the property is a singleton value, eg
@@ -1272,7 +1323,7 @@ public final class RdfGenerator {
 							List<Value> aList;
 
 							// getting the list is only safe the the query dialect supports stable bnode ids in the query language.
-							if (aPropAnnotation != null && aPropAnnotation.isList() && mSource.getQueryFactory().getDialect().supportsStableBnodeIds()) {
+							if (mAccessor.isList() && mSource.getQueryFactory().getDialect().supportsStableBnodeIds()) {
 								try {
 									aList = asList(mSource, aPossibleListHead.get());
 								}
@@ -1285,13 +1336,13 @@ public final class RdfGenerator {
 							}
 
 							//return new ToObjectFunction(mSource, null, (AccessibleObject) mAccessor, null).apply(aList);
-							Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(BeanReflectUtil.classFrom(aAccess));
+							Collection<Object> aValues = BeanReflectUtil.instantiateCollectionFromField(mAccessor.getType());
 
 							for (Value aValue : aList) {
 								Object aListValue = null;
 
 								try {
-									aListValue = getProxyOrDbObject(mAccessor, aClass, aValue, mSource);
+									aListValue = getProxyOrDbObject(mAccessor, aClass, aValue, mSource, mContext);
 								}
 								catch (Exception e) {
 									// we'll throw an error in a second...
@@ -1314,7 +1365,7 @@ public final class RdfGenerator {
 				}
 
 				try {
-					return getProxyOrDbObject(mAccessor, aClass, aBNode, mSource);
+					return getProxyOrDbObject(mAccessor, aClass, aBNode, mSource, mContext);
 				}
 				catch (Exception e) {
 					if (EmpireOptions.STRICT_MODE) {
@@ -1329,15 +1380,13 @@ public final class RdfGenerator {
 				URI aURI = (URI) theValue;
 				try {
 					// we need to figure out what type of bean this instance maps to.
-					Class<?> aClass = BeanReflectUtil.classFrom(mAccessor);
-
-					aClass = refineClass(mAccessor, aClass, mSource, aURI);
+					Class<?> aClass = refineClass(mAccessor, mSource, aURI);
 
 					if (aClass.isAssignableFrom(java.net.URI.class)) {
 						return java.net.URI.create(aURI.toString());
 					}
 					else {
-						return getProxyOrDbObject(mAccessor, aClass, java.net.URI.create(aURI.toString()), mSource);
+						return getProxyOrDbObject(mAccessor, aClass, java.net.URI.create(aURI.toString()), mSource, mContext);
 					}
 				}
 				catch (Exception e) {
@@ -1387,17 +1436,28 @@ public final class RdfGenerator {
         return aList;
 	}
 
+	/**
+	 * The constructors of the lazy proxy classes, keyed by the class they are a proxy for
+	 */
+	private static final ConcurrentMap<Class<?>, Constructor<?>> PROXY_CONSTRUCTORS = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
 	private static final MethodFilter METHOD_FILTER = new MethodFilter() {
 		public boolean isHandled(final Method theMethod) {
 			return !theMethod.getName().equals("finalize");
 		}
 	};
 
-	@SuppressWarnings("unchecked")
-	private static <T> T getProxyOrDbObject(Object theAccessor, Class<T> theClass, Object theKey, DataSource theSource) throws Exception {
-		if (BeanReflectUtil.isFetchTypeLazy(theAccessor)) {
-			Proxy<T> aProxy = new Proxy<T>(theClass, asPrimaryKey(theKey), theSource);
+	/**
+	 * Return the constructor of the javassist proxy class for the given class, generating the class the first time it
+	 * is requested.  The handler of each proxy is set on the instance, so one class serves all the proxies of a type.
+	 * @param theClass the class to proxy
+	 * @return the no-arg constructor of the proxy class
+	 * @throws NoSuchMethodException if the proxied class does not have a default constructor
+	 */
+	private static Constructor<?> proxyConstructor(final Class<?> theClass) throws NoSuchMethodException {
+		Constructor<?> aConstructor = PROXY_CONSTRUCTORS.get(theClass);
 
+		if (aConstructor == null) {
 			ProxyFactory aFactory = new ProxyFactory();
 			aFactory.setInterfaces(ObjectArrays.concat(theClass.getInterfaces(), EmpireGenerated.class));
 			if (!theClass.isInterface()) {
@@ -1405,20 +1465,41 @@ public final class RdfGenerator {
 			}
 
 			aFactory.setFilter(METHOD_FILTER);
-			final ProxyHandler<T> aHandler = new ProxyHandler<T>(aProxy);
 
-			aFactory.setHandler(aHandler);
+			aConstructor = aFactory.createClass(METHOD_FILTER).getDeclaredConstructor();
+			aConstructor.setAccessible(true);
 
-			Object aObj = aFactory.createClass(METHOD_FILTER).newInstance();
+			Constructor<?> aExisting = PROXY_CONSTRUCTORS.putIfAbsent(theClass, aConstructor);
+
+			if (aExisting != null) {
+				aConstructor = aExisting;
+			}
+		}
+
+		return aConstructor;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T getProxyOrDbObject(EntityMapping.PropertyMapping theAccessor, Class<T> theClass, Object theKey, DataSource theSource, HydrationContext theContext) throws Exception {
+		if (theAccessor.isLazy()) {
+			SupportsRdfId.RdfKey aKey = asPrimaryKey(theKey);
+
+			// siblings are loaded together, unless they have to be described from a named graph
+			ProxyBatch aBatch = aKey instanceof SupportsRdfId.URIKey
+								&& !(theSource instanceof SupportsNamedGraphs && theClass.isAnnotationPresent(NamedGraph.class))
+								? theContext.proxyBatch(theSource)
+								: null;
+
+			Proxy<T> aProxy = new Proxy<T>(theClass, aKey, theSource, aBatch);
+
+			Object aObj = proxyConstructor(theClass).newInstance();
+
+			((ProxyObject) aObj).setHandler(new ProxyHandler<T>(aProxy));
 
-			((ProxyObject) aObj).setHandler(aHandler);
-			
-			//((com.clarkparsia.empire.annotation.RdfGenerator.ProxyHandler) ((javassist.util.proxy.ProxyObject) aObj).getHandler()).getProxy().getProxyClass();
-			
 			return (T) aObj;
 		}
 		else {
-			return fromRdf(theClass, asPrimaryKey(theKey), theSource);
+			return fromRdf(theClass, asPrimaryKey(theKey), theSource, theContext, null, null);
 		}
 	}
 
@@ -1475,7 +1556,7 @@ public final class RdfGenerator {
 	}
 
 	public static class AsValueFunction implements Function<Object, Value> {
-		private AccessibleObject mField;
+		private Object mField;
 		private RdfProperty annotation;
 
 		public AsValueFunction() {
@@ -1483,7 +1564,12 @@ public final class RdfGenerator {
 
 		public AsValueFunction(final AccessibleObject theField) {
 			mField = theField;
-			annotation = mField == null ? null : mField.getAnnotation(RdfProperty.class);
+			annotation = mField == null ? null : theField.getAnnotation(RdfProperty.class);
+		}
+
+		private AsValueFunction(final EntityMapping.PropertyMapping theField) {
+			mField = theField;
+			annotation = theField.getAnnotation();
 		}
 
 		public Value apply(final Object theIn) {
@@ -1493,47 +1579,20 @@ public final class RdfGenerator {
             else if (!EmpireOptions.STRONG_TYPING && BeanReflectUtil.isPrimitive(theIn)) {
                 return FACTORY.createLiteral(theIn.toString());
             }
-			else if (Boolean.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Boolean.class.cast(theIn));
-			}
-			else if (Integer.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Integer.class.cast(theIn));
-			}
-			else if (Long.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Long.class.cast(theIn));
-			}
-			else if (Short.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Short.class.cast(theIn));
-			}
-			else if (Double.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Double.class.cast(theIn));
-			}
-			else if (Float.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Float.class.cast(theIn));
-			}
-			else if (Date.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Dates.datetime(Date.class.cast(theIn)), XMLSchema.DATETIME);
-			}
-			else if (String.class.isInstance(theIn)) {
-				if (annotation != null && !annotation.language().equals("")) {
-					return FACTORY.createLiteral(String.class.cast(theIn), annotation.language());
-				}
-				else {
-					return FACTORY.createLiteral(String.class.cast(theIn));
-				}
+			else if (String.class.isInstance(theIn) && annotation != null && !annotation.language().equals("")) {
+				return FACTORY.createLiteral(String.class.cast(theIn), annotation.language());
 			}
-			else if (Character.class.isInstance(theIn)) {
-				return FACTORY.createLiteral(Character.class.cast(theIn));
+			else if (java.net.URI.class.isInstance(theIn) && (annotation == null || !annotation.isXsdUri())) {
+				return FACTORY.createURI(theIn.toString());
 			}
-			else if (java.net.URI.class.isInstance(theIn)) {
-				if (annotation != null && annotation.isXsdUri()) {
-					return FACTORY.createLiteral(theIn.toString(), XMLSchema.ANYURI);
-				}
-				else {
-                	return FACTORY.createURI(theIn.toString());
-				}
+
+			@SuppressWarnings("unchecked")
+			LiteralConverter<Object> aConverter = (LiteralConverter<Object>) LiteralConverters.forType(theIn.getClass());
+
+			if (aConverter != null) {
+				return aConverter.toLiteral(FACTORY, theIn);
 			}
-			else if (Value.class.isAssignableFrom(theIn.getClass())) {
+			if (Value.class.isAssignableFrom(theIn.getClass())) {
 				return Value.class.cast(theIn);
 			}
 			else if (BeanReflectUtil.hasAnnotation(theIn.getClass(), RdfsClass.class)) {
@@ -1544,17 +1603,14 @@ public final class RdfGenerator {
 					throw new RuntimeException(e);
 				}
 			}
-			else if (theIn instanceof ProxyHandler) {
-				return this.apply( ((ProxyHandler)theIn).mProxy.value());
-			}
 			else {
-				try {
-					Field aProxy =  theIn.getClass().getDeclaredField("handler");
-					return this.apply(((ProxyHandler)BeanReflectUtil.safeGet(aProxy, theIn)).mProxy.value());
-				}
-				catch (Exception e) {
+				Object aObj = unproxy(theIn);
+
+				if (aObj == theIn) {
 					throw new RuntimeException("Unknown type conversion: " + theIn.getClass() + " " + theIn + " " + mField);
 				}
+
+				return apply(aObj);
 			}
 		}
 	}
@@ -1566,18 +1622,191 @@ public final class RdfGenerator {
 	}
 
 	private static class LanguageFilter implements Predicate<Value> {
-		private String mLangCode;
+		private final String mLangCode;
 
 		private LanguageFilter(final String theLangCode) {
 			mLangCode = theLangCode;
 		}
 
-		public void setLangCode(final String theLangCode) {
-			mLangCode = theLangCode;
-		}
-
 		public boolean apply(final Value theValue) {
 			return theValue instanceof Literal && mLangCode.equals(((Literal)theValue).getLanguage());
 		}
 	}
+
+	/**
+	 * <p>The precomputed steps to serialize instances of a class as RDF: the properties which are persisted, the RDF
+	 * property each is written to and the function which converts its values.  Plans are created once per class.</p>
+	 */
+	private static final class SerializationPlan {
+		/**
+		 * The plans which have been created so far, keyed by the class they serialize
+		 */
+		private static final ConcurrentMap<Class<?>, SerializationPlan> PLANS = new ConcurrentHashMap<Class<?>, SerializationPlan>();
+
+		/**
+		 * The rdf:type of instances of the class
+		 */
+		private final URI mType;
+
+		/**
+		 * The persistent properties of the class
+		 */
+		private final PropertyPlan[] mProperties;
+
+		private SerializationPlan(final EntityMapping theMapping) {
+			mType = theMapping.getRdfType();
+
+			List<PropertyPlan> aProperties = new ArrayList<PropertyPlan>();
+
+			for (EntityMapping.PropertyMapping aAccess : theMapping.getProperties()) {
+				// transient fields or accessors with the Transient annotation do not get converted.
+				if (!aAccess.isTransient()) {
+					aProperties.add(new PropertyPlan(aAccess));
+				}
+			}
+
+			mProperties = aProperties.toArray(new PropertyPlan[aProperties.size()]);
+		}
+
+		/**
+		 * Return the plan for serializing instances of the class
+		 * @param theClass the class
+		 * @return the plan
+		 */
+		static SerializationPlan of(final Class<?> theClass) {
+			SerializationPlan aPlan = PLANS.get(theClass);
+
+			if (aPlan == null) {
+				aPlan = new SerializationPlan(EntityMapping.of(theClass));
+
+				SerializationPlan aExisting = PLANS.putIfAbsent(theClass, aPlan);
+				if (aExisting != null) {
+					aPlan = aExisting;
+				}
+			}
+
+			return aPlan;
+		}
+	}
+
+	/**
+	 * <p>How a single property of a class is serialized</p>
+	 */
+	private static final class PropertyPlan {
+		private final EntityMapping.PropertyMapping mAccess;
+		private final URI mProperty;
+		private final AsValueFunction mValueFunction;
+
+		private PropertyPlan(final EntityMapping.PropertyMapping theAccess) {
+			mAccess = theAccess;
+			mProperty = theAccess.getProperty(EntityMapping.DEFAULT_BASE);
+			mValueFunction = new AsValueFunction(theAccess);
+		}
+	}
+
+	/**
+	 * <p>The state of a single call to load an object from the database.  A context is created for each top level
+	 * {@link #fromRdf} call and is passed along as referenced objects are loaded; it keeps track of what instances
+	 * are currently being created in order to prevent cycles, holds the descriptions of related objects which were
+	 * fetched in a batch ahead of their load, and the group of lazy proxies created by the load.  Since it is never
+	 * shared between loads, loads on different threads do not need to be serialized.</p>
+	 */
+	private static final class HydrationContext {
+		/**
+		 * The instances currently being created, keyed by their identifiers
+		 */
+		private final Map<SupportsRdfId.RdfKey, Object> mObjects = new HashMap<SupportsRdfId.RdfKey, Object>();
+
+		/**
+		 * The descriptions of objects which have been fetched, but not yet loaded, keyed by the named graph they were
+		 * fetched from, null for the default graph, and then by their identifiers
+		 */
+		private final Map<java.net.URI, Map<SupportsRdfId.RdfKey, Graph>> mDescriptions = new HashMap<java.net.URI, Map<SupportsRdfId.RdfKey, Graph>>();
+
+		/**
+		 * The group of lazy proxies created during the load, created on demand
+		 */
+		private ProxyBatch mProxyBatch;
+
+		public boolean isLoading(final SupportsRdfId.RdfKey theKey) {
+			return mObjects.containsKey(theKey);
+		}
+
+		public Object get(final SupportsRdfId.RdfKey theKey) {
+			return mObjects.get(theKey);
+		}
+
+		public void loading(final SupportsRdfId.RdfKey theKey, final Object theObj) {
+			mObjects.put(theKey, theObj);
+		}
+
+		public void loaded(final SupportsRdfId.RdfKey theKey) {
+			mObjects.remove(theKey);
+		}
+
+		/**
+		 * Return the group which lazy proxies created during this load belong to, so that they are initialized together
+		 * @param theSource the data source the proxies load from
+		 * @return the batch, or null if batching is disabled
+		 */
+		public ProxyBatch proxyBatch(final DataSource theSource) {
+			if (EmpireOptions.BATCH_FETCH_SIZE <= 1) {
+				return null;
+			}
+
+			if (mProxyBatch == null) {
+				mProxyBatch = new ProxyBatch(theSource, EmpireOptions.BATCH_FETCH_SIZE);
+			}
+
+			return mProxyBatch;
+		}
+
+		public boolean isDescribed(final java.net.URI theNamedGraph, final SupportsRdfId.RdfKey theKey) {
+			return mDescriptions.containsKey(theNamedGraph) && mDescriptions.get(theNamedGraph).containsKey(theKey);
+		}
+
+		/**
+		 * Fetch the descriptions of the resources in as few queries as {@link EmpireOptions#BATCH_FETCH_SIZE} allows.
+		 * The descriptions are held until the objects are {@link #describe described} while they are loaded.
+		 * @param theSource the data source
+		 * @param theNamedGraph the named graph to describe the resources from, or null for the default graph
+		 * @param theResources the resources to describe
+		 * @throws QueryException if there is an error querying for the descriptions
+		 */
+		public void prefetch(final DataSource theSource, final java.net.URI theNamedGraph, final Collection<URI> theResources) throws QueryException {
+			Map<SupportsRdfId.RdfKey, Graph> aDescriptions = mDescriptions.get(theNamedGraph);
+
+			if (aDescriptions == null) {
+				aDescriptions = new HashMap<SupportsRdfId.RdfKey, Graph>();
+				mDescriptions.put(theNamedGraph, aDescriptions);
+			}
+
+			for (List<URI> aBatch : Iterables.partition(theResources, EmpireOptions.BATCH_FETCH_SIZE)) {
+				for (Map.Entry<Resource, Graph> aEntry : DataSourceUtil.describeEach(theSource, aBatch, theNamedGraph).entrySet()) {
+					aDescriptions.put(asPrimaryKey(java.net.URI.create(aEntry.getKey().toString())), aEntry.getValue());
+				}
+			}
+		}
+
+		/**
+		 * Return the description of the object, using the one fetched ahead of time if it is available.
+		 * @param theSource the data source
+		 * @param theObj the object
+		 * @param theNamedGraph the named graph the object is kept in, or null if it is not kept in one
+		 * @return the statements about the object
+		 * @throws QueryException if there is an error querying for the description
+		 */
+		public Graph describe(final DataSource theSource, final Object theObj, final java.net.URI theNamedGraph) throws QueryException {
+			SupportsRdfId.RdfKey aKey = EmpireUtil.asSupportsRdfId(theObj).getRdfId();
+
+			Graph aGraph = mDescriptions.containsKey(theNamedGraph) ? mDescriptions.get(theNamedGraph).remove(aKey) : null;
+
+			// an object with nothing in its named graph is described again so that it can fall back on the database
+			if (aGraph != null && (!aGraph.isEmpty() || theNamedGraph == null || !EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK)) {
+				return aGraph;
+			}
+
+			return aKey == null ? Graphs.newGraph() : RdfGenerator.describe(theSource, aKey, theNamedGraph);
+		}
+	}
 }
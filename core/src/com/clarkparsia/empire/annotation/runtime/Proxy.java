@@ -18,14 +18,18 @@ package com.clarkparsia.empire.annotation.runtime;
 import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.SupportsRdfId;
 
+import com.clarkparsia.empire.annotation.InvalidRdfException;
 import com.clarkparsia.empire.annotation.RdfGenerator;
+import com.clarkparsia.empire.ds.DataSourceException;
+
+import org.openrdf.model.Graph;
 
 /**
  * <p>Wrapper class which serves as a proxy for an object to the database.</p>
  *
  * @author Michael Grove
  * @since 0.5
- * @version 0.7
+ * @version 0.8
  */
 public class Proxy<T> {
 
@@ -49,6 +53,11 @@ public class Proxy<T> {
 	 */
 	private DataSource mDataSource;
 
+	/**
+	 * The group of proxies this proxy is loaded with, or null if it is loaded on its own
+	 */
+	private ProxyBatch mBatch;
+
 	/**
 	 * Create a new Proxy object
 	 * @param theClass the type of the object
@@ -56,9 +65,25 @@ public class Proxy<T> {
 	 * @param theSource the database to grab the proxied object from
 	 */
 	public Proxy(Class<T> theClass, SupportsRdfId.RdfKey theKey, DataSource theSource) {
+		this(theClass, theKey, theSource, null);
+	}
+
+	/**
+	 * Create a new Proxy object which is loaded along with the other proxies in the batch
+	 * @param theClass the type of the object
+	 * @param theKey the database key of the object, must be a {@link SupportsRdfId.URIKey} if a batch is provided
+	 * @param theSource the database to grab the proxied object from
+	 * @param theBatch the batch the proxy belongs to, or null to load the proxy on its own
+	 */
+	public Proxy(Class<T> theClass, SupportsRdfId.RdfKey theKey, DataSource theSource, ProxyBatch theBatch) {
 		mClass = theClass;
 		mURI = theKey;
 		mDataSource = theSource;
+		mBatch = theBatch;
+
+		if (mBatch != null) {
+			mBatch.add(this);
+		}
 	}
 	
 	/**
@@ -69,7 +94,12 @@ public class Proxy<T> {
 	public T value() {
 		if (mValue == null) {
 			try {
-				mValue = RdfGenerator.fromRdf(mClass, mURI, mDataSource);
+				if (mBatch != null) {
+					mBatch.load(this);
+				}
+				else {
+					mValue = RdfGenerator.fromRdf(mClass, mURI, mDataSource);
+				}
 			}
 			catch (Exception e) {
 				throw new RuntimeException(e);
@@ -79,6 +109,25 @@ public class Proxy<T> {
 		return mValue;
 	}
 
+	/**
+	 * Load the value of this proxy from its description, as part of loading its {@link ProxyBatch batch}
+	 * @param theGraph the statements about the proxied object
+	 * @throws InvalidRdfException if the object cannot be created from the statements
+	 * @throws DataSourceException if there is an error loading related objects
+	 */
+	void load(final Graph theGraph) throws InvalidRdfException, DataSourceException {
+		mValue = RdfGenerator.fromRdf(mClass, mURI, mDataSource, theGraph);
+		mBatch = null;
+	}
+
+	boolean isLoaded() {
+		return mValue != null;
+	}
+
+	SupportsRdfId.RdfKey getKey() {
+		return mURI;
+	}
+
 	/**
 	 * Return the type of the object this is proxying for
 	 * @return the object type
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.annotation.runtime;
+
+import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.annotation.InvalidRdfException;
+import com.clarkparsia.empire.ds.DataSource;
+import com.clarkparsia.empire.ds.DataSourceException;
+import com.clarkparsia.empire.ds.DataSourceUtil;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A group of sibling {@link Proxy proxies}, created while loading the same object, which are initialized together.
+ * When one proxy in the group is first accessed, it is loaded along with up to <code>size - 1</code> of the other
+ * proxies in the group which have not been loaded yet, using a single query to describe all of them.  This avoids a
+ * query per element when iterating over a lazily loaded collection.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class ProxyBatch {
+
+	/**
+	 * The datasource the proxied objects are loaded from
+	 */
+	private final DataSource mDataSource;
+
+	/**
+	 * The maximum number of proxies to load at once
+	 */
+	private final int mSize;
+
+	/**
+	 * The proxies in the group which have not been loaded, in the order they were created
+	 */
+	private final Set<Proxy<?>> mPending = new LinkedHashSet<Proxy<?>>();
+
+	/**
+	 * Create a new batch
+	 * @param theSource the database the proxied objects are loaded from
+	 * @param theSize the maximum number of proxies to load at once
+	 */
+	public ProxyBatch(final DataSource theSource, final int theSize) {
+		mDataSource = theSource;
+		mSize = theSize;
+	}
+
+	/**
+	 * Add a proxy to the group.  Only proxies for objects identified by a URI and created for the same data source
+	 * as the group can be loaded in a batch.
+	 * @param theProxy the proxy to add
+	 */
+	synchronized void add(final Proxy<?> theProxy) {
+		mPending.add(theProxy);
+	}
+
+	/**
+	 * Load the proxy, and as many of its unloaded siblings as the size of the batch allows
+	 * @param theProxy the proxy to load
+	 * @throws InvalidRdfException if one of the proxied objects cannot be created from its RDF
+	 * @throws DataSourceException if there is an error querying the database
+	 */
+	synchronized void load(final Proxy<?> theProxy) throws InvalidRdfException, DataSourceException {
+		if (theProxy.isLoaded()) {
+			return;
+		}
+
+		List<Proxy<?>> aBatch = new ArrayList<Proxy<?>>();
+		List<Resource> aResources = new ArrayList<Resource>();
+
+		mPending.remove(theProxy);
+		aBatch.add(theProxy);
+
+		Iterator<Proxy<?>> aIter = mPending.iterator();
+		while (aBatch.size() < mSize && aIter.hasNext()) {
+			Proxy<?> aProxy = aIter.next();
+			aIter.remove();
+
+			if (!aProxy.isLoaded()) {
+				aBatch.add(aProxy);
+			}
+		}
+
+		for (Proxy<?> aProxy : aBatch) {
+			aResources.add(asResource(aProxy.getKey()));
+		}
+
+		Map<Resource, Graph> aGraphs = DataSourceUtil.describeEach(mDataSource, aResources);
+
+		for (Proxy<?> aProxy : aBatch) {
+			aProxy.load(aGraphs.get(asResource(aProxy.getKey())));
+		}
+	}
+
+	private static Resource asResource(final SupportsRdfId.RdfKey theKey) {
+		return ValueFactoryImpl.getInstance().createURI(theKey.value().toString());
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.codegen;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Generates {@link PropertyAccessor} implementations for the fields and bean-style methods of a class.  Each
+ * accessor is a small class which reads or writes the property directly, rather than via reflection, so the calls
+ * are monomorphic and can be inlined by the JIT.  Primitive properties are unboxed directly in the generated setter.</p>
+ *
+ * <p>Generated code is subject to the normal Java access rules, so accessors can only be created for non-private
+ * members of accessible classes; the accessor is defined in the same package and class loader as the class that
+ * declares the member.  When an accessor cannot be generated, callers should fall back to reflection.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class AccessorGenerator {
+	/**
+	 * The logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(AccessorGenerator.class.getName());
+
+	/**
+	 * Class pools used for generation, one per class loader, so that classes are resolved from the loader which
+	 * defines the class being accessed.
+	 */
+	private static final Map<ClassLoader, ClassPool> POOLS = new WeakHashMap<ClassLoader, ClassPool>();
+
+	/**
+	 * Used to keep the names of the generated classes unique
+	 */
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+
+	/**
+	 * No instances
+	 */
+	private AccessorGenerator() {
+	}
+
+	/**
+	 * Generate an accessor for the given field.  A method alone can only read or write a property, so no accessor is
+	 * generated for it, getters and setters have to be paired through {@link #generateAccessor(Method, Method)}.
+	 * @param theAccessor the field or method
+	 * @return the generated accessor, or null if one could not be generated, as is the case for final fields and
+	 * methods
+	 */
+	public static PropertyAccessor generateAccessor(final AccessibleObject theAccessor) {
+		if (theAccessor instanceof Field) {
+			return generate((Field) theAccessor, null, null);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Generate an accessor which uses the getter to read, and the setter to write, the value of a property
+	 * @param theGetter the getter
+	 * @param theSetter the setter
+	 * @return the generated accessor, or null if one could not be generated, or either method is missing
+	 */
+	public static PropertyAccessor generateAccessor(final Method theGetter, final Method theSetter) {
+		if (theGetter == null || theSetter == null) {
+			return null;
+		}
+
+		return generate(null, theGetter, theSetter);
+	}
+
+	private static synchronized PropertyAccessor generate(final Field theField, final Method theGetter, final Method theSetter) {
+		Member aMember = theField != null ? theField : theGetter;
+
+		// final fields can only be assigned through reflection, so they are left to it
+		if (theField != null && Modifier.isFinal(theField.getModifiers())) {
+			return null;
+		}
+
+		if (!canAccess(aMember) || (theSetter != null && !canAccess(theSetter))) {
+			return null;
+		}
+
+		if (theField != null && !isAccessible(theField.getType(), theField.getDeclaringClass())) {
+			return null;
+		}
+
+		if (theSetter != null && (theSetter.getParameterTypes().length != 1
+								  || !isAccessible(theSetter.getParameterTypes()[0], theSetter.getDeclaringClass()))) {
+			return null;
+		}
+
+		Class<?> aOwner = aMember.getDeclaringClass();
+
+		try {
+			ClassPool aPool = pool(aOwner.getClassLoader());
+
+			CtClass aClass = aPool.makeClass(aOwner.getName() + "$$EmpireAccessor$" + aMember.getName() + "$" + COUNTER.incrementAndGet());
+			aClass.addInterface(aPool.get(PropertyAccessor.class.getName()));
+			aClass.addConstructor(CtNewConstructor.defaultConstructor(aClass));
+
+			String aOwnerType = typeName(aOwner);
+
+			if (theField != null) {
+				aClass.addMethod(CtNewMethod.make("public Object get(Object theObj) { return " +
+												  box(theField.getType(), "((" + aOwnerType + ") theObj)." + theField.getName()) + "; }", aClass));
+
+				aClass.addMethod(CtNewMethod.make("public void set(Object theObj, Object theValue) { " + checkType(theField.getType()) +
+												  "((" + aOwnerType + ") theObj)." + theField.getName() + " = " + unbox(theField.getType(), "theValue") + "; }", aClass));
+			}
+			else {
+				aClass.addMethod(CtNewMethod.make("public Object get(Object theObj) { return " +
+												  box(theGetter.getReturnType(), "((" + typeName(theGetter.getDeclaringClass()) + ") theObj)." + theGetter.getName() + "()") + "; }", aClass));
+
+				Class<?> aType = theSetter.getParameterTypes()[0];
+				aClass.addMethod(CtNewMethod.make("public void set(Object theObj, Object theValue) { " + checkType(aType) +
+												  "((" + typeName(theSetter.getDeclaringClass()) + ") theObj)." + theSetter.getName() + "(" + unbox(aType, "theValue") + "); }", aClass));
+			}
+
+			Class<?> aAccessorClass = aClass.toClass(aOwner.getClassLoader(), aOwner.getProtectionDomain());
+
+			aClass.detach();
+
+			return (PropertyAccessor) aAccessorClass.newInstance();
+		}
+		catch (Exception e) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Could not generate an accessor for " + aMember + ", reflection will be used instead", e);
+			}
+
+			return null;
+		}
+		catch (LinkageError e) {
+			// most likely the class loader of the bean cannot see the Empire classes
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Could not generate an accessor for " + aMember + ", reflection will be used instead", e);
+			}
+
+			return null;
+		}
+	}
+
+	private static ClassPool pool(final ClassLoader theLoader) {
+		ClassPool aPool = POOLS.get(theLoader);
+
+		if (aPool == null) {
+			aPool = new ClassPool(true);
+			aPool.appendClassPath(new LoaderClassPath(theLoader));
+			aPool.appendClassPath(new LoaderClassPath(AccessorGenerator.class.getClassLoader()));
+
+			POOLS.put(theLoader, aPool);
+		}
+
+		return aPool;
+	}
+
+	/**
+	 * Return whether or not code generated into the package of the member's declaring class can use the member.
+	 * @param theMember the member
+	 * @return true if generated code can use it, false otherwise
+	 */
+	private static boolean canAccess(final Member theMember) {
+		Class<?> aOwner = theMember.getDeclaringClass();
+
+		return !Modifier.isPrivate(theMember.getModifiers())
+			   && !Modifier.isStatic(theMember.getModifiers())
+			   && aOwner.getClassLoader() != null
+			   && !aOwner.getName().startsWith("java.")
+			   && isAccessible(aOwner, aOwner);
+	}
+
+	/**
+	 * Return whether or not the type can be referenced from code in the package of the given class
+	 * @param theType the type to reference
+	 * @param theFrom the class whose package the code will be in
+	 * @return true if it can be referenced, false otherwise
+	 */
+	private static boolean isAccessible(final Class<?> theType, final Class<?> theFrom) {
+		if (theType.isPrimitive()) {
+			return true;
+		}
+		else if (theType.isArray()) {
+			// array type names need special handling in the javassist compiler, reflection is fine for these
+			return false;
+		}
+
+		Class<?> aClass = theType;
+		while (aClass != null) {
+			if (Modifier.isPrivate(aClass.getModifiers())) {
+				return false;
+			}
+			else if (!Modifier.isPublic(aClass.getModifiers())
+					 && (aClass.getClassLoader() != theFrom.getClassLoader() || !packageName(aClass).equals(packageName(theFrom)))) {
+				return false;
+			}
+
+			aClass = aClass.getDeclaringClass();
+		}
+
+		return true;
+	}
+
+	private static String packageName(final Class<?> theClass) {
+		String aName = theClass.getName();
+		return aName.lastIndexOf('.') == -1 ? "" : aName.substring(0, aName.lastIndexOf('.'));
+	}
+
+	private static String typeName(final Class<?> theClass) {
+		return theClass.getName();
+	}
+
+	/**
+	 * Return the source for the expression, boxed if it is a primitive value
+	 */
+	private static String box(final Class<?> theType, final String theExpr) {
+		if (!theType.isPrimitive()) {
+			return theExpr;
+		}
+
+		return wrapper(theType).getName() + ".valueOf(" + theExpr + ")";
+	}
+
+	/**
+	 * Return the source to convert the variable to the given type, unboxing if the type is a primitive.
+	 */
+	private static String unbox(final Class<?> theType, final String theVar) {
+		if (theType.isPrimitive()) {
+			return "((" + wrapper(theType).getName() + ") " + theVar + ")." + theType.getName() + "Value()";
+		}
+		else {
+			return "(" + typeName(theType) + ") " + theVar;
+		}
+	}
+
+	/**
+	 * Return the source which validates the type of the value before it is assigned, throwing an IllegalArgumentException
+	 * as reflection would.
+	 */
+	private static String checkType(final Class<?> theType) {
+		if (theType.isPrimitive()) {
+			return "if (!(theValue instanceof " + wrapper(theType).getName() + ")) { throw new IllegalArgumentException(); } ";
+		}
+		else if (Object.class.equals(theType)) {
+			return "";
+		}
+		else {
+			return "if (theValue != null && !(theValue instanceof " + typeName(theType) + ")) { throw new IllegalArgumentException(); } ";
+		}
+	}
+
+	private static Class<?> wrapper(final Class<?> thePrimitive) {
+		if (boolean.class.equals(thePrimitive)) {
+			return Boolean.class;
+		}
+		else if (int.class.equals(thePrimitive)) {
+			return Integer.class;
+		}
+		else if (long.class.equals(thePrimitive)) {
+			return Long.class;
+		}
+		else if (float.class.equals(thePrimitive)) {
+			return Float.class;
+		}
+		else if (double.class.equals(thePrimitive)) {
+			return Double.class;
+		}
+		else if (short.class.equals(thePrimitive)) {
+			return Short.class;
+		}
+		else if (byte.class.equals(thePrimitive)) {
+			return Byte.class;
+		}
+		else if (char.class.equals(thePrimitive)) {
+			return Character.class;
+		}
+		else {
+			throw new IllegalArgumentException("Not a primitive: " + thePrimitive);
+		}
+	}
+}
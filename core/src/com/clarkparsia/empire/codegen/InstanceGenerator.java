@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -66,6 +68,12 @@ public final class InstanceGenerator {
 
 	private static final Collection<Method> processedMethods = Sets.newHashSet();
 
+	/**
+	 * The classes which have already been generated, keyed by the interface (or abstract class) they were generated for.
+	 * Lets the common case of asking for an already generated class avoid the lock taken while generating bytecode.
+	 */
+	private static final ConcurrentMap<Class<?>, Class<?>> GENERATED = new ConcurrentHashMap<Class<?>, Class<?>>();
+
 	/**
 	 * No instances
 	 */
@@ -84,7 +92,27 @@ public final class InstanceGenerator {
 	 * @return New dynamically generated bytecode of a class that implements the given interface.
 	 * @throws Exception if there is an error while generating the bytecode of the new class.
 	 */
-	public synchronized static <T> Class<T> generateInstanceClass(Class<T> theInterface) throws Exception {
+	@SuppressWarnings("unchecked")
+	public static <T> Class<T> generateInstanceClass(Class<T> theInterface) throws Exception {
+		Class<T> aClass = (Class<T>) GENERATED.get(theInterface);
+
+		if (aClass == null) {
+			aClass = generate(theInterface);
+			GENERATED.putIfAbsent(theInterface, aClass);
+		}
+
+		return aClass;
+	}
+
+	/**
+	 * Generate (or load the previously generated) implementation of the given interface
+	 * @param theInterface the interface to build an instance of
+	 * @param <T> the type of the interface
+	 * @return the implementation of the interface
+	 * @throws Exception if there is an error while generating the bytecode of the new class.
+	 * @see #generateInstanceClass
+	 */
+	private synchronized static <T> Class<T> generate(Class<T> theInterface) throws Exception {
 		processedMethods.clear();
 
 		// TODO: can we use some sort of template language for this?
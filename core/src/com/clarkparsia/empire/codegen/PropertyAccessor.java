@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.codegen;
+
+/**
+ * <p>Reads and writes the value of a single property of a bean.  Implementations are generated by
+ * {@link AccessorGenerator} for a specific field or method so that the access is a direct, monomorphic call rather
+ * than a reflective one.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public interface PropertyAccessor {
+
+	/**
+	 * Return the value of the property
+	 * @param theObj the object to get the value from
+	 * @return the value, primitive values are boxed
+	 */
+	public Object get(Object theObj);
+
+	/**
+	 * Set the value of the property
+	 * @param theObj the object to set the value on
+	 * @param theValue the new value, boxed if the property is a primitive
+	 * @throws IllegalArgumentException if the value is not of the type of the property, or is null for a primitive property
+	 */
+	public void set(Object theObj, Object theValue);
+}
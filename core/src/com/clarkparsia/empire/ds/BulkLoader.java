@@ -0,0 +1,515 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.ds;
+
+import com.clarkparsia.empire.annotation.RdfGenerator;
+import com.clarkparsia.openrdf.Graphs;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.GraphImpl;
+
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Loads large amounts of data into a {@link MutableDataSource} without holding it all in memory.  The data, either
+ * an RDF document or a sequence of beans, is read, converted into statements and written by three stages, each on its
+ * own thread, connected by bounded queues of batches.  A stage which gets ahead of the next one waits for it, so no
+ * more than a few batches are in memory at any time, whatever the size of the input.</p>
+ *
+ * <p>Each batch is written on the calling thread, in its own transaction if the data source
+ * {@link SupportsTransactions supports them}.  If the load fails, the batches already written remain in the data
+ * source.</p>
+ *
+ * <p>Usage:<br/>
+ * <code><pre>
+ * BulkLoader aLoader = new BulkLoader(aSource);
+ * aLoader.setBatchSize(50000);
+ *
+ * BulkLoader.Result aResult = aLoader.load(new File("dump.nt.gz"));
+ * </pre></code>
+ * </p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class BulkLoader {
+
+	/**
+	 * The logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+	/**
+	 * The default number of statements, or beans, in a batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	/**
+	 * The default number of batches which can wait between two stages
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 4;
+
+	/**
+	 * Marks the end of the input in the queue of batches read
+	 */
+	private static final List<Object> END_OF_INPUT = new ArrayList<Object>();
+
+	/**
+	 * Marks the end of the input in the queue of converted batches
+	 */
+	private static final Graph END_OF_GRAPHS = new GraphImpl();
+
+	/**
+	 * The data source to load into
+	 */
+	private final MutableDataSource mSource;
+
+	/**
+	 * The number of statements, or beans, in a batch
+	 */
+	private int mBatchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * The number of batches which can wait between two stages
+	 */
+	private int mQueueSize = DEFAULT_QUEUE_SIZE;
+
+	/**
+	 * Create a new BulkLoader
+	 * @param theSource the data source to load into
+	 */
+	public BulkLoader(final MutableDataSource theSource) {
+		mSource = theSource;
+	}
+
+	/**
+	 * Set the number of statements, or beans, read and written at once
+	 * @param theBatchSize the batch size
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void setBatchSize(final int theBatchSize) {
+		if (theBatchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + theBatchSize);
+		}
+
+		mBatchSize = theBatchSize;
+	}
+
+	/**
+	 * Return the number of statements, or beans, read and written at once
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return mBatchSize;
+	}
+
+	/**
+	 * Set the number of batches which can be waiting between two stages before the earlier one waits
+	 * @param theQueueSize the queue size
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void setQueueSize(final int theQueueSize) {
+		if (theQueueSize < 1) {
+			throw new IllegalArgumentException("Invalid queue size: " + theQueueSize);
+		}
+
+		mQueueSize = theQueueSize;
+	}
+
+	/**
+	 * Return the number of batches which can be waiting between two stages
+	 * @return the queue size
+	 */
+	public int getQueueSize() {
+		return mQueueSize;
+	}
+
+	/**
+	 * Load an RDF file.  The format is determined from the name of the file, which can be gzipped, e.g.
+	 * <code>data.nt.gz</code>.
+	 * @param theFile the file
+	 * @return the result of the load
+	 * @throws IOException if the file cannot be read, or its format is not known
+	 * @throws DataSourceException if the file cannot be parsed, or there is an error writing to the data source
+	 */
+	public Result load(final File theFile) throws IOException, DataSourceException {
+		String aName = theFile.getName();
+
+		boolean isGzipped = aName.endsWith(".gz");
+
+		if (isGzipped) {
+			aName = aName.substring(0, aName.length() - ".gz".length());
+		}
+
+		RDFFormat aFormat = Rio.getParserFormatForFileName(aName);
+
+		if (aFormat == null) {
+			throw new IOException("Unknown RDF format: " + theFile);
+		}
+
+		InputStream aStream = new BufferedInputStream(new FileInputStream(theFile));
+
+		try {
+			if (isGzipped) {
+				aStream = new GZIPInputStream(aStream);
+			}
+
+			return load(aStream, aFormat, theFile.toURI().toString());
+		}
+		finally {
+			aStream.close();
+		}
+	}
+
+	/**
+	 * Load an RDF document.  The values of typed literals are not validated.
+	 * @param theStream the document, which is not closed
+	 * @param theFormat the format of the document
+	 * @param theBaseURI the base URI of the document
+	 * @return the result of the load
+	 * @throws DataSourceException if the document cannot be parsed, or there is an error writing to the data source
+	 */
+	public Result load(final InputStream theStream, final RDFFormat theFormat, final String theBaseURI) throws DataSourceException {
+		return run(new Reader<Statement>() {
+			public void read(final Batcher<Statement> theBatcher) throws Exception {
+				RDFParser aParser = Rio.createParser(theFormat);
+
+				// literals are loaded as they are, an invalid value should not stop a load part way through
+				aParser.setDatatypeHandling(RDFParser.DatatypeHandling.IGNORE);
+
+				aParser.setRDFHandler(new RDFHandlerBase() {
+					@Override
+					public void handleStatement(final Statement theStmt) throws RDFHandlerException {
+						try {
+							theBatcher.add(theStmt);
+						}
+						catch (InterruptedException e) {
+							throw new RDFHandlerException(e);
+						}
+					}
+				});
+
+				aParser.parse(theStream, theBaseURI);
+			}
+
+			public Graph convert(final List<Statement> theBatch) {
+				return new GraphImpl(theBatch);
+			}
+		});
+	}
+
+	/**
+	 * Load beans, as {@link RdfGenerator#asRdf serialized} by Empire.  Only the statements of the beans themselves are
+	 * written, related beans are not cascaded to, and no lifecycle callbacks are fired.
+	 * @param theObjects the beans
+	 * @return the result of the load
+	 * @throws DataSourceException if a bean cannot be serialized, or there is an error writing to the data source
+	 */
+	public Result loadObjects(final Iterator<?> theObjects) throws DataSourceException {
+		return run(new Reader<Object>() {
+			public void read(final Batcher<Object> theBatcher) throws Exception {
+				while (theObjects.hasNext()) {
+					theBatcher.add(theObjects.next());
+				}
+			}
+
+			public Graph convert(final List<Object> theBatch) throws Exception {
+				Graph aGraph = Graphs.newGraph();
+
+				for (Object aObj : theBatch) {
+					aGraph.addAll(RdfGenerator.asRdf(aObj));
+				}
+
+				return aGraph;
+			}
+		});
+	}
+
+	/**
+	 * Run the pipeline: the input is read, and converted, on two new threads while the batches are written on this one
+	 * @param theReader the reader of the input
+	 * @param <T> the type of the input
+	 * @return the result of the load
+	 * @throws DataSourceException if the input cannot be read or converted, or there is an error writing it
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Result run(final Reader<T> theReader) throws DataSourceException {
+		final BlockingQueue<List<T>> aRead = new ArrayBlockingQueue<List<T>>(mQueueSize);
+		final BlockingQueue<Graph> aConverted = new ArrayBlockingQueue<Graph>(mQueueSize);
+
+		final AtomicReference<Throwable> aError = new AtomicReference<Throwable>();
+
+		Thread aReadStage = new Thread("empire-bulk-read") {
+			@Override
+			public void run() {
+				try {
+					Batcher<T> aBatcher = new Batcher<T>(aRead);
+
+					theReader.read(aBatcher);
+
+					aBatcher.flush();
+				}
+				catch (Throwable e) {
+					aError.compareAndSet(null, e);
+				}
+				finally {
+					end(aRead, (List<T>) END_OF_INPUT);
+				}
+			}
+		};
+
+		Thread aConvertStage = new Thread("empire-bulk-convert") {
+			@Override
+			public void run() {
+				try {
+					List<T> aBatch;
+
+					while ((aBatch = aRead.take()) != END_OF_INPUT) {
+						aConverted.put(theReader.convert(aBatch));
+					}
+				}
+				catch (Throwable e) {
+					aError.compareAndSet(null, e);
+				}
+				finally {
+					end(aConverted, END_OF_GRAPHS);
+				}
+			}
+		};
+
+		aReadStage.setDaemon(true);
+		aConvertStage.setDaemon(true);
+
+		Result aResult = new Result();
+
+		aReadStage.start();
+		aConvertStage.start();
+
+		try {
+			Graph aGraph;
+
+			while ((aGraph = aConverted.take()) != END_OF_GRAPHS) {
+				write(aGraph);
+
+				aResult.written(aGraph.size());
+
+				LOGGER.debug("Wrote batch {}, {} statements/sec", aResult.getBatchCount(), aResult.getStatementsPerSecond());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new DataSourceException("Load interrupted", e);
+		}
+		finally {
+			// when the write fails, the other stages are stopped rather than left waiting on the queues
+			aReadStage.interrupt();
+			aConvertStage.interrupt();
+		}
+
+		if (aError.get() != null) {
+			throw new DataSourceException("Error while loading, " + aResult.getStatementCount() + " statements were written", aError.get());
+		}
+
+		LOGGER.info("Loaded {} statements in {} ms, {} statements/sec",
+					new Object[] { aResult.getStatementCount(), aResult.getElapsedTime(), aResult.getStatementsPerSecond() });
+
+		return aResult;
+	}
+
+	/**
+	 * Write a batch to the data source, in its own transaction when possible
+	 * @param theGraph the batch
+	 * @throws DataSourceException if there is an error writing
+	 */
+	private void write(final Graph theGraph) throws DataSourceException {
+		if (mSource instanceof SupportsTransactions) {
+			SupportsTransactions aTransactions = (SupportsTransactions) mSource;
+
+			aTransactions.begin();
+
+			try {
+				mSource.add(theGraph);
+
+				aTransactions.commit();
+			}
+			catch (DataSourceException e) {
+				try {
+					aTransactions.rollback();
+				}
+				catch (DataSourceException ex) {
+					// the error which failed the write is the one that is reported
+					LOGGER.error("Could not rollback the failed batch", ex);
+				}
+
+				throw e;
+			}
+		}
+		else {
+			mSource.add(theGraph);
+		}
+	}
+
+	/**
+	 * Put the end marker on a queue, unless the stage reading from it has been stopped
+	 * @param theQueue the queue
+	 * @param theEnd the end marker
+	 * @param <T> the type of the queue
+	 */
+	private static <T> void end(final BlockingQueue<T> theQueue, final T theEnd) {
+		try {
+			theQueue.put(theEnd);
+		}
+		catch (InterruptedException e) {
+			// the load was stopped, nothing is waiting for the marker
+		}
+	}
+
+	/**
+	 * The input of a load
+	 * @param <T> the type of the items of the input
+	 */
+	private interface Reader<T> {
+
+		/**
+		 * Read the input, passing each item to the batcher
+		 * @param theBatcher the batcher
+		 * @throws Exception if there is an error reading, or the load is stopped
+		 */
+		public void read(Batcher<T> theBatcher) throws Exception;
+
+		/**
+		 * Convert a batch of items to the statements to write
+		 * @param theBatch the batch
+		 * @return the statements
+		 * @throws Exception if an item cannot be converted
+		 */
+		public Graph convert(List<T> theBatch) throws Exception;
+	}
+
+	/**
+	 * Collects the items read into batches, which are put on the queue of the next stage when they are full
+	 * @param <T> the type of the items
+	 */
+	private final class Batcher<T> {
+		private final BlockingQueue<List<T>> mQueue;
+
+		private List<T> mBatch = new ArrayList<T>(mBatchSize);
+
+		private Batcher(final BlockingQueue<List<T>> theQueue) {
+			mQueue = theQueue;
+		}
+
+		/**
+		 * Add an item to the current batch
+		 * @param theItem the item
+		 * @throws InterruptedException if the load is stopped while waiting for room on the queue
+		 */
+		public void add(final T theItem) throws InterruptedException {
+			mBatch.add(theItem);
+
+			if (mBatch.size() >= mBatchSize) {
+				flush();
+			}
+		}
+
+		/**
+		 * Put the current batch on the queue, if it is not empty
+		 * @throws InterruptedException if the load is stopped while waiting for room on the queue
+		 */
+		public void flush() throws InterruptedException {
+			if (!mBatch.isEmpty()) {
+				mQueue.put(mBatch);
+
+				mBatch = new ArrayList<T>(mBatchSize);
+			}
+		}
+	}
+
+	/**
+	 * The progress, and once it is complete the result, of a load
+	 */
+	public static final class Result {
+
+		private final long mStart = System.currentTimeMillis();
+
+		private long mEnd = mStart;
+
+		private long mStatementCount = 0;
+
+		private int mBatchCount = 0;
+
+		private void written(final int theStatementCount) {
+			mStatementCount += theStatementCount;
+			mBatchCount++;
+			mEnd = System.currentTimeMillis();
+		}
+
+		/**
+		 * Return the number of statements written
+		 * @return the number of statements
+		 */
+		public long getStatementCount() {
+			return mStatementCount;
+		}
+
+		/**
+		 * Return the number of batches written
+		 * @return the number of batches
+		 */
+		public int getBatchCount() {
+			return mBatchCount;
+		}
+
+		/**
+		 * Return the time from the start of the load until the last batch was written
+		 * @return the elapsed time in milliseconds
+		 */
+		public long getElapsedTime() {
+			return mEnd - mStart;
+		}
+
+		/**
+		 * Return the throughput of the load
+		 * @return the number of statements written per second
+		 */
+		public long getStatementsPerSecond() {
+			return getElapsedTime() == 0 ? mStatementCount : mStatementCount * 1000 / getElapsedTime();
+		}
+	}
+}
@@ -23,6 +23,8 @@ import com.clarkparsia.empire.impl.serql.SerqlDialect;
 import com.clarkparsia.empire.impl.sparql.ARQSPARQLDialect;
 
 import com.clarkparsia.openrdf.Graphs;
+import com.clarkparsia.openrdf.util.AdunaIterations;
+import com.clarkparsia.openrdf.util.IterationIterator;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Sets;
 import com.google.common.base.Function;
@@ -31,22 +33,40 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Graph;
 import org.openrdf.model.Value;
 import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
 
 import org.openrdf.query.BindingSet;
 
+import info.aduna.iteration.CloseableIteration;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>Collection of utility methods for working with Empire DataSources</p>
  *
+ * <p>Lookups about a single resource, {@link #describe(DataSource, Object) describe}, {@link #exists exists},
+ * {@link #getValues getValues} and {@link #getType getType}, use the statement level access of data sources which
+ * are natively a {@link TripleSource}, rather than creating a query the database has to parse and plan.  Other data
+ * sources, such as SPARQL endpoints, are queried.</p>
+ *
  * @author	Michael Grove
  *
  * @since	0.7
- * @version	0.7.1
+ * @version	0.8
  *
  * @see DataSource
  * @see TripleSource
@@ -84,6 +104,88 @@ public final class DataSourceUtil {
 		}
 	}
 
+	/**
+	 * Return the data source as a {@link TripleSource} if it natively supports statement level access
+	 * @param theSource the data source
+	 * @return the TripleSource, or null if the source is not one, or implements the interface with queries
+	 */
+	private static TripleSource asNativeTripleSource(final DataSource theSource) {
+		if (theSource instanceof TripleSource && !(theSource instanceof TripleSourceAdapter)) {
+			return (TripleSource) theSource;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Return the statements with the subject from the TripleSource
+	 * @param theSource the source
+	 * @param theSubject the subject
+	 * @param thePredicate the predicate, or null for any predicate
+	 * @param theNamedGraph the named graph, or null for any graph
+	 * @return the statements, without their context, as in the result of a construct query
+	 * @throws QueryException if there is an error getting the statements
+	 */
+	private static Graph getStatements(final TripleSource theSource, final Resource theSubject,
+									   final org.openrdf.model.URI thePredicate, final String theNamedGraph) throws QueryException {
+		Graph aGraph = Graphs.newGraph();
+
+		// always iterate through all the statements, results of native stores are closed once they are exhausted
+		for (Statement aStmt : statements(theSource, theSubject, thePredicate, theNamedGraph)) {
+			aGraph.add(aStmt.getSubject(), aStmt.getPredicate(), aStmt.getObject());
+		}
+
+		return aGraph;
+	}
+
+	/**
+	 * Return whether or not there are any statements with the subject in the TripleSource.  Only the first statement is
+	 * read, so the statements of a subject with a large description are not all retrieved.
+	 * @param theSource the source
+	 * @param theSubject the subject
+	 * @param theNamedGraph the named graph, or null for any graph
+	 * @return true if there is at least one statement with the subject, false otherwise
+	 * @throws QueryException if there is an error getting the statements
+	 */
+	private static boolean hasStatements(final TripleSource theSource, final Resource theSubject, final String theNamedGraph) throws QueryException {
+		Iterator<Statement> aStmts = statements(theSource, theSubject, null, theNamedGraph).iterator();
+
+		try {
+			return aStmts.hasNext();
+		}
+		finally {
+			// the result is not exhausted, so it has to be closed explicitly
+			if (aStmts instanceof IterationIterator && ((IterationIterator<Statement>) aStmts).getIteration() instanceof CloseableIteration) {
+				AdunaIterations.closeQuietly((CloseableIteration<?, ?>) ((IterationIterator<Statement>) aStmts).getIteration());
+			}
+		}
+	}
+
+	/**
+	 * Return the statements with the subject from the TripleSource
+	 * @param theSource the source
+	 * @param theSubject the subject
+	 * @param thePredicate the predicate, or null for any predicate
+	 * @param theNamedGraph the named graph, or null for any graph
+	 * @return the statements, as returned by the TripleSource
+	 * @throws QueryException if there is an error getting the statements
+	 */
+	private static Iterable<Statement> statements(final TripleSource theSource, final Resource theSubject,
+												  final org.openrdf.model.URI thePredicate, final String theNamedGraph) throws QueryException {
+		try {
+			return theNamedGraph == null
+				   ? theSource.getStatements(theSubject, thePredicate, null)
+				   : theSource.getStatements(theSubject, thePredicate, null, ValueFactoryImpl.getInstance().createURI(theNamedGraph));
+		}
+		catch (QueryException e) {
+			throw e;
+		}
+		catch (DataSourceException e) {
+			throw new QueryException(e);
+		}
+	}
+
 	/**
 	 * Do a poor-man's describe on the given resource, querying its context if that is supported, or otherwise
 	 * querying the graph in general.
@@ -93,23 +195,33 @@ public final class DataSourceUtil {
 	 * @throws QueryException if there is an error while querying for the graph
 	 */
 	public static Graph describe(DataSource theSource, Object theObj) throws QueryException {
-		String aNG = null;
-
 		if (EmpireUtil.asSupportsRdfId(theObj).getRdfId() == null) {
 			return Graphs.newGraph();
 		}
 
-		if (theSource instanceof SupportsNamedGraphs && EmpireUtil.hasNamedGraphSpecified(theObj)) {
-			java.net.URI aURI = EmpireUtil.getNamedGraph(theObj);
+		java.net.URI aNamedGraph = null;
 
-			if (aURI != null) {
-				aNG = aURI.toString();
-			}
+		if (theSource instanceof SupportsNamedGraphs && EmpireUtil.hasNamedGraphSpecified(theObj)) {
+			aNamedGraph = EmpireUtil.getNamedGraph(theObj);
 		}
 
+		return describe(theSource, EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj)), aNamedGraph);
+	}
+
+	/**
+	 * Do a poor-man's describe on the given resource within the specified named graph.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theResource the resource to describe
+	 * @param theNamedGraph the named graph to query, or null to query the graph in general
+	 * @return all the statements about the given resource
+	 * @throws QueryException if there is an error while querying for the graph
+	 */
+	public static Graph describe(DataSource theSource, Resource theResource, java.net.URI theNamedGraph) throws QueryException {
+		String aNG = theNamedGraph == null ? null : theNamedGraph.toString();
+
 		Dialect aDialect = theSource.getQueryFactory().getDialect();
 
-		Resource aResource = EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj));
+		Resource aResource = theResource;
 
 		// bnode instabilty in queries will just yield either a parse error or incorrect query results because the bnode
 		// will get treated as a variable, and it will just grab the entire database, which is not what we want
@@ -117,16 +229,35 @@ public final class DataSourceUtil {
 			return Graphs.newGraph();
 		}
 
+		TripleSource aTripleSource = asNativeTripleSource(theSource);
+
+		if (aTripleSource != null) {
+			return getStatements(aTripleSource, aResource, null, aNG);
+		}
+
 		// TODO: if source supports describe queries, use that.
 
-		String aSPARQL = "construct {?s ?p ?o}\n" +
-						 (aNG == null ? "" : "from <" + aNG + ">\n") +
-						 "where {?s ?p ?o. filter(?s = " + aDialect.asQueryString(aResource) + ") }";
+		String aSubject = aDialect.asQueryString(aResource);
+
+		String aSPARQL;
 
+		if (aResource instanceof BNode) {
+			// a bnode in a triple pattern would be treated as a variable, so it's matched with a filter instead
+			aSPARQL = "construct {?s ?p ?o}\n" +
+					  (aNG == null ? "" : "from <" + aNG + ">\n") +
+					  "where {?s ?p ?o. filter(?s = " + aSubject + ") }";
+		}
+		else {
+			// the subject is bound in the pattern so the lookup can use the subject index rather than filtering a scan
+			// of every statement
+			aSPARQL = "construct {" + aSubject + " ?p ?o}\n" +
+					  (aNG == null ? "" : "from <" + aNG + ">\n") +
+					  "where {" + aSubject + " ?p ?o}";
+		}
 
-		String aSeRQL = "construct {s} p {o}\n" +
+		String aSeRQL = "construct {" + aSubject + "} p {o}\n" +
 						 (aNG == null ? "from\n" : "from context <" + aNG + ">\n") +
-						 "{s} p {o} where s = " + aDialect.asQueryString(aResource) + "";
+						 "{" + aSubject + "} p {o}";
 
 		Graph aGraph;
 
@@ -141,6 +272,154 @@ public final class DataSourceUtil {
 		return aGraph;
 	}
 
+	/**
+	 * Do a poor-man's describe on several resources at once, returning all the statements which have one of the
+	 * resources as their subject.  This is only done against the default graph of the data source, bnodes are not
+	 * included since their ids are not stable across queries.  Data sources which are natively a {@link TripleSource}
+	 * are asked for the statements of each resource, other data sources are sent a single query in which each
+	 * resource is bound as the subject of its own pattern, so the lookups can use the subject index rather than
+	 * filtering a scan of every statement.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theResources the resources to describe
+	 * @return all the statements about the given resources
+	 * @throws QueryException if there is an error while querying for the graph
+	 */
+	public static Graph describe(DataSource theSource, Collection<? extends Resource> theResources) throws QueryException {
+		return describe(theSource, theResources, null);
+	}
+
+	/**
+	 * Describe several resources at once, as {@link #describe(DataSource, Collection)}, within the named graph.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theResources the resources to describe
+	 * @param theNamedGraph the named graph to query, or null to query the graph in general
+	 * @return all the statements about the given resources
+	 * @throws QueryException if there is an error while querying for the graph
+	 */
+	public static Graph describe(DataSource theSource, Collection<? extends Resource> theResources, java.net.URI theNamedGraph) throws QueryException {
+		String aNG = theNamedGraph == null ? null : theNamedGraph.toString();
+
+		List<Resource> aResources = withoutBNodes(theResources);
+
+		if (aResources.isEmpty()) {
+			return Graphs.newGraph();
+		}
+
+		TripleSource aTripleSource = asNativeTripleSource(theSource);
+
+		if (aTripleSource != null) {
+			Graph aGraph = Graphs.newGraph();
+
+			for (Resource aResource : aResources) {
+				aGraph.addAll(getStatements(aTripleSource, aResource, null, aNG));
+			}
+
+			return aGraph;
+		}
+
+		Dialect aDialect = theSource.getQueryFactory().getDialect();
+
+		if (aDialect instanceof SerqlDialect) {
+			// a union of one describe per resource, each with the resource as the subject of its path expression
+			StringBuffer aSeRQL = new StringBuffer();
+
+			for (Resource aResource : aResources) {
+				String aSubject = aDialect.asQueryString(aResource);
+
+				if (aSeRQL.length() > 0) {
+					aSeRQL.append("\nunion\n");
+				}
+
+				aSeRQL.append("construct {").append(aSubject).append("} p {o}\n")
+					  .append(aNG == null ? "from\n" : "from context <" + aNG + ">\n")
+					  .append("{").append(aSubject).append("} p {o}");
+			}
+
+			return theSource.graphQuery(aSeRQL.toString());
+		}
+		else {
+			// fall back on sparql.  the resources are bound in the blocks of a union, each block has its own variables
+			// so a solution only completes the part of the template for the resource it matched
+			StringBuffer aTemplate = new StringBuffer();
+			StringBuffer aPattern = new StringBuffer();
+
+			for (int i = 0; i < aResources.size(); i++) {
+				String aTriple = aDialect.asQueryString(aResources.get(i)) + " ?p" + i + " ?o" + i;
+
+				if (i > 0) {
+					aTemplate.append(" . ");
+					aPattern.append(" union ");
+				}
+
+				aTemplate.append(aTriple);
+				aPattern.append("{").append(aTriple).append("}");
+			}
+
+			return theSource.graphQuery("construct {" + aTemplate + "}\n" +
+										(aNG == null ? "" : "from <" + aNG + ">\n") +
+										"where {" + aPattern + "}");
+		}
+	}
+
+	/**
+	 * Return the distinct resources which are not bnodes.  Bnodes are left out of queries about several resources at
+	 * once, in a pattern they would be treated as variables, and match the entire database.
+	 * @param theResources the resources
+	 * @return the resources, without the bnodes
+	 */
+	private static List<Resource> withoutBNodes(Collection<? extends Resource> theResources) {
+		Set<Resource> aResources = new LinkedHashSet<Resource>();
+
+		for (Resource aResource : theResources) {
+			if (!(aResource instanceof BNode)) {
+				aResources.add(aResource);
+			}
+		}
+
+		return new ArrayList<Resource>(aResources);
+	}
+
+	/**
+	 * Describe several resources at once, as {@link #describe(DataSource, Collection)}, returning the description of
+	 * each resource separately.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theResources the resources to describe
+	 * @return the statements about each resource, keyed by the resource.  Every resource, other than bnodes, has an
+	 * entry, which is empty if there are no statements about it.
+	 * @throws QueryException if there is an error while querying for the graph
+	 */
+	public static Map<Resource, Graph> describeEach(DataSource theSource, Collection<? extends Resource> theResources) throws QueryException {
+		return describeEach(theSource, theResources, null);
+	}
+
+	/**
+	 * Describe several resources at once, as {@link #describeEach(DataSource, Collection)}, within the named graph.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theResources the resources to describe
+	 * @param theNamedGraph the named graph to query, or null to query the graph in general
+	 * @return the statements about each resource, keyed by the resource
+	 * @throws QueryException if there is an error while querying for the graph
+	 */
+	public static Map<Resource, Graph> describeEach(DataSource theSource, Collection<? extends Resource> theResources, java.net.URI theNamedGraph) throws QueryException {
+		Map<Resource, Graph> aGraphs = new HashMap<Resource, Graph>();
+
+		for (Resource aResource : theResources) {
+			if (!(aResource instanceof BNode)) {
+				aGraphs.put(aResource, Graphs.newGraph());
+			}
+		}
+
+		for (Statement aStmt : describe(theSource, theResources, theNamedGraph)) {
+			Graph aGraph = aGraphs.get(aStmt.getSubject());
+
+			if (aGraph != null) {
+				aGraph.add(aStmt);
+			}
+		}
+
+		return aGraphs;
+	}
+
 	/**
 	 * Do a poor-man's ask on the given resource to see if any triples using the resource (as the subject) exist,
 	 * querying its context if that is supported, or otherwise querying the graph in general.
@@ -164,15 +443,40 @@ public final class DataSourceUtil {
 			}
 		}
 
+		Resource aResource = EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj));
+
+		TripleSource aTripleSource = asNativeTripleSource(theSource);
+
+		if (aTripleSource != null) {
+			return hasStatements(aTripleSource, aResource, aNG);
+		}
+
 		Dialect aDialect = theSource.getQueryFactory().getDialect();
 
-		String aSPARQL = "select distinct ?s\n" +
-						 (aNG == null ? "" : "from <" + aNG + ">\n") +
-						 "where {?s ?p ?o. filter(?s = " + aDialect.asQueryString(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj))) + ") } limit 1";
+		String aSubject = aDialect.asQueryString(aResource);
 
-		String aSeRQL = "select distinct s\n" +
-						 (aNG == null ? "from\n" : "from context <" + aNG + ">\n") +
-						 "{s} p {o} where s = " + aDialect.asQueryString(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj))) + " limit 1";
+		String aSPARQL;
+		String aSeRQL;
+
+		if (aResource instanceof BNode) {
+			// as with describe, a bnode in the pattern would be a variable, so it is matched with a filter
+			aSPARQL = "select distinct ?s\n" +
+					  (aNG == null ? "" : "from <" + aNG + ">\n") +
+					  "where {?s ?p ?o. filter(?s = " + aSubject + ") } limit 1";
+
+			aSeRQL = "select distinct s\n" +
+					 (aNG == null ? "from\n" : "from context <" + aNG + ">\n") +
+					 "{s} p {o} where s = " + aSubject + " limit 1";
+		}
+		else {
+			aSPARQL = "select ?p\n" +
+					  (aNG == null ? "" : "from <" + aNG + ">\n") +
+					  "where {" + aSubject + " ?p ?o} limit 1";
+
+			aSeRQL = "select p\n" +
+					 (aNG == null ? "from\n" : "from context <" + aNG + ">\n") +
+					 "{" + aSubject + "} p {o} limit 1";
+		}
 
 		ResultSet aResults;
 
@@ -192,6 +496,101 @@ public final class DataSourceUtil {
 		}
 	}
 
+	/**
+	 * Check which of several resources exist, i.e. are the subject of at least one statement.  Bnodes are not included
+	 * since their ids are not stable across queries.  Data sources which are natively a {@link TripleSource} are asked
+	 * for the first statement of each resource, other data sources are sent a single query in which each resource is
+	 * bound as the subject of its own pattern.
+	 * @param theSource the {@link com.clarkparsia.empire.ds.DataSource} to query
+	 * @param theNamedGraph the named graph to query, or null to query the default graph
+	 * @param theResources the resources to look for
+	 * @return the resources, other than bnodes, which exist in the data source
+	 * @throws QueryException if there is an error while querying
+	 */
+	public static Set<Resource> existing(DataSource theSource, java.net.URI theNamedGraph, Collection<? extends Resource> theResources) throws QueryException {
+		List<Resource> aResources = withoutBNodes(theResources);
+
+		Set<Resource> aExisting = new HashSet<Resource>();
+
+		if (aResources.isEmpty()) {
+			return aExisting;
+		}
+
+		String aNG = theNamedGraph == null || !(theSource instanceof SupportsNamedGraphs) ? null : theNamedGraph.toString();
+
+		TripleSource aTripleSource = asNativeTripleSource(theSource);
+
+		if (aTripleSource != null) {
+			for (Resource aResource : aResources) {
+				if (hasStatements(aTripleSource, aResource, aNG)) {
+					aExisting.add(aResource);
+				}
+			}
+
+			return aExisting;
+		}
+
+		Dialect aDialect = theSource.getQueryFactory().getDialect();
+
+		if (aDialect instanceof SerqlDialect) {
+			// a union of one query per resource, each of which constructs a single statement if the resource exists
+			StringBuffer aSeRQL = new StringBuffer();
+
+			for (Resource aResource : aResources) {
+				String aSubject = aDialect.asQueryString(aResource);
+
+				if (aSeRQL.length() > 0) {
+					aSeRQL.append("\nunion\n");
+				}
+
+				aSeRQL.append("construct distinct {").append(aSubject).append("} <").append(RDF.TYPE).append("> {<").append(RDFS.RESOURCE).append(">}\n")
+					  .append(aNG == null ? "from\n" : "from context <" + aNG + ">\n")
+					  .append("{").append(aSubject).append("} p {o}");
+			}
+
+			for (Statement aStmt : theSource.graphQuery(aSeRQL.toString())) {
+				aExisting.add(aStmt.getSubject());
+			}
+
+			return aExisting;
+		}
+
+		// fall back on sparql.  each resource is bound in its own block of the union, and a resource exists if the
+		// predicate variable of its block is bound in one of the results
+		StringBuffer aProjection = new StringBuffer();
+		StringBuffer aPattern = new StringBuffer();
+
+		for (int i = 0; i < aResources.size(); i++) {
+			if (i > 0) {
+				aPattern.append(" union ");
+			}
+
+			aProjection.append(" ?p").append(i);
+			aPattern.append("{").append(aDialect.asQueryString(aResources.get(i))).append(" ?p").append(i).append(" ?o").append(i).append("}");
+		}
+
+		ResultSet aResults = theSource.selectQuery("select distinct" + aProjection + "\n" +
+												   (aNG == null ? "" : "from <" + aNG + ">\n") +
+												   "where {" + aPattern + "}");
+
+		try {
+			while (aResults.hasNext()) {
+				BindingSet aBinding = aResults.next();
+
+				for (int i = 0; i < aResources.size(); i++) {
+					if (aBinding.getValue("p" + i) != null) {
+						aExisting.add(aResources.get(i));
+					}
+				}
+			}
+		}
+		finally {
+			aResults.close();
+		}
+
+		return aExisting;
+	}
+
 	/**
 	 * Return the type of the resource in the data source.
 	 * @param theSource the data source
@@ -228,6 +627,18 @@ public final class DataSourceUtil {
 	 * @throws com.clarkparsia.empire.ds.DataSourceException if there is an error while querying the data source.
 	 */
 	public static Collection<Value> getValues(final DataSource theSource, final Resource theSubject, final org.openrdf.model.URI thePredicate) throws DataSourceException {
+		TripleSource aTripleSource = asNativeTripleSource(theSource);
+
+		if (aTripleSource != null) {
+			Set<Value> aValues = new HashSet<Value>();
+
+			for (Statement aStmt : getStatements(aTripleSource, theSubject, thePredicate, null)) {
+				aValues.add(aStmt.getObject());
+			}
+
+			return aValues;
+		}
+
 		final String aSPARQLQuery = "select ?obj\n" +
 									"where {\n" +
 									theSource.getQueryFactory().getDialect().asQueryString(theSubject) + " <" + thePredicate.stringValue() + "> ?obj.  }";
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.ds;
+
+/**
+ * <p>Interface for a {@link MutableDataSource} which can execute <a href="http://www.w3.org/TR/sparql11-update/">SPARQL 1.1 Update</a>
+ * requests natively, such as <code>DELETE/INSERT ... WHERE</code>, rather than requiring the changes to be
+ * computed on the client and applied with {@link MutableDataSource#add} and {@link MutableDataSource#remove}.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ * @see com.clarkparsia.empire.impl.RdfQuery#executeUpdate
+ */
+public interface SupportsUpdates extends MutableDataSource {
+
+	/**
+	 * Execute the SPARQL update request
+	 * @param theUpdate the update request
+	 * @return the number of statements added and removed by the update, or -1 if the database cannot report it
+	 * @throws QueryException thrown if the update is not valid, or there is an error while executing it
+	 */
+	public int update(String theUpdate) throws QueryException;
+}
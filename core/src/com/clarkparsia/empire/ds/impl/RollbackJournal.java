@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.ds.impl;
+
+import com.clarkparsia.empire.ds.DataSourceException;
+import com.clarkparsia.empire.ds.MutableDataSource;
+
+import com.clarkparsia.openrdf.Graphs;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * <p>The undo journal of a {@link TransactionalDataSource}: the statements actually added and removed by each
+ * operation of the current transaction, so they can be reverted on rollback.  The journal is kept in memory until it
+ * holds more than a threshold number of statements, then it is moved to a temporary file, and every following
+ * operation is appended to the file.  Rollback reads the file back from the end, one operation at a time, so only a
+ * single operation is ever in memory.</p>
+ *
+ * <p>Each operation is written as a record followed by its length, which is what allows the file to be read in
+ * reverse.  Statements are encoded in binary, and within a record every value is written once, later occurrences,
+ * such as repeated subjects and predicates, refer back to it.  The file is kept open for the next transaction and is
+ * only truncated when a transaction ends.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+final class RollbackJournal {
+
+	private static final int TAG_URI = 1;
+	private static final int TAG_BNODE = 2;
+	private static final int TAG_LITERAL = 3;
+	private static final int TAG_LANG_LITERAL = 4;
+	private static final int TAG_TYPED_LITERAL = 5;
+
+	/**
+	 * Value reference denoting a missing value, ie. a statement without a context
+	 */
+	private static final int REF_NULL = 0;
+
+	/**
+	 * Value reference denoting a value which has not been written before in the record, it follows the reference
+	 */
+	private static final int REF_NEW = 1;
+
+	/**
+	 * The number of statements kept in memory before the journal is moved to a file, or a negative number to always
+	 * keep it in memory
+	 */
+	private final int mThreshold;
+
+	/**
+	 * The operations while the journal is in memory
+	 */
+	private final List<Operation> mOperations = new ArrayList<Operation>();
+
+	/**
+	 * The number of statements in {@link #mOperations}
+	 */
+	private int mSize;
+
+	/**
+	 * The journal file, or null if the journal has not been moved to a file
+	 */
+	private File mFile;
+
+	/**
+	 * The open journal file, or null if the journal has not been moved to a file
+	 */
+	private RandomAccessFile mRandomAccess;
+
+	/**
+	 * Whether or not the operations of the current transaction are in the file
+	 */
+	private boolean mSpilled;
+
+	/**
+	 * Create a new journal
+	 * @param theThreshold the number of statements to keep in memory before moving the journal to a file, or a
+	 * negative number to always keep it in memory
+	 */
+	RollbackJournal(final int theThreshold) {
+		mThreshold = theThreshold;
+	}
+
+	/**
+	 * Record an operation
+	 * @param theData the statements actually added or removed
+	 * @param theAdded true if the statements were added, false if they were removed
+	 * @throws DataSourceException if there is an error writing to the journal file
+	 */
+	public void add(final Graph theData, final boolean theAdded) throws DataSourceException {
+		if (theData.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (!mSpilled && mThreshold >= 0 && mSize + theData.size() > mThreshold) {
+				spill();
+			}
+
+			if (mSpilled) {
+				write(theData, theAdded);
+			}
+			else {
+				mOperations.add(new Operation(theData, theAdded));
+				mSize += theData.size();
+			}
+		}
+		catch (IOException e) {
+			throw new DataSourceException("Could not write to the transaction journal", e);
+		}
+	}
+
+	/**
+	 * Revert the recorded operations, starting from the last one and going backwards until the first one
+	 * @param theSource the data source to revert the operations on
+	 * @throws DataSourceException if there is an error reverting the operations, or reading the journal file
+	 */
+	public void undo(final MutableDataSource theSource) throws DataSourceException {
+		if (mSpilled) {
+			try {
+				long aPosition = mRandomAccess.length();
+
+				while (aPosition > 0) {
+					mRandomAccess.seek(aPosition - 4);
+					int aLength = mRandomAccess.readInt();
+
+					aPosition -= 4 + aLength;
+
+					byte[] aRecord = new byte[aLength];
+					mRandomAccess.seek(aPosition);
+					mRandomAccess.readFully(aRecord);
+
+					read(aRecord).undo(theSource);
+				}
+			}
+			catch (IOException e) {
+				throw new DataSourceException("Could not read the transaction journal", e);
+			}
+		}
+		else {
+			for (ListIterator<Operation> aIter = mOperations.listIterator(mOperations.size()); aIter.hasPrevious(); ) {
+				aIter.previous().undo(theSource);
+			}
+		}
+	}
+
+	/**
+	 * Discard the recorded operations.  The journal file, if there is one, is truncated and kept for the next
+	 * transaction.
+	 * @throws DataSourceException if the journal file cannot be truncated
+	 */
+	public void clear() throws DataSourceException {
+		mOperations.clear();
+		mSize = 0;
+
+		if (mSpilled) {
+			mSpilled = false;
+
+			try {
+				mRandomAccess.setLength(0);
+			}
+			catch (IOException e) {
+				close();
+
+				throw new DataSourceException("Could not truncate the transaction journal", e);
+			}
+		}
+	}
+
+	/**
+	 * Discard the recorded operations, and close and delete the journal file.  The journal can still be used
+	 * afterwards, a new file is created if required.
+	 */
+	public void close() {
+		mOperations.clear();
+		mSize = 0;
+		mSpilled = false;
+
+		if (mRandomAccess != null) {
+			try {
+				mRandomAccess.close();
+			}
+			catch (IOException e) {
+				// nothing we can do about it, we're done with the file anyway
+			}
+
+			mFile.delete();
+
+			mRandomAccess = null;
+			mFile = null;
+		}
+	}
+
+	/**
+	 * Move the operations in memory to the journal file, creating the file if required
+	 * @throws IOException if there is an error creating or writing to the file
+	 */
+	private void spill() throws IOException {
+		if (mRandomAccess == null) {
+			mFile = File.createTempFile("empire-journal", ".bin");
+			mFile.deleteOnExit();
+
+			mRandomAccess = new RandomAccessFile(mFile, "rw");
+		}
+
+		mRandomAccess.seek(mRandomAccess.length());
+
+		for (Operation aOp : mOperations) {
+			write(aOp.mData, aOp.mAdded);
+		}
+
+		mOperations.clear();
+		mSize = 0;
+
+		mSpilled = true;
+	}
+
+	/**
+	 * Append an operation to the end of the journal file
+	 * @param theData the statements of the operation
+	 * @param theAdded whether the statements were added or removed
+	 * @throws IOException if there is an error writing to the file
+	 */
+	private void write(final Graph theData, final boolean theAdded) throws IOException {
+		ByteArrayOutputStream aBytes = new ByteArrayOutputStream(64 * theData.size());
+		DataOutputStream aOut = new DataOutputStream(aBytes);
+
+		Map<Value, Integer> aRefs = new HashMap<Value, Integer>();
+
+		aOut.writeBoolean(theAdded);
+		writeInt(aOut, theData.size());
+
+		for (Statement aStmt : theData) {
+			writeValue(aOut, aStmt.getSubject(), aRefs);
+			writeValue(aOut, aStmt.getPredicate(), aRefs);
+			writeValue(aOut, aStmt.getObject(), aRefs);
+			writeValue(aOut, aStmt.getContext(), aRefs);
+		}
+
+		// the length goes after the record so the file can be read from the end
+		aOut.writeInt(aBytes.size());
+		aOut.flush();
+
+		mRandomAccess.write(aBytes.toByteArray());
+	}
+
+	private static void writeValue(final DataOutputStream theOut, final Value theValue, final Map<Value, Integer> theRefs) throws IOException {
+		if (theValue == null) {
+			writeInt(theOut, REF_NULL);
+			return;
+		}
+
+		Integer aRef = theRefs.get(theValue);
+
+		if (aRef != null) {
+			writeInt(theOut, aRef);
+			return;
+		}
+
+		writeInt(theOut, REF_NEW);
+
+		if (theValue instanceof URI) {
+			theOut.writeByte(TAG_URI);
+			writeString(theOut, theValue.stringValue());
+		}
+		else if (theValue instanceof BNode) {
+			theOut.writeByte(TAG_BNODE);
+			writeString(theOut, ((BNode) theValue).getID());
+		}
+		else {
+			Literal aLiteral = (Literal) theValue;
+
+			if (aLiteral.getLanguage() != null) {
+				theOut.writeByte(TAG_LANG_LITERAL);
+				writeString(theOut, aLiteral.getLabel());
+				writeString(theOut, aLiteral.getLanguage());
+			}
+			else if (aLiteral.getDatatype() != null) {
+				theOut.writeByte(TAG_TYPED_LITERAL);
+				writeString(theOut, aLiteral.getLabel());
+				writeValue(theOut, aLiteral.getDatatype(), theRefs);
+			}
+			else {
+				theOut.writeByte(TAG_LITERAL);
+				writeString(theOut, aLiteral.getLabel());
+			}
+		}
+
+		// references count from after the two reserved values
+		theRefs.put(theValue, theRefs.size() + 2);
+	}
+
+	/**
+	 * Read an operation written by {@link #write}
+	 * @param theRecord the record of the operation, without its length
+	 * @return the operation
+	 * @throws IOException if the record cannot be read
+	 */
+	private static Operation read(final byte[] theRecord) throws IOException {
+		DataInputStream aIn = new DataInputStream(new ByteArrayInputStream(theRecord));
+
+		ValueFactory aFactory = ValueFactoryImpl.getInstance();
+		List<Value> aValues = new ArrayList<Value>();
+
+		boolean aAdded = aIn.readBoolean();
+		int aCount = readInt(aIn);
+
+		Graph aGraph = Graphs.newGraph();
+
+		for (int i = 0; i < aCount; i++) {
+			Resource aSubject = (Resource) readValue(aIn, aValues, aFactory);
+			URI aPredicate = (URI) readValue(aIn, aValues, aFactory);
+			Value aObject = readValue(aIn, aValues, aFactory);
+			Resource aContext = (Resource) readValue(aIn, aValues, aFactory);
+
+			if (aContext == null) {
+				aGraph.add(aFactory.createStatement(aSubject, aPredicate, aObject));
+			}
+			else {
+				aGraph.add(aFactory.createStatement(aSubject, aPredicate, aObject, aContext));
+			}
+		}
+
+		return new Operation(aGraph, aAdded);
+	}
+
+	private static Value readValue(final DataInputStream theIn, final List<Value> theValues, final ValueFactory theFactory) throws IOException {
+		int aRef = readInt(theIn);
+
+		if (aRef == REF_NULL) {
+			return null;
+		}
+		else if (aRef != REF_NEW) {
+			return theValues.get(aRef - 2);
+		}
+
+		Value aValue;
+
+		int aTag = theIn.readByte();
+
+		switch (aTag) {
+			case TAG_URI:
+				aValue = theFactory.createURI(readString(theIn));
+				break;
+			case TAG_BNODE:
+				aValue = theFactory.createBNode(readString(theIn));
+				break;
+			case TAG_LITERAL:
+				aValue = theFactory.createLiteral(readString(theIn));
+				break;
+			case TAG_LANG_LITERAL:
+				String aLabel = readString(theIn);
+				aValue = theFactory.createLiteral(aLabel, readString(theIn));
+				break;
+			case TAG_TYPED_LITERAL:
+				String aTypedLabel = readString(theIn);
+				aValue = theFactory.createLiteral(aTypedLabel, (URI) readValue(theIn, theValues, theFactory));
+				break;
+			default:
+				throw new IOException("Invalid value in the transaction journal: " + aTag);
+		}
+
+		theValues.add(aValue);
+
+		return aValue;
+	}
+
+	/**
+	 * Write a non-negative int in as few bytes as possible, seven bits per byte
+	 */
+	private static void writeInt(final DataOutputStream theOut, int theValue) throws IOException {
+		while ((theValue & ~0x7F) != 0) {
+			theOut.writeByte((theValue & 0x7F) | 0x80);
+			theValue >>>= 7;
+		}
+
+		theOut.writeByte(theValue);
+	}
+
+	private static int readInt(final DataInputStream theIn) throws IOException {
+		int aValue = 0;
+
+		for (int aShift = 0; ; aShift += 7) {
+			int aByte = theIn.readUnsignedByte();
+
+			aValue |= (aByte & 0x7F) << aShift;
+
+			if ((aByte & 0x80) == 0) {
+				return aValue;
+			}
+		}
+	}
+
+	private static void writeString(final DataOutputStream theOut, final String theString) throws IOException {
+		byte[] aBytes = theString.getBytes("UTF-8");
+
+		writeInt(theOut, aBytes.length);
+		theOut.write(aBytes);
+	}
+
+	private static String readString(final DataInputStream theIn) throws IOException {
+		byte[] aBytes = new byte[readInt(theIn)];
+
+		theIn.readFully(aBytes);
+
+		return new String(aBytes, "UTF-8");
+	}
+
+	/**
+	 * An add or remove operation within a transaction
+	 */
+	private static final class Operation {
+		/**
+		 * The data that was actually added/removed.
+		 *
+		 * By "actually added" means triples that did not exist in the triple store before and
+		 * were added.
+		 *
+		 * By "actually removed" means triples that existed in the triple store and were removed
+		 *
+		 * The terms above are introduced because it is possible that the user attempts to add triples that were
+		 * already there before -- a rollback must not remove such triples. Similarly, a user can request removal
+		 * of triples that did not exist in the triple store -- a rollback must not add such triples.
+		 */
+		private final Graph mData;
+
+		/**
+		 * Information whether triples were added (true) or removed (false).
+		 */
+		private final boolean mAdded;
+
+		private Operation(final Graph theData, final boolean theAdded) {
+			mData = theData;
+			mAdded = theAdded;
+		}
+
+		/**
+		 * Revert the operation
+		 * @param theSource the data source the operation was applied to
+		 * @throws DataSourceException if there is an error reverting the operation
+		 */
+		public void undo(final MutableDataSource theSource) throws DataSourceException {
+			if (mAdded) {
+				theSource.remove(mData);
+			}
+			else {
+				theSource.add(mData);
+			}
+		}
+	}
+}
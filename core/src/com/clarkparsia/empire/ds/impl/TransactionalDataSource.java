@@ -16,24 +16,32 @@
 package com.clarkparsia.empire.ds.impl;
 
 import com.clarkparsia.openrdf.Graphs;
+import org.openrdf.model.BNode;
 import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 
 import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
+import com.clarkparsia.empire.ds.DataSourceUtil;
 import com.clarkparsia.empire.ds.QueryException;
 import com.clarkparsia.empire.ds.MutableDataSource;
 import com.clarkparsia.empire.ds.ResultSet;
 import com.clarkparsia.empire.ds.TripleSource;
+import com.clarkparsia.empire.EmpireOptions;
 import com.clarkparsia.empire.QueryFactory;
 import com.clarkparsia.empire.ds.SupportsTransactions;
+import com.clarkparsia.empire.ds.SupportsUpdates;
 import com.clarkparsia.openrdf.ExtGraph;
 
 import java.net.ConnectException;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * <p><b>Very</b> simple transactional support to put on top of a database that does not already support it.
@@ -41,11 +49,19 @@ import java.util.ListIterator;
  * try and undo the edits.  If the rollback fails, it very well could have failed for part of the rollback
  * and you are left with an inconsistent database.  For real transactional support, use a database that supports it.</p>
  *
+ * <p>The record of what was added and deleted is kept in memory, unless a transaction grows past
+ * {@link com.clarkparsia.empire.EmpireOptions#TRANSACTION_JOURNAL_THRESHOLD} statements, at which point it is moved to a
+ * temporary file.</p>
+ *
+ * <p>SPARQL updates are passed on to the underlying data source when it {@link SupportsUpdates supports them}, but only
+ * outside of a transaction.  There is no telling which statements an update changes, so they could not be undone on
+ * rollback.</p>
+ *
  * @author	Michael Grove
  * @since	0.1
- * @version 0.7
+ * @version 0.8
  */
-public class TransactionalDataSource implements DataSource, MutableDataSource, SupportsTransactions {
+public class TransactionalDataSource implements DataSource, MutableDataSource, SupportsTransactions, SupportsUpdates {
 
 	/**
 	 * The DataSource the operations will be applied to
@@ -59,7 +75,16 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	private TripleSource mTripleSource;
 
 
-	private List<TransactionOp> mTransactionOps;
+	/**
+	 * The maximum number of subjects described by a single query when looking for the statements of a graph which
+	 * already exist in a data source which is not a {@link TripleSource}
+	 */
+	private static final int QUERY_BATCH_SIZE = 100;
+
+	/**
+	 * What was added and removed during the current transaction
+	 */
+	private RollbackJournal mJournal;
 	
 	/**
 	 * Whether or not a transaction is currently active
@@ -79,7 +104,7 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 			mTripleSource = new TripleSourceAdapter(mDataSource);
 		}
 
-		mTransactionOps = new LinkedList<TransactionOp>();
+		mJournal = new RollbackJournal(EmpireOptions.TRANSACTION_JOURNAL_THRESHOLD);
 	}
 
 	/**
@@ -88,9 +113,9 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	public void begin() throws DataSourceException {
 		assertNotInTransaction();
 
-		mIsInTransaction = true;
+		mJournal.clear();
 
-		mTransactionOps.clear();
+		mIsInTransaction = true;
 	}
 
 	/**
@@ -101,7 +126,7 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 
 		mIsInTransaction = false;
 
-		mTransactionOps.clear();
+		mJournal.clear();
 	}
 
 	/**
@@ -110,19 +135,8 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	public void rollback() throws DataSourceException {
 		assertInTransaction();
 
-		try {			
-			// revert all operations starting from the last one and go backwards until the first one
-			for (ListIterator<TransactionOp> it = mTransactionOps.listIterator(mTransactionOps.size()); 
-				it.hasPrevious(); ) {
-				TransactionOp op = it.previous();
-				
-				if (op.isAdded()) {
-					mDataSource.remove(op.getData());
-				} 
-				else {
-					mDataSource.add(op.getData());
-				}
-			}
+		try {
+			mJournal.undo(mDataSource);
 		}
 		catch (DataSourceException e) {
 			throw new DataSourceException("Rollback failed, database is likely to be in an inconsistent state.", e);
@@ -130,7 +144,7 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 		finally {
 			mIsInTransaction = false;
 
-			mTransactionOps.clear();
+			mJournal.clear();
 		}
 	}
 
@@ -139,7 +153,7 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	 */
 	public void add(final Graph theGraph) throws DataSourceException {
 		if (isInTransaction()) {
-			mTransactionOps.add(new TransactionOp(nonExistingTriples(theGraph), true));
+			mJournal.add(nonExistingTriples(theGraph), true);
 		}
 		
 		mDataSource.add(theGraph);
@@ -150,12 +164,28 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	 */
 	public void remove(final Graph theGraph) throws DataSourceException {
 		if (isInTransaction()) {
-			mTransactionOps.add(new TransactionOp(existingTriples(theGraph), false));
+			mJournal.add(existingTriples(theGraph), false);
 		}
 		
 		mDataSource.remove(theGraph);
 	}
 
+	/**
+	 * @inheritDoc
+	 * @throws UnsupportedOperationException if the underlying data source does not {@link SupportsUpdates support updates}
+	 */
+	public int update(final String theUpdate) throws QueryException {
+		if (isInTransaction()) {
+			throw new QueryException("Cannot execute an update while in a transaction, it could not be rolled back");
+		}
+
+		if (!(mDataSource instanceof SupportsUpdates)) {
+			throw new UnsupportedOperationException("Update operations are not supported by the data source");
+		}
+
+		return ((SupportsUpdates) mDataSource).update(theUpdate);
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -174,6 +204,8 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	 * @inheritDoc
 	 */
 	public void disconnect() {
+		mJournal.close();
+
 		mDataSource.disconnect();
 	}
 
@@ -248,15 +280,13 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	 * @throws DataSourceException if querying the data source causes an error
 	 */
 	private Graph nonExistingTriples(Graph theData) throws DataSourceException {
+		Set<Statement> aExisting = findExisting(theData);
+
 		Graph aResult = Graphs.newGraph();
-		
-		// TODO: is there a more efficient way to check that than triple-by-triple? 
-		// (for remote data sources this will cause one request for triple ...)
-		for (Iterator<Statement> it = theData.iterator(); it.hasNext(); ) {
-			Statement statement = it.next();
-			
-			if (!existsInDataSource(statement)) {
-				aResult.add(statement);
+
+		for (Statement aStmt : theData) {
+			if (!aExisting.contains(aStmt)) {
+				aResult.add(aStmt);
 			}
 		}
 		
@@ -271,20 +301,116 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	 * @throws DataSourceException if querying the data source causes an error
 	 */
 	private Graph existingTriples(Graph theData) throws DataSourceException {
+		Set<Statement> aExisting = findExisting(theData);
+
 		Graph aResult = Graphs.newGraph();
 
-		// TODO: is there a more efficient way to check that than triple-by-triple? 
-		// (for remote data sources this will cause one request for triple ...)
-		for (Iterator<Statement> it = theData.iterator(); it.hasNext(); ) {
-			Statement statement = it.next();
-			
-			if (existsInDataSource(statement)) {
-				aResult.add(statement);
+		for (Statement aStmt : theData) {
+			if (aExisting.contains(aStmt)) {
+				aResult.add(aStmt);
 			}
 		}
-		
+
 		return aResult;
 	}
+
+	/**
+	 * Find the statements of the graph which exist in the data source.  Rather than checking the statements one at a
+	 * time, they are grouped by subject and context, and each group is checked with a single lookup of the statements
+	 * about its subject.  When the data source is not a {@link TripleSource}, so lookups are queries, the subjects of
+	 * each context are described {@link #QUERY_BATCH_SIZE} at a time with a single query for each batch, in which every
+	 * subject is bound in its own pattern.
+	 *
+	 * @param theData the statements to look for
+	 * @return the statements of the graph which exist in the data source, as they were found in the data source
+	 * @throws DataSourceException if querying the data source causes an error
+	 */
+	private Set<Statement> findExisting(Graph theData) throws DataSourceException {
+		// the statements keyed by context, then by subject.  a null context matches statements in any context
+		Map<Resource, Map<Resource, Set<Statement>>> aGroups = new HashMap<Resource, Map<Resource, Set<Statement>>>();
+
+		for (Statement aStmt : theData) {
+			Map<Resource, Set<Statement>> aSubjects = aGroups.get(aStmt.getContext());
+
+			if (aSubjects == null) {
+				aSubjects = new HashMap<Resource, Set<Statement>>();
+				aGroups.put(aStmt.getContext(), aSubjects);
+			}
+
+			Set<Statement> aStatements = aSubjects.get(aStmt.getSubject());
+
+			if (aStatements == null) {
+				aStatements = new HashSet<Statement>();
+				aSubjects.put(aStmt.getSubject(), aStatements);
+			}
+
+			aStatements.add(aStmt);
+		}
+
+		boolean isQueried = mTripleSource instanceof TripleSourceAdapter;
+
+		Set<Statement> aExisting = new HashSet<Statement>();
+
+		for (Map.Entry<Resource, Map<Resource, Set<Statement>>> aGroup : aGroups.entrySet()) {
+			Resource aContext = aGroup.getKey();
+
+			// a bnode context cannot be named in a query, it's looked up a subject at a time
+			boolean isBatched = isQueried && !(aContext instanceof BNode);
+			java.net.URI aNamedGraph = aContext == null ? null : java.net.URI.create(aContext.toString());
+
+			List<Resource> aBatch = new ArrayList<Resource>();
+
+			for (Map.Entry<Resource, Set<Statement>> aEntry : aGroup.getValue().entrySet()) {
+				Resource aSubject = aEntry.getKey();
+				Set<Statement> aStatements = aEntry.getValue();
+
+				if (isBatched && !(aSubject instanceof BNode)) {
+					aBatch.add(aSubject);
+
+					if (aBatch.size() == QUERY_BATCH_SIZE) {
+						retainExisting(DataSourceUtil.describe(mDataSource, aBatch, aNamedGraph), aGroup.getValue(), aExisting);
+						aBatch.clear();
+					}
+				}
+				else if (aStatements.size() == 1) {
+					// a single statement is cheaper to look for directly than by its subject
+					Statement aStmt = aStatements.iterator().next();
+
+					if (existsInDataSource(aStmt)) {
+						aExisting.add(aStmt);
+					}
+				}
+				else {
+					retainExisting(mTripleSource.getStatements(aSubject, null, null, aContext),
+								   Collections.singletonMap(aSubject, aStatements), aExisting);
+				}
+			}
+
+			if (!aBatch.isEmpty()) {
+				retainExisting(DataSourceUtil.describe(mDataSource, aBatch, aNamedGraph), aGroup.getValue(), aExisting);
+			}
+		}
+
+		return aExisting;
+	}
+
+	/**
+	 * Add the statements of the groups which are among the statements found in the data source to the existing statements
+	 *
+	 * @param theFound the statements found in the data source
+	 * @param theGroups the statements being looked for, keyed by subject
+	 * @param theExisting the statements found so far
+	 */
+	private static void retainExisting(Iterable<Statement> theFound, Map<Resource, Set<Statement>> theGroups, Set<Statement> theExisting) {
+		// iterate over everything that was found, a lazy result is only closed once it is exhausted
+		for (Statement aStmt : theFound) {
+			Set<Statement> aStatements = theGroups.get(aStmt.getSubject());
+
+			if (aStatements != null && aStatements.contains(aStmt)) {
+				theExisting.add(aStmt);
+			}
+		}
+	}
 	
 	/**
 	 * Checks whether the given statement exists in the data source.
@@ -296,53 +422,4 @@ public class TransactionalDataSource implements DataSource, MutableDataSource, S
 	private boolean existsInDataSource(Statement s) throws DataSourceException {	
 		return mTripleSource.getStatements(s.getSubject(), s.getPredicate(), s.getObject(), s.getContext()).iterator().hasNext();
 	}
-
-	/**
-	 * Holds information about an add/remove operation within transaction
-	 * 
-	 * @author Blazej Bulka <blazej@clarkparsia.com>
-	 */
-	private static class TransactionOp {
-		/**
-		 * The data that was actually added/removed.
-		 * 
-		 * By "actually added" means triples that did not exist in the triple store before and 
-		 * were added.
-		 * 
-		 * By "actually removed" means triples that existed in the triple store and were removed
-		 * 
-		 * The terms above are introduced because it is possible that the user attempts to add triples that were
-		 * already there before -- a rollback must not remove such triples. Similarly, a user can request removal
-		 * of triples that did not exist in the triple store -- a rollback must not add such triples.
-		 */
-		private Graph mData;
-		
-		/**
-		 * Information whether triples were added (true) or removed (false).
-		 */
-		private boolean mAdded;
-		
-		TransactionOp(Graph theData, boolean theAdded) {
-			this.mData = theData;
-			this.mAdded = theAdded;
-		}
-		
-		/**
-		 * Gets the data involved in the operation
-		 * 
-		 * @return graph containing the data that was actually added/deleted
-		 */
-		public Graph getData() {
-			return mData;
-		}
-		
-		/**
-		 * Gets the flag whether the data was added/deleted
-		 * 
-		 * @return true if the data was added, false if it was deleted
-		 */
-		public boolean isAdded() {
-			return mAdded;
-		}		
-	}
 }
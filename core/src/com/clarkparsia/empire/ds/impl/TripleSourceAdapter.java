@@ -18,6 +18,7 @@ package com.clarkparsia.empire.ds.impl;
 import com.clarkparsia.empire.ds.TripleSource;
 import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
+import org.openrdf.model.BNode;
 import org.openrdf.model.Statement;
 import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
@@ -32,7 +33,7 @@ import javax.persistence.Query;
  * @author Pedro Oliveira
  * @author Michael Grove
  * @since 0.7
- * @version 0.7
+ * @version 0.8
  */
 public class TripleSourceAdapter extends DelegatingDataSource implements TripleSource {
 	private static final String SUBJECT_FILTER = "FILTER (?s = ??ss)";
@@ -49,36 +50,7 @@ public class TripleSourceAdapter extends DelegatingDataSource implements TripleS
 	 * @inheritDoc
 	 */
 	public Iterable<Statement> getStatements(Resource theSubject, URI thePredicate, Value theObject) throws DataSourceException {
-		// Subject and object restrictions are implemented as filters, because some implementations can have problems
-		// dealing with bnodes
-
-		String aFilter = "";
-		
-		if (theSubject != null && theObject != null) {
-			aFilter = SUBJECT_OBJECT_FILTER;
-		}
-		else if (theSubject != null) {
-			aFilter = SUBJECT_FILTER;
-		}
-		else if (theObject != null) {
-			aFilter = OBJECT_FILTER;
-		}
-
-		Query aQuery = getQueryFactory().createQuery("construct {?s ??p ?o} where { ?s ??p ?o . " + aFilter + " }");
-
-		if (theSubject != null) {
-			aQuery.setParameter("ss", theSubject);
-		}
-
-		if (thePredicate != null) {
-			aQuery.setParameter("p", thePredicate);
-		}
-
-		if (theObject != null) {
-			aQuery.setParameter("oo", theObject);
-		}
-
-		return (Graph) aQuery.getSingleResult();
+		return (Graph) createQuery("construct {??s ??p ??o} where { ??s ??p ??o . %s }", theSubject, thePredicate, theObject).getSingleResult();
 	}
 	
 	/**
@@ -89,26 +61,45 @@ public class TripleSourceAdapter extends DelegatingDataSource implements TripleS
 			// if context is null, this means any context should match -- we can forward request to getStatements() without context
 			return getStatements(theSubject, thePredicate, theObject);
 		}
-		// Subject and object restrictions are implemented as filters, because some implementations can have problems
-		// dealing with bnodes
+
+		// query will work only if the context is set
+		Query aQuery = createQuery("construct {??s ??p ??o} where { graph ??g { ??s ??p ??o . %s} }", theSubject, thePredicate, theObject);
+
+		aQuery.setParameter("g", theContext);
+
+		return (Graph) aQuery.getSingleResult();
+	}
+
+	/**
+	 * Create the query for the statements matching the pattern.  Subjects and objects are bound in the triple pattern,
+	 * so the lookup can use the indexes of the data source, other than bnodes, which some implementations would treat
+	 * as variables in a pattern; those are restricted with a filter instead.
+	 * @param theQuery the query, with a %s where the filter goes
+	 * @param theSubject the subject, or null for any
+	 * @param thePredicate the predicate, or null for any
+	 * @param theObject the object, or null for any
+	 * @return the query
+	 */
+	private Query createQuery(String theQuery, Resource theSubject, URI thePredicate, Value theObject) {
+		boolean aFilterSubject = theSubject instanceof BNode;
+		boolean aFilterObject = theObject instanceof BNode;
 
 		String aFilter = "";
-		
-		if (theSubject != null && theObject != null) {
+
+		if (aFilterSubject && aFilterObject) {
 			aFilter = SUBJECT_OBJECT_FILTER;
 		}
-		else if (theSubject != null) {
+		else if (aFilterSubject) {
 			aFilter = SUBJECT_FILTER;
 		}
-		else if (theObject != null) {
+		else if (aFilterObject) {
 			aFilter = OBJECT_FILTER;
 		}
 
-		// query will work only if the context is set
-		Query aQuery = getQueryFactory().createQuery("construct {?s ??p ?o} where { graph ??g { ?s ??p ?o . " + aFilter + "} }");
+		Query aQuery = getQueryFactory().createQuery(String.format(theQuery, aFilter));
 
 		if (theSubject != null) {
-			aQuery.setParameter("ss", theSubject);
+			aQuery.setParameter(aFilterSubject ? "ss" : "s", theSubject);
 		}
 
 		if (thePredicate != null) {
@@ -116,12 +107,9 @@ public class TripleSourceAdapter extends DelegatingDataSource implements TripleS
 		}
 
 		if (theObject != null) {
-			aQuery.setParameter("oo", theObject);
+			aQuery.setParameter(aFilterObject ? "oo" : "o", theObject);
 		}
-		
-		aQuery.setParameter("g", theContext);
 
-		return (Graph) aQuery.getSingleResult();
+		return aQuery;
 	}
-
 }
@@ -82,11 +82,14 @@ public final class DataSourceEntityTransaction implements EntityTransaction {
 
 		try {
 			mDataSource.commit();
-			mIsActive = false;
 		}
 		catch (DataSourceException e) {
+			// the data source ends the transaction whether or not the commit succeeds
 			throw new RollbackException(e);
 		}
+		finally {
+			mIsActive = false;
+		}
 	}
 
 	/**
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.impl;
+
+import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.annotation.Cacheable;
+import com.clarkparsia.empire.util.BeanReflectUtil;
+import com.clarkparsia.openrdf.Graphs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import org.openrdf.model.Graph;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Second level cache of entity state shared by the EntityManagers created by an {@link EntityManagerFactoryImpl}.
+ * The cache holds the statements each entity was loaded from, keyed by its identifier and the named graph it was
+ * read from, so an entity can be created again without querying the database.  Entries are invalidated when the entity is persisted, merged or removed
+ * through any EntityManager of the factory.  Only instances of {@link Cacheable} classes are cached.</p>
+ *
+ * <p>The cache is bounded either by the number of entities it holds, or by the total number of statements, with the
+ * least recently used entries evicted first.  Entries can also be given a time to live, for databases which are
+ * changed by other applications.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class EntityCache {
+
+	/**
+	 * The cached statements for each entity, by the named graph they were read from, null for the default graph.
+	 * Neither the maps nor the graphs in the cache are ever modified, they are replaced and copies are handed out.
+	 */
+	private final Cache<SupportsRdfId.RdfKey, Map<URI, Graph>> mCache;
+
+	/**
+	 * The number of lookups of an entity in a named graph which were found in the cache.  Counted here since the
+	 * cache itself only knows whether the entity was found, not whether it was found for the named graph.
+	 */
+	private final AtomicLong mHits = new AtomicLong();
+
+	/**
+	 * The number of lookups of an entity in a named graph which were not found in the cache
+	 */
+	private final AtomicLong mMisses = new AtomicLong();
+
+	private EntityCache(final Cache<SupportsRdfId.RdfKey, Map<URI, Graph>> theCache) {
+		mCache = theCache;
+	}
+
+	/**
+	 * Create a cache which holds up to the given number of entities
+	 * @param theMaxSize the maximum number of entities
+	 * @param theTimeToLive the time, in seconds, an entry is kept after it is loaded; 0 to keep it until it is evicted
+	 * @return the new cache
+	 */
+	public static EntityCache ofSize(final long theMaxSize, final long theTimeToLive) {
+		return new EntityCache(builder(theTimeToLive).maximumSize(theMaxSize).<SupportsRdfId.RdfKey, Map<URI, Graph>>build());
+	}
+
+	/**
+	 * Create a cache which holds up to the given number of statements
+	 * @param theMaxStatements the maximum total number of statements of the cached entities
+	 * @param theTimeToLive the time, in seconds, an entry is kept after it is loaded; 0 to keep it until it is evicted
+	 * @return the new cache
+	 */
+	public static EntityCache ofWeight(final long theMaxStatements, final long theTimeToLive) {
+		return new EntityCache(builder(theTimeToLive).maximumWeight(theMaxStatements)
+									   .weigher(new Weigher<SupportsRdfId.RdfKey, Map<URI, Graph>>() {
+										   public int weigh(final SupportsRdfId.RdfKey theKey, final Map<URI, Graph> theGraphs) {
+											   int aSize = 0;
+
+											   for (Graph aGraph : theGraphs.values()) {
+												   aSize += aGraph.size();
+											   }
+
+											   return aSize;
+										   }
+									   })
+									   .build());
+	}
+
+	private static CacheBuilder<Object, Object> builder(final long theTimeToLive) {
+		CacheBuilder<Object, Object> aBuilder = CacheBuilder.newBuilder().recordStats();
+
+		if (theTimeToLive > 0) {
+			aBuilder.expireAfterWrite(theTimeToLive, TimeUnit.SECONDS);
+		}
+
+		return aBuilder;
+	}
+
+	/**
+	 * Return whether or not instances of the class can be cached
+	 * @param theClass the class
+	 * @return true if the class, or the nearest class or interface it inherits from which has the annotation, is
+	 * {@link Cacheable}
+	 */
+	public static boolean isCacheable(final Class<?> theClass) {
+		Cacheable aCacheable = BeanReflectUtil.getAnnotation(theClass, Cacheable.class);
+
+		return aCacheable != null && aCacheable.value();
+	}
+
+	/**
+	 * Return the statements the entity was loaded from
+	 * @param theKey the key of the entity
+	 * @param theNamedGraph the named graph the entity is read from, or null for the default graph
+	 * @return a copy of the cached statements, or null if the entity is not cached for the named graph
+	 */
+	public Graph get(final SupportsRdfId.RdfKey theKey, final URI theNamedGraph) {
+		Map<URI, Graph> aGraphs = mCache.asMap().get(theKey);
+
+		Graph aGraph = aGraphs == null ? null : aGraphs.get(theNamedGraph);
+
+		if (aGraph == null) {
+			mMisses.incrementAndGet();
+
+			return null;
+		}
+		else {
+			mHits.incrementAndGet();
+
+			return Graphs.newGraph(aGraph);
+		}
+	}
+
+	/**
+	 * Cache the statements an entity was loaded from
+	 * @param theKey the key of the entity
+	 * @param theNamedGraph the named graph the statements were read from, or null for the default graph
+	 * @param theGraph the statements
+	 */
+	public void put(final SupportsRdfId.RdfKey theKey, final URI theNamedGraph, final Graph theGraph) {
+		Map<URI, Graph> aGraphs = mCache.asMap().get(theKey);
+
+		if (aGraphs == null) {
+			aGraphs = Collections.<URI, Graph>singletonMap(theNamedGraph, Graphs.newGraph(theGraph));
+		}
+		else {
+			aGraphs = new HashMap<URI, Graph>(aGraphs);
+			aGraphs.put(theNamedGraph, Graphs.newGraph(theGraph));
+		}
+
+		mCache.put(theKey, aGraphs);
+	}
+
+	/**
+	 * Remove an entity, in all of the named graphs it was read from, from the cache
+	 * @param theKey the key of the entity
+	 */
+	public void invalidate(final SupportsRdfId.RdfKey theKey) {
+		mCache.invalidate(theKey);
+	}
+
+	/**
+	 * Remove all the entities from the cache
+	 */
+	public void invalidateAll() {
+		mCache.invalidateAll();
+	}
+
+	/**
+	 * Return the number of entities in the cache
+	 * @return the size of the cache
+	 */
+	public long size() {
+		return mCache.size();
+	}
+
+	/**
+	 * Return the hit, miss and eviction counts of the cache
+	 * @return the cache statistics
+	 */
+	public CacheStats getStats() {
+		CacheStats aStats = mCache.stats();
+
+		return new CacheStats(mHits.get(), mMisses.get(), aStats.loadSuccessCount(), aStats.loadExceptionCount(),
+							  aStats.totalLoadTime(), aStats.evictionCount());
+	}
+}
@@ -21,6 +21,7 @@ import com.clarkparsia.empire.ds.DataSourceFactory;
 import com.clarkparsia.empire.ds.DataSourceException;
 import com.clarkparsia.empire.ds.SupportsTransactions;
 import com.clarkparsia.empire.ds.impl.TransactionalDataSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityManager;
@@ -29,6 +30,8 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.net.ConnectException;
 
 /**
@@ -38,11 +41,39 @@ import java.net.ConnectException;
  *
  * @author Michael Grove
  * @since 0.1
- * @version 0.7
+ * @version 0.8
  */
 public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 
 	public static final String USE_EMPIRE_TRANSACTIONS = "use.empire.transactions";
+
+	/**
+	 * Configuration parameter for the maximum number of entities in the {@link EntityCache second level cache}.  The
+	 * cache is only used when this or {@link #CACHE_MAX_STATEMENTS} is specified.
+	 */
+	public static final String CACHE_MAX_SIZE = "cache.max.size";
+
+	/**
+	 * Configuration parameter for the maximum number of statements in the {@link EntityCache second level cache}
+	 */
+	public static final String CACHE_MAX_STATEMENTS = "cache.max.statements";
+
+	/**
+	 * Configuration parameter for the number of seconds an entity is kept in the {@link EntityCache second level cache}
+	 */
+	public static final String CACHE_TTL = "cache.ttl";
+
+	/**
+	 * Configuration parameter for whether or not EntityManagers check that their writes were made, see
+	 * {@link EntityManagerImpl#setVerifyWrites}.  Disabled by default.
+	 */
+	public static final String VERIFY_WRITES = "verify.writes";
+
+	/**
+	 * Configuration parameter for the number of objects EntityManagers write at once in
+	 * {@link EntityManagerImpl#persistAll} and {@link EntityManagerImpl#mergeAll}
+	 */
+	public static final String WRITE_BATCH_SIZE = "write.batch.size";
 	
 	/**
 	 * Factory for creating the DataSources backed by EntityManagers from this factory.
@@ -64,6 +95,17 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 	 */
 	private Map<String, ?> mConfig;
 
+	/**
+	 * The cache shared by the EntityManagers of this factory, or null if caching is not enabled
+	 */
+	private final EntityCache mCache;
+
+	/**
+	 * The threads the EntityManagers of this factory serialize batches of objects with, created with the first
+	 * EntityManager and shut down when the factory is closed
+	 */
+	private ExecutorService mSerializers;
+
 	/**
 	 * Create a new AbstractEntityManagerFactory
      * @param theProvider the DataSourceFactory to use with this
@@ -82,6 +124,26 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
         mDataSourceFactoryProvider = theProvider;
 		
 		mConfig = theConfig;
+
+		long aTimeToLive = mConfig.containsKey(CACHE_TTL) ? Long.parseLong(mConfig.get(CACHE_TTL).toString()) : 0;
+
+		if (mConfig.containsKey(CACHE_MAX_SIZE)) {
+			mCache = EntityCache.ofSize(Long.parseLong(mConfig.get(CACHE_MAX_SIZE).toString()), aTimeToLive);
+		}
+		else if (mConfig.containsKey(CACHE_MAX_STATEMENTS)) {
+			mCache = EntityCache.ofWeight(Long.parseLong(mConfig.get(CACHE_MAX_STATEMENTS).toString()), aTimeToLive);
+		}
+		else {
+			mCache = null;
+		}
+	}
+
+	/**
+	 * Return the second level cache shared by the EntityManagers created by this factory
+	 * @return the cache, or null if caching is not enabled
+	 */
+	public EntityCache getCache() {
+		return mCache;
 	}
 
 	/**
@@ -109,7 +171,16 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 			
 			aSource.connect();
 
-			return new EntityManagerImpl( (MutableDataSource) aSource);
+			EntityManagerImpl aManager = new EntityManagerImpl( (MutableDataSource) aSource, mCache);
+
+			aManager.setVerifyWrites(isVerifyWrites());
+			aManager.setSerializers(serializers());
+
+			if (mConfig.containsKey(WRITE_BATCH_SIZE)) {
+				aManager.setWriteBatchSize(Integer.parseInt(mConfig.get(WRITE_BATCH_SIZE).toString()));
+			}
+
+			return aManager;
 		}
 		catch (ConnectException e) {
 			throw new IllegalStateException("Could not connect to the data source", e);
@@ -119,10 +190,28 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 		}
 	}
 	
+	/**
+	 * Return the threads shared by the EntityManagers of this factory to serialize batches of objects in parallel
+	 * @return the serializers
+	 */
+	private ExecutorService serializers() {
+		if (mSerializers == null) {
+			mSerializers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+														new ThreadFactoryBuilder().setDaemon(true)
+																.setNameFormat("empire-serializer-%d").build());
+		}
+
+		return mSerializers;
+	}
+
 	private boolean isUseEmpireTransactions() {
 		return mConfig.containsKey(USE_EMPIRE_TRANSACTIONS) && Boolean.parseBoolean(mConfig.get(USE_EMPIRE_TRANSACTIONS).toString());
 	}
 
+	private boolean isVerifyWrites() {
+		return mConfig.containsKey(VERIFY_WRITES) && Boolean.parseBoolean(mConfig.get(VERIFY_WRITES).toString());
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -161,7 +250,7 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 
 	/**
 	 * Free up all resources used by this EntityManagerFactory.  This includes closing all EntityManager's created
-	 * by this factory.
+	 * by this factory, and the threads they serialize objects with.
 	 */
 	protected void cleanup() {
 		for (EntityManager aManager : mManagers) {
@@ -169,6 +258,11 @@ public final class EntityManagerFactoryImpl implements EntityManagerFactory {
 				aManager.close();
 			}
 		}
+
+		if (mSerializers != null) {
+			mSerializers.shutdown();
+			mSerializers = null;
+		}
 	}
 
 	/**
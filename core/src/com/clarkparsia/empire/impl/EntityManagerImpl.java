@@ -23,8 +23,8 @@ import com.clarkparsia.empire.ds.SupportsTransactions;
 import com.clarkparsia.empire.ds.DataSourceUtil;
 import com.clarkparsia.empire.ds.QueryException;
 import com.clarkparsia.empire.ds.impl.TransactionalDataSource;
-import com.clarkparsia.empire.Empire;
 import com.clarkparsia.empire.EmpireException;
+import com.clarkparsia.empire.EmpireEntityManager;
 import com.clarkparsia.empire.EmpireGenerated;
 import com.clarkparsia.empire.EmpireOptions;
 
@@ -32,12 +32,18 @@ import com.clarkparsia.empire.annotation.InvalidRdfException;
 import com.clarkparsia.empire.annotation.RdfGenerator;
 import com.clarkparsia.empire.annotation.RdfsClass;
 import com.clarkparsia.empire.annotation.AnnotationChecker;
+import com.clarkparsia.empire.annotation.EntityMapping;
 
 import com.clarkparsia.openrdf.Graphs;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.openrdf.model.BNode;
 import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.impl.GraphImpl;
 
 import javax.persistence.EntityExistsException;
@@ -51,7 +57,6 @@ import javax.persistence.Query;
 
 import javax.persistence.Entity;
 import javax.persistence.PrePersist;
-import javax.persistence.EntityListeners;
 import javax.persistence.PostPersist;
 import javax.persistence.PostRemove;
 import javax.persistence.PostUpdate;
@@ -62,25 +67,26 @@ import javax.persistence.PreUpdate;
 import java.lang.annotation.Annotation;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.AccessibleObject;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Collections;
-import java.util.WeakHashMap;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import java.net.URI;
 
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedFields;
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedGetters;
-import static com.clarkparsia.empire.util.BeanReflectUtil.asSetter;
-import static com.clarkparsia.empire.util.BeanReflectUtil.safeGet;
 import static com.clarkparsia.empire.util.BeanReflectUtil.safeSet;
 import static com.clarkparsia.empire.util.BeanReflectUtil.hasAnnotation;
-import static com.clarkparsia.empire.util.BeanReflectUtil.getAnnotatedMethods;
 
 import com.clarkparsia.empire.util.EmpireUtil;
 import com.clarkparsia.empire.util.BeanReflectUtil;
@@ -95,17 +101,22 @@ import org.slf4j.LoggerFactory;
  *
  * @author	Michael Grove
  * @since	0.1
- * @version	0.7
+ * @version	0.8
  *
  * @see EntityManager
  * @see com.clarkparsia.empire.ds.DataSource
  */
-public final class EntityManagerImpl implements EntityManager {
+public final class EntityManagerImpl implements EmpireEntityManager {
 	/**
 	 * The logger
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(EntityManagerImpl.class.getName());
 
+	/**
+	 * The default number of objects written at once by {@link #persistAll} and {@link #mergeAll}
+	 */
+	public static final int DEFAULT_WRITE_BATCH_SIZE = 500;
+
 	/**
 	 * Whether or not this EntityManagerImpl is open
 	 */
@@ -122,9 +133,10 @@ public final class EntityManagerImpl implements EntityManager {
 	private EntityTransaction mTransaction;
 
 	/**
-	 * The Entity Listeners for our managed entities.
+	 * The persistence context: the instances managed by this EntityManager, keyed by their identifiers.  Entities which
+	 * are found, persisted or merged are managed until they are removed, or the EntityManager is cleared or closed.
 	 */
-	private Map<Object, Collection<Object>> mManagedEntityListeners = new WeakHashMap<Object, Collection<Object>>();
+	private final Map<SupportsRdfId.RdfKey, Object> mManaged = new HashMap<SupportsRdfId.RdfKey, Object>();
 
 	/**
 	 * The current collapsed view of a DataSourceOperation which is a merged set of adds & removes to the DataSource.
@@ -132,16 +144,82 @@ public final class EntityManagerImpl implements EntityManager {
 	 */
 	private DataSourceOperation mOp;
 
+	/**
+	 * The flush mode.  When it is {@link FlushModeType#COMMIT}, changes are collected in {@link #mPending} rather than
+	 * written as they are made
+	 */
+	private FlushModeType mFlushMode = FlushModeType.AUTO;
+
+	/**
+	 * The changes waiting for the next flush in {@link FlushModeType#COMMIT} mode, or null if there are none
+	 */
+	private DataSourceOperation mPending;
+
+	/**
+	 * The keys of the entities changed by {@link #mPending}
+	 */
+	private final Set<SupportsRdfId.RdfKey> mPendingWrites = new HashSet<SupportsRdfId.RdfKey>();
+
 	/**
 	 * The list of things which are ready to be cascaded.  They are tracked in this list to help prevent infinite loops
 	 */
 	private Collection<Object> mCascadePending = new HashSet<Object>();
 
+	/**
+	 * The number of statements merges did not need to write
+	 */
+	private long mSavedTripleCount = 0;
+
+	/**
+	 * The number of merges which did not write anything since the object had not changed
+	 */
+	private long mUnchangedMergeCount = 0;
+
+	/**
+	 * The second level cache shared with the other EntityManagers of the same factory, or null if there is not one
+	 */
+	private final EntityCache mCache;
+
+	/**
+	 * The keys of the entities written during the current transaction, which are not cached until it is committed
+	 */
+	private final Set<SupportsRdfId.RdfKey> mTransactionWrites = new HashSet<SupportsRdfId.RdfKey>();
+
+	/**
+	 * Whether or not to check that persisted and merged objects exist, and removed objects do not, after the changes
+	 * are written
+	 */
+	private boolean mVerifyWrites = false;
+
+	/**
+	 * The number of objects written at once by {@link #persistAll} and {@link #mergeAll}
+	 */
+	private int mWriteBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+
+	/**
+	 * The batch of objects currently being persisted or merged by {@link #persistAll} or {@link #mergeAll}, or null
+	 */
+	private Batch mBatch;
+
+	/**
+	 * The threads used to serialize the objects of a batch in parallel, or null to serialize them on the calling thread
+	 */
+	private ExecutorService mSerializers;
+
 	/**
 	 * Create a new EntityManagerImpl
 	 * @param theSource the underlying RDF datasource used for persistence operations
 	 */
 	public EntityManagerImpl(MutableDataSource theSource) {
+		this(theSource, null);
+	}
+
+	/**
+	 * Create a new EntityManagerImpl
+	 * @param theSource the underlying RDF datasource used for persistence operations
+	 * @param theCache the second level cache to use, or null to always load entities from the datasource
+	 */
+	public EntityManagerImpl(MutableDataSource theSource, EntityCache theCache) {
 
 		// TODO: sparql for everything, just convert serql into sparql
 		// TODO: work like JPA/hibernate -- if something does not have a @Transient on it, convert it.  we'll just need to coin a URI in those cases
@@ -151,6 +229,59 @@ public final class EntityManagerImpl implements EntityManager {
 		mIsOpen = true;
 
 		mDataSource = theSource;
+		mCache = theCache;
+	}
+
+	/**
+	 * Set whether or not to check the database after changes are written.  When enabled, the objects persisted, merged
+	 * and removed by an operation are checked with a single query once the operation has been executed and a
+	 * PersistenceException is thrown if any were not written.  This is not needed for data sources which report failed
+	 * writes with an exception, and is disabled by default.
+	 * @param theVerifyWrites true to verify writes, false otherwise
+	 */
+	public void setVerifyWrites(final boolean theVerifyWrites) {
+		mVerifyWrites = theVerifyWrites;
+	}
+
+	/**
+	 * Return whether or not the changes written by this EntityManager are verified
+	 * @return true if writes are verified, false otherwise
+	 */
+	public boolean isVerifyWrites() {
+		return mVerifyWrites;
+	}
+
+	/**
+	 * Set the number of objects {@link #persistAll} and {@link #mergeAll} write at once.  Each batch is checked against
+	 * the database with a single query, which grows with the size of the batch.
+	 * @param theWriteBatchSize the batch size
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void setWriteBatchSize(final int theWriteBatchSize) {
+		if (theWriteBatchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + theWriteBatchSize);
+		}
+
+		mWriteBatchSize = theWriteBatchSize;
+	}
+
+	/**
+	 * Return the number of objects {@link #persistAll} and {@link #mergeAll} write at once
+	 * @return the batch size
+	 */
+	public int getWriteBatchSize() {
+		return mWriteBatchSize;
+	}
+
+	/**
+	 * Set the threads used to serialize the objects of a batch written by {@link #persistAll} and {@link #mergeAll} in
+	 * parallel.  The executor is owned by the caller, which shuts it down once it is no longer used, it is usually
+	 * shared by the EntityManagers of an {@link EntityManagerFactoryImpl}.  By default, objects are serialized on the
+	 * calling thread.
+	 * @param theSerializers the executor, or null to serialize on the calling thread
+	 */
+	public void setSerializers(final ExecutorService theSerializers) {
+		mSerializers = theSerializers;
 	}
 
 	/**
@@ -158,9 +289,32 @@ public final class EntityManagerImpl implements EntityManager {
 	 */
 	public void flush() {
 		assertOpen();
-		
-		// we'll do nothing here since our default implementation doesn't queue up changes, they're made
-		// as soon as remove/persist are called
+
+		// in AUTO mode there is nothing to do, changes are made as soon as persist/merge/remove are called
+		if (mPending == null) {
+			return;
+		}
+
+		DataSourceOperation aPending = mPending;
+
+		mPending = null;
+
+		try {
+			aPending.execute();
+		}
+		catch (DataSourceException e) {
+			throw new PersistenceException(e);
+		}
+		finally {
+			// other EntityManagers could have cached the entities before the changes were written
+			if (mCache != null) {
+				for (SupportsRdfId.RdfKey aKey : mPendingWrites) {
+					mCache.invalidate(aKey);
+				}
+			}
+
+			mPendingWrites.clear();
+		}
 	}
 
 	/**
@@ -169,9 +323,11 @@ public final class EntityManagerImpl implements EntityManager {
 	public void setFlushMode(final FlushModeType theFlushModeType) {
 		assertOpen();
 
-		if (theFlushModeType != FlushModeType.AUTO) {
-			throw new IllegalArgumentException("Commit style flush mode not supported");
+		if (theFlushModeType == FlushModeType.AUTO) {
+			flush();
 		}
+
+		mFlushMode = theFlushModeType;
 	}
 
 	/**
@@ -180,7 +336,7 @@ public final class EntityManagerImpl implements EntityManager {
 	public FlushModeType getFlushMode() {
 		assertOpen();
 		
-		return FlushModeType.AUTO;
+		return mFlushMode;
 	}
 
 	/**
@@ -198,12 +354,7 @@ public final class EntityManagerImpl implements EntityManager {
 
 		assertContains(theObj);
 
-		Object aDbObj = find(theObj.getClass(), EmpireUtil.asSupportsRdfId(theObj).getRdfId());
-
-        Collection<AccessibleObject> aAccessors = new HashSet<AccessibleObject>();
-
-        aAccessors.addAll(getAnnotatedFields(aDbObj.getClass()));
-        aAccessors.addAll(getAnnotatedGetters(aDbObj.getClass(), true));
+		Object aDbObj = load(theObj.getClass(), EmpireUtil.asSupportsRdfId(theObj).getRdfId(), false);
 
 		if (theObj instanceof EmpireGenerated) {
 			((EmpireGenerated)theObj).setAllTriples(((EmpireGenerated)aDbObj).getAllTriples());
@@ -211,10 +362,10 @@ public final class EntityManagerImpl implements EntityManager {
 		}
 
         try {
-            for (AccessibleObject aAccess : aAccessors) {
-                Object aValue = safeGet(aAccess, aDbObj);
+            for (EntityMapping.PropertyMapping aAccess : EntityMapping.of(aDbObj.getClass()).getProperties()) {
+                Object aValue = aAccess.get(aDbObj);
                 
-                AccessibleObject aSetter = asSetter(aDbObj.getClass(), aAccess);
+                AccessibleObject aSetter = aAccess.getSetter();
                 
                 safeSet(aSetter, theObj, aValue);
             }
@@ -239,6 +390,14 @@ public final class EntityManagerImpl implements EntityManager {
 	public boolean contains(final Object theObj) {
 		assertStateOk(theObj);
 
+		if (isManaged(theObj)) {
+			return true;
+		}
+
+		if (mBatch != null && mBatch.isChecked(theObj)) {
+			return mBatch.exists(theObj);
+		}
+
 		try {
 			return DataSourceUtil.exists(getDataSource(), theObj);
 		}
@@ -251,35 +410,35 @@ public final class EntityManagerImpl implements EntityManager {
 	 * @inheritDoc
 	 */
 	public Query createQuery(final String theQueryString) {
-		return getDataSource().getQueryFactory().createQuery(theQueryString);
+		return withUpdates(getDataSource().getQueryFactory().createQuery(theQueryString));
 	}
 
 	/**
 	 * @inheritDoc
 	 */
 	public Query createNamedQuery(final String theName) {
-		return getDataSource().getQueryFactory().createNamedQuery(theName);
+		return withUpdates(getDataSource().getQueryFactory().createNamedQuery(theName));
 	}
 
 	/**
 	 * @inheritDoc
 	 */
 	public Query createNativeQuery(final String theQueryString) {
-		return getDataSource().getQueryFactory().createNativeQuery(theQueryString);
+		return withUpdates(getDataSource().getQueryFactory().createNativeQuery(theQueryString));
 	}
 
 	/**
 	 * @inheritDoc
 	 */
 	public Query createNativeQuery(final String theQueryString, final Class theResultClass) {
-		return getDataSource().getQueryFactory().createNativeQuery(theQueryString, theResultClass);
+		return withUpdates(getDataSource().getQueryFactory().createNativeQuery(theQueryString, theResultClass));
 	}
 
 	/**
 	 * @inheritDoc
 	 */
 	public Query createNativeQuery(final String theQueryString, final String theResultSetMapping) {
-		return getDataSource().getQueryFactory().createNativeQuery(theQueryString, theResultSetMapping);
+		return withUpdates(getDataSource().getQueryFactory().createNativeQuery(theQueryString, theResultSetMapping));
 	}
 
 	/**
@@ -315,11 +474,83 @@ public final class EntityManagerImpl implements EntityManager {
 		cleanState();
 	}
 
+	/**
+	 * Have updates executed with the query notify this EntityManager
+	 * @param theQuery the query
+	 * @return the query
+	 */
+	private Query withUpdates(final Query theQuery) {
+		if (theQuery instanceof RdfQuery) {
+			((RdfQuery) theQuery).setEntityManager(this);
+		}
+
+		return theQuery;
+	}
+
+	/**
+	 * Note that a SPARQL update was executed against the database.  There is no telling which entities it changed, so
+	 * the managed entities are released and the entity cache is cleared.
+	 */
+	void updated() {
+		mManaged.clear();
+
+		if (mCache != null) {
+			mCache.invalidateAll();
+		}
+	}
+
 	/**
 	 * Clean up the current state of the EntityManager, release attached entities and the like.
 	 */
 	private void cleanState() {
-		mManagedEntityListeners.clear();
+		mManaged.clear();
+
+		// changes which have not been flushed are discarded along with the managed entities
+		mPending = null;
+		mPendingWrites.clear();
+	}
+
+	/**
+	 * Return whether or not the object is the instance managed by this EntityManager for its key
+	 * @param theObj the object
+	 * @return true if the object is managed, false otherwise
+	 */
+	private boolean isManaged(final Object theObj) {
+		SupportsRdfId.RdfKey aKey = EmpireUtil.asSupportsRdfId(theObj).getRdfId();
+
+		return aKey != null && mManaged.get(aKey) == theObj;
+	}
+
+	/**
+	 * Note that the object was written to the database, its cached state, if any, is no longer valid
+	 * @param theObj the object
+	 */
+	private void written(final Object theObj) {
+		SupportsRdfId.RdfKey aKey = EmpireUtil.asSupportsRdfId(theObj).getRdfId();
+
+		if (mCache != null && aKey != null) {
+			mCache.invalidate(aKey);
+
+			if (mTransaction != null && mTransaction.isActive()) {
+				mTransactionWrites.add(aKey);
+			}
+
+			if (mFlushMode == FlushModeType.COMMIT) {
+				mPendingWrites.add(aKey);
+			}
+		}
+	}
+
+	/**
+	 * Make the object the instance managed by this EntityManager for its key
+	 * @param theObj the object
+	 */
+	private void manage(final Object theObj) {
+		SupportsRdfId.RdfKey aKey = EmpireUtil.asSupportsRdfId(theObj).getRdfId();
+
+		if (aKey != null) {
+			mManaged.put(aKey, theObj);
+		}
 	}
 
 	/**
@@ -334,7 +565,7 @@ public final class EntityManagerImpl implements EntityManager {
 	 */
 	public EntityTransaction getTransaction() {
 		if (mTransaction == null) {
-			mTransaction = new DataSourceEntityTransaction(asSupportsTransactions());
+			mTransaction = new ContextEntityTransaction(new DataSourceEntityTransaction(asSupportsTransactions()));
 		}
 
 		return mTransaction;
@@ -354,14 +585,19 @@ public final class EntityManagerImpl implements EntityManager {
 		}
 
 		try {
-			prePersist(theObj);
+			Graph aData = mBatch == null ? null : mBatch.getRdf(theObj, false);
+
+			// objects of a batch have had their callback fired, and been serialized, already
+			if (aData == null) {
+				prePersist(theObj);
+
+				aData = RdfGenerator.asRdf(theObj);
+			}
 
 			boolean isTopOperation = (mOp == null);
 
 			DataSourceOperation aOp = new DataSourceOperation();
 
-			Graph aData = RdfGenerator.asRdf(theObj);
-
 			if (doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(theObj)) {
 				aOp.add(EmpireUtil.getNamedGraph(theObj), aData);
 			}
@@ -369,12 +605,24 @@ public final class EntityManagerImpl implements EntityManager {
 				aOp.add(aData);
 			}
 
+			if (mVerifyWrites) {
+				aOp.verifyAdd(theObj);
+			}
+
 			joinCurrentDataSourceOperation(aOp);
 
+			// the object now has exactly the statements it was persisted with, a later merge only writes what changes
+			if (theObj instanceof EmpireGenerated) {
+				updateTriples((EmpireGenerated) theObj, aData, Graphs.newGraph(), Graphs.newGraph(), aData);
+			}
+
 			cascadeOperation(theObj, new IsPersistCascade(), new MergeCascade());
 
 			finishCurrentDataSourceOperation(isTopOperation);
 
+			written(theObj);
+			manage(theObj);
+
 			postPersist(theObj);
 		}
 		catch (InvalidRdfException ex) {
@@ -392,7 +640,20 @@ public final class EntityManagerImpl implements EntityManager {
 	private void finishCurrentDataSourceOperation(boolean theIsTop) throws DataSourceException {
 		if (theIsTop) {
 			mCascadePending.clear();
-			mOp.execute();
+
+			if (mFlushMode == FlushModeType.COMMIT) {
+				// the changes are written when the EntityManager is flushed, or the transaction committed
+				if (mPending == null) {
+					mPending = mOp;
+				}
+				else {
+					mPending.merge(mOp);
+				}
+			}
+			else {
+				mOp.execute();
+			}
+
 			mOp = null;
 		}
 	}
@@ -420,10 +681,11 @@ public final class EntityManagerImpl implements EntityManager {
 			try {
 				if (theT instanceof EmpireGenerated) {
 					// if bean has been generated by Empire, then we can try to read its copy from the database, and use the triples from that copy
-					Object aDbObj = find(((EmpireGenerated) theT).getInterfaceClass(), EmpireUtil.asSupportsRdfId(theT).getRdfId());
+					Object aDbObj = load(((EmpireGenerated) theT).getInterfaceClass(), EmpireUtil.asSupportsRdfId(theT).getRdfId(), false);
 
 					if (aDbObj != null) { 
 						aExistingData = ((EmpireGenerated) aDbObj).getInstanceTriples();
+						((EmpireGenerated) theT).setAllTriples(((EmpireGenerated) aDbObj).getAllTriples());
 					}
 					else {
 						aExistingData = new GraphImpl();
@@ -443,32 +705,64 @@ public final class EntityManagerImpl implements EntityManager {
 		}
 
 		try {
-			preUpdate(theT);
+			Graph aData = mBatch == null ? null : mBatch.getRdf(theT, true);
+
+			if (aData == null) {
+				preUpdate(theT);
+
+				aData = RdfGenerator.asRdf(theT);
+			}
+
+			// statements which were read along with the object are already in the database and do not need to be
+			// added again, this includes the rdf:type of the object which is not part of its instance triples
+			Graph aKnownData = aExistingData;
+			if (theT instanceof EmpireGenerated && ((EmpireGenerated) theT).getAllTriples() != null) {
+				aKnownData = Graphs.union(aExistingData, ((EmpireGenerated) theT).getAllTriples());
+			}
 
-			Graph aData = RdfGenerator.asRdf(theT);
+			Graph aRemoved = difference(aExistingData, aData);
+			Graph aAdded = difference(aData, aKnownData);
+
+			mSavedTripleCount += aExistingData.size() + aData.size() - aRemoved.size() - aAdded.size();
+
+			if (aRemoved.isEmpty() && aAdded.isEmpty()) {
+				mUnchangedMergeCount++;
+			}
 
 			boolean isTopOperation = (mOp == null);
 
 			DataSourceOperation aOp = new DataSourceOperation();
 
-			if (doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(theT)) {
-				java.net.URI aGraphURI = EmpireUtil.getNamedGraph(theT);
+			java.net.URI aGraphURI = doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(theT)
+									 ? EmpireUtil.getNamedGraph(theT)
+									 : null;
 
-				aOp.remove(aGraphURI, aExistingData);
-				aOp.add(aGraphURI, aData);
+			if (!aRemoved.isEmpty()) {
+				aOp.remove(aGraphURI, aRemoved);
 			}
-			else {
-				aOp.remove(aExistingData);
-				aOp.add(aData);
+
+			if (!aAdded.isEmpty()) {
+				aOp.add(aGraphURI, aAdded);
+			}
+
+			if (mVerifyWrites) {
+				aOp.verifyAdd(theT);
 			}
 
 			joinCurrentDataSourceOperation(aOp);
 
+			if (theT instanceof EmpireGenerated) {
+				updateTriples((EmpireGenerated) theT, aData, aKnownData, aRemoved, aAdded);
+			}
+
 			// cascade the merge
 			cascadeOperation(theT, new IsMergeCascade(), new MergeCascade());
 
 			finishCurrentDataSourceOperation(isTopOperation);
 
+			written(theT);
+			manage(theT);
+
 			postUpdate(theT);
 
             return theT;
@@ -481,6 +775,219 @@ public final class EntityManagerImpl implements EntityManager {
 		}
 	}
 
+	/**
+	 * @inheritDoc
+	 */
+	public void persistAll(final Collection<?> theObjs) {
+		assertOpen();
+
+		for (Object aObj : theObjs) {
+			assertSupported(aObj);
+		}
+
+		for (List<?> aBatch : Iterables.partition(theObjs, mWriteBatchSize)) {
+			writeBatch(aBatch, false);
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public <T> List<T> mergeAll(final Collection<T> theObjs) {
+		assertOpen();
+
+		for (Object aObj : theObjs) {
+			assertSupported(aObj);
+		}
+
+		for (List<T> aBatch : Iterables.partition(theObjs, mWriteBatchSize)) {
+			writeBatch(aBatch, true);
+		}
+
+		return new ArrayList<T>(theObjs);
+	}
+
+	/**
+	 * Persist or merge a batch of objects.  The database is queried for the existence, or the current state, of all
+	 * the objects at once, the objects are serialized in parallel, and then each is persisted or merged as a part of
+	 * a single operation, which is written once all of them have been.
+	 * @param theObjs the objects
+	 * @param theIsMerge true to merge the objects, false to persist them
+	 */
+	private void writeBatch(final List<?> theObjs, final boolean theIsMerge) {
+		Batch aPrevious = mBatch;
+
+		boolean isTopOperation = (mOp == null);
+
+		try {
+			mBatch = new Batch(theIsMerge);
+
+			if (theIsMerge) {
+				mBatch.describe(theObjs);
+
+				for (Object aObj : theObjs) {
+					preUpdate(aObj);
+				}
+			}
+			else {
+				mBatch.checkExistence(theObjs);
+
+				for (Object aObj : theObjs) {
+					if (contains(aObj)) {
+						throw new EntityExistsException("Entity already exists: " + aObj);
+					}
+				}
+
+				for (Object aObj : theObjs) {
+					prePersist(aObj);
+				}
+			}
+
+			mBatch.serialize(theObjs);
+
+			if (isTopOperation) {
+				mOp = new DataSourceOperation();
+			}
+
+			for (Object aObj : theObjs) {
+				if (theIsMerge) {
+					merge(aObj);
+				}
+				else {
+					persist(aObj);
+				}
+			}
+
+			finishCurrentDataSourceOperation(isTopOperation);
+		}
+		catch (DataSourceException e) {
+			throw new PersistenceException(e);
+		}
+		finally {
+			mBatch = aPrevious;
+
+			// on error, the changes made to the batch are abandoned
+			if (isTopOperation) {
+				mOp = null;
+				mCascadePending.clear();
+			}
+		}
+	}
+
+	/**
+	 * Return which of the objects exist in the database, querying once per named graph the objects are in rather
+	 * than once per object
+	 * @param theObjects the objects
+	 * @return the resources of the objects which exist
+	 * @throws PersistenceException if there is an error querying the database
+	 */
+	private Set<Resource> existingResources(final Collection<?> theObjects) {
+		Map<java.net.URI, Set<Resource>> aResourcesByGraph = Maps.newHashMap();
+
+		for (Object aObj : theObjects) {
+			java.net.URI aGraphURI = doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(aObj)
+									 ? EmpireUtil.getNamedGraph(aObj)
+									 : null;
+
+			Set<Resource> aResources = aResourcesByGraph.get(aGraphURI);
+
+			if (aResources == null) {
+				aResources = Sets.newHashSet();
+				aResourcesByGraph.put(aGraphURI, aResources);
+			}
+
+			aResources.add(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj)));
+		}
+
+		Set<Resource> aExisting = Sets.newHashSet();
+
+		try {
+			for (Map.Entry<java.net.URI, Set<Resource>> aEntry : aResourcesByGraph.entrySet()) {
+				aExisting.addAll(DataSourceUtil.existing(getDataSource(), aEntry.getKey(), aEntry.getValue()));
+			}
+		}
+		catch (QueryException e) {
+			throw new PersistenceException(e);
+		}
+
+		return aExisting;
+	}
+
+	/**
+	 * Return the statements in the first graph which are not in the second
+	 * @param theGraph the graph
+	 * @param theOther the statements to exclude
+	 * @return the difference of the two graphs
+	 */
+	private static Graph difference(final Graph theGraph, final Graph theOther) {
+		Set<Statement> aOther = new HashSet<Statement>(theOther);
+
+		Graph aDiff = Graphs.newGraph();
+
+		for (Statement aStmt : theGraph) {
+			if (!aOther.contains(aStmt)) {
+				aDiff.add(aStmt);
+			}
+		}
+
+		return aDiff;
+	}
+
+	/**
+	 * Update the triples an object was read from to reflect the changes made by a merge, so a later merge of the same
+	 * instance compares against what is in the database.
+	 * @param theObj the merged object
+	 * @param theData the object's RDF
+	 * @param theKnownData the statements about the object known to be in the database before the merge
+	 * @param theRemoved the statements removed by the merge
+	 * @param theAdded the statements added by the merge
+	 */
+	private static void updateTriples(final EmpireGenerated theObj, final Graph theData, final Graph theKnownData,
+									  final Graph theRemoved, final Graph theAdded) {
+		Set<Statement> aRemoved = new HashSet<Statement>(theRemoved);
+
+		Graph aAllTriples = Graphs.newGraph();
+
+		for (Statement aStmt : theKnownData) {
+			if (!aRemoved.contains(aStmt)) {
+				aAllTriples.add(aStmt);
+			}
+		}
+
+		aAllTriples.addAll(theAdded);
+
+		Resource aSubject = EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj));
+
+		Graph aInstanceTriples = Graphs.newGraph();
+
+		for (Statement aStmt : theData) {
+			if (aStmt.getSubject().equals(aSubject) && !aStmt.getPredicate().equals(RDF.TYPE)) {
+				aInstanceTriples.add(aStmt);
+			}
+		}
+
+		theObj.setAllTriples(aAllTriples);
+		theObj.setInstanceTriples(aInstanceTriples);
+	}
+
+	/**
+	 * Return the number of statements {@link #merge} did not have to write because they were unchanged.  Merging an
+	 * object removes the statements which are no longer part of it and adds the new ones, rather than replacing all of
+	 * its statements.
+	 * @return the number of statements saved
+	 */
+	public long getSavedTripleCount() {
+		return mSavedTripleCount;
+	}
+
+	/**
+	 * Return the number of times {@link #merge} found no changes to an object and did not write to the database.
+	 * @return the number of unchanged merges
+	 */
+	public long getUnchangedMergeCount() {
+		return mUnchangedMergeCount;
+	}
+
 	private void joinCurrentDataSourceOperation(final DataSourceOperation theOp) {
 		if (mOp == null) {
 			mOp = theOp;
@@ -499,15 +1006,10 @@ public final class EntityManagerImpl implements EntityManager {
 			mCascadePending.add(theT);
 		}
 
-		Collection<AccessibleObject> aAccessors = new HashSet<AccessibleObject>();
-		
-		aAccessors.addAll(getAnnotatedFields(theT.getClass()));
-		aAccessors.addAll(getAnnotatedGetters(theT.getClass(), true));
-
-		for (AccessibleObject aObj : aAccessors) {
+		for (EntityMapping.PropertyMapping aObj : EntityMapping.of(theT.getClass()).getProperties()) {
 			if (theCascadeTest.apply(aObj)) {
 				try {
-					Object aAccessorValue = BeanReflectUtil.safeGet(aObj, theT);
+					Object aAccessorValue = aObj.get(theT);
 
 					if (aAccessorValue == null) {
 						continue;
@@ -549,24 +1051,24 @@ public final class EntityManagerImpl implements EntityManager {
 	}
 
 	private class IsMergeCascade extends CascadeTest {
-		public boolean apply(final AccessibleObject theValue) {
-			return BeanReflectUtil.isMergeCascade(theValue);
+		public boolean apply(final EntityMapping.PropertyMapping theValue) {
+			return theValue.isMergeCascade();
 		}
 	}
 
 	private class IsRemoveCascade extends CascadeTest {
-		public boolean apply(final AccessibleObject theValue) {
-			return BeanReflectUtil.isRemoveCascade(theValue);
+		public boolean apply(final EntityMapping.PropertyMapping theValue) {
+			return theValue.isRemoveCascade();
 		}
 	}
 
 	private class IsPersistCascade extends CascadeTest {
-		public boolean apply(final AccessibleObject theValue) {
-			return BeanReflectUtil.isPersistCascade(theValue);
+		public boolean apply(final EntityMapping.PropertyMapping theValue) {
+			return theValue.isPersistCascade();
 		}
 	}
 
-	private abstract class CascadeTest implements Predicate<AccessibleObject> {
+	private abstract class CascadeTest implements Predicate<EntityMapping.PropertyMapping> {
 	}
 
 	private abstract class CascadeAction implements Predicate<Object> {
@@ -594,7 +1096,19 @@ public final class EntityManagerImpl implements EntityManager {
 	public void remove(final Object theObj) {
 		assertStateOk(theObj);
 
-		Graph aData = assertContainsAndDescribe(theObj);
+		Graph aData;
+
+		if (mPending != null) {
+			// the object, or some of its statements, might not have been flushed yet
+			aData = Graphs.union(describe(theObj), mPending.getAdded(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj))));
+
+			if (aData.isEmpty()) {
+				throw new IllegalArgumentException("Entity does not exist: " + theObj);
+			}
+		}
+		else {
+			aData = assertContainsAndDescribe(theObj);
+		}
 
 		try {
 			preRemove(theObj);
@@ -619,12 +1133,19 @@ public final class EntityManagerImpl implements EntityManager {
 				aOp.remove(aData);
 			}
 
+			if (mVerifyWrites) {
+				aOp.verifyRemove(theObj);
+			}
+
 			joinCurrentDataSourceOperation(aOp);
 
 			cascadeOperation(theObj, new IsRemoveCascade(), new RemoveCascade());
 
 			finishCurrentDataSourceOperation(isTopOperation);
 
+			written(theObj);
+			mManaged.remove(EmpireUtil.asSupportsRdfId(theObj).getRdfId());
+
 			postRemove(theObj);
 		}
 		catch (DataSourceException ex) {
@@ -645,17 +1166,59 @@ public final class EntityManagerImpl implements EntityManager {
 			throw new IllegalArgumentException(e);
 		}
 
+		SupportsRdfId.RdfKey aKey = EmpireUtil.asPrimaryKey(theObj);
+
+		Object aManaged = mManaged.get(aKey);
+
+		if (theClass.isInstance(aManaged)) {
+			return theClass.cast(aManaged);
+		}
+
+		T aT = load(theClass, aKey, true);
+
+		if (aT != null && aManaged == null) {
+			mManaged.put(aKey, aT);
+		}
+
+		return aT;
+	}
+
+	/**
+	 * Load the object with the given key, regardless of whether or not it is already managed by this EntityManager
+	 * @param theClass the type of the object
+	 * @param theKey the key of the object
+	 * @param theUseCache whether or not the object can be created from the second level cache, rather than the database
+	 * @param <T> the type of the object
+	 * @return the object, or null if it does not exist
+	 */
+	private <T> T load(final Class<T> theClass, final SupportsRdfId.RdfKey theKey, final boolean theUseCache) {
 		try {
-			if (DataSourceUtil.exists(getDataSource(), EmpireUtil.asPrimaryKey(theObj))) {
-				T aT = RdfGenerator.fromRdf(theClass, EmpireUtil.asPrimaryKey(theObj), getDataSource());
+			// the object is read from the named graph of its class, rather than from the database as a whole
+			URI aNamedGraph = RdfGenerator.namedGraphOf(theClass, theKey, getDataSource());
+
+			Graph aGraph = theUseCache && mCache != null ? mCache.get(theKey, aNamedGraph) : null;
+
+			boolean isCached = aGraph != null;
 
-				postLoad(aT);
+			if (!isCached) {
+				// the description of the object doubles as the check for its existence, and provides the rdf:type's used
+				// to determine the class of the result, so the object is loaded in a single query
+				aGraph = describe(theKey, aNamedGraph);
 
-				return aT;
+				if (aGraph.isEmpty()) {
+					return null;
+				}
 			}
-			else {
-				return null;
+
+			T aT = RdfGenerator.fromRdf(theClass, theKey, getDataSource(), aNamedGraph, aGraph);
+
+			if (!isCached && mCache != null && !mTransactionWrites.contains(theKey) && EntityCache.isCacheable(aT.getClass())) {
+				mCache.put(theKey, aNamedGraph, aGraph);
 			}
+
+			postLoad(aT);
+
+			return aT;
 		}
 		catch (InvalidRdfException e) {
 			throw new IllegalArgumentException("Type is not valid, or object with key is not a valid Rdf Entity.", e);
@@ -702,20 +1265,62 @@ public final class EntityManagerImpl implements EntityManager {
 	private Graph assertContainsAndDescribe(Object theObj) {
 		assertStateOk(theObj);
 
-		try {
-			Graph aGraph = DataSourceUtil.describe(getDataSource(), theObj);
+		Graph aGraph = describe(theObj);
 
-			if (aGraph.isEmpty()) {
-				throw new IllegalArgumentException("Entity does not exist: " + theObj);
+		if (aGraph.isEmpty()) {
+			throw new IllegalArgumentException("Entity does not exist: " + theObj);
+		}
+
+		return aGraph;
+	}
+
+	/**
+	 * Return the statements in the database about the object
+	 * @param theObj the object
+	 * @return the description of the object, empty if it does not exist
+	 */
+	private Graph describe(Object theObj) {
+		if (mBatch != null && !(doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(theObj))) {
+			Graph aGraph = mBatch.getDescription(theObj);
+
+			if (aGraph != null) {
+				return aGraph;
 			}
+		}
 
-			return aGraph;
+		try {
+			return DataSourceUtil.describe(getDataSource(), theObj);
 		}
 		catch (QueryException e) {
 			throw new PersistenceException(e);
 		}
 	}
 
+	/**
+	 * Return the statements in the named graph about the object with the given key.  Objects with no statements in
+	 * the named graph are described from the database as a whole if {@link EmpireOptions#ENABLE_NAMED_GRAPH_FALLBACK}
+	 * is enabled.
+	 * @param theKey the key of the object
+	 * @param theNamedGraph the named graph, or null to describe the object from the database as a whole
+	 * @return the description of the object, empty if it does not exist
+	 */
+	private Graph describe(SupportsRdfId.RdfKey theKey, URI theNamedGraph) {
+		if (theNamedGraph != null) {
+			try {
+				Graph aGraph = DataSourceUtil.describe(getDataSource(), EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theKey)), theNamedGraph);
+
+				if (!aGraph.isEmpty() || !EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK) {
+					return aGraph;
+				}
+			}
+			catch (QueryException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		return describe(theKey);
+	}
+
 	/**
 	 * Enforce that the object does not exist in the database
 	 * @param theObj the object that should not exist
@@ -902,83 +1507,304 @@ public final class EntityManagerImpl implements EntityManager {
 			return;
 		}
 
-		Collection<Method> aMethods = getAnnotatedMethods(theObj.getClass(), theLifecycleAnnotation);
+		LifecycleCallbacks.of(theObj.getClass()).fire(theObj, theLifecycleAnnotation);
+	}
 
-		// Entity methods take no arguments...
-		try {
-			for (Method aMethod : aMethods) {
-				aMethod.invoke(theObj);
-			}
+	/**
+	 * Transaction which clears the persistence context when it is rolled back, since the managed instances may no
+	 * longer reflect what is in the database.  Entities written during the transaction are kept out of the second
+	 * level cache until it ends.
+	 */
+	private class ContextEntityTransaction implements EntityTransaction {
+		private final EntityTransaction mDelegate;
+
+		private ContextEntityTransaction(final EntityTransaction theTransaction) {
+			mDelegate = theTransaction;
 		}
-		catch (Exception e) {
-			LOGGER.error("There was an error during entity lifecycle notification for annotation: " +
-						 theLifecycleAnnotation + " on object: " + theObj +".", e);
+
+		public void begin() {
+			mDelegate.begin();
+
+			mTransactionWrites.clear();
 		}
 
-		for (Object aListener : getEntityListeners(theObj)) {
-			Collection<Method> aListenerMethods = getAnnotatedMethods(aListener.getClass(), theLifecycleAnnotation);
+		public void commit() {
+			// the entities written in the transaction, including the changes still pending, which are written now
+			Set<SupportsRdfId.RdfKey> aWrites = new HashSet<SupportsRdfId.RdfKey>(mTransactionWrites);
+			aWrites.addAll(mPendingWrites);
+
+			flush();
 
-			// EntityListeners methods take a single arguement, the entity
 			try {
-				for (Method aListenerMethod : aListenerMethods) {
-					aListenerMethod.invoke(aListener, theObj);
+				mDelegate.commit();
+			}
+			catch (RuntimeException e) {
+				// the transaction has ended, the data source does not keep the changes of a failed commit
+				discard();
+
+				throw e;
+			}
+
+			mTransactionWrites.clear();
+
+			// other EntityManagers may have cached the entities while the transaction was running, as they were before it
+			if (mCache != null) {
+				for (SupportsRdfId.RdfKey aKey : aWrites) {
+					mCache.invalidate(aKey);
 				}
 			}
-			catch (Exception e) {
-				LOGGER.error("There was an error during lifecycle notification for annotation: " +
-							 theLifecycleAnnotation + " on object: " + theObj + ".", e);
+		}
+
+		public void rollback() {
+			try {
+				mDelegate.rollback();
+			}
+			finally {
+				discard();
+			}
+		}
+
+		/**
+		 * Clear the persistence context once the changes of the transaction have been rolled back
+		 */
+		private void discard() {
+			mManaged.clear();
+			mPending = null;
+			mPendingWrites.clear();
+
+			// the entities written in the transaction may have been cached with its uncommitted changes
+			for (SupportsRdfId.RdfKey aKey : mTransactionWrites) {
+				mCache.invalidate(aKey);
 			}
+
+			mTransactionWrites.clear();
+		}
+
+		public void setRollbackOnly() {
+			mDelegate.setRollbackOnly();
+		}
+
+		public boolean getRollbackOnly() {
+			return mDelegate.getRollbackOnly();
+		}
+
+		public boolean isActive() {
+			return mDelegate.isActive();
 		}
 	}
 
 	/**
-	 * Get or create the list of EntityListeners for an object.  If a list is created, it will be kept around and
-	 * re-used for later persistence operations.
-	 * @param theObj the object to get EntityLIsteners for
-	 * @return the list of EntityListeners for the object, or null if they do not exist
+	 * The state of a batch being written by {@link #persistAll} or {@link #mergeAll}: what is known about the objects
+	 * of the batch from the queries made for all of them at once, and their RDF, which is created before they are
+	 * persisted or merged.
 	 */
-	private Collection<Object> getEntityListeners(final Object theObj) {
-		Collection<Object> aListeners = mManagedEntityListeners.get(theObj);
+	private final class Batch {
+
+		/**
+		 * Whether the batch is being merged or persisted
+		 */
+		private final boolean mIsMerge;
+
+		/**
+		 * The resources whose existence has been checked
+		 */
+		private final Set<Resource> mChecked = new HashSet<Resource>();
+
+		/**
+		 * The checked resources which exist in the database
+		 */
+		private final Set<Resource> mExisting = new HashSet<Resource>();
+
+		/**
+		 * The descriptions of resources fetched from the database
+		 */
+		private final Map<Resource, Graph> mDescriptions = new HashMap<Resource, Graph>();
+
+		/**
+		 * The RDF of each object of the batch
+		 */
+		private final Map<Object, Graph> mRdf = new IdentityHashMap<Object, Graph>();
 
-		if (aListeners == null) {
-			EntityListeners aEntityListeners = BeanReflectUtil.getAnnotation(theObj.getClass(), EntityListeners.class);
-			
-			if (aEntityListeners != null) {
-				// if there are entity listeners, lets create them
-				aListeners = new HashSet<Object>();
-				for (Class<?> aClass : aEntityListeners.value()) {
-					try {
-						aListeners.add(Empire.get().instance(aClass));
+		/**
+		 * The objects of the batch which did not have an id before they were serialized
+		 */
+		private final List<Object> mNew = new ArrayList<Object>();
+
+		private Batch(final boolean theIsMerge) {
+			mIsMerge = theIsMerge;
+		}
+
+		/**
+		 * Check whether the objects exist in the database
+		 * @param theObjs the objects
+		 */
+		public void checkExistence(final List<?> theObjs) {
+			List<Object> aObjs = new ArrayList<Object>();
+
+			for (Object aObj : theObjs) {
+				if (EmpireUtil.asSupportsRdfId(aObj).getRdfId() == null) {
+					// objects get their id when they are serialized, they are not checked before then
+					mNew.add(aObj);
+				}
+				else if (!isManaged(aObj)) {
+					aObjs.add(aObj);
+				}
+			}
+
+			for (Object aObj : aObjs) {
+				mChecked.add(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj)));
+			}
+
+			mExisting.addAll(existingResources(aObjs));
+		}
+
+		/**
+		 * Fetch the current state of the objects whose state is not known from the triples they were read from
+		 * @param theObjs the objects
+		 */
+		public void describe(final List<?> theObjs) {
+			List<Resource> aResources = new ArrayList<Resource>();
+
+			for (Object aObj : theObjs) {
+				if (aObj instanceof EmpireGenerated) {
+					Graph aInstanceTriples = ((EmpireGenerated) aObj).getInstanceTriples();
+
+					if (aInstanceTriples != null && !aInstanceTriples.isEmpty()) {
+						continue;
+					}
+				}
+				else if (doesSupportNamedGraphs() && EmpireUtil.hasNamedGraphSpecified(aObj)) {
+					// described in their named graph, which is done one at a time
+					continue;
+				}
+
+				Resource aResource = EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj));
+
+				if (aResource != null) {
+					aResources.add(aResource);
+				}
+			}
+
+			if (aResources.isEmpty()) {
+				return;
+			}
+
+			try {
+				mDescriptions.putAll(DataSourceUtil.describeEach(getDataSource(), aResources));
+			}
+			catch (QueryException e) {
+				throw new PersistenceException(e);
+			}
+		}
+
+		/**
+		 * Serialize the objects, in parallel when there are several and the EntityManager has threads to do so.  The
+		 * lazy references of the objects are loaded on the calling thread first, the data source they are loaded from
+		 * is not safe to use from several threads.
+		 * @param theObjs the objects
+		 * @throws IllegalStateException if an object cannot be serialized
+		 */
+		public void serialize(final List<?> theObjs) {
+			try {
+				if (theObjs.size() == 1 || mSerializers == null) {
+					for (Object aObj : theObjs) {
+						mRdf.put(aObj, RdfGenerator.asRdf(aObj));
 					}
-					catch (Exception e) {
-						LOGGER.error("There was an error instantiating an EntityListener. ", e);
+				}
+				else {
+					List<Future<Graph>> aFutures = new ArrayList<Future<Graph>>();
+
+					for (Object aObj : theObjs) {
+						final Object aResolved = RdfGenerator.resolveProxies(aObj);
+
+						aFutures.add(mSerializers.submit(new Callable<Graph>() {
+							public Graph call() throws Exception {
+								return RdfGenerator.asRdf(aResolved);
+							}
+						}));
+					}
+
+					for (int i = 0; i < theObjs.size(); i++) {
+						mRdf.put(theObjs.get(i), aFutures.get(i).get());
 					}
 				}
+			}
+			catch (InvalidRdfException e) {
+				throw new IllegalStateException(e);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 
-				mManagedEntityListeners.put(theObj, aListeners);
+				throw new PersistenceException(e);
 			}
-			else {
-				aListeners = Collections.emptyList();
+			catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+
+			// the ids coined for new objects are not in the database yet
+			for (Object aObj : mNew) {
+				mChecked.add(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj)));
 			}
 		}
 
-		return aListeners;
+		/**
+		 * Return whether or not the existence of the object has been checked
+		 * @param theObj the object
+		 * @return true if it has been checked, false otherwise
+		 */
+		public boolean isChecked(final Object theObj) {
+			return mChecked.contains(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj)));
+		}
+
+		/**
+		 * Return whether or not the object existed in the database when it was checked
+		 * @param theObj the object
+		 * @return true if it exists, false otherwise
+		 */
+		public boolean exists(final Object theObj) {
+			return mExisting.contains(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj)));
+		}
+
+		/**
+		 * Return the fetched description of the object
+		 * @param theObj the object
+		 * @return the statements about the object, or null if they were not fetched
+		 */
+		public Graph getDescription(final Object theObj) {
+			Graph aGraph = mDescriptions.get(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(theObj)));
+
+			return aGraph == null ? null : Graphs.newGraph(aGraph);
+		}
+
+		/**
+		 * Return the RDF of an object of the batch.  It is only returned once, and only to the operation of the batch,
+		 * any other operation on the object, such as a cascade, serializes it again.
+		 * @param theObj the object
+		 * @param theIsMerge true if the object is being merged, false if it is being persisted
+		 * @return the RDF, or null if the object is not part of the batch
+		 */
+		public Graph getRdf(final Object theObj, final boolean theIsMerge) {
+			return theIsMerge == mIsMerge ? mRdf.remove(theObj) : null;
+		}
 	}
 
 	/**
 	 * Class which encapsulates a set of adds & removes to a DataSource.  Used to process a set of changes in a single
 	 * operation, well, two operations.  Remove and then Add.  Also will verify that all objects that should have been
-	 * added/removed from the KB have been added or removed.
+	 * added/removed from the KB have been added or removed.  The changes are normalized as they are collected: a
+	 * statement is either added or removed, whichever was requested last, and there is one batch of adds and one of
+	 * removes per named graph.  A statement which is added and then removed is still removed from the database, since it
+	 * may have been there before it was added.
 	 * @author Michael Grove
 	 * @since 0.7
-	 * @version 0.7
+	 * @version 0.8
 	 */
 	protected class DataSourceOperation {
 		// HashMap's used here rather than the more generic Map interface because we allow null keys (no specified
 		// named graph) which HashMap allows, while generically Map makes no guarantees about this, so we're explicit here.
 
-		private final Map<java.net.URI, Graph> mAdd;
-		private final Map<java.net.URI, Graph> mRemove;
+		private final Map<java.net.URI, Set<Statement>> mAdd;
+		private final Map<java.net.URI, Set<Statement>> mRemove;
 
 		private final Set<Object> mVerifyAdd = Sets.newHashSet();
 		private final Set<Object> mVerifyRemove = Sets.newHashSet();
@@ -1001,20 +1827,32 @@ public final class EntityManagerImpl implements EntityManager {
 			// TODO: should this be in its own transaction?  or join the current one?
 
 			for (URI aGraphURI : mRemove.keySet()) {
+				Graph aGraph = asGraph(mRemove.get(aGraphURI));
+
+				if (aGraph.isEmpty()) {
+					continue;
+				}
+
 				if (doesSupportNamedGraphs() && aGraphURI != null) {
-					asSupportsNamedGraphs().remove(aGraphURI, mRemove.get(aGraphURI));
+					asSupportsNamedGraphs().remove(aGraphURI, aGraph);
 				}
 				else {
-					getDataSource().remove(mRemove.get(aGraphURI));
+					getDataSource().remove(aGraph);
 				}
 			}
 
 			for (URI aGraphURI : mAdd.keySet()) {
+				Graph aGraph = asGraph(mAdd.get(aGraphURI));
+
+				if (aGraph.isEmpty()) {
+					continue;
+				}
+
 				if (doesSupportNamedGraphs() && aGraphURI != null) {
-					asSupportsNamedGraphs().add(aGraphURI, mAdd.get(aGraphURI));
+					asSupportsNamedGraphs().add(aGraphURI, aGraph);
 				}
 				else {
-					getDataSource().add(mAdd.get(aGraphURI));
+					getDataSource().add(aGraph);
 				}
 			}
 
@@ -1022,7 +1860,46 @@ public final class EntityManagerImpl implements EntityManager {
 		}
 
 		/**
-		 * Add the specified object to the list of objects that should be removed from the database when this operation
+		 * Return whether or not this operation has any changes to make
+		 * @return true if there is nothing to add or remove, false otherwise
+		 */
+		public boolean isEmpty() {
+			for (Set<Statement> aStmts : mAdd.values()) {
+				if (!aStmts.isEmpty()) {
+					return false;
+				}
+			}
+
+			for (Set<Statement> aStmts : mRemove.values()) {
+				if (!aStmts.isEmpty()) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Return the statements about the resource which this operation will add
+		 * @param theResource the resource
+		 * @return the statements to be added with the resource as the subject
+		 */
+		public Graph getAdded(final Resource theResource) {
+			Graph aGraph = Graphs.newGraph();
+
+			for (Set<Statement> aStmts : mAdd.values()) {
+				for (Statement aStmt : aStmts) {
+					if (aStmt.getSubject().equals(theResource)) {
+						aGraph.add(aStmt);
+					}
+				}
+			}
+
+			return aGraph;
+		}
+
+		/**
+		 * Add the specified object to the list of objects that should be revmoed from the database when this operation
 		 * is executed.
 		 * @param theObj the object that should be revmoed from the database when the operation is executed
 		 */
@@ -1044,19 +1921,29 @@ public final class EntityManagerImpl implements EntityManager {
 		 * @throws PersistenceException if an add or remove failed for any reason
 		 */
 		private void verify() {
+			if (mVerifyAdd.isEmpty() && mVerifyRemove.isEmpty()) {
+				return;
+			}
+
+			Set<Resource> aExisting = existingResources(Sets.union(mVerifyAdd, mVerifyRemove));
+
 			for (Object aObj : mVerifyRemove) {
-				if (contains(aObj)) {
+				if (aExisting.contains(EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj)))) {
 					throw new PersistenceException("Remove failed for object: " + aObj.getClass() + " -> " + EmpireUtil.asSupportsRdfId(aObj).getRdfId());
 				}
 			}
 
 			for (Object aObj : mVerifyAdd) {
-				if (!contains(aObj)) {
+				Resource aResource = EmpireUtil.asResource(EmpireUtil.asSupportsRdfId(aObj));
+
+				// bnodes cannot be looked up, so there is no way to verify them
+				if (!(aResource instanceof BNode) && !aExisting.contains(aResource)) {
 					throw new PersistenceException("Addition failed for object: " + aObj.getClass() + " -> " + EmpireUtil.asSupportsRdfId(aObj).getRdfId());
 				}
 			}
 		}
 
+
 		/**
 		 * Add this graph to the set of data to be added when this operation is executed
 		 * @param theGraph the graph to be added
@@ -1070,16 +1957,8 @@ public final class EntityManagerImpl implements EntityManager {
 		 * @param theGraphURI the named graph the data should be added to
 		 * @param theGraph the data to add
 		 */
-		public void add(final java.net.URI theGraphURI, final Graph theGraph) {
-			Graph aGraph = mAdd.get(theGraphURI);
-
-			if (aGraph == null) {
-				aGraph = Graphs.newGraph();
-			}
-
-			aGraph.addAll(theGraph);
-
-			mAdd.put(theGraphURI, aGraph);
+		public void add(final java.net.URI theGraphURI, final Iterable<Statement> theGraph) {
+			change(theGraphURI, theGraph, mAdd, mRemove);
 		}
 		
 		/**
@@ -1095,33 +1974,61 @@ public final class EntityManagerImpl implements EntityManager {
 		 * @param theGraphURI the named graph the data should be removed from
 		 * @param theGraph the data to remove
 		 */
-		public void remove(final java.net.URI theGraphURI, final Graph theGraph) {
-			Graph aGraph = mRemove.get(theGraphURI);
-
-			if (aGraph == null) {
-				aGraph = Graphs.newGraph();
-			}
-
-			aGraph.addAll(theGraph);
-
-			mRemove.put(theGraphURI, aGraph);
+		public void remove(final java.net.URI theGraphURI, final Iterable<Statement> theGraph) {
+			change(theGraphURI, theGraph, mRemove, mAdd);
 		}
 
 		/**
-		 * Merge the operation with this one.  This will merge all the changes being tracked into a single operation.
+		 * Merge the operation with this one.  This will merge all the changes being tracked into a single operation, the
+		 * changes in the given operation are treated as happening after the changes in this one.
 		 * @param theOp the operation to merge
 		 */
 		public void merge(final DataSourceOperation theOp) {
-			for (Map.Entry<URI, Graph> aEntry : theOp.mRemove.entrySet()) {
+			for (Map.Entry<URI, Set<Statement>> aEntry : theOp.mRemove.entrySet()) {
 				remove(aEntry.getKey(), aEntry.getValue());
 			}
 
-			for (Map.Entry<URI, Graph> aEntry : theOp.mAdd.entrySet()) {
+			for (Map.Entry<URI, Set<Statement>> aEntry : theOp.mAdd.entrySet()) {
 				add(aEntry.getKey(), aEntry.getValue());
 			}
 
+			// like the statements, an object is verified as added or removed, whichever happened last
+			mVerifyAdd.removeAll(theOp.mVerifyRemove);
+			mVerifyRemove.removeAll(theOp.mVerifyAdd);
+
 			mVerifyAdd.addAll(theOp.mVerifyAdd);
 			mVerifyRemove.addAll(theOp.mVerifyRemove);
 		}
+
+		/**
+		 * Record a change to the statements in a named graph, cancelling any opposite change previously made to them
+		 * @param theGraphURI the named graph
+		 * @param theStmts the statements
+		 * @param theChanges the changes of the kind being made
+		 * @param theOpposite the changes of the opposite kind
+		 */
+		private void change(final java.net.URI theGraphURI, final Iterable<Statement> theStmts,
+							final Map<java.net.URI, Set<Statement>> theChanges, final Map<java.net.URI, Set<Statement>> theOpposite) {
+			Set<Statement> aChanges = theChanges.get(theGraphURI);
+
+			if (aChanges == null) {
+				aChanges = new LinkedHashSet<Statement>();
+				theChanges.put(theGraphURI, aChanges);
+			}
+
+			Set<Statement> aOpposite = theOpposite.get(theGraphURI);
+
+			for (Statement aStmt : theStmts) {
+				if (aOpposite != null) {
+					aOpposite.remove(aStmt);
+				}
+
+				aChanges.add(aStmt);
+			}
+		}
+
+		private Graph asGraph(final Collection<Statement> theStmts) {
+			return new GraphImpl(theStmts);
+		}
 	}
 }
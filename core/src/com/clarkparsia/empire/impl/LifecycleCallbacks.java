@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.impl;
+
+import com.clarkparsia.empire.Empire;
+import com.clarkparsia.empire.util.BeanReflectUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityListeners;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
+import javax.persistence.PreUpdate;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>The lifecycle callbacks of an entity class, resolved once per class: the annotated methods of the class itself and
+ * of its {@link EntityListeners}, grouped by the event they handle.  Listeners are instantiated when the callbacks are
+ * resolved, and the instances are shared by every entity of the class, so listeners should not keep per-entity
+ * state.</p>
+ *
+ * <p>Classes without any callbacks share a single empty instance, so dispatching events for them costs a lookup.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class LifecycleCallbacks {
+	/**
+	 * The logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(LifecycleCallbacks.class.getName());
+
+	/**
+	 * The lifecycle events a callback can be registered for
+	 */
+	private static final List<Class<? extends Annotation>> EVENTS = Collections.unmodifiableList(
+		Arrays.<Class<? extends Annotation>>asList(PrePersist.class, PostPersist.class, PreRemove.class, PostRemove.class,
+												   PreUpdate.class, PostUpdate.class, PostLoad.class));
+
+	/**
+	 * The callbacks of a class without any
+	 */
+	private static final LifecycleCallbacks NONE = new LifecycleCallbacks(new HashMap<Class<? extends Annotation>, Callback[]>());
+
+	/**
+	 * The callbacks which have been resolved so far, keyed by entity class
+	 */
+	private static final ConcurrentMap<Class<?>, LifecycleCallbacks> CALLBACKS = new ConcurrentHashMap<Class<?>, LifecycleCallbacks>();
+
+	/**
+	 * The callbacks to invoke for each event, in order
+	 */
+	private final Map<Class<? extends Annotation>, Callback[]> mCallbacks;
+
+	private LifecycleCallbacks(final Map<Class<? extends Annotation>, Callback[]> theCallbacks) {
+		mCallbacks = theCallbacks;
+	}
+
+	/**
+	 * Return the callbacks of the entity class
+	 * @param theClass the entity class
+	 * @return the callbacks of the class
+	 */
+	public static LifecycleCallbacks of(final Class<?> theClass) {
+		LifecycleCallbacks aCallbacks = CALLBACKS.get(theClass);
+
+		if (aCallbacks == null) {
+			aCallbacks = resolve(theClass);
+
+			LifecycleCallbacks aExisting = CALLBACKS.putIfAbsent(theClass, aCallbacks);
+			if (aExisting != null) {
+				aCallbacks = aExisting;
+			}
+		}
+
+		return aCallbacks;
+	}
+
+	/**
+	 * Find the callbacks declared by the class and its entity listeners
+	 * @param theClass the entity class
+	 * @return the callbacks
+	 */
+	private static LifecycleCallbacks resolve(final Class<?> theClass) {
+		List<Object> aListeners = new ArrayList<Object>();
+
+		EntityListeners aEntityListeners = BeanReflectUtil.getAnnotation(theClass, EntityListeners.class);
+
+		if (aEntityListeners != null) {
+			for (Class<?> aClass : aEntityListeners.value()) {
+				try {
+					aListeners.add(Empire.get().instance(aClass));
+				}
+				catch (Exception e) {
+					LOGGER.error("There was an error instantiating an EntityListener. ", e);
+				}
+			}
+		}
+
+		Map<Class<? extends Annotation>, Callback[]> aCallbacks = new HashMap<Class<? extends Annotation>, Callback[]>();
+
+		for (Class<? extends Annotation> aEvent : EVENTS) {
+			List<Callback> aEventCallbacks = new ArrayList<Callback>();
+
+			// methods of the entity come first, they take no arguments
+			for (Method aMethod : BeanReflectUtil.getAnnotatedMethods(theClass, aEvent)) {
+				aEventCallbacks.add(new Callback(null, aMethod));
+			}
+
+			// then the methods of the listeners, which take the entity as their only argument
+			for (Object aListener : aListeners) {
+				for (Method aMethod : BeanReflectUtil.getAnnotatedMethods(aListener.getClass(), aEvent)) {
+					aEventCallbacks.add(new Callback(aListener, aMethod));
+				}
+			}
+
+			if (!aEventCallbacks.isEmpty()) {
+				aCallbacks.put(aEvent, aEventCallbacks.toArray(new Callback[aEventCallbacks.size()]));
+			}
+		}
+
+		return aCallbacks.isEmpty() ? NONE : new LifecycleCallbacks(aCallbacks);
+	}
+
+	/**
+	 * Invoke the callbacks for the event.  Errors raised by the callbacks are logged, and do not stop the remaining
+	 * callbacks from being invoked.
+	 * @param theObj the entity involved in the event
+	 * @param theEvent the annotation denoting the event, such as {@link PrePersist}, {@link PostLoad}, etc.
+	 */
+	public void fire(final Object theObj, final Class<? extends Annotation> theEvent) {
+		Callback[] aCallbacks = mCallbacks.get(theEvent);
+
+		if (aCallbacks == null) {
+			return;
+		}
+
+		for (Callback aCallback : aCallbacks) {
+			try {
+				aCallback.invoke(theObj);
+			}
+			catch (Exception e) {
+				LOGGER.error("There was an error during lifecycle notification for annotation: " +
+							 theEvent + " on object: " + theObj + ".", e);
+			}
+		}
+	}
+
+	/**
+	 * A callback method of an entity, or of one of its listeners
+	 */
+	private static final class Callback {
+
+		/**
+		 * The listener the method is invoked on, or null if it is invoked on the entity
+		 */
+		private final Object mListener;
+
+		/**
+		 * The callback method
+		 */
+		private final Method mMethod;
+
+		private Callback(final Object theListener, final Method theMethod) {
+			mListener = theListener;
+			mMethod = theMethod;
+
+			// skip the access checks on every invocation
+			BeanReflectUtil.setAccessible(mMethod, true);
+		}
+
+		/**
+		 * Invoke the callback for the entity
+		 * @param theObj the entity
+		 * @throws Exception if the callback fails
+		 */
+		public void invoke(final Object theObj) throws Exception {
+			if (mListener == null) {
+				mMethod.invoke(theObj);
+			}
+			else {
+				mMethod.invoke(mListener, theObj);
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.impl;
+
+import com.clarkparsia.common.util.PrefixMapping;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * <p>Renders the namespace declarations of a query for the {@link PrefixMapping#GLOBAL global} prefixes the query
+ * actually uses, rather than for every registered prefix.  The query is scanned for prefixed names outside of IRIs,
+ * literals and comments; prefixes the query declares itself are left alone.  The rendered declarations are cached
+ * per set of used prefixes, and rendered again if the namespace of one of them changes.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public abstract class PrefixDeclarations {
+
+	/**
+	 * The maximum number of distinct sets of prefixes whose declarations are cached
+	 */
+	private static final int CACHE_SIZE = 1000;
+
+	/**
+	 * The rendered declarations keyed by the sorted list of prefixes they declare
+	 */
+	private final Cache<List<String>, Declarations> mCache = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+	/**
+	 * Render the declarations of the prefixes in the syntax of the query language
+	 * @param thePrefixes the prefixes, not empty
+	 * @param theNamespaces the namespace of each prefix
+	 * @return the declarations
+	 */
+	protected abstract String render(List<String> thePrefixes, List<String> theNamespaces);
+
+	/**
+	 * Return the declarations of the global prefixes used in the query
+	 * @param theQuery the query
+	 * @return the declarations, or the empty string if the query does not use any global prefixes
+	 */
+	public String declarations(final CharSequence theQuery) {
+		List<String> aPrefixes = new ArrayList<String>(usedPrefixes(theQuery));
+
+		if (aPrefixes.isEmpty()) {
+			return "";
+		}
+
+		List<String> aNamespaces = new ArrayList<String>(aPrefixes.size());
+		for (String aPrefix : aPrefixes) {
+			aNamespaces.add(PrefixMapping.GLOBAL.getNamespace(aPrefix));
+		}
+
+		Declarations aDeclarations = mCache.getIfPresent(aPrefixes);
+
+		if (aDeclarations == null || !aDeclarations.mNamespaces.equals(aNamespaces)) {
+			aDeclarations = new Declarations(aNamespaces, render(aPrefixes, aNamespaces));
+
+			mCache.put(Collections.unmodifiableList(aPrefixes), aDeclarations);
+		}
+
+		return aDeclarations.mText;
+	}
+
+	/**
+	 * Return the prefixes registered in {@link PrefixMapping#GLOBAL} which are used in prefixed names in the query,
+	 * and not declared by the query itself
+	 * @param theQuery the query
+	 * @return the used prefixes, sorted
+	 */
+	public static SortedSet<String> usedPrefixes(final CharSequence theQuery) {
+		SortedSet<String> aUsed = new TreeSet<String>();
+		Set<String> aDeclared = new HashSet<String>();
+
+		final int aLength = theQuery.length();
+
+		int i = 0;
+		while (i < aLength) {
+			char c = theQuery.charAt(i);
+
+			if (c == '<') {
+				// skip over IRIs, the scheme of an IRI is not a prefix; a '<' which does not start one is an operator
+				int aEnd = i + 1;
+				while (aEnd < aLength && !isIRIEnd(theQuery.charAt(aEnd))) {
+					aEnd++;
+				}
+
+				i = aEnd < aLength && theQuery.charAt(aEnd) == '>' ? aEnd + 1 : i + 1;
+			}
+			else if (c == '"' || c == '\'') {
+				// skip over literals
+				int aEnd = i + 1;
+				while (aEnd < aLength && theQuery.charAt(aEnd) != c) {
+					if (theQuery.charAt(aEnd) == '\\') {
+						aEnd++;
+					}
+					aEnd++;
+				}
+
+				i = aEnd + 1;
+			}
+			else if (c == '#') {
+				// skip over comments
+				while (i < aLength && theQuery.charAt(i) != '\n') {
+					i++;
+				}
+			}
+			else if (c == ':') {
+				int aStart = i;
+				while (aStart > 0 && isNameChar(theQuery.charAt(aStart - 1))) {
+					aStart--;
+				}
+
+				if (aStart < i) {
+					String aPrefix = theQuery.subSequence(aStart, i).toString();
+
+					if (isDeclaration(theQuery, aStart)) {
+						aDeclared.add(aPrefix);
+					}
+					else {
+						addPrefix(aUsed, aPrefix);
+
+						// a prefix can't contain a '.' where a pattern ends, eg ?s ?p ?o.foaf:name
+						for (int aDot = aPrefix.indexOf('.'); aDot != -1; aDot = aPrefix.indexOf('.', aDot + 1)) {
+							addPrefix(aUsed, aPrefix.substring(aDot + 1));
+						}
+					}
+				}
+
+				i++;
+			}
+			else {
+				i++;
+			}
+		}
+
+		aUsed.removeAll(aDeclared);
+
+		return aUsed;
+	}
+
+	private static void addPrefix(final Set<String> theUsed, final String thePrefix) {
+		if (thePrefix.length() > 0
+			&& Character.isLetter(thePrefix.charAt(0))
+			&& PrefixMapping.GLOBAL.getNamespace(thePrefix) != null) {
+			theUsed.add(thePrefix);
+		}
+	}
+
+	private static boolean isNameChar(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+	}
+
+	private static boolean isIRIEnd(final char c) {
+		return c == '>' || c == '<' || c == '"' || c == '{' || c == '}' || Character.isWhitespace(c);
+	}
+
+	/**
+	 * Return whether or not the prefix starting at the index is declared there, ie it follows the PREFIX keyword
+	 * @param theQuery the query
+	 * @param theStart the start of the prefix
+	 * @return true if the prefix is being declared, false otherwise
+	 */
+	private static boolean isDeclaration(final CharSequence theQuery, final int theStart) {
+		int aEnd = theStart;
+		while (aEnd > 0 && Character.isWhitespace(theQuery.charAt(aEnd - 1))) {
+			aEnd--;
+		}
+
+		String aKeyword = "prefix";
+
+		return aEnd >= aKeyword.length()
+			   && aEnd < theStart
+			   && theQuery.subSequence(aEnd - aKeyword.length(), aEnd).toString().equalsIgnoreCase(aKeyword);
+	}
+
+	/**
+	 * Rendered declarations, along with the namespaces they were rendered for
+	 */
+	private static final class Declarations {
+		private final List<String> mNamespaces;
+		private final String mText;
+
+		private Declarations(final List<String> theNamespaces, final String theText) {
+			mNamespaces = theNamespaces;
+			mText = theText;
+		}
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.impl;
+
+import com.clarkparsia.empire.Dialect;
+import com.clarkparsia.empire.impl.sparql.SPARQLDialect;
+
+import org.openrdf.model.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A query string as parsed by {@link RdfQuery}: validated against its dialect once, with the limit and offset
+ * pulled out of the text, and the parameter tokens recorded as slots between the fixed pieces of the query, so binding
+ * the parameter values is a single pass over the pieces.  Templates are immutable, {@link RdfQueryFactory} caches
+ * them by query string and shares them between the queries it creates.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+final class QueryTemplate {
+
+	/**
+	 * Regex matching the operations which start a SPARQL update, after the prologue
+	 */
+	private static final Pattern UPDATE_RE = Pattern.compile("^\\s*((prefix\\s+[^:\\s]*:\\s*|base\\s+)<[^>]*>\\s*)*"
+															  + "(insert|delete|with|load|clear|create|drop|copy|move|add)\\b.*",
+															  Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/**
+	 * Regex matching a limit in the query string, the value is the first group
+	 */
+	private static final Pattern LIMIT_RE = Pattern.compile("limit\\s*([0-9]+)");
+
+	/**
+	 * Regex matching an offset in the query string, the value is the first group
+	 */
+	private static final Pattern OFFSET_RE = Pattern.compile("offset\\s*([0-9]+)");
+
+	/**
+	 * Regex matching a parameter token, either named, <code>??name</code>, with the name as the first group, or unnamed,
+	 * <code>??</code>, followed by whitespace or the end of a pattern
+	 */
+	private static final Pattern PARAMETER_RE = Pattern.compile(RdfQuery.VT_RE + "(?:([a-zA-Z0-9_\\-]+)|(?=[\\.\\s})]))");
+
+	/**
+	 * The query string as provided by the user
+	 */
+	private final String mQuery;
+
+	/**
+	 * The dialect of the query
+	 */
+	private final Dialect mDialect;
+
+	/**
+	 * Whether or not this is a SPARQL update rather than a query
+	 */
+	private final boolean mIsUpdate;
+
+	/**
+	 * Whether or not the query string appears to be a construct query
+	 */
+	private final boolean mIsConstruct;
+
+	/**
+	 * Whether or not the query string starts with its query form (select, construct, etc.)
+	 */
+	private final boolean mHasQueryForm;
+
+	/**
+	 * Whether or not the query string starts with its graph patterns, without the pattern keyword
+	 */
+	private final boolean mIsPatternOnly;
+
+	/**
+	 * The limit specified in the query string, or -1
+	 */
+	private final int mLimit;
+
+	/**
+	 * The offset specified in the query string, or -1
+	 */
+	private final int mOffset;
+
+	/**
+	 * The fixed pieces of the query, there is a parameter slot between each consecutive pair
+	 */
+	private final String[] mPieces;
+
+	/**
+	 * The name of the parameter of each slot, or null for unnamed parameters
+	 */
+	private final String[] mSlotNames;
+
+	/**
+	 * The index of the parameter of each slot, counting from 1, or 0 for named parameters
+	 */
+	private final int[] mSlotIndexes;
+
+	/**
+	 * The names of the named parameters, in the order they first appear
+	 */
+	private final Set<String> mParameterNames;
+
+	/**
+	 * The number of unnamed parameters
+	 */
+	private final int mParameterCount;
+
+	/**
+	 * Parse and validate the query string
+	 * @param theQuery the query string
+	 * @param theDialect the dialect of the query factory
+	 * @throws IllegalArgumentException if the query is not valid
+	 */
+	QueryTemplate(final String theQuery, final Dialect theDialect) {
+		mQuery = theQuery;
+
+		mIsUpdate = UPDATE_RE.matcher(theQuery).matches();
+
+		String aBody = theQuery;
+		int aLimit = -1;
+		int aOffset = -1;
+
+		if (mIsUpdate) {
+			// updates are always SPARQL, whatever language the data source is queried with
+			mDialect = theDialect instanceof SPARQLDialect ? theDialect : SPARQLDialect.instance();
+
+			((SPARQLDialect) mDialect).validateUpdateFormat(theQuery);
+		}
+		else {
+			mDialect = theDialect;
+
+			mDialect.validateQueryFormat(theQuery, RdfQuery.MAGIC_PROJECTION_VAR);
+
+			// the limit and offset of the query string are kept aside, they are appended when the query is built
+			Matcher aMatcher = LIMIT_RE.matcher(aBody);
+			if (aMatcher.find()) {
+				aLimit = Integer.parseInt(aMatcher.group(1));
+				aBody = aMatcher.replaceAll("");
+			}
+
+			aMatcher = OFFSET_RE.matcher(aBody);
+			if (aMatcher.find()) {
+				aOffset = Integer.parseInt(aMatcher.group(1));
+				aBody = aMatcher.replaceAll("");
+			}
+		}
+
+		mLimit = aLimit;
+		mOffset = aOffset;
+
+		String aStart = aBody.trim().toLowerCase();
+
+		// trying to guess if this is a construct query or not.  this is not foolproof, but since the only way of
+		// definitely specifying this right now is to cast a query object as an RdfQuery and use setConstruct, that
+		// is not ideal.  so we'll take a crack guessing it here.
+		mIsConstruct = aStart.startsWith("construct");
+		mHasQueryForm = startsWithKeyword(aStart);
+		mIsPatternOnly = !mHasQueryForm && !aStart.startsWith(mDialect.patternKeyword());
+
+		List<String> aPieces = new ArrayList<String>();
+		List<String> aSlotNames = new ArrayList<String>();
+		Set<String> aParameterNames = new LinkedHashSet<String>();
+		int aParameterCount = 0;
+
+		Matcher aMatcher = PARAMETER_RE.matcher(aBody);
+
+		int aStartIndex = 0;
+		while (aMatcher.find()) {
+			aPieces.add(aBody.substring(aStartIndex, aMatcher.start()));
+			aSlotNames.add(aMatcher.group(1));
+
+			if (aMatcher.group(1) != null) {
+				aParameterNames.add(aMatcher.group(1));
+			}
+			else {
+				aParameterCount++;
+			}
+
+			aStartIndex = aMatcher.end();
+		}
+
+		aPieces.add(aBody.substring(aStartIndex));
+
+		mPieces = aPieces.toArray(new String[aPieces.size()]);
+		mSlotNames = aSlotNames.toArray(new String[aSlotNames.size()]);
+		mSlotIndexes = new int[mSlotNames.length];
+
+		int aIndex = 1;
+		for (int i = 0; i < mSlotNames.length; i++) {
+			if (mSlotNames[i] == null) {
+				mSlotIndexes[i] = aIndex++;
+			}
+		}
+
+		mParameterNames = Collections.unmodifiableSet(aParameterNames);
+		mParameterCount = aParameterCount;
+	}
+
+	private static boolean startsWithKeyword(final String theQuery) {
+		return theQuery.startsWith("select") || theQuery.startsWith("construct") || theQuery.startsWith("ask") || theQuery.startsWith("describe");
+	}
+
+	/**
+	 * Return the query string as provided by the user
+	 * @return the query string
+	 */
+	public String getQuery() {
+		return mQuery;
+	}
+
+	/**
+	 * Return the dialect of the query, this is SPARQL for updates
+	 * @return the dialect
+	 */
+	public Dialect getDialect() {
+		return mDialect;
+	}
+
+	/**
+	 * Return whether or not this is a SPARQL update
+	 * @return true if it is an update, false otherwise
+	 */
+	public boolean isUpdate() {
+		return mIsUpdate;
+	}
+
+	/**
+	 * Return whether or not the query string starts with the construct keyword
+	 * @return true if it looks like a construct query, false otherwise
+	 */
+	public boolean isConstruct() {
+		return mIsConstruct;
+	}
+
+	/**
+	 * Return whether or not the query string includes its query form, select, construct, ask or describe.  When it
+	 * does not, the query string is just the patterns of the query, and the form has to be added.
+	 * @return true if the query has a query form, false otherwise
+	 */
+	public boolean hasQueryForm() {
+		return mHasQueryForm;
+	}
+
+	/**
+	 * Return whether or not the query string starts directly with its graph patterns, without the dialect's
+	 * {@link Dialect#patternKeyword pattern keyword}
+	 * @return true if the pattern keyword has to be added, false otherwise
+	 */
+	public boolean isPatternOnly() {
+		return mIsPatternOnly;
+	}
+
+	/**
+	 * Return the limit specified in the query string
+	 * @return the limit, or -1 if there is none
+	 */
+	public int getLimit() {
+		return mLimit;
+	}
+
+	/**
+	 * Return the offset specified in the query string
+	 * @return the offset, or -1 if there is none
+	 */
+	public int getOffset() {
+		return mOffset;
+	}
+
+	/**
+	 * Return the names of the named parameters of the query
+	 * @return the parameter names
+	 */
+	public Set<String> getParameterNames() {
+		return mParameterNames;
+	}
+
+	/**
+	 * Return the number of unnamed parameters of the query
+	 * @return the number of unnamed parameters
+	 */
+	public int getParameterCount() {
+		return mParameterCount;
+	}
+
+	/**
+	 * Return the query, without its limit and offset, with the parameter values in place of the parameter tokens.
+	 * Parameters without a value are replaced with variables: named parameters, <code>??foo</code>, with the variable of
+	 * the same name, <code>?foo</code>, and unnamed parameters with an anonymous variable.
+	 * @param theNamedParameters the values of the named parameters
+	 * @param theIndexedParameters the values of the unnamed parameters, keyed by their index counting from 1
+	 * @return the query with the parameters bound
+	 */
+	public String bind(final Map<String, Value> theNamedParameters, final Map<Integer, Value> theIndexedParameters) {
+		if (mSlotNames.length == 0) {
+			return mPieces[0];
+		}
+
+		StringBuilder aQuery = new StringBuilder(mQuery.length() + 32 * mSlotNames.length);
+
+		for (int i = 0; i < mSlotNames.length; i++) {
+			aQuery.append(mPieces[i]);
+
+			Value aValue = mSlotNames[i] != null
+						   ? theNamedParameters.get(mSlotNames[i])
+						   : theIndexedParameters.get(mSlotIndexes[i]);
+
+			if (aValue != null) {
+				aQuery.append(mDialect.asQueryString(aValue));
+			}
+			else if (mSlotNames[i] != null) {
+				aQuery.append(mDialect.asVar(mSlotNames[i]));
+			}
+			else {
+				aQuery.append(mDialect.asVar(null)).append(" ");
+			}
+		}
+
+		aQuery.append(mPieces[mSlotNames.length]);
+
+		return aQuery.toString();
+	}
+}
@@ -25,6 +25,7 @@ import org.openrdf.query.BindingSet;
 import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.ResultSet;
 import com.clarkparsia.empire.ds.QueryException;
+import com.clarkparsia.empire.ds.SupportsUpdates;
 import com.clarkparsia.empire.Dialect;
 import com.clarkparsia.empire.EmpireOptions;
 
@@ -54,15 +55,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * <p>Implementation of the JPA {@link Query} interface for RDF based query languages.</p>
  *
+ * <p>SPARQL 1.1 Update requests, such as <code>DELETE { .. } INSERT { .. } WHERE { .. }</code>, are run with
+ * {@link #executeUpdate} and take parameters the same way queries do.  They are executed natively by data sources
+ * which {@link SupportsUpdates support updates}.</p>
+ *
  * @author	Michael Grove
  * @since 	0.1
- * @version 0.7
+ * @version 0.8
  */
 public final class RdfQuery implements Query {
 	/**
@@ -103,9 +105,9 @@ public final class RdfQuery implements Query {
 	private DataSource mSource;
 
 	/**
-	 * The raw query string
+	 * The parsed query string
 	 */
-	private String mQuery;
+	private final QueryTemplate mTemplate;
 
 	/**
 	 * The bean class, this is the type of objects returned by this query
@@ -153,9 +155,10 @@ public final class RdfQuery implements Query {
 	 */
 	private Dialect mQueryDialect;
 
-	private static String UNAMED_VAR_REGEX = VT_RE + "[\\.\\s})]";
-
-	private static String NAMED_VAR_REGEX = VT_RE + "[a-zA-Z0-9_\\-]+";
+	/**
+	 * The EntityManager which created this query, if any, notified when an update is executed
+	 */
+	private EntityManagerImpl mEntityManager;
 
 	/**
 	 * Create a new RdfQuery
@@ -163,22 +166,34 @@ public final class RdfQuery implements Query {
 	 * @param theQueryString the query string
 	 */
 	public RdfQuery(final DataSource theSource, String theQueryString) {
+		this(theSource, new QueryTemplate(theQueryString, theSource.getQueryFactory().getDialect()));
+	}
+
+	/**
+	 * Create a new RdfQuery from an already parsed query string
+	 * @param theSource the data source the query is run against
+	 * @param theTemplate the parsed query
+	 */
+	RdfQuery(final DataSource theSource, final QueryTemplate theTemplate) {
 		mSource = theSource;
 
-		mQuery = theQueryString;
+		mTemplate = theTemplate;
+
+		mQueryDialect = theTemplate.getDialect();
+
+		mIsConstruct = theTemplate.isConstruct();
 
-		mQueryDialect = theSource.getQueryFactory().getDialect();
+		mLimit = theTemplate.getLimit();
 
-		mQueryDialect.validateQueryFormat(getQueryString(), getProjectionVarName());
+		mOffset = theTemplate.getOffset();
 
-		// trying to guess if this is a construct query or not.  this is not foolproof, but since the only way of
-		// definitely specifying this right now is to cast a query object as an RdfQuery and use setConstruct, that
-		// is not ideal.  so we'll take a crack guessing it here.
-		if (getQueryString().trim().toLowerCase().startsWith("construct")) {
-			setConstruct(true);
+		for (String aName : theTemplate.getParameterNames()) {
+			mNamedParameters.put(aName, null);
 		}
 
-		parseParameters();
+		for (int aIndex = 1; aIndex <= theTemplate.getParameterCount(); aIndex++) {
+			mIndexedParameters.put(aIndex, null);
+		}
 	}
 
 	/**
@@ -186,7 +201,7 @@ public final class RdfQuery implements Query {
 	 */
 	@Override
 	public String toString() {
-		return query();
+		return isUpdate() ? update() : query();
 	}
 
 	/**
@@ -229,6 +244,23 @@ public final class RdfQuery implements Query {
 		return this;
 	}
 
+	/**
+	 * Return whether or not this is a SPARQL update, which is run with {@link #executeUpdate}, rather than a query
+	 * @return true if this is an update, false otherwise
+	 */
+	public boolean isUpdate() {
+		return mTemplate.isUpdate();
+	}
+
+	/**
+	 * Set the EntityManager which created this query.  Pending changes of the EntityManager are flushed before an update
+	 * is executed, and the entities it manages and caches are invalidated afterwards.
+	 * @param theEntityManager the EntityManager
+	 */
+	void setEntityManager(final EntityManagerImpl theEntityManager) {
+		mEntityManager = theEntityManager;
+	}
+
 	/**
 	 * Return the DataSource the query will be run against.
 	 * @return the source
@@ -252,7 +284,7 @@ public final class RdfQuery implements Query {
 	 * @return the un-modified query string
 	 */
 	protected String getQueryString() {
-		return mQuery;
+		return mTemplate.getQuery();
 	}
 
 	/**
@@ -354,6 +386,10 @@ public final class RdfQuery implements Query {
 	 */
 	@SuppressWarnings("unchecked")
 	public List getResultList() {
+		if (isUpdate()) {
+			throw new IllegalStateException("Cannot get the results of an update, use executeUpdate");
+		}
+
 		List aList = new ProxyAwareList();
 
 		try {
@@ -453,10 +489,39 @@ public final class RdfQuery implements Query {
 	}
 
 	/**
+	 * Execute the SPARQL update.  Rather than the number of entities, this returns the number of statements the update
+	 * inserted and deleted, or -1 when the data source cannot report it.
 	 * @inheritDoc
+	 * @throws UnsupportedOperationException if the data source does not {@link SupportsUpdates support updates}
 	 */
 	public int executeUpdate() {
-		throw new UnsupportedOperationException("Update operations are not supported.");
+		if (!isUpdate()) {
+			throw new IllegalStateException("Cannot execute a query as an update");
+		}
+
+		// the update goes through the data source of the EntityManager, rather than the one the query was created by,
+		// so a transactional wrapper around the database gets to refuse updates it could not roll back
+		DataSource aSource = mEntityManager != null ? (DataSource) mEntityManager.getDelegate() : getSource();
+
+		if (!(aSource instanceof SupportsUpdates)) {
+			throw new UnsupportedOperationException("Update operations are not supported by the data source");
+		}
+
+		if (mEntityManager != null) {
+			mEntityManager.flush();
+		}
+
+		try {
+			return ((SupportsUpdates) aSource).update(update());
+		}
+		catch (QueryException e) {
+			throw new PersistenceException(e);
+		}
+		finally {
+			if (mEntityManager != null) {
+				mEntityManager.updated();
+			}
+		}
 	}
 
 	/**
@@ -635,149 +700,35 @@ public final class RdfQuery implements Query {
 		}
 	}
 
-	/**
-	 * Given the query string fragment, replace all variable parameter tokens with the values specified by the user
-	 * through the various setParameter methods.
-	 * @param theQuery the query fragment
-	 * @return the query string with all parameter variables replaced
-	 * @see #setParameter
-	 */
-	private String insertVariables(String theQuery) {
-		String aBuffer = theQuery;
-
-		for (String aName : mNamedParameters.keySet()) {
-			boolean containsParam = Pattern.compile(VT_RE+aName).matcher(aBuffer).find();
-			if (mNamedParameters.get(aName) != null && containsParam) {
-				aBuffer = replaceVariable(aBuffer, aName, mNamedParameters.get(aName));
-			}
-		}
-
-		int aIndex = 1;
-		while (aBuffer.indexOf(VARIABLE_TOKEN) != -1) {
-			boolean containsParam = Pattern.compile(VT_RE).matcher(aBuffer).find();
-			if (mIndexedParameters.get(aIndex) != null && containsParam) {
-				aBuffer = aBuffer.replaceFirst(VT_RE, mQueryDialect.asQueryString(mIndexedParameters.get(aIndex++)));
-			}
-			else {
-				break;
-			}
-		}
-
-		return aBuffer;
-	}
-
-	private String replaceVariable(String theQuery, String theVariable, Value theValue) {
-		// using this instead of replaceAll -- which keeps giving group does not exist errors.  I think my regex must
-		// be subtly (is that a word?) wrong and I'm just not seeing it.  This works, for now.
-
-		StringBuffer aQueryBuffer = new StringBuffer();
-
-		Matcher m = Pattern.compile(VT_RE+theVariable).matcher(theQuery);
-
-		int start = 0;
-		while (m.find()) {
-			aQueryBuffer.append(theQuery.substring(start, m.start()));
-			aQueryBuffer.append(mQueryDialect.asQueryString(theValue));
-
-			start = m.start() + m.group(0).length();
-		}
-
-		aQueryBuffer.append(theQuery.substring(start));
-
-		return aQueryBuffer.toString();
-	}
-
-	/**
-	 * Given a query fragment from {@link #getQueryString} pull out all the variable parameters
-	 */
-	private void parseParameters() {
-		mNamedParameters.clear();
-		mIndexedParameters.clear();
-
-		Matcher aMatcher = Pattern.compile(UNAMED_VAR_REGEX).matcher(getQueryString());
-
-		// i'm pretty sure the JPA stuff is 1-indexed rather than the normal 0-indexed
-		int aIndex = 1;
-		while (aMatcher.find()) {
-			mIndexedParameters.put(aIndex++, null);
-		}
-
-		aMatcher = Pattern.compile(NAMED_VAR_REGEX).matcher(getQueryString());
-
-		while (aMatcher.find()) {
-			mNamedParameters.put(getQueryString().substring(aMatcher.start() + VARIABLE_TOKEN.length(), aMatcher.end()), null);
-		}
-	}
-
-	protected boolean startsWithKeyword(String theQuery) {
-		String q = theQuery.toLowerCase().trim();
-		return q.startsWith("select") || q.startsWith("construct") || q.startsWith("ask") || q.startsWith("describe");
-	}
-
 	/**
 	 * Return a valid, executable query instance from the specified query fragment, and user specified settings such
 	 * as parameter values, limit, offset, etc.
 	 * @return a valid query that can be run against a DataSource
 	 */
 	protected String query() {
-		// use some regexs to look for and remove limits and offsets specified in the query string and store them locally
-		// these will get postfixed to the query later on.
-		boolean containsLimit = Pattern.compile("limit(\\s)*[0-9]+[^}]*").matcher(getQueryString()).find();
-		boolean containsOffset = Pattern.compile("offset(\\s)*[0-9]+[^}]*").matcher(getQueryString()).find();
-
-		if (containsLimit) {
-			String aLimitGrabRegex = "limit(\\s)*[0-9]+";
-			Matcher m = Pattern.compile(aLimitGrabRegex).matcher(getQueryString());
-			m.find();
-
-			if (getMaxResults() == -1) {
-				setMaxResults(Integer.parseInt(m.group(0).split(" ")[1]));
-			}
-
-			mQuery = mQuery.replaceAll(aLimitGrabRegex, "");
-		}
-
-		if (containsOffset) {
-			String aOffsetGrabRegex = "offset(\\s)*[0-9]+";
-			Matcher m = Pattern.compile(aOffsetGrabRegex).matcher(getQueryString());
-			m.find();
-
-			if (getFirstResult() == -1) {
-				setFirstResult(Integer.parseInt(m.group(0).split(" ")[1]));
-			}
-			
-			mQuery = mQuery.replaceAll(aOffsetGrabRegex, "");
-		}
-
-		String queryStr = insertVariables(getQueryString()).trim();
-
-		queryStr = replaceUnusedVariableTokens(queryStr);
-
-//		validateVariables();
+		StringBuffer aQuery = new StringBuffer(mTemplate.bind(mNamedParameters, mIndexedParameters).trim());
 
 		// TODO: should we get the values for the keywords used here (select, distinct, construct, limit, offset) from
 		// the subclass rather than hard coding them?  or will these be the same for all rdf based query languages?
 
-		StringBuffer aQuery = new StringBuffer(queryStr);
+		if (mTemplate.isPatternOnly()) {
+			aQuery.insert(0, mQueryDialect.patternKeyword());
+		}
+
+		if (!mTemplate.hasQueryForm()) {
+			StringBuffer aStart = new StringBuffer();
 
-        if (!aQuery.toString().toLowerCase().startsWith(mQueryDialect.patternKeyword())
-			&& !startsWithKeyword(aQuery.toString())) {
-            aQuery.insert(0, mQueryDialect.patternKeyword());
-        }
+			aStart.append(isConstruct() ? "construct " : "select ").append(isDistinct() ? " distinct " : "").append(" ");
 
-        StringBuffer aStart = new StringBuffer();
-		if (!startsWithKeyword(getQueryString())) {
-			aStart.insert(0, isConstruct() ? "construct " : "select ").append(isDistinct() ? " distinct " : "").append(" ");
-			
 			if (isConstruct()) {
 				aStart.append(" * ");
 			}
 			else {
 				aStart.append(mQueryDialect.asProjectionVar(getProjectionVarName())).append(" ");
 			}
-		}
 
-        aQuery.insert(0, aStart.toString());
+			aQuery.insert(0, aStart.toString());
+		}
 
 		if (getMaxResults() != -1) {
 			aQuery.append(" limit ").append(getMaxResults());
@@ -793,27 +744,14 @@ public final class RdfQuery implements Query {
 	}
 
 	/**
-	 * Replaces all unused variable place holders with syntactically correct replacements.  Unnamed variable tokens "??"
-	 * in the query string get replaced with "[]" and named variable tokens "??foo" get turned into normal variables,
-	 * e.g. "?foo"
-	 * @param theQuery the query
-	 * @return the query w/ unused variables replaced w/ the appropriate equivalents.
+	 * Return the executable update request from the update string and the parameter values
+	 * @return the update request
 	 */
-	private String replaceUnusedVariableTokens(String theQuery) {
-		StringBuffer aQueryBuffer = new StringBuffer();
-
-		Matcher m = Pattern.compile(NAMED_VAR_REGEX).matcher(theQuery);
-
-		int start = 0;
-		while (m.find()) {
-			aQueryBuffer.append(theQuery.substring(start, m.start()));
-			aQueryBuffer.append(mQueryDialect.asVar(m.group(0).replaceAll(VT_RE, "")));
-
-			start = m.start() + m.group(0).length();
-		}
+	protected String update() {
+		StringBuffer aUpdate = new StringBuffer(mTemplate.bind(mNamedParameters, mIndexedParameters).trim());
 
-		aQueryBuffer.append(theQuery.substring(start));
+		mQueryDialect.insertNamespaces(aUpdate);
 
-		return aQueryBuffer.toString().replaceAll(UNAMED_VAR_REGEX, mQueryDialect.asVar(null) + " ");
+		return aUpdate.toString();
 	}
 }
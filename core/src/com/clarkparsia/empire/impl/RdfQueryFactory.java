@@ -20,6 +20,9 @@ import com.clarkparsia.empire.QueryFactory;
 import com.clarkparsia.empire.Empire;
 import com.clarkparsia.empire.Dialect;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import javax.persistence.Query;
 import javax.persistence.NamedQuery;
 import javax.persistence.QueryHint;
@@ -36,9 +39,12 @@ import java.util.Arrays;
  * <p>Implements the common operations of a {@link QueryFactory} and defers query language specific operations
  * to concrete implementations of this class.</p>
  *
+ * <p>Query strings are parsed and validated once, the parsed {@link QueryTemplate templates} of the most recently
+ * used queries are cached, so creating the same query, or the same named query, again only binds new parameters.</p>
+ *
  * @author Michael Grove
  * @since 0.1
- * @version 0.6.5
+ * @version 0.8
  */
 public class RdfQueryFactory implements QueryFactory {
 	/**
@@ -57,6 +63,16 @@ public class RdfQueryFactory implements QueryFactory {
 	 */
 	private Map<String, NamedQueryInfo> mNamedQueries = new HashMap<String, NamedQueryInfo>();
 
+	/**
+	 * The maximum number of parsed queries kept by a factory
+	 */
+	private static final int TEMPLATE_CACHE_SIZE = 1000;
+
+	/**
+	 * The parsed query strings, keyed by query string
+	 */
+	private final Cache<String, QueryTemplate> mTemplates = CacheBuilder.newBuilder().maximumSize(TEMPLATE_CACHE_SIZE).build();
+
 	/**
 	 * Create a new AbstractQueryFactory
 	 * @param theSource the data source the queries will be executed against
@@ -100,7 +116,25 @@ public class RdfQueryFactory implements QueryFactory {
 	 * @return a new query
 	 */
 	protected RdfQuery newQuery(String theQuery) {
-		return new RdfQuery(mSource, theQuery);
+		return new RdfQuery(mSource, template(theQuery));
+	}
+
+	/**
+	 * Return the parsed query string, from the cache if it has been parsed before
+	 * @param theQuery the query string
+	 * @return the parsed query
+	 * @throws IllegalArgumentException if the query is not valid
+	 */
+	private QueryTemplate template(final String theQuery) {
+		QueryTemplate aTemplate = mTemplates.getIfPresent(theQuery);
+
+		if (aTemplate == null) {
+			aTemplate = new QueryTemplate(theQuery, getDialect());
+
+			mTemplates.put(theQuery, aTemplate);
+		}
+
+		return aTemplate;
 	}
 
 	/**
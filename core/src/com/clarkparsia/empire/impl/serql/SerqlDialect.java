@@ -16,21 +16,22 @@
 package com.clarkparsia.empire.impl.serql;
 
 import com.clarkparsia.empire.Dialect;
+import com.clarkparsia.empire.impl.PrefixDeclarations;
 import com.clarkparsia.empire.impl.RdfQuery;
 import com.clarkparsia.openrdf.query.SesameQueryUtils;
 
-import com.clarkparsia.common.util.PrefixMapping;
-
 import org.openrdf.model.Value;
 import org.openrdf.query.parser.serql.SeRQLParserFactory;
 import org.openrdf.query.MalformedQueryException;
 
+import java.util.List;
+
 /**
  * <p>Represents the SERQL query language</p>
  *
  * @author Michael Grove
  * @since 0.1
- * @version 0.7.1
+ * @version 0.8
  */
 public final class SerqlDialect implements Dialect {
 	/**
@@ -38,6 +39,25 @@ public final class SerqlDialect implements Dialect {
 	 */
 	private static SerqlDialect INSTANCE;
 
+	/**
+	 * The namespace declarations of the global namespaces used by queries
+	 */
+	private final PrefixDeclarations mPrefixes = new PrefixDeclarations() {
+		protected String render(final List<String> thePrefixes, final List<String> theNamespaces) {
+			StringBuilder aNS = new StringBuilder("using namespace\n");
+
+			for (int i = 0; i < thePrefixes.size(); i++) {
+				if (i > 0) {
+					aNS.append(",\n");
+				}
+
+				aNS.append(thePrefixes.get(i)).append(" = <").append(theNamespaces.get(i)).append(">");
+			}
+
+			return aNS.toString();
+		}
+	};
+
 	/**
 	 * Create a new SerqlDialect, private to protect access.
 	 */
@@ -79,11 +99,10 @@ public final class SerqlDialect implements Dialect {
 	 * @inheritDoc
 	 */
 	public void validateQueryFormat(final String theQuery, final String theProjectionVarName) {
-		String aQuery = theQuery.toLowerCase().trim();
-		aQuery = aQuery.replaceAll(RdfQuery.VT_RE, asProjectionVar("x"));
+		String aQuery = theQuery.trim().replaceAll(RdfQuery.VT_RE, asProjectionVar("x"));
 
 		if (!startsWithKeyword(aQuery)) {
-            if (!aQuery.contains(patternKeyword())) {
+            if (!aQuery.toLowerCase().contains(patternKeyword())) {
                 aQuery = " " + patternKeyword() + " " + aQuery;
             }
 
@@ -120,28 +139,9 @@ public final class SerqlDialect implements Dialect {
 	 * @inheritDoc
 	 */
 	public void insertNamespaces(final StringBuffer theBuffer) {
-		StringBuffer aNS = new StringBuffer();
-		boolean aFirst = true;
-		for (String aPrefix : PrefixMapping.GLOBAL.getPrefixes()) {
-			if (aPrefix.trim().equals("")) {
-				continue;
-			}
-
-			if (aFirst) {
-				aNS.append("using namespace\n");
-				aFirst = false;
-			}
-			else {
-				aNS.append(",\n");
-			}
-
-			aNS.append(aPrefix).append(" = <").append(PrefixMapping.GLOBAL.getNamespace(aPrefix)).append(">");
-		}
-
-		theBuffer.append("\n").append(aNS);
+		theBuffer.append("\n").append(mPrefixes.declarations(theBuffer));
 	}
 
-
 	/**
 	 * @inheritDoc
 	 */
@@ -17,10 +17,10 @@ package com.clarkparsia.empire.impl.sparql;
 
 import com.clarkparsia.empire.Dialect;
 
+import com.clarkparsia.empire.impl.PrefixDeclarations;
 import com.clarkparsia.empire.impl.RdfQuery;
 
 import com.clarkparsia.openrdf.query.SesameQueryUtils;
-import com.clarkparsia.common.util.PrefixMapping;
 
 import org.openrdf.query.MalformedQueryException;
 
@@ -28,13 +28,15 @@ import org.openrdf.query.parser.sparql.SPARQLParserFactory;
 
 import org.openrdf.model.Value;
 
+import java.util.List;
+
 /**
  * <p>Represents the SPARQL query language.</p>
  *
  * @author Michael Grove
  *
  * @since 0.1
- * @version 0.7.1
+ * @version 0.8
  */
 public class SPARQLDialect implements Dialect {
 	/**
@@ -42,6 +44,21 @@ public class SPARQLDialect implements Dialect {
 	 */
 	private static SPARQLDialect INSTANCE;
 
+	/**
+	 * The PREFIX declarations of the global namespaces used by queries
+	 */
+	private final PrefixDeclarations mPrefixes = new PrefixDeclarations() {
+		protected String render(final List<String> thePrefixes, final List<String> theNamespaces) {
+			StringBuilder aNS = new StringBuilder();
+
+			for (int i = 0; i < thePrefixes.size(); i++) {
+				aNS.append("PREFIX ").append(thePrefixes.get(i)).append(": <").append(theNamespaces.get(i)).append(">\n");
+			}
+
+			return aNS.append("\n").toString();
+		}
+	};
+
 	/**
 	 * Create a new SPARQLDialect
 	 */
@@ -86,11 +103,10 @@ public class SPARQLDialect implements Dialect {
 	 * @inheritDoc
 	 */
 	public void validateQueryFormat(final String theQuery, final String theProjectionVarName) {
-		String aQuery = theQuery.toLowerCase().trim();
-		aQuery = aQuery.replaceAll(RdfQuery.VT_RE, asProjectionVar("x"));
+		String aQuery = theQuery.trim().replaceAll(RdfQuery.VT_RE, asProjectionVar("x"));
 
 		if (!startsWithKeyword(aQuery)) {
-            if (!aQuery.contains(patternKeyword())) {
+            if (!aQuery.toLowerCase().contains(patternKeyword())) {
                 aQuery = " " + patternKeyword() + " " + aQuery;
             }
 
@@ -112,6 +128,27 @@ public class SPARQLDialect implements Dialect {
 		}
 	}
 
+	/**
+	 * Validate that the update, with its parameter tokens, is a valid SPARQL 1.1 update request
+	 * @param theUpdate the update
+	 * @throws IllegalArgumentException if the update is not valid
+	 */
+	public void validateUpdateFormat(final String theUpdate) {
+		StringBuffer aBuffer = new StringBuffer(theUpdate.trim().replaceAll(RdfQuery.VT_RE, asProjectionVar("x")));
+
+		insertNamespaces(aBuffer);
+
+		try {
+			new SPARQLParserFactory().getParser().parseUpdate(aBuffer.toString(), "http://example.org");
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid update: " + aBuffer.toString(), e);
+		}
+		catch (MalformedQueryException e) {
+			throw new IllegalArgumentException("Invalid update: " + aBuffer.toString(), e);
+		}
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -130,21 +167,7 @@ public class SPARQLDialect implements Dialect {
 	 * @inheritDoc
 	 */
 	public void insertNamespaces(final StringBuffer theBuffer) {
-		StringBuffer aNS = new StringBuffer();
-
-		for (String aPrefix : PrefixMapping.GLOBAL.getPrefixes()) {
-			if (aPrefix.trim().equals("")) {
-				continue;
-			}
-
-			aNS.append("PREFIX ").append(aPrefix).append(": <").append(PrefixMapping.GLOBAL.getNamespace(aPrefix)).append(">\n");
-		}
-
-		if (aNS.length() > 0) {
-			aNS.append("\n");
-		}
-
-		theBuffer.insert(0, aNS);
+		theBuffer.insert(0, mPrefixes.declarations(theBuffer));
 	}
 
 	/**
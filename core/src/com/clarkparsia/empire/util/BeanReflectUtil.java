@@ -56,6 +56,9 @@ import java.util.Date;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>Some utility methods which use the Java reflect stuff to do a lot of the runtime accessing of fields and methods
@@ -68,9 +71,10 @@ import java.util.HashMap;
 public final class BeanReflectUtil {
 
 	/**
-	 * Small cache so we don't have to recalcuation information via java.lang.reflect every time, which can be expensive
+	 * Small cache so we don't have to recalcuation information via java.lang.reflect every time, which can be expensive.
+	 * This is shared by every thread doing conversions, so it must be safe for concurrent access.
 	 */
-	private final static Map<Class<?>, BeanReflectCacheEntry> cache = new HashMap<Class<?>, BeanReflectCacheEntry>();
+	private final static ConcurrentMap<Class<?>, BeanReflectCacheEntry> cache = new ConcurrentHashMap<Class<?>, BeanReflectCacheEntry>();
 
 	/**
 	 * Cannot create instances of this class
@@ -78,6 +82,26 @@ public final class BeanReflectUtil {
 	private BeanReflectUtil() {
 	}
 
+	/**
+	 * Return the cache entry for the given class, creating it if it does not already exist.
+	 * @param theClass the class
+	 * @return the cache entry for the class
+	 */
+	private static BeanReflectCacheEntry cacheEntry(Class<?> theClass) {
+		BeanReflectCacheEntry aEntry = cache.get(theClass);
+
+		if (aEntry == null) {
+			aEntry = new BeanReflectCacheEntry();
+
+			BeanReflectCacheEntry aExisting = cache.putIfAbsent(theClass, aEntry);
+			if (aExisting != null) {
+				aEntry = aExisting;
+			}
+		}
+
+		return aEntry;
+	}
+
 	/**
 	 * More or less a more robust version of Class.forName.  Attempts to get around custom class loaders and
 	 * different class loaders in the current Thread context by trying *all* of them to load a class.
@@ -135,11 +159,7 @@ public final class BeanReflectUtil {
 	 * @return the class's annotation, or it's "inherited" annotation, or null if the annotation cannot be found.
 	 */
 	public static <T extends Annotation> T getAnnotation(Class<?> theClass, Class<T> theAnnotation) {
-		BeanReflectCacheEntry entry = cache.get(theClass);
-		if (entry == null) {
-			entry = new BeanReflectCacheEntry();
-			cache.put(theClass, entry);
-		}
+		BeanReflectCacheEntry entry = cacheEntry(theClass);
 		if (entry.mAnnotations.containsKey(theAnnotation)) {
 			return (T) entry.mAnnotations.get(theAnnotation);
 		}
@@ -292,12 +312,7 @@ public final class BeanReflectUtil {
 	 * @return the list of annotated setter methods
 	 */
 	public static Collection<Method> getAnnotatedSetters(Class theClass, boolean theInfer) {
-		BeanReflectCacheEntry entry = cache.get(theClass);
-		
-		if (entry == null) {
-			entry = new BeanReflectCacheEntry();
-			cache.put(theClass, entry);
-		}
+		BeanReflectCacheEntry entry = cacheEntry(theClass);
 
 		if (theInfer && entry.mInferredSetters != null) {
 			return entry.mInferredSetters;
@@ -387,12 +402,7 @@ public final class BeanReflectUtil {
 	 * @return the list of annotated get methods
 	 */
 	public static Collection<Method> getAnnotatedGetters(Class theClass, boolean theInfer) {
-		BeanReflectCacheEntry entry = cache.get(theClass);
-
-		if (entry == null) {
-			entry = new BeanReflectCacheEntry();
-			cache.put(theClass, entry);
-		}
+		BeanReflectCacheEntry entry = cacheEntry(theClass);
 
 		if (theInfer && entry.mInferredGetters != null) {
 			return entry.mInferredGetters;
@@ -489,12 +499,7 @@ public final class BeanReflectUtil {
 	 * @return the list of annotated fields on the class
 	 */
 	public static Collection<Field> getAnnotatedFields(Class theClass) {
-		BeanReflectCacheEntry entry = cache.get(theClass);
-
-		if (entry == null) {
-			entry = new BeanReflectCacheEntry();
-			cache.put(theClass, entry);
-		}
+		BeanReflectCacheEntry entry = cacheEntry(theClass);
 
 		if (entry.mFields != null) {
 			return entry.mFields;
@@ -1008,15 +1013,16 @@ public final class BeanReflectUtil {
 	}
 
 	private static class BeanReflectCacheEntry {
-		public Field mIdField;
+		public volatile Field mIdField;
 
-		public Collection<Field> mFields;
-		public Collection<Method> mSetters;
-		public Collection<Method> mGetters;
+		public volatile Collection<Field> mFields;
+		public volatile Collection<Method> mSetters;
+		public volatile Collection<Method> mGetters;
 
-		public Collection<Method> mInferredSetters;
-		public Collection<Method> mInferredGetters;
+		public volatile Collection<Method> mInferredSetters;
+		public volatile Collection<Method> mInferredGetters;
 
-		public Map<Class<? extends Annotation>, Annotation> mAnnotations = Maps.newHashMap();
+		// synchronized rather than concurrent, absent annotations are cached as null values
+		public Map<Class<? extends Annotation>, Annotation> mAnnotations = Collections.synchronizedMap(Maps.<Class<? extends Annotation>, Annotation>newHashMap());
 	}
 }
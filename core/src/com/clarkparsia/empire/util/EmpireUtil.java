@@ -138,7 +138,17 @@ public final class EmpireUtil {
 	 * @return true if it has a named graph specified, false otherwise
 	 */
 	public static boolean hasNamedGraphSpecified(Object theObj) {
-		NamedGraph aAnnotation = theObj.getClass().getAnnotation(NamedGraph.class);
+		return hasNamedGraphSpecified(theObj.getClass());
+	}
+
+	/**
+	 * Returns whether or not a NamedGraph context has been specified for the given type.
+	 * @param theClass the type to check
+	 * @return true if it has a named graph specified, false otherwise
+	 * @see #hasNamedGraphSpecified(Object)
+	 */
+	public static boolean hasNamedGraphSpecified(Class<?> theClass) {
+		NamedGraph aAnnotation = theClass.getAnnotation(NamedGraph.class);
 
 		return aAnnotation != null &&
 			   (aAnnotation.type() == NamedGraph.NamedGraphType.Instance || (aAnnotation.type() == NamedGraph.NamedGraphType.Static
@@ -153,17 +163,27 @@ public final class EmpireUtil {
 	 * @throws java.net.URISyntaxException if the named graph specified (when the type is {@link com.clarkparsia.empire.annotation.NamedGraph.NamedGraphType#Static}) is not a valid URI
 	 */
 	public static java.net.URI getNamedGraph(Object theObj) {
-		if (!hasNamedGraphSpecified(theObj)) {
+		return getNamedGraph(theObj.getClass(), asSupportsRdfId(theObj).getRdfId());
+	}
+
+	/**
+	 * Returns the URI of the named graph an instance of the given type with the given key is kept in.  This allows the
+	 * named graph to be resolved before there is an instance, such as when the instance is being loaded.
+	 * @param theClass the type of the instance
+	 * @param theKey the key of the instance
+	 * @return the URI of the named graph, or null if there isn't one
+	 * @see #getNamedGraph(Object)
+	 */
+	public static java.net.URI getNamedGraph(Class<?> theClass, SupportsRdfId.RdfKey theKey) {
+		if (!hasNamedGraphSpecified(theClass)) {
 			return null;
 		}
 
-		NamedGraph aAnnotation = theObj.getClass().getAnnotation(NamedGraph.class);
+		NamedGraph aAnnotation = theClass.getAnnotation(NamedGraph.class);
 
 		if (aAnnotation.type() == NamedGraph.NamedGraphType.Instance) {
-			SupportsRdfId aId = asSupportsRdfId(theObj);
-
 			try {
-				return asURI(aId);
+				return asURI(theKey);
 			}
 			catch (URISyntaxException e) {
 				LOGGER.warn("There was an error trying to get the instance-level named graph URI from an object.  Its key is not a URI.", e);
@@ -177,19 +197,19 @@ public final class EmpireUtil {
 
 	/**
 	 * Return the SupportsRdfId key as a java.net.URI.
-	 * @param theSupport the RDF-izable support class
+	 * @param theKey the RDF key
 	 * @return the id key as a java URI, or null if it cannot be converted to a URI.
 	 * @throws URISyntaxException thrown if the value is not a valid URI.
 	 */
-	private static java.net.URI asURI(SupportsRdfId theSupport) throws URISyntaxException {
-		if (theSupport.getRdfId() == null) {
+	private static java.net.URI asURI(SupportsRdfId.RdfKey theKey) throws URISyntaxException {
+		if (theKey == null) {
 			return null;
 		}
-		else if (theSupport.getRdfId() instanceof SupportsRdfId.URIKey) {
-			return ((SupportsRdfId.URIKey) theSupport.getRdfId()).value();
+		else if (theKey instanceof SupportsRdfId.URIKey) {
+			return ((SupportsRdfId.URIKey) theKey).value();
 		}
 		else {
-			String aValue = theSupport.getRdfId().toString();
+			String aValue = theKey.toString();
 
 			if (NetUtils.isURI(aValue)) {
 				return URI.create(aValue);
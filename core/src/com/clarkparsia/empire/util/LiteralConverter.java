@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.util;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * <p>Converts between RDF literals and the Java objects which represent them.  Converters are registered with
+ * {@link LiteralConverters} for a Java type and the datatypes they can read.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ * @param <T> the Java type of the values
+ */
+public interface LiteralConverter<T> {
+
+	/**
+	 * Create the Java value from the literal
+	 * @param theLiteral the literal
+	 * @return the Java value
+	 * @throws IllegalArgumentException if the literal's label is not valid for its datatype
+	 */
+	public T fromLiteral(Literal theLiteral);
+
+	/**
+	 * Create the literal for the Java value
+	 * @param theFactory the factory to use to create the literal
+	 * @param theValue the value
+	 * @return the value as a literal
+	 */
+	public Literal toLiteral(ValueFactory theFactory, T theValue);
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.util;
+
+import com.clarkparsia.common.base.Dates;
+
+import com.google.common.primitives.Primitives;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URISyntaxException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Registry of the {@link LiteralConverter converters} used to turn RDF literals into Java objects and back again.
+ * Converters are looked up by the datatype of the literal when reading, and by the class of the object when writing,
+ * both of which are a single map lookup.</p>
+ *
+ * <p>Converters for strings, booleans, numbers, dates, calendars, characters and URIs are registered by default.
+ * Converters for other types, or that replace the defaults, can be registered with {@link #register}.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class LiteralConverters {
+	/**
+	 * The logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(LiteralConverters.class);
+
+	/**
+	 * The converters which read each datatype
+	 */
+	private static final ConcurrentMap<URI, Readers> READERS = new ConcurrentHashMap<URI, Readers>();
+
+	/**
+	 * The converters registered for each Java type
+	 */
+	private static final ConcurrentMap<Class<?>, LiteralConverter<?>> WRITERS = new ConcurrentHashMap<Class<?>, LiteralConverter<?>>();
+
+	/**
+	 * The converter used to write instances of each class, including subclasses of registered types, or {@link #NONE}
+	 * if there is not one.
+	 */
+	private static final ConcurrentMap<Class<?>, LiteralConverter<?>> RESOLVED_WRITERS = new ConcurrentHashMap<Class<?>, LiteralConverter<?>>();
+
+	/**
+	 * Marker for classes which do not have a converter
+	 */
+	private static final LiteralConverter<Object> NONE = new LiteralConverter<Object>() {
+		public Object fromLiteral(final Literal theLiteral) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Literal toLiteral(final ValueFactory theFactory, final Object theValue) {
+			throw new UnsupportedOperationException();
+		}
+	};
+
+	static {
+		register(String.class, new LiteralConverter<String>() {
+			public String fromLiteral(final Literal theLiteral) {
+				return theLiteral.getLabel();
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final String theValue) {
+				return theFactory.createLiteral(theValue);
+			}
+		}, XMLSchema.STRING, RDFS.LITERAL);
+
+		register(Boolean.class, new LiteralConverter<Boolean>() {
+			public Boolean fromLiteral(final Literal theLiteral) {
+				return Boolean.valueOf(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Boolean theValue) {
+				return theFactory.createLiteral(theValue.booleanValue());
+			}
+		}, XMLSchema.BOOLEAN);
+
+		register(Integer.class, new LiteralConverter<Integer>() {
+			public Integer fromLiteral(final Literal theLiteral) {
+				return Integer.valueOf(Integer.parseInt(theLiteral.getLabel()));
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Integer theValue) {
+				return theFactory.createLiteral(theValue.intValue());
+			}
+		}, XMLSchema.INT, XMLSchema.INTEGER, XMLSchema.POSITIVE_INTEGER, XMLSchema.NEGATIVE_INTEGER,
+		   XMLSchema.NON_NEGATIVE_INTEGER, XMLSchema.NON_POSITIVE_INTEGER, XMLSchema.UNSIGNED_INT);
+
+		register(Long.class, new LiteralConverter<Long>() {
+			public Long fromLiteral(final Literal theLiteral) {
+				return Long.valueOf(Long.parseLong(theLiteral.getLabel()));
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Long theValue) {
+				return theFactory.createLiteral(theValue.longValue());
+			}
+		}, XMLSchema.LONG, XMLSchema.UNSIGNED_LONG);
+
+		register(Double.class, new LiteralConverter<Double>() {
+			public Double fromLiteral(final Literal theLiteral) {
+				return Double.valueOf(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Double theValue) {
+				return theFactory.createLiteral(theValue.doubleValue());
+			}
+		}, XMLSchema.DOUBLE);
+
+		register(Float.class, new LiteralConverter<Float>() {
+			public Float fromLiteral(final Literal theLiteral) {
+				return Float.valueOf(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Float theValue) {
+				return theFactory.createLiteral(theValue.floatValue());
+			}
+		}, XMLSchema.FLOAT, XMLSchema.DECIMAL);
+
+		register(Short.class, new LiteralConverter<Short>() {
+			public Short fromLiteral(final Literal theLiteral) {
+				return Short.valueOf(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Short theValue) {
+				return theFactory.createLiteral(theValue.shortValue());
+			}
+		}, XMLSchema.SHORT, XMLSchema.UNSIGNED_SHORT);
+
+		register(Byte.class, new LiteralConverter<Byte>() {
+			public Byte fromLiteral(final Literal theLiteral) {
+				return Byte.valueOf(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Byte theValue) {
+				return theFactory.createLiteral(theValue.byteValue());
+			}
+		}, XMLSchema.BYTE, XMLSchema.UNSIGNED_BYTE);
+
+		// characters have always been written as their code point
+		register(Character.class, new LiteralConverter<Character>() {
+			public Character fromLiteral(final Literal theLiteral) {
+				return (char) Integer.parseInt(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Character theValue) {
+				return theFactory.createLiteral(theValue.charValue());
+			}
+		});
+
+		register(java.net.URI.class, new LiteralConverter<java.net.URI>() {
+			public java.net.URI fromLiteral(final Literal theLiteral) {
+				try {
+					return new java.net.URI(theLiteral.getLabel());
+				}
+				catch (URISyntaxException e) {
+					LOGGER.warn("URI syntax exception converting literal value which is not a valid URI {} ", theLiteral.getLabel());
+					return null;
+				}
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final java.net.URI theValue) {
+				return theFactory.createLiteral(theValue.toString(), XMLSchema.ANYURI);
+			}
+		}, XMLSchema.ANYURI);
+
+		// this is registered before the converter for xsd:date and xsd:dateTime so that Date values are written as
+		// xsd:dateTime, and so values of those types read into an untyped property are Dates
+		register(Date.class, new LiteralConverter<Date>() {
+			public Date fromLiteral(final Literal theLiteral) {
+				return new Date(Long.parseLong(theLiteral.getLabel()));
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Date theValue) {
+				return theFactory.createLiteral(String.valueOf(theValue.getTime()), XMLSchema.TIME);
+			}
+		}, XMLSchema.TIME);
+
+		// calendars are read and written the same way as dates, in the local time zone
+		register(Calendar.class, new LiteralConverter<Calendar>() {
+			public Calendar fromLiteral(final Literal theLiteral) {
+				Calendar aCal = Calendar.getInstance();
+				aCal.setTime(parseDate(theLiteral.getLabel()));
+
+				return aCal;
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Calendar theValue) {
+				return theFactory.createLiteral(formatDateTime(theValue.getTime()), XMLSchema.DATETIME);
+			}
+		}, XMLSchema.DATE, XMLSchema.DATETIME);
+
+		register(Date.class, new LiteralConverter<Date>() {
+			public Date fromLiteral(final Literal theLiteral) {
+				return parseDate(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Date theValue) {
+				return theFactory.createLiteral(formatDateTime(theValue), XMLSchema.DATETIME);
+			}
+		}, XMLSchema.DATE, XMLSchema.DATETIME);
+	}
+
+	/**
+	 * No instances
+	 */
+	private LiteralConverters() {
+	}
+
+	/**
+	 * Register a converter.  The converter is used to write all instances of the type, including its subclasses, and
+	 * to read literals with any of the given datatypes.  When several converters read the same datatype, the one used
+	 * is the one registered for the type of the property being assigned, or the most recently registered one if there
+	 * is not a converter for that type.
+	 * @param theType the Java type the converter creates
+	 * @param theConverter the converter
+	 * @param theDatatypes the datatypes the converter can read
+	 * @param <T> the Java type
+	 */
+	public static <T> void register(final Class<T> theType, final LiteralConverter<T> theConverter, final URI... theDatatypes) {
+		WRITERS.put(theType, theConverter);
+
+		for (URI aDatatype : theDatatypes) {
+			Readers aReaders = READERS.get(aDatatype);
+
+			if (aReaders == null) {
+				READERS.putIfAbsent(aDatatype, new Readers());
+				aReaders = READERS.get(aDatatype);
+			}
+
+			aReaders.mByType.put(theType, theConverter);
+			aReaders.mDefault = theConverter;
+		}
+
+		RESOLVED_WRITERS.clear();
+	}
+
+	/**
+	 * Return the converter which reads literals of the datatype
+	 * @param theDatatype the datatype
+	 * @param theType the type of the property the value will be assigned to, or null if it is not known
+	 * @return the converter for the datatype, preferring one which creates values of the given type, or null if no
+	 * converter can read the datatype
+	 */
+	public static LiteralConverter<?> forDatatype(final URI theDatatype, final Class<?> theType) {
+		Readers aReaders = READERS.get(theDatatype);
+
+		if (aReaders == null) {
+			return null;
+		}
+
+		LiteralConverter<?> aConverter = theType == null ? null : aReaders.mByType.get(Primitives.wrap(theType));
+
+		return aConverter != null ? aConverter : aReaders.mDefault;
+	}
+
+	/**
+	 * Return the converter which writes instances of the class
+	 * @param theClass the class
+	 * @return the converter registered for the class or its nearest superclass, or null if there is not one
+	 */
+	public static LiteralConverter<?> forType(final Class<?> theClass) {
+		LiteralConverter<?> aConverter = RESOLVED_WRITERS.get(theClass);
+
+		if (aConverter == null) {
+			Class<?> aClass = theClass;
+
+			while (aClass != null && aConverter == null) {
+				aConverter = WRITERS.get(aClass);
+				aClass = aClass.getSuperclass();
+			}
+
+			if (aConverter == null) {
+				aConverter = NONE;
+			}
+
+			RESOLVED_WRITERS.put(theClass, aConverter);
+		}
+
+		return aConverter == NONE ? null : aConverter;
+	}
+
+	/**
+	 * Parse a date in the format produced by {@link #formatDateTime} or a plain <code>yyyy-MM-dd</code> date, both in
+	 * the local time zone.  Other formats are handled by {@link Dates#asDate}.
+	 * @param theDate the date string
+	 * @return the date
+	 */
+	static Date parseDate(final String theDate) {
+		int aLength = theDate.length();
+
+		if (aLength >= 10
+			&& isDigits(theDate, 0, 4) && theDate.charAt(4) == '-'
+			&& isDigits(theDate, 5, 7) && theDate.charAt(7) == '-'
+			&& isDigits(theDate, 8, 10)) {
+
+			Calendar aCal = new GregorianCalendar(number(theDate, 0, 4), number(theDate, 5, 7) - 1, number(theDate, 8, 10));
+
+			if (aLength == 10) {
+				return aCal.getTime();
+			}
+			else if (aLength >= 19
+					 && theDate.charAt(10) == 'T'
+					 && isDigits(theDate, 11, 13) && theDate.charAt(13) == ':'
+					 && isDigits(theDate, 14, 16) && theDate.charAt(16) == ':'
+					 && isDigits(theDate, 17, 19)) {
+
+				// like the date format this replaces, anything after the seconds is ignored
+				aCal.set(Calendar.HOUR_OF_DAY, number(theDate, 11, 13));
+				aCal.set(Calendar.MINUTE, number(theDate, 14, 16));
+				aCal.set(Calendar.SECOND, number(theDate, 17, 19));
+
+				return aCal.getTime();
+			}
+		}
+
+		return Dates.asDate(theDate);
+	}
+
+	/**
+	 * Format the date as <code>yyyy-MM-dd'T'HH:mm:ss</code> in the local time zone, the same as
+	 * {@link Dates#datetime}, without creating a date format for each call.
+	 * @param theDate the date
+	 * @return the formatted date
+	 */
+	static String formatDateTime(final Date theDate) {
+		Calendar aCal = new GregorianCalendar();
+		aCal.setTime(theDate);
+
+		int aYear = aCal.get(Calendar.YEAR);
+
+		if (aCal.get(Calendar.ERA) != GregorianCalendar.AD || aYear > 9999) {
+			return Dates.datetime(theDate);
+		}
+
+		char[] aChars = new char[19];
+
+		digits(aChars, 0, 4, aYear);
+		aChars[4] = '-';
+		digits(aChars, 5, 7, aCal.get(Calendar.MONTH) + 1);
+		aChars[7] = '-';
+		digits(aChars, 8, 10, aCal.get(Calendar.DAY_OF_MONTH));
+		aChars[10] = 'T';
+		digits(aChars, 11, 13, aCal.get(Calendar.HOUR_OF_DAY));
+		aChars[13] = ':';
+		digits(aChars, 14, 16, aCal.get(Calendar.MINUTE));
+		aChars[16] = ':';
+		digits(aChars, 17, 19, aCal.get(Calendar.SECOND));
+
+		return new String(aChars);
+	}
+
+	private static boolean isDigits(final String theStr, final int theStart, final int theEnd) {
+		for (int i = theStart; i < theEnd; i++) {
+			char aChar = theStr.charAt(i);
+
+			if (aChar < '0' || aChar > '9') {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int number(final String theStr, final int theStart, final int theEnd) {
+		int aNum = 0;
+
+		for (int i = theStart; i < theEnd; i++) {
+			aNum = aNum * 10 + (theStr.charAt(i) - '0');
+		}
+
+		return aNum;
+	}
+
+	private static void digits(final char[] theChars, final int theStart, final int theEnd, final int theValue) {
+		int aValue = theValue;
+
+		for (int i = theEnd - 1; i >= theStart; i--) {
+			theChars[i] = (char) ('0' + aValue % 10);
+			aValue /= 10;
+		}
+	}
+
+	/**
+	 * The converters which read a datatype
+	 */
+	private static final class Readers {
+		private final ConcurrentMap<Class<?>, LiteralConverter<?>> mByType = new ConcurrentHashMap<Class<?>, LiteralConverter<?>>();
+		private volatile LiteralConverter<?> mDefault;
+	}
+}
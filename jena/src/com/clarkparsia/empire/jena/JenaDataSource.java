@@ -21,16 +21,21 @@ import com.clarkparsia.empire.ds.QueryException;
 import com.clarkparsia.empire.ds.DataSourceException;
 import com.clarkparsia.empire.ds.TripleSource;
 import com.clarkparsia.empire.ds.SupportsTransactions;
+import com.clarkparsia.empire.ds.SupportsUpdates;
 import com.clarkparsia.empire.ds.impl.AbstractDataSource;
 
 import java.net.ConnectException;
 
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.shared.JenaException;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.update.UpdateAction;
 
 import com.clarkparsia.empire.jena.util.JenaSesameUtils;
 
@@ -49,9 +54,9 @@ import org.openrdf.model.Value;
  * @author Michael Grove
  * @author uoccou
  * @since 0.1
- * @version 0.7.1
+ * @version 0.8
  */
-public class JenaDataSource extends AbstractDataSource implements MutableDataSource, TripleSource {
+public class JenaDataSource extends AbstractDataSource implements MutableDataSource, TripleSource, SupportsUpdates {
 
 	/**
 	 * The underlying Jena model
@@ -147,6 +152,32 @@ public class JenaDataSource extends AbstractDataSource implements MutableDataSou
 		}
 	}
 
+	/**
+	 * Executes the update with ARQ against the model.  The statements inserted and deleted are counted as the model
+	 * reports them, which includes inserts of statements already in the model; updates which clear whole graphs are
+	 * not reported statement by statement, and -1 is returned for them.
+	 * @inheritDoc
+	 */
+	public int update(final String theUpdate) throws QueryException {
+		assertConnected();
+
+		UpdateCounter aCounter = new UpdateCounter();
+
+		mModel.register(aCounter);
+
+		try {
+			UpdateAction.parseExecute(theUpdate, mModel);
+
+			return aCounter.getCount();
+		}
+		catch (JenaException e) {
+			throw new QueryException(e);
+		}
+		finally {
+			mModel.unregister(aCounter);
+		}
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -206,4 +237,48 @@ public class JenaDataSource extends AbstractDataSource implements MutableDataSou
     	// Jena models do not support contexts -- so we just forward the request to the regular getStatements() method
     	return getStatements(subject, predicate, object);
     }
+
+	/**
+	 * Listener which counts the statements added to and removed from a model while it is registered
+	 */
+	private static class UpdateCounter extends StatementListener {
+
+		/**
+		 * The number of statements added and removed so far
+		 */
+		private int mCount = 0;
+
+		/**
+		 * Whether or not statements were removed in bulk, in which case the count is not known
+		 */
+		private boolean mIsBulkRemove = false;
+
+		/**
+		 * Return the number of statements added and removed
+		 * @return the count, or -1 if it is not known
+		 */
+		public int getCount() {
+			return mIsBulkRemove ? -1 : mCount;
+		}
+
+		@Override
+		public void addedStatement(final com.hp.hpl.jena.rdf.model.Statement theStatement) {
+			mCount++;
+		}
+
+		@Override
+		public void removedStatement(final com.hp.hpl.jena.rdf.model.Statement theStatement) {
+			mCount++;
+		}
+
+		@Override
+		public void notifyEvent(final Model theModel, final Object theEvent) {
+			// removeAll and remove(s, p, o) are reported as a single event rather than as the statements removed
+			if (theEvent instanceof GraphEvents
+				&& !GraphEvents.startRead.equals(theEvent)
+				&& !GraphEvents.finishRead.equals(theEvent)) {
+				mIsBulkRemove = true;
+			}
+		}
+	}
 }
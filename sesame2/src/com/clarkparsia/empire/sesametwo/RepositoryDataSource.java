@@ -21,6 +21,8 @@ import com.clarkparsia.empire.ds.DataSourceException;
 import com.clarkparsia.empire.ds.TripleSource;
 import com.clarkparsia.empire.ds.QueryException;
 import com.clarkparsia.empire.ds.ResultSet;
+import com.clarkparsia.empire.ds.SupportsTransactions;
+import com.clarkparsia.empire.ds.SupportsUpdates;
 import com.clarkparsia.empire.ds.impl.AbstractDataSource;
 
 import com.clarkparsia.empire.impl.RdfQueryFactory;
@@ -55,11 +57,16 @@ import java.net.URI;
  * <p>Implementation of the DataSource interface(s) backed by a Sesame 2 repository.  This can be used as a base class
  * for any back-end which supports the Sesame 2 SAIL api, such as BigData, OWLIM, Neo4j, and others.</p>
  *
+ * <p>Transactions use the repository's own: outside of a transaction every change is committed as it is made, within
+ * one the changes are committed together when the transaction commits.  Queries and statement lookups are made on the
+ * same connection as the changes, so they see the uncommitted changes of the transaction, provided the repository
+ * implementation does, as the memory and native stores do.</p>
+ *
  * @author 	Michael Grove
  * @since 	0.6
- * @version 0.7
+ * @version 0.8
  */
-public class RepositoryDataSource extends AbstractDataSource implements MutableDataSource, TripleSource, SupportsNamedGraphs {
+public class RepositoryDataSource extends AbstractDataSource implements MutableDataSource, TripleSource, SupportsNamedGraphs, SupportsUpdates, SupportsTransactions {
 
 	/**
 	 * The logger
@@ -81,6 +88,11 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 	 */
 	private QueryLanguage mQueryLang;
 
+	/**
+	 * Whether or not a transaction is currently active
+	 */
+	private boolean mIsInTransaction;
+
 	/**
 	 * Create a new RepositoryDataSource which uses the SPARQL query dialect for its Query API
 	 * @param theRepository the sesame repository to back this data source
@@ -97,15 +109,6 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 	RepositoryDataSource(final Repository theRepository, boolean theUseSerql) {
 		mRepository = theRepository;
 
-		// TODO: add the SupportsTransactions interface to this class so Empire notices it natively supports
-		// transactions.  right now, changes within a transaction are not "live", even within the same
-		// connection, so it looks like adds & deletes fail.  not good.  need a different isolation level
-		// for the transactions for it to work right.  or i go back to the drawing board on some parts of entitymanager
-		// sesame 3 will have different transaction isolation levels, settable for each repo, which is what we need
-		// i think.  really, the catch is that transactions behave differently (different isolation levels) depending
-		// on the repository implementation.  so its' not easy to do *one* solution that will work for all of them
-		// so we have to rely on our naive poor-man's transaction implementation.
-
 		if (theUseSerql) {
 			mQueryLang = QueryLanguage.SERQL;
 			setQueryFactory(new RdfQueryFactory(this, SerqlDialect.instance()));
@@ -126,8 +129,7 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 			mConnection.add(theGraph);
 		}
 		catch (RepositoryException e) {
-			rollback();
-
+			// outside of a transaction the add is atomic, within one it is up to the owner of the transaction to roll it back
 			throw new DataSourceException(e);
 		}
 	}
@@ -169,7 +171,7 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 			try {
 				mConnection = mRepository.getConnection();
 
-				// TODO: disable this when enabling sesame's native transaction support
+				// changes are committed as they're made, unless they are made within a transaction
 				mConnection.setAutoCommit(true);
 			}
 			catch (RepositoryException e) {
@@ -185,6 +187,14 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 		assertConnected();
 
 		try {
+			if (mIsInTransaction) {
+				LOGGER.warn("Disconnecting in the middle of a transaction, the transaction is rolled back");
+
+				mIsInTransaction = false;
+
+				mConnection.rollback();
+			}
+
 			mConnection.close();
 
 			setConnected(false);
@@ -249,6 +259,24 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 		return graphQuery(theQuery);
 	}
 
+	/**
+	 * Executes the update with the repository's SPARQL update support, regardless of the query language used for
+	 * queries.  Sesame does not report how many statements an update changed, so this always returns -1.
+	 * @inheritDoc
+	 */
+	public int update(final String theUpdate) throws QueryException {
+		assertConnected();
+
+		try {
+			mConnection.prepareUpdate(QueryLanguage.SPARQL, theUpdate).execute();
+
+			return -1;
+		}
+		catch (Exception e) {
+			throw new QueryException(e);
+		}
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -299,8 +327,18 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 	public void begin() throws DataSourceException {
 		assertConnected();
 
-		// i dont think there is anything to do here, sesame's connection being open means a transaction is open as
-		// i understand it.
+		if (mIsInTransaction) {
+			throw new DataSourceException("Cannot complete action, currently in a transaction");
+		}
+
+		try {
+			mConnection.setAutoCommit(false);
+
+			mIsInTransaction = true;
+		}
+		catch (RepositoryException e) {
+			throw new DataSourceException(e);
+		}
 	}
 
 	/**
@@ -308,13 +346,25 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 	 */
 	public void commit() throws DataSourceException {
 		assertConnected();
+		assertInTransaction();
 
 		try {
 			mConnection.commit();
 		}
 		catch (RepositoryException e) {
+			// going back to auto commit would commit the pending changes again, so they are discarded first
+			try {
+				mConnection.rollback();
+			}
+			catch (RepositoryException ex) {
+				LOGGER.error("Could not rollback the failed commit", ex);
+			}
+
 			throw new DataSourceException(e);
 		}
+		finally {
+			endTransaction();
+		}
 	}
 
 	/**
@@ -322,6 +372,7 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 	 */
 	public void rollback() throws DataSourceException {
 		assertConnected();
+		assertInTransaction();
 
 		try {
 			mConnection.rollback();
@@ -329,6 +380,41 @@ public class RepositoryDataSource extends AbstractDataSource implements MutableD
 		catch (RepositoryException e) {
 			throw new DataSourceException(e);
 		}
+		finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * Return whether or not this data source is in a transaction
+	 * @return true if it is in a transaction, false otherwise
+	 */
+	public boolean isInTransaction() {
+		return mIsInTransaction;
+	}
+
+	/**
+	 * Asserts that this DataSource should be in a transaction
+	 * @throws DataSourceException thrown if the data source is not in a transaction
+	 */
+	private void assertInTransaction() throws DataSourceException {
+		if (!mIsInTransaction) {
+			throw new DataSourceException("Cannot complete action, not in a transaction");
+		}
+	}
+
+	/**
+	 * Go back to committing changes as they are made once a transaction has been committed or rolled back
+	 */
+	private void endTransaction() {
+		mIsInTransaction = false;
+
+		try {
+			mConnection.setAutoCommit(true);
+		}
+		catch (RepositoryException e) {
+			LOGGER.error("Could not return the connection to auto commit, changes made outside of a transaction might not be committed", e);
+		}
 	}
 
 	/**
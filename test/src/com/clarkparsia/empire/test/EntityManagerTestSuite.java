@@ -27,6 +27,9 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
@@ -39,11 +42,15 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 
+import com.clarkparsia.empire.EmpireEntityManager;
 import com.clarkparsia.empire.EmpireGenerated;
 import com.clarkparsia.empire.EmpireOptions;
 import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.annotation.Cacheable;
+import com.clarkparsia.empire.annotation.NamedGraph;
 import com.clarkparsia.empire.annotation.RdfGenerator;
 import com.clarkparsia.empire.annotation.RdfProperty;
 import com.clarkparsia.empire.annotation.RdfsClass;
@@ -53,10 +60,18 @@ import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
 import com.clarkparsia.empire.ds.DataSourceFactory;
 import com.clarkparsia.empire.ds.MutableDataSource;
+import com.clarkparsia.empire.ds.QueryException;
+import com.clarkparsia.empire.ds.ResultSet;
+import com.clarkparsia.empire.ds.SupportsNamedGraphs;
 import com.clarkparsia.empire.ds.SupportsTransactions;
+import com.clarkparsia.empire.ds.SupportsUpdates;
 import com.clarkparsia.empire.ds.TripleSource;
+import com.clarkparsia.empire.ds.impl.DelegatingDataSource;
 
+import com.clarkparsia.empire.impl.EntityCache;
 import com.clarkparsia.empire.impl.EntityManagerFactoryImpl;
+import com.clarkparsia.empire.impl.EntityManagerImpl;
+import com.clarkparsia.empire.impl.RdfQuery;
 import com.clarkparsia.empire.test.api.BaseTestClass;
 
 import com.clarkparsia.empire.test.api.TestEntityListener;
@@ -74,6 +89,7 @@ import com.clarkparsia.openrdf.ExtGraph;
 import com.clarkparsia.openrdf.Graphs;
 import com.clarkparsia.openrdf.OpenRdfIO;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import org.junit.After;
@@ -93,6 +109,7 @@ import org.openrdf.rio.RDFParseException;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
@@ -135,10 +152,14 @@ public abstract class EntityManagerTestSuite {
 		// our test data set doesn't type any literals, so we have to set to weak (no) typing
 		// TODO: don't hard code this if we're doing tests w/ other datasets.
 		EmpireOptions.STRONG_TYPING = false;
+
+		// nor is it kept in the named graphs of the classes it is read with
+		EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK = true;
 	}
 
 	@AfterClass
 	public static void afterClass() {
+		EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK = false;
 	}
 
 
@@ -176,6 +197,42 @@ public abstract class EntityManagerTestSuite {
 		}
 	}
 
+	@Test
+	public void testQueryParameterBinding() {
+		EntityManager aManager = createEntityManager();
+
+		try {
+			String aQueryString = "where { ?result ??p ?o . ?result <urn:label> ?? . } limit 5";
+
+			Query aQuery = aManager.createQuery(aQueryString);
+
+			// the limit of the query string is the default
+			assertEquals(5, ((RdfQuery) aQuery).getMaxResults());
+
+			aQuery.setParameter("p", URI.create("urn:p"));
+			aQuery.setParameter(1, "label");
+
+			assertTrue(aQuery.toString().contains("<urn:p>"));
+			assertFalse(aQuery.toString().contains("??"));
+			assertTrue(aQuery.toString().trim().endsWith("limit 5"));
+
+			// queries created from the same string do not share parameter values, unbound parameters are variables
+			Query aOther = aManager.createQuery(aQueryString);
+
+			assertFalse(aOther.toString().contains("<urn:p>"));
+			assertTrue(aOther.toString().contains("?p"));
+			assertFalse(aOther.toString().contains("??"));
+
+			aOther.setMaxResults(10);
+
+			assertTrue(aOther.toString().trim().endsWith("limit 10"));
+			assertEquals(5, ((RdfQuery) aManager.createQuery(aQueryString)).getMaxResults());
+		}
+		finally {
+			aManager.close();
+		}
+	}
+
 	/**
 	 * Test to ensure we don't get into an infinite loop persisting two objects which both hold a reference to each other.
 	 */
@@ -367,6 +424,506 @@ public abstract class EntityManagerTestSuite {
 		assertEquals(1, Lists.newArrayList(aGraph.match(null, ValueFactoryImpl.getInstance().createURI("urn:label"), null)).size());
 	}
 
+	@Test
+	public void testMergeWritesOnlyChanges() throws Exception {
+		EntityManager em = createEntityManager();
+
+		assumeTrue(em.getDelegate() instanceof TripleSource);
+		assumeTrue(em instanceof EntityManagerImpl);
+
+		TripleSource aSource = (TripleSource) em.getDelegate();
+		EntityManagerImpl aManager = (EntityManagerImpl) em;
+
+		EntityTest aObj = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aObj.setId("mergeid");
+		aObj.setLabel("some label");
+
+		em.persist(aObj);
+
+		EntityTest aFound = em.find(EntityTest.class, aObj.getRdfId());
+
+		// nothing changed, nothing to write
+		em.merge(aFound);
+
+		assertEquals(1, aManager.getUnchangedMergeCount());
+		assertEquals(5, aManager.getSavedTripleCount());
+
+		aFound.setLabel("new label");
+
+		em.merge(aFound);
+
+		assertEquals(1, aManager.getUnchangedMergeCount());
+
+		Graph aGraph = Graphs.newGraph(aSource.getStatements(null, null, null));
+
+		assertEquals(3, aGraph.size());
+		assertEquals(1, Lists.newArrayList(aGraph.match(null, ValueFactoryImpl.getInstance().createURI("urn:label"), ValueFactoryImpl.getInstance().createLiteral("new label"))).size());
+
+		// the merge is compared against the state after the previous merge
+		em.merge(aFound);
+
+		assertEquals(2, aManager.getUnchangedMergeCount());
+
+		em.remove(aFound);
+	}
+
+	@Test
+	public void testPersistenceContext() throws Exception {
+		EntityManager em = createEntityManager();
+
+		EntityTest aObj = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aObj.setId("contextid");
+		aObj.setLabel("some label");
+
+		em.persist(aObj);
+
+		// persisted objects are managed
+		assertTrue(em.find(EntityTest.class, aObj.getRdfId()) == aObj);
+		assertTrue(em.contains(aObj));
+
+		em.clear();
+
+		EntityTest aFound = em.find(EntityTest.class, aObj.getRdfId());
+
+		assertTrue(aFound != aObj);
+		assertEquals("some label", aFound.getLabel());
+
+		// the found object is returned until the context is cleared
+		assertTrue(em.find(EntityTest.class, aObj.getRdfId()) == aFound);
+
+		em.remove(aFound);
+
+		assertNull(em.find(EntityTest.class, aObj.getRdfId()));
+		assertFalse(em.contains(aFound));
+	}
+
+	@Test
+	public void testSecondLevelCache() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.CACHE_MAX_SIZE, "100"));
+
+		EntityCache aCache = aFactory.getCache();
+
+		assertNotNull(aCache);
+
+		EntityManager em = aFactory.createEntityManager();
+
+		// a second manager of the same factory, sharing the database
+		EntityManager aOther = new EntityManagerImpl((MutableDataSource) em.getDelegate(), aCache);
+
+		CachedEntity aObj = InstanceGenerator.generateInstanceClass(CachedEntity.class).newInstance();
+		aObj.setLabel("cached");
+
+		em.persist(aObj);
+		em.clear();
+
+		assertEquals("cached", em.find(CachedEntity.class, aObj.getRdfId()).getLabel());
+		assertEquals(1, aCache.getStats().missCount());
+		assertEquals(1, aCache.size());
+
+		CachedEntity aCopy = aOther.find(CachedEntity.class, aObj.getRdfId());
+
+		assertEquals("cached", aCopy.getLabel());
+		assertEquals(1, aCache.getStats().hitCount());
+
+		// writes through either manager invalidate the entry
+		aCopy.setLabel("changed");
+		aOther.merge(aCopy);
+
+		assertEquals(0, aCache.size());
+
+		em.clear();
+
+		assertEquals("changed", em.find(CachedEntity.class, aObj.getRdfId()).getLabel());
+		assertEquals(2, aCache.getStats().missCount());
+
+		// classes which are not cacheable are not cached
+		EntityTest aTest = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aTest.setId("notcached");
+
+		em.persist(aTest);
+		em.clear();
+
+		assertNotNull(em.find(EntityTest.class, aTest.getRdfId()));
+		assertEquals(1, aCache.size());
+
+		em.remove(em.find(CachedEntity.class, aObj.getRdfId()));
+
+		assertEquals(0, aCache.size());
+	}
+
+	@Test
+	public void testSecondLevelCacheAfterCommit() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.CACHE_MAX_SIZE, "100"));
+
+		EntityCache aCache = aFactory.getCache();
+
+		EntityManager em = aFactory.createEntityManager();
+		EntityManager aOther = new EntityManagerImpl((MutableDataSource) em.getDelegate(), aCache);
+
+		CachedEntity aObj = InstanceGenerator.generateInstanceClass(CachedEntity.class).newInstance();
+		aObj.setLabel("before");
+
+		em.persist(aObj);
+
+		em.getTransaction().begin();
+
+		aObj.setLabel("during");
+		em.merge(aObj);
+
+		// another manager caches the entity while the transaction is running
+		aOther.find(CachedEntity.class, aObj.getRdfId());
+
+		assertEquals(1, aCache.size());
+
+		em.getTransaction().commit();
+
+		// the cached entry was read before the transaction was committed, it is not kept
+		assertEquals(0, aCache.size());
+	}
+
+	@Test
+	public void testFindInNamedGraph() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.CACHE_MAX_SIZE, "100"));
+
+		EntityManager em = aFactory.createEntityManager();
+
+		assumeTrue(em.getDelegate() instanceof SupportsNamedGraphs);
+
+		URI aId = URI.create("urn:named:graph:entity");
+
+		// the same individual has a different label in each graph
+		for (String aLabel : Arrays.asList("a", "b")) {
+			Graph aGraph = Graphs.newGraph();
+			aGraph.add(ValueFactoryImpl.getInstance().createURI(aId.toString()),
+					   ValueFactoryImpl.getInstance().createURI("urn:label"),
+					   ValueFactoryImpl.getInstance().createLiteral(aLabel));
+
+			((SupportsNamedGraphs) em.getDelegate()).add(URI.create("urn:graph:" + aLabel), aGraph);
+		}
+
+		// each class is loaded from its own graph, and kept apart in the second level cache
+		for (int i = 0; i < 2; i++) {
+			em.clear();
+
+			assertEquals("a", em.find(GraphAEntity.class, aId).getLabel());
+			assertEquals("b", em.find(GraphBEntity.class, aId).getLabel());
+		}
+
+		assertEquals(2, aFactory.getCache().getStats().missCount());
+		assertEquals(2, aFactory.getCache().getStats().hitCount());
+
+		// without the fallback, an individual only described outside of the named graph is not found
+		URI aOtherId = URI.create("urn:named:graph:other");
+
+		Graph aGraph = Graphs.newGraph();
+		aGraph.add(ValueFactoryImpl.getInstance().createURI(aOtherId.toString()),
+				   ValueFactoryImpl.getInstance().createURI("urn:label"),
+				   ValueFactoryImpl.getInstance().createLiteral("c"));
+
+		((SupportsNamedGraphs) em.getDelegate()).add(URI.create("urn:graph:c"), aGraph);
+
+		EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK = false;
+
+		try {
+			assertNull(em.find(GraphAEntity.class, aOtherId));
+		}
+		finally {
+			EmpireOptions.ENABLE_NAMED_GRAPH_FALLBACK = true;
+		}
+
+		assertEquals("c", em.find(GraphAEntity.class, aOtherId).getLabel());
+	}
+
+	@Test
+	public void testVerifyWrites() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.VERIFY_WRITES, "true"));
+
+		EntityManager em = aFactory.createEntityManager();
+
+		assertTrue(((EntityManagerImpl) em).isVerifyWrites());
+
+		EntityTest aObj = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aObj.setId("verifyid");
+		aObj.setLabel("some label");
+
+		ParentEntity aParent = InstanceGenerator.generateInstanceClass(ParentEntity.class).newInstance();
+		aParent.setEntity(aObj);
+
+		// the parent and the cascaded child are both verified
+		em.persist(aParent);
+
+		aObj.setLabel("new label");
+
+		em.merge(aParent);
+		em.remove(aParent);
+		em.remove(aObj);
+
+		assertFalse(em.contains(aObj));
+
+		// a data source which silently fails to add anything
+		EntityManagerImpl aManager = new EntityManagerImpl(new DelegatingMutableDataSource((MutableDataSource) em.getDelegate()) {
+			@Override
+			public void add(final Graph theGraph) throws DataSourceException {
+			}
+		});
+
+		aManager.setVerifyWrites(true);
+
+		try {
+			aManager.persist(aObj);
+			fail("PersistenceException expected");
+		}
+		catch (PersistenceException e) { /* expected */ }
+	}
+
+	@Test
+	public void testBulkWrites() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.WRITE_BATCH_SIZE, "3"));
+
+		EmpireEntityManager em = (EmpireEntityManager) aFactory.createEntityManager();
+
+		assertEquals(3, ((EntityManagerImpl) em).getWriteBatchSize());
+
+		List<Elem> aElems = new ArrayList<Elem>();
+
+		for (int i = 0; i < 7; i++) {
+			aElems.add(new Elem("elem" + i));
+		}
+
+		em.persistAll(aElems);
+
+		for (Elem aElem : aElems) {
+			assertTrue(aElem.prePersistCalled);
+			assertTrue(aElem.postPersistCalled);
+			assertTrue(em.contains(aElem));
+		}
+
+		em.clear();
+
+		for (Elem aElem : aElems) {
+			assertEquals(aElem.getName(), em.find(Elem.class, aElem.getRdfId()).getName());
+		}
+
+		try {
+			em.persistAll(Arrays.asList(new Elem("new"), aElems.get(0)));
+			fail("EntityExistsException expected");
+		}
+		catch (EntityExistsException e) { /* expected */ }
+
+		for (int i = 0; i < aElems.size(); i++) {
+			aElems.get(i).name = "renamed" + i;
+			aElems.get(i).clearState();
+		}
+
+		// the objects are not managed, so their current state is read from the database
+		em.mergeAll(aElems);
+
+		for (Elem aElem : aElems) {
+			assertTrue(aElem.preUpdateCalled);
+			assertTrue(aElem.postUpdateCalled);
+		}
+
+		em.clear();
+
+		for (int i = 0; i < aElems.size(); i++) {
+			assertEquals("renamed" + i, em.find(Elem.class, aElems.get(i).getRdfId()).getName());
+		}
+
+		// cascades are applied to the objects of a batch
+		List<ParentEntity> aParents = new ArrayList<ParentEntity>();
+
+		for (int i = 0; i < 4; i++) {
+			EntityTest aChild = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+			aChild.setId("bulkchild" + i);
+
+			ParentEntity aParent = InstanceGenerator.generateInstanceClass(ParentEntity.class).newInstance();
+			aParent.setEntity(aChild);
+
+			aParents.add(aParent);
+		}
+
+		em.persistAll(aParents);
+
+		em.clear();
+
+		for (ParentEntity aParent : aParents) {
+			assertTrue(em.contains(aParent.getEntity()));
+		}
+	}
+
+	@Test
+	public void testBulkWritesLoadProxiesOnCallingThread() throws Exception {
+		EntityManager em = createEntityManager();
+
+		assumeTrue(em.getDelegate() instanceof MutableDataSource);
+
+		insertData((MutableDataSource) em.getDelegate(), new File(DATA_FILE));
+
+		// the threads the data source is queried from
+		final Set<Thread> aThreads = Collections.synchronizedSet(new HashSet<Thread>());
+
+		EntityManagerImpl aManager = new EntityManagerImpl(new DelegatingMutableDataSource((MutableDataSource) em.getDelegate()) {
+			@Override
+			public Graph graphQuery(final String theQuery) throws QueryException {
+				aThreads.add(Thread.currentThread());
+				return super.graphQuery(theQuery);
+			}
+
+			@Override
+			public ResultSet selectQuery(final String theQuery) throws QueryException {
+				aThreads.add(Thread.currentThread());
+				return super.selectQuery(theQuery);
+			}
+		});
+
+		ExecutorService aSerializers = Executors.newFixedThreadPool(2);
+
+		try {
+			aManager.setSerializers(aSerializers);
+
+			List<LaunchUsingProxy> aLaunches = new ArrayList<LaunchUsingProxy>();
+
+			for (String aLaunch : Arrays.asList("SATURNSA1", "PION2", "1957-001", "1989-033")) {
+				aLaunches.add(aManager.find(LaunchUsingProxy.class, "http://nasa.dataincubator.org/launch/" + aLaunch));
+			}
+
+			aThreads.clear();
+
+			// serializing the launches loads their lazy launch sites, which is done before they are handed to the
+			// serializers, on the thread which owns the data source
+			aManager.mergeAll(aLaunches);
+
+			assertEquals(Collections.singleton(Thread.currentThread()), aThreads);
+		}
+		finally {
+			aSerializers.shutdown();
+		}
+	}
+
+	@Test
+	public void testUpdateQuery() throws Exception {
+		EntityManagerFactoryImpl aFactory = new EntityManagerFactoryImpl(createDataSourceFactory(),
+																		 Collections.singletonMap(EntityManagerFactoryImpl.CACHE_MAX_SIZE, "100"));
+
+		EntityManager em = aFactory.createEntityManager();
+
+		assumeTrue(em.getDelegate() instanceof SupportsUpdates);
+
+		CachedEntity aObj = InstanceGenerator.generateInstanceClass(CachedEntity.class).newInstance();
+		aObj.setLabel("current");
+
+		CachedEntity aOther = InstanceGenerator.generateInstanceClass(CachedEntity.class).newInstance();
+		aOther.setLabel("other");
+
+		em.persist(aObj);
+		em.persist(aOther);
+		em.clear();
+
+		assertEquals("current", em.find(CachedEntity.class, aObj.getRdfId()).getLabel());
+		assertEquals(1, aFactory.getCache().size());
+
+		// changes pending in COMMIT mode are flushed before the update runs
+		em.setFlushMode(FlushModeType.COMMIT);
+
+		CachedEntity aPending = InstanceGenerator.generateInstanceClass(CachedEntity.class).newInstance();
+		aPending.setLabel("current");
+
+		em.persist(aPending);
+
+		Query aQuery = em.createNativeQuery("delete { ?s <urn:label> ??label } insert { ?s <urn:label> \"archived\" } where { ?s <urn:label> ??label }");
+		aQuery.setParameter("label", "current");
+
+		int aCount = aQuery.executeUpdate();
+
+		// two statements deleted and two inserted, when the database can report it
+		assertTrue(aCount == 4 || aCount == -1);
+
+		// the managed and cached entities are invalidated
+		assertEquals(0, aFactory.getCache().size());
+		assertEquals("archived", em.find(CachedEntity.class, aObj.getRdfId()).getLabel());
+		assertEquals("archived", em.find(CachedEntity.class, aPending.getRdfId()).getLabel());
+		assertEquals("other", em.find(CachedEntity.class, aOther.getRdfId()).getLabel());
+
+		try {
+			aQuery.getResultList();
+			fail("Should not be able to get the results of an update");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			em.createQuery(TEST_QUERY).executeUpdate();
+			fail("Should not be able to execute a query as an update");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCommitFlushMode() throws Exception {
+		EntityManager em = createEntityManager();
+
+		assumeTrue(em.getDelegate() instanceof TripleSource);
+
+		TripleSource aSource = (TripleSource) em.getDelegate();
+
+		em.setFlushMode(FlushModeType.COMMIT);
+
+		EntityTest aObj = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aObj.setId("commitid");
+		aObj.setLabel("some label");
+
+		em.persist(aObj);
+
+		// nothing is written until the manager is flushed
+		assertTrue(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+		assertTrue(em.contains(aObj));
+
+		em.flush();
+
+		assertFalse(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+
+		em.remove(aObj);
+
+		// an entity persisted and removed before the flush is not added, only removed
+		EntityTest aTransient = InstanceGenerator.generateInstanceClass(EntityTest.class).newInstance();
+		aTransient.setId("transientid");
+		aTransient.setLabel("transient");
+
+		em.persist(aTransient);
+		em.remove(aTransient);
+
+		em.flush();
+
+		assertTrue(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+
+		// the changes made in a transaction are written when it is committed, or discarded if it is rolled back
+		em.getTransaction().begin();
+		em.persist(aTransient);
+		em.getTransaction().rollback();
+
+		assertTrue(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+
+		em.getTransaction().begin();
+		em.persist(aTransient);
+		em.getTransaction().commit();
+
+		assertFalse(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+
+		// switching back to AUTO writes the pending changes
+		em.remove(aTransient);
+		em.setFlushMode(FlushModeType.AUTO);
+
+		assertTrue(Iterables.isEmpty(aSource.getStatements(null, null, null)));
+	}
+
 	/**
 	 * Test for basic proxying using Javassist
 	 * @throws Exception test error
@@ -1256,15 +1813,11 @@ public abstract class EntityManagerTestSuite {
 
 		assertTrue(aManager.isOpen());
 
-		// we support this...
-		aManager.setFlushMode(FlushModeType.AUTO);
+		aManager.setFlushMode(FlushModeType.COMMIT);
 
-		// ... but not this
-		try {
-			aManager.setFlushMode(FlushModeType.COMMIT);
-			fail("IllegalArgumentException expected");
-		}
-		catch (IllegalArgumentException e) { /* expected */ }
+		assertEquals(aManager.getFlushMode(), FlushModeType.COMMIT);
+
+		aManager.setFlushMode(FlushModeType.AUTO);
 
 		assertEquals(aManager.getFlushMode(), FlushModeType.AUTO);
 
@@ -1495,6 +2048,55 @@ public abstract class EntityManagerTestSuite {
 		void setLabel(String theLabel);
 	}
 
+	@Entity
+	@RdfsClass("urn:CachedEntity")
+	@Cacheable
+	public interface CachedEntity extends SupportsRdfId {
+		@RdfProperty("urn:label")
+		String getLabel();
+		void setLabel(String theLabel);
+	}
+
+	@Entity
+	@RdfsClass("urn:GraphEntity")
+	@NamedGraph(type = NamedGraph.NamedGraphType.Static, value = "urn:graph:a")
+	@Cacheable
+	public static class GraphAEntity extends BaseTestClass {
+		@RdfProperty("urn:label")
+		private String label;
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	@Entity
+	@RdfsClass("urn:GraphEntity")
+	@NamedGraph(type = NamedGraph.NamedGraphType.Static, value = "urn:graph:b")
+	@Cacheable
+	public static class GraphBEntity extends BaseTestClass {
+		@RdfProperty("urn:label")
+		private String label;
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private static class DelegatingMutableDataSource extends DelegatingDataSource implements MutableDataSource {
+		public DelegatingMutableDataSource(final MutableDataSource theDelegate) {
+			super(theDelegate);
+		}
+
+		public void add(final Graph theGraph) throws DataSourceException {
+			((MutableDataSource) getDelegate()).add(theGraph);
+		}
+
+		public void remove(final Graph theGraph) throws DataSourceException {
+			((MutableDataSource) getDelegate()).remove(theGraph);
+		}
+	}
+
 	@Entity
 	@RdfsClass("urn:ParentEntity")
 	public interface ParentEntity extends SupportsRdfId {
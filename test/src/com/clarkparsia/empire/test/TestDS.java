@@ -16,23 +16,79 @@
 package com.clarkparsia.empire.test;
 
 import com.clarkparsia.empire.test.api.MutableTestDataSourceFactory;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.Ignore;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import com.clarkparsia.empire.test.util.TestUtil;
 import com.clarkparsia.empire.test.util.TestModule;
+import com.clarkparsia.empire.ds.BulkLoader;
 import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
+import com.clarkparsia.empire.ds.QueryException;
+import com.clarkparsia.empire.ds.ResultSet;
+import com.clarkparsia.empire.ds.MutableDataSource;
+import com.clarkparsia.empire.ds.SupportsTransactions;
 import com.clarkparsia.empire.ds.TripleSource;
 import com.clarkparsia.empire.ds.DataSourceUtil;
+import com.clarkparsia.empire.ds.impl.DelegatingDataSource;
+import com.clarkparsia.empire.ds.impl.TransactionalDataSource;
+import com.clarkparsia.empire.ds.impl.TripleSourceAdapter;
+import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.impl.EntityManagerImpl;
+import com.clarkparsia.empire.annotation.SupportsRdfIdImpl;
 import com.clarkparsia.empire.Empire;
+import com.clarkparsia.empire.EmpireOptions;
 import com.clarkparsia.empire.sesametwo.OpenRdfEmpireModule;
+import com.clarkparsia.empire.sesametwo.RepositoryDataSourceFactory;
+import com.clarkparsia.empire.sesametwo.RepositoryFactoryKeys;
+import com.clarkparsia.empire.test.api.TestPerson;
 import com.clarkparsia.empire.util.DefaultEmpireModule;
 
+import com.clarkparsia.openrdf.Graphs;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.repository.sail.SailRepositoryConnection;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.memory.MemoryStore;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Tests for the DataSource APIs</p>
@@ -42,6 +98,12 @@ import java.util.HashMap;
  * @since 0.7
  */
 public class TestDS {
+	@BeforeClass
+	public static void beforeClass() {
+		// the first use of Empire fixes its modules, tests which do not init Empire themselves could otherwise be first
+		Empire.init(new DefaultEmpireModule(), new TestModule(), new OpenRdfEmpireModule());
+	}
+
 	@Test
 	public void testTripleSourceCreate() throws DataSourceException {
 		Empire.init(new DefaultEmpireModule(), new TestModule(), new OpenRdfEmpireModule());
@@ -73,6 +135,620 @@ public class TestDS {
 		DataSourceUtil.asTripleSource(null);
 	}
 
+	@Test
+	public void testBulkLoad() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		BulkLoader aLoader = new BulkLoader((MutableDataSource) aSource);
+		aLoader.setBatchSize(1000);
+		aLoader.setQueueSize(2);
+
+		BulkLoader.Result aResult = aLoader.load(new File("test/data/lite.nasa.nt"));
+
+		assertTrue(aResult.getStatementCount() > 5000);
+		assertEquals((aResult.getStatementCount() + 999) / 1000, aResult.getBatchCount());
+
+		// the file has a few duplicate statements
+		RDFParser aParser = Rio.createParser(RDFFormat.NTRIPLES);
+		StatementCollector aCollector = new StatementCollector();
+
+		aParser.setRDFHandler(aCollector);
+		aParser.parse(new FileInputStream("test/data/lite.nasa.nt"), "");
+
+		assertEquals(aCollector.getStatements().size(), aResult.getStatementCount());
+		assertEquals(new HashSet<Statement>(aCollector.getStatements()).size(), Iterables.size(aSource.getStatements(null, null, null)));
+
+		// gzipped files are loaded as well
+		aSource = createRepositorySource();
+
+		aResult = new BulkLoader((MutableDataSource) aSource).load(new File("test/data/nasa.nt.gz"));
+
+		assertTrue(aResult.getStatementCount() > 90000);
+		assertTrue(Iterables.size(aSource.getStatements(null, null, null)) > 90000);
+	}
+
+	@Test
+	public void testBulkLoadObjects() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		List<TestPerson> aPeople = new ArrayList<TestPerson>();
+
+		for (int i = 0; i < 250; i++) {
+			TestPerson aPerson = new TestPerson();
+			aPerson.setMBox("mailto:person" + i + "@example.org");
+			aPerson.setFirstName("First" + i);
+
+			aPeople.add(aPerson);
+		}
+
+		BulkLoader aLoader = new BulkLoader((MutableDataSource) aSource);
+		aLoader.setBatchSize(100);
+
+		BulkLoader.Result aResult = aLoader.loadObjects(aPeople.iterator());
+
+		assertEquals(3, aResult.getBatchCount());
+		assertEquals(250, Iterables.size(aSource.getStatements(null, RDF.TYPE, null)));
+	}
+
+	@Test(expected=DataSourceException.class)
+	public void testBulkLoadParseError() throws Exception {
+		BulkLoader aLoader = new BulkLoader((MutableDataSource) createRepositorySource());
+
+		aLoader.load(new ByteArrayInputStream("<urn:a> <urn:b> .".getBytes()), RDFFormat.NTRIPLES, "");
+	}
+
+	@Test
+	public void testBulkLoadRollbackError() throws Exception {
+		class FailingSource extends MutableDelegatingDataSource implements SupportsTransactions {
+			FailingSource(final MutableDataSource theSource) {
+				super(theSource);
+			}
+
+			@Override
+			public void add(final Graph theGraph) throws DataSourceException {
+				throw new DataSourceException("add failed");
+			}
+
+			public void begin() throws DataSourceException {
+			}
+
+			public void commit() throws DataSourceException {
+			}
+
+			public void rollback() throws DataSourceException {
+				throw new DataSourceException("rollback failed");
+			}
+		}
+
+		BulkLoader aLoader = new BulkLoader(new FailingSource((MutableDataSource) createRepositorySource()));
+
+		try {
+			aLoader.load(new File("test/data/lite.nasa.nt"));
+
+			fail("The load should have failed");
+		}
+		catch (DataSourceException e) {
+			// the failed rollback does not hide why the batch could not be written
+			assertEquals("add failed", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNativeLookups() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+		// the same source without its statement level access, which is queried instead
+		DataSource aQueried = new DelegatingDataSource(aSource);
+
+		URI aLaunch = ValueFactoryImpl.getInstance().createURI("http://nasa.dataincubator.org/launch/SATURNSA1");
+		SupportsRdfId aObj = new SupportsRdfIdImpl(new SupportsRdfId.URIKey(java.net.URI.create(aLaunch.stringValue())));
+
+		Graph aGraph = DataSourceUtil.describe(aSource, aObj);
+
+		assertFalse(aGraph.isEmpty());
+		assertEquals(new HashSet<Statement>(DataSourceUtil.describe(aQueried, aObj)), new HashSet<Statement>(aGraph));
+
+		assertTrue(DataSourceUtil.exists(aSource, aObj));
+		assertEquals(new HashSet<Value>(DataSourceUtil.getValues(aQueried, aLaunch, RDF.TYPE)),
+					 new HashSet<Value>(DataSourceUtil.getValues(aSource, aLaunch, RDF.TYPE)));
+		assertEquals(DataSourceUtil.getType(aQueried, aLaunch), DataSourceUtil.getType(aSource, aLaunch));
+
+		SupportsRdfId aMissing = new SupportsRdfIdImpl(new SupportsRdfId.URIKey(java.net.URI.create("urn:missing")));
+
+		assertFalse(DataSourceUtil.exists(aSource, aMissing));
+		assertTrue(DataSourceUtil.describe(aSource, aMissing).isEmpty());
+	}
+
+	@Test
+	public void testExistsReadsOneStatement() throws Exception {
+		final TripleSource aSource = createRepositorySource();
+
+		new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+		final AtomicInteger aRead = new AtomicInteger();
+		final Function<Statement, Statement> aCounter = new Function<Statement, Statement>() {
+			public Statement apply(final Statement theStmt) {
+				aRead.incrementAndGet();
+				return theStmt;
+			}
+		};
+
+		// counts the statements read from the source
+		class CountingSource extends DelegatingDataSource implements TripleSource {
+			CountingSource() {
+				super(aSource);
+			}
+
+			public Iterable<Statement> getStatements(Resource theSubject, URI thePredicate, Value theObject) throws DataSourceException {
+				return Iterables.transform(aSource.getStatements(theSubject, thePredicate, theObject), aCounter);
+			}
+
+			public Iterable<Statement> getStatements(Resource theSubject, URI thePredicate, Value theObject, Resource theContext) throws DataSourceException {
+				return Iterables.transform(aSource.getStatements(theSubject, thePredicate, theObject, theContext), aCounter);
+			}
+		}
+
+		URI aLaunch = ValueFactoryImpl.getInstance().createURI("http://nasa.dataincubator.org/launch/SATURNSA1");
+
+		assertTrue(Iterables.size(aSource.getStatements(aLaunch, null, null)) > 1);
+
+		// the existence of a subject is decided by its first statement at most, the rest of its description is not read
+		assertTrue(DataSourceUtil.exists(new CountingSource(),
+										 new SupportsRdfIdImpl(new SupportsRdfId.URIKey(java.net.URI.create(aLaunch.stringValue())))));
+		assertTrue(aRead.get() <= 1);
+	}
+
+	@Test
+	public void testDescribeSeveral() throws Exception {
+		for (TripleSource aSource : new TripleSource[] { createRepositorySource(), createRepositorySource(RepositoryFactoryKeys.LANG_SERQL) }) {
+			new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+			List<Resource> aResources = Lists.newArrayList();
+			Set<Statement> aExpected = Sets.newHashSet();
+
+			for (Statement aStmt : aSource.getStatements(null, RDF.TYPE, null)) {
+				if (aResources.size() < 5 && !aResources.contains(aStmt.getSubject())) {
+					aResources.add(aStmt.getSubject());
+					Iterables.addAll(aExpected, aSource.getStatements(aStmt.getSubject(), null, null));
+				}
+			}
+
+			aResources.add(ValueFactoryImpl.getInstance().createURI("urn:missing"));
+
+			final List<String> aQueries = Lists.newArrayList();
+
+			DataSource aQueried = new DelegatingDataSource(aSource) {
+				@Override
+				public Graph graphQuery(final String theQuery) throws QueryException {
+					aQueries.add(theQuery);
+					return super.graphQuery(theQuery);
+				}
+			};
+
+			assertEquals(aExpected, Sets.newHashSet(DataSourceUtil.describe(aSource, aResources)));
+			assertEquals(aExpected, Sets.newHashSet(DataSourceUtil.describe(aQueried, aResources)));
+
+			// the subjects are bound in a single query rather than compared with every statement in the database
+			assertEquals(1, aQueries.size());
+			assertFalse(aQueries.get(0).contains("filter"));
+			assertFalse(aQueries.get(0).contains(" = "));
+		}
+	}
+
+	@Test
+	public void testExistingSeveral() throws Exception {
+		for (TripleSource aSource : new TripleSource[] { createRepositorySource(), createRepositorySource(RepositoryFactoryKeys.LANG_SERQL) }) {
+			new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+			Set<Resource> aExpected = Sets.newHashSet();
+
+			for (Statement aStmt : aSource.getStatements(null, RDF.TYPE, null)) {
+				if (aExpected.size() < 5) {
+					aExpected.add(aStmt.getSubject());
+				}
+			}
+
+			List<Resource> aResources = Lists.newArrayList(aExpected);
+			aResources.add(ValueFactoryImpl.getInstance().createURI("urn:missing"));
+
+			final List<String> aQueries = Lists.newArrayList();
+
+			DataSource aQueried = new DelegatingDataSource(aSource) {
+				@Override
+				public Graph graphQuery(final String theQuery) throws QueryException {
+					aQueries.add(theQuery);
+					return super.graphQuery(theQuery);
+				}
+
+				@Override
+				public ResultSet selectQuery(final String theQuery) throws QueryException {
+					aQueries.add(theQuery);
+					return super.selectQuery(theQuery);
+				}
+			};
+
+			assertEquals(aExpected, DataSourceUtil.existing(aSource, null, aResources));
+			assertEquals(aExpected, DataSourceUtil.existing(aQueried, null, aResources));
+
+			// the subjects are bound in a single query rather than compared with every statement in the database
+			assertEquals(1, aQueries.size());
+			assertFalse(aQueries.get(0).contains("filter"));
+			assertFalse(aQueries.get(0).contains(" = "));
+		}
+	}
+
+	@Test
+	public void testTripleSourceAdapterPatterns() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+		TripleSource aAdapter = new TripleSourceAdapter(aSource);
+
+		URI aLaunch = ValueFactoryImpl.getInstance().createURI("http://nasa.dataincubator.org/launch/SATURNSA1");
+
+		Statement aLiteralStmt = null;
+		for (Statement aStmt : aSource.getStatements(aLaunch, null, null)) {
+			if (aStmt.getObject() instanceof Literal) {
+				aLiteralStmt = aStmt;
+				break;
+			}
+		}
+
+		assertNotNull(aLiteralStmt);
+
+		assertPatternEquals(aSource, aAdapter, aLaunch, null, null);
+		assertPatternEquals(aSource, aAdapter, null, RDF.TYPE, ValueFactoryImpl.getInstance().createURI("http://purl.org/net/schemas/space/Launch"));
+		assertPatternEquals(aSource, aAdapter, null, null, aLiteralStmt.getObject());
+		assertPatternEquals(aSource, aAdapter, aLaunch, aLiteralStmt.getPredicate(), aLiteralStmt.getObject());
+
+		// the subject is bound in the query rather than filtered, so a missing subject matches nothing at all
+		assertTrue(Iterables.isEmpty(aAdapter.getStatements(ValueFactoryImpl.getInstance().createURI("urn:missing"), null, null)));
+		assertFalse(DataSourceUtil.exists(new DelegatingDataSource(aSource),
+										  new SupportsRdfIdImpl(new SupportsRdfId.URIKey(java.net.URI.create("urn:missing")))));
+	}
+
+	@Test
+	public void testTransactionRollback() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+		// once with statement lookups, and once with queries
+		assertRollback(aSource, (MutableDataSource) aSource);
+
+		MutableDelegatingDataSource aQueried = new MutableDelegatingDataSource((MutableDataSource) aSource);
+
+		assertRollback(aSource, aQueried);
+
+		// the subjects, of the default graph and of the named one, are looked up in batches in which they are bound
+		assertFalse(aQueried.mQueries.isEmpty());
+
+		for (String aQuery : aQueried.mQueries) {
+			assertFalse(aQuery, aQuery.toLowerCase().contains("filter"));
+		}
+	}
+
+	@Test
+	public void testTransactionalUpdate() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		EntityManager aManager = new EntityManagerImpl(new TransactionalDataSource((MutableDataSource) aSource));
+
+		URI aNew = ValueFactoryImpl.getInstance().createURI("urn:new");
+
+		// outside of a transaction the update is passed on to the database
+		assertTrue(aManager.createNativeQuery("insert data { <urn:new> <urn:label> \"before\" }").executeUpdate() != 0);
+		assertEquals(1, Iterables.size(aSource.getStatements(aNew, null, null)));
+
+		aManager.getTransaction().begin();
+
+		try {
+			aManager.createNativeQuery("insert data { <urn:new> <urn:label> \"during\" }").executeUpdate();
+			fail("An update cannot be rolled back, it should not be run in a transaction");
+		}
+		catch (PersistenceException e) {
+			// expected
+		}
+
+		aManager.getTransaction().rollback();
+
+		assertEquals(1, Iterables.size(aSource.getStatements(aNew, null, null)));
+	}
+
+	@Test
+	public void testNativeTransactions() throws Exception {
+		TripleSource aSource = createRepositorySource();
+
+		assertTrue(aSource instanceof SupportsTransactions);
+
+		SupportsTransactions aTransactions = (SupportsTransactions) aSource;
+		MutableDataSource aMutable = (MutableDataSource) aSource;
+
+		URI aNew = ValueFactoryImpl.getInstance().createURI("urn:new");
+		SupportsRdfId aObj = new SupportsRdfIdImpl(new SupportsRdfId.URIKey(java.net.URI.create(aNew.stringValue())));
+
+		Graph aGraph = Graphs.newGraph();
+		aGraph.add(aNew, RDF.TYPE, RDF.STATEMENT);
+		aGraph.add(aNew, RDF.VALUE, ValueFactoryImpl.getInstance().createLiteral("value"));
+
+		aTransactions.begin();
+		aMutable.add(aGraph);
+
+		// the transaction sees its own changes, through both statement lookups and queries
+		assertEquals(2, Iterables.size(aSource.getStatements(aNew, null, null)));
+		assertTrue(DataSourceUtil.exists(new DelegatingDataSource(aSource), aObj));
+
+		aTransactions.rollback();
+
+		assertFalse(DataSourceUtil.exists(aSource, aObj));
+
+		aTransactions.begin();
+		aMutable.add(aGraph);
+		aTransactions.commit();
+
+		assertEquals(2, Iterables.size(aSource.getStatements(aNew, null, null)));
+
+		// outside of a transaction changes are committed as they are made
+		aMutable.remove(aGraph);
+
+		assertFalse(DataSourceUtil.exists(aSource, aObj));
+
+		try {
+			aTransactions.commit();
+			fail("Should not be able to commit outside of a transaction");
+		}
+		catch (DataSourceException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNativeTransactionCommitError() throws Exception {
+		DataSource aSource = createFailingCommitSource();
+		aSource.connect();
+
+		URI aNew = ValueFactoryImpl.getInstance().createURI("urn:new");
+
+		Graph aGraph = Graphs.newGraph();
+		aGraph.add(aNew, RDF.TYPE, RDF.STATEMENT);
+
+		((SupportsTransactions) aSource).begin();
+		((MutableDataSource) aSource).add(aGraph);
+
+		try {
+			((SupportsTransactions) aSource).commit();
+			fail("The commit should have failed");
+		}
+		catch (DataSourceException e) {
+			assertEquals("commit failed", e.getCause().getMessage());
+		}
+
+		// the changes of the failed commit are not committed when the connection goes back to auto commit
+		assertEquals(0, Iterables.size(((TripleSource) aSource).getStatements(aNew, null, null)));
+	}
+
+	@Test
+	public void testEntityTransactionCommitError() throws Exception {
+		DataSource aSource = createFailingCommitSource();
+		aSource.connect();
+
+		EntityManager aManager = new EntityManagerImpl((MutableDataSource) aSource);
+
+		URI aNew = ValueFactoryImpl.getInstance().createURI("urn:new");
+
+		Graph aGraph = Graphs.newGraph();
+		aGraph.add(aNew, RDF.TYPE, RDF.STATEMENT);
+
+		aManager.getTransaction().begin();
+		((MutableDataSource) aSource).add(aGraph);
+
+		try {
+			aManager.getTransaction().commit();
+			fail("The commit should have failed");
+		}
+		catch (PersistenceException e) {
+			// expected
+		}
+
+		// the failed commit ended the transaction, so a new one can be started
+		assertFalse(aManager.getTransaction().isActive());
+
+		aManager.getTransaction().begin();
+		((MutableDataSource) aSource).add(aGraph);
+		aManager.getTransaction().commit();
+
+		assertEquals(1, Iterables.size(((TripleSource) aSource).getStatements(aNew, null, null)));
+	}
+
+	/**
+	 * Create a data source over a repository whose first commit fails
+	 * @return the data source
+	 * @throws Exception if there is an error creating the data source
+	 */
+	private DataSource createFailingCommitSource() throws Exception {
+		Repository aRepository = new SailRepository(new MemoryStore()) {
+			private boolean mFailed = false;
+
+			@Override
+			public SailRepositoryConnection getConnection() throws RepositoryException {
+				try {
+					return new SailRepositoryConnection(this, getSail().getConnection()) {
+						@Override
+						public void commit() throws RepositoryException {
+							if (!mFailed) {
+								mFailed = true;
+								throw new RepositoryException("commit failed");
+							}
+
+							super.commit();
+						}
+					};
+				}
+				catch (SailException e) {
+					throw new RepositoryException(e);
+				}
+			}
+		};
+		aRepository.initialize();
+
+		return new RepositoryDataSourceFactory().create(Collections.<String, Object>singletonMap(RepositoryFactoryKeys.REPO_HANDLE, aRepository));
+	}
+
+	@Test
+	public void testTransactionJournalSpill() throws Exception {
+		int aThreshold = EmpireOptions.TRANSACTION_JOURNAL_THRESHOLD;
+
+		EmpireOptions.TRANSACTION_JOURNAL_THRESHOLD = 10;
+
+		try {
+			TripleSource aSource = createRepositorySource();
+
+			new BulkLoader((MutableDataSource) aSource).load(new File("test/data/lite.nasa.nt"));
+
+			assertRollback(aSource, (MutableDataSource) aSource);
+
+			// a committed transaction is kept, and the journal is reused by the next one
+			TransactionalDataSource aTransactional = new TransactionalDataSource((MutableDataSource) aSource);
+
+			URI aNew = ValueFactoryImpl.getInstance().createURI("urn:committed");
+
+			Graph aGraph = Graphs.newGraph();
+			for (int i = 0; i < 50; i++) {
+				aGraph.add(aNew, RDF.VALUE, ValueFactoryImpl.getInstance().createLiteral(i));
+			}
+
+			aTransactional.begin();
+			aTransactional.add(aGraph);
+			aTransactional.commit();
+
+			aGraph = Graphs.newGraph();
+			for (int i = 50; i < 100; i++) {
+				aGraph.add(aNew, RDF.VALUE, ValueFactoryImpl.getInstance().createLiteral(i));
+			}
+
+			aTransactional.begin();
+			aTransactional.add(aGraph);
+			aTransactional.rollback();
+
+			assertEquals(50, Iterables.size(aSource.getStatements(aNew, null, null)));
+
+			aTransactional.disconnect();
+		}
+		finally {
+			EmpireOptions.TRANSACTION_JOURNAL_THRESHOLD = aThreshold;
+		}
+	}
+
+	private static void assertRollback(TripleSource theSource, MutableDataSource theTarget) throws Exception {
+		Set<Statement> aBefore = Sets.newHashSet(theSource.getStatements(null, null, null));
+
+		ValueFactoryImpl aFactory = ValueFactoryImpl.getInstance();
+		URI aNew = aFactory.createURI("urn:new");
+
+		Graph aAdded = Graphs.newGraph();
+		Graph aRemoved = Graphs.newGraph();
+
+		int aCount = 0;
+		for (Statement aStmt : theSource.getStatements(null, RDF.TYPE, null)) {
+			// more subjects than are described with a single query
+			if (aCount++ == 250) {
+				break;
+			}
+
+			Iterables.addAll(aAdded, theSource.getStatements(aStmt.getSubject(), null, null));
+			aAdded.add(aStmt.getSubject(), aNew, aFactory.createLiteral(aCount));
+
+			aRemoved.add(aStmt);
+			aRemoved.add(aStmt.getSubject(), aNew, aNew);
+		}
+
+		aAdded.add(aNew, aNew, aNew);
+		aAdded.add(aNew, RDF.VALUE, aFactory.createLiteral("value", "en"));
+		aAdded.add(aNew, RDF.VALUE, aFactory.createLiteral("value"), aFactory.createURI("urn:graph"));
+		aRemoved.add(aNew, RDF.TYPE, aNew);
+
+		TransactionalDataSource aTransactional = new TransactionalDataSource(theTarget);
+
+		aTransactional.begin();
+		aTransactional.add(aAdded);
+		aTransactional.remove(aRemoved);
+
+		assertTrue(theSource.getStatements(aNew, aNew, aNew).iterator().hasNext());
+
+		aTransactional.rollback();
+
+		assertEquals(aBefore, Sets.newHashSet(theSource.getStatements(null, null, null)));
+	}
+
+	/**
+	 * A mutable source which does not expose the statement level access of its delegate, so it has to be queried
+	 */
+	private static class MutableDelegatingDataSource extends DelegatingDataSource implements MutableDataSource {
+		private final MutableDataSource mSource;
+
+		private final List<String> mQueries = new ArrayList<String>();
+
+		MutableDelegatingDataSource(final MutableDataSource theSource) {
+			super(theSource);
+
+			mSource = theSource;
+		}
+
+		public void add(final Graph theGraph) throws DataSourceException {
+			mSource.add(theGraph);
+		}
+
+		public void remove(final Graph theGraph) throws DataSourceException {
+			mSource.remove(theGraph);
+		}
+
+		@Override
+		public Graph graphQuery(final String theQuery) throws QueryException {
+			mQueries.add(theQuery);
+			return super.graphQuery(theQuery);
+		}
+
+		@Override
+		public ResultSet selectQuery(final String theQuery) throws QueryException {
+			mQueries.add(theQuery);
+			return super.selectQuery(theQuery);
+		}
+	}
+
+	private static void assertPatternEquals(TripleSource theExpected, TripleSource theActual, Resource theSubject, URI thePredicate, Value theObject) throws Exception {
+		Set<Statement> aExpected = Sets.newHashSet(theExpected.getStatements(theSubject, thePredicate, theObject));
+
+		assertFalse(aExpected.isEmpty());
+		assertEquals(aExpected, Sets.newHashSet(theActual.getStatements(theSubject, thePredicate, theObject)));
+	}
+
+	private static TripleSource createRepositorySource() throws Exception {
+		Repository aRepository = new SailRepository(new MemoryStore());
+		aRepository.initialize();
+
+		DataSource aSource = new RepositoryDataSourceFactory().create(Collections.<String, Object>singletonMap(RepositoryFactoryKeys.REPO_HANDLE, aRepository));
+		aSource.connect();
+
+		return (TripleSource) aSource;
+	}
+
+	private static TripleSource createRepositorySource(String theQueryLang) throws Exception {
+		Repository aRepository = new SailRepository(new MemoryStore());
+		aRepository.initialize();
+
+		Map<String, Object> aConfig = new HashMap<String, Object>();
+		aConfig.put(RepositoryFactoryKeys.REPO_HANDLE, aRepository);
+		aConfig.put(RepositoryFactoryKeys.QUERY_LANG, theQueryLang);
+
+		DataSource aSource = new RepositoryDataSourceFactory().create(aConfig);
+		aSource.connect();
+
+		return (TripleSource) aSource;
+	}
+
 	@Test @Ignore
 	public void testDataSourceOps() {
 		// TODO: test DataSourceUtil operations like getType, exists, etc.
@@ -16,10 +16,15 @@
 package com.clarkparsia.empire.test;
 
 import com.clarkparsia.empire.impl.EntityManagerFactoryImpl;
+import com.clarkparsia.empire.impl.LifecycleCallbacks;
+import com.clarkparsia.empire.impl.PrefixDeclarations;
+import com.clarkparsia.empire.impl.sparql.SPARQLDialect;
 import com.clarkparsia.empire.test.api.TestDataSourceFactory;
 import org.junit.Test;
 import org.junit.BeforeClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.openrdf.model.Resource;
@@ -65,6 +70,8 @@ import javax.persistence.Entity;
 import javax.persistence.OneToMany;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Query;
+import javax.persistence.EntityListeners;
+import javax.persistence.PrePersist;
 
 import java.net.URI;
 import java.net.URL;
@@ -72,6 +79,7 @@ import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -147,6 +155,93 @@ public class TestMisc {
 		assertEquals(1, aResult);
 	}
 
+	@Test
+	public void testUsedPrefixes() {
+		PrefixMapping.GLOBAL.addMapping("usedns", "urn:used:");
+		PrefixMapping.GLOBAL.addMapping("unusedns", "urn:unused:");
+
+		assertEquals(Collections.singleton("usedns"),
+					 PrefixDeclarations.usedPrefixes("select ?s where { ?s usedns:p <http://example.org/unusedns:x>. ?s ?p \"unusedns:y\" } # unusedns:z"));
+
+		// patterns ending in a '.' directly before a prefixed name, and datatypes
+		assertEquals(Collections.singleton("usedns"), PrefixDeclarations.usedPrefixes("where { ?s ?p ?o.?o usedns:p ?v }"));
+		assertEquals(Collections.singleton("usedns"), PrefixDeclarations.usedPrefixes("where { ?s ?p \"1\"^^usedns:int }"));
+
+		// prefixes the query declares itself are not declared again
+		assertTrue(PrefixDeclarations.usedPrefixes("PREFIX usedns: <urn:other:> select ?s where { ?s usedns:p ?o }").isEmpty());
+
+		StringBuffer aQuery = new StringBuffer("select ?s where { ?s usedns:p ?o }");
+		SPARQLDialect.instance().insertNamespaces(aQuery);
+
+		assertTrue(aQuery.toString().startsWith("PREFIX usedns: <urn:used:>\n"));
+		assertFalse(aQuery.toString().contains("unusedns"));
+
+		// queries without prefixed names have no declarations
+		aQuery = new StringBuffer("select ?s where { ?s <urn:p> ?o }");
+		SPARQLDialect.instance().insertNamespaces(aQuery);
+
+		assertEquals("select ?s where { ?s <urn:p> ?o }", aQuery.toString());
+
+		// a changed namespace is declared with its new value
+		PrefixMapping.GLOBAL.setMapping("usedns", "urn:changed:");
+
+		aQuery = new StringBuffer("select ?s where { ?s usedns:p ?o }");
+		SPARQLDialect.instance().insertNamespaces(aQuery);
+
+		assertTrue(aQuery.toString().startsWith("PREFIX usedns: <urn:changed:>\n"));
+	}
+
+	@Test
+	public void testLifecycleCallbacks() {
+		// classes without callbacks all use the same empty callbacks
+		assertSame(LifecycleCallbacks.of(NoCallbacks.class), LifecycleCallbacks.of(Object.class));
+
+		CallbackEntity aFirst = new CallbackEntity();
+		CallbackEntity aSecond = new CallbackEntity();
+
+		RecordingListener.ENTITIES.clear();
+		RecordingListener.LISTENERS.clear();
+
+		LifecycleCallbacks.of(CallbackEntity.class).fire(aFirst, PrePersist.class);
+		LifecycleCallbacks.of(CallbackEntity.class).fire(aSecond, PrePersist.class);
+
+		// the failing callbacks of the entity and of the first listener do not stop the second listener
+		assertEquals(Lists.<Object>newArrayList(aFirst, aSecond), RecordingListener.ENTITIES);
+
+		// and the listener is created once for the class, not once per entity
+		assertEquals(2, RecordingListener.LISTENERS.size());
+		assertSame(RecordingListener.LISTENERS.get(0), RecordingListener.LISTENERS.get(1));
+	}
+
+	public static class NoCallbacks {
+	}
+
+	@EntityListeners({FailingListener.class, RecordingListener.class})
+	public static class CallbackEntity {
+		@PrePersist
+		public void prePersist() {
+			throw new IllegalStateException("entity callback failed");
+		}
+	}
+
+	public static class FailingListener {
+		@PrePersist
+		public void prePersist(Object theObj) {
+			throw new IllegalStateException("listener callback failed");
+		}
+	}
+
+	public static class RecordingListener {
+		static final List<Object> ENTITIES = new ArrayList<Object>();
+		static final List<RecordingListener> LISTENERS = new ArrayList<RecordingListener>();
+
+		@PrePersist
+		public void prePersist(Object theObj) {
+			ENTITIES.add(theObj);
+			LISTENERS.add(this);
+		}
+	}
+
 	@MappedSuperclass
 	public interface TestDouble extends SupportsRdfId {
 		@RdfProperty("test:foo")
@@ -30,12 +30,20 @@ import org.openrdf.model.impl.GraphImpl;
 import org.openrdf.model.impl.ValueFactoryImpl;
 
 import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
 
 import org.openrdf.model.util.GraphUtil;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
 import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
 
 import com.clarkparsia.empire.EmpireOptions;
 
+import com.clarkparsia.empire.annotation.EntityMapping;
+import com.clarkparsia.empire.codegen.AccessorGenerator;
+import com.clarkparsia.empire.codegen.PropertyAccessor;
 import com.clarkparsia.empire.annotation.InvalidRdfException;
 import com.clarkparsia.empire.annotation.RdfGenerator;
 import com.clarkparsia.empire.annotation.Namespaces;
@@ -43,18 +51,34 @@ import com.clarkparsia.empire.annotation.RdfsClass;
 import com.clarkparsia.empire.annotation.SupportsRdfIdImpl;
 import com.clarkparsia.empire.annotation.RdfId;
 import com.clarkparsia.empire.annotation.RdfProperty;
+import com.clarkparsia.empire.annotation.NamedGraph;
 
 import com.clarkparsia.empire.test.api.BaseTestClass;
 import com.clarkparsia.empire.test.api.TestPerson;
 import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.ds.DataSource;
 import com.clarkparsia.empire.ds.DataSourceException;
+import com.clarkparsia.empire.ds.QueryException;
+import com.clarkparsia.empire.ds.SupportsNamedGraphs;
 import static com.clarkparsia.empire.util.EmpireUtil.asPrimaryKey;
 import com.clarkparsia.empire.test.api.TestDataSource;
+import com.clarkparsia.empire.test.api.MutableTestDataSource;
+import com.clarkparsia.empire.impl.EntityManagerImpl;
+import com.clarkparsia.empire.util.LiteralConverter;
+import com.clarkparsia.empire.util.LiteralConverters;
+import com.clarkparsia.empire.ds.ResultSet;
 import com.clarkparsia.empire.test.api.TestVocab;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.clarkparsia.openrdf.vocabulary.FOAF;
 import com.clarkparsia.openrdf.vocabulary.DC;
@@ -337,6 +361,321 @@ public class TestRdfConvert {
 		}
 	}
 
+	@Test
+	public void testEntityMapping() throws Exception {
+		EntityMapping aMapping = EntityMapping.of(TestPerson.class);
+
+		// mappings are computed once and shared
+		assertTrue(aMapping == EntityMapping.of(TestPerson.class));
+
+		assertEquals(FOAF.ontology().Person, aMapping.getRdfType());
+
+		org.openrdf.model.URI aSubject = ValueFactoryImpl.getInstance().createURI("urn:person");
+
+		EntityMapping.PropertyMapping aKnows = aMapping.getSetter(FOAF.ontology().knows, aSubject);
+
+		assertTrue(aKnows != null);
+		assertTrue(aKnows.isCollection());
+		assertEquals(TestPerson.class, aKnows.getElementType());
+		assertTrue(aKnows.isEntityElement());
+
+		// the setter is annotated rather than the field
+		assertTrue(aMapping.getSetter(DC.ontology().title, aSubject).getAccessor() instanceof java.lang.reflect.Method);
+
+		// and the annotation on the getter is carried over to the inferred setter
+		assertTrue(aMapping.getSetter(TestVocab.ontology().likesVideoGames, aSubject) != null);
+
+		assertNull(aMapping.getSetter(RDFS.COMMENT, aSubject));
+	}
+
+	@Test
+	public void testGeneratedAccessors() throws Exception {
+		PropertyAccessor aCount = AccessorGenerator.generateAccessor(AccessorTest.class.getDeclaredField("count"));
+		PropertyAccessor aName = AccessorGenerator.generateAccessor(AccessorTest.class.getDeclaredMethod("getName"),
+																	 AccessorTest.class.getDeclaredMethod("setName", String.class));
+
+		assertTrue(aCount != null);
+		assertTrue(aName != null);
+
+		AccessorTest aObj = new AccessorTest();
+
+		aCount.set(aObj, 42);
+		aName.set(aObj, "name");
+
+		assertEquals(42, aObj.count);
+		assertEquals(42, aCount.get(aObj));
+		assertEquals("name", aObj.getName());
+		assertEquals("name", aName.get(aObj));
+
+		try {
+			aCount.set(aObj, null);
+			fail("null should not be assignable to a primitive");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			aName.set(aObj, 42);
+			fail("an Integer should not be assignable to a String");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// private members cannot be accessed by generated code
+		assertNull(AccessorGenerator.generateAccessor(AccessorTest.class.getDeclaredField("name")));
+
+		// nor can a lone getter or setter, or a final field, those are left to reflection
+		assertNull(AccessorGenerator.generateAccessor(AccessorTest.class.getDeclaredMethod("setName", String.class)));
+		assertNull(AccessorGenerator.generateAccessor(AccessorTest.class.getDeclaredField("label")));
+
+		EntityMapping.PropertyMapping aLabel = null;
+		for (EntityMapping.PropertyMapping aProperty : EntityMapping.of(AccessorTest.class).getProperties()) {
+			if (aProperty.getAccessor().equals(AccessorTest.class.getDeclaredField("label"))) {
+				aLabel = aProperty;
+			}
+		}
+
+		assertTrue(aLabel != null);
+
+		aLabel.set(aObj, "label");
+		assertEquals("label", aLabel.get(aObj));
+
+		// values which need a widening conversion go through reflection
+		EntityMapping.PropertyMapping aMapping = null;
+		for (EntityMapping.PropertyMapping aProperty : EntityMapping.of(AccessorTest.class).getProperties()) {
+			if (aProperty.getAccessor().equals(AccessorTest.class.getDeclaredField("total"))) {
+				aMapping = aProperty;
+			}
+		}
+
+		assertTrue(aMapping != null);
+
+		aMapping.set(aObj, 7L);
+		assertEquals(7L, aObj.total);
+
+		aMapping.set(aObj, 8);
+		assertEquals(8L, aObj.total);
+		assertEquals(8L, aMapping.get(aObj));
+	}
+
+	@Test
+	public void testLiteralConverters() throws Exception {
+		LiteralConverters.register(Locale.class, new LiteralConverter<Locale>() {
+			public Locale fromLiteral(final Literal theLiteral) {
+				return new Locale(theLiteral.getLabel());
+			}
+
+			public Literal toLiteral(final ValueFactory theFactory, final Locale theValue) {
+				return theFactory.createLiteral(theValue.getLanguage(), theFactory.createURI("urn:empire:locale"));
+			}
+		}, ValueFactoryImpl.getInstance().createURI("urn:empire:locale"));
+
+		Calendar aCal = Calendar.getInstance();
+		aCal.set(Calendar.MILLISECOND, 0);
+
+		LiteralTest aObj = new LiteralTest();
+		aObj.setRdfId(new SupportsRdfId.URIKey(URI.create("urn:literal")));
+		aObj.locale = Locale.FRENCH;
+		aObj.calendar = aCal;
+		aObj.date = aCal.getTime();
+		aObj.birthday = Dates.asDate("1980-01-01");
+
+		Graph aGraph = RdfGenerator.asRdf(aObj);
+
+		LiteralTest aCopy = RdfGenerator.fromRdf(LiteralTest.class, aObj.getRdfId(), new TestDataSource(aGraph));
+
+		assertEquals(Locale.FRENCH, aCopy.locale);
+		assertEquals(aCal.getTimeInMillis(), aCopy.calendar.getTimeInMillis());
+		assertEquals(aObj.date, aCopy.date);
+		assertEquals(aObj.birthday, aCopy.birthday);
+
+		// dates are read the same way as before, whatever form they are in
+		RdfGenerator.ValueToObject aFunc = new RdfGenerator.ValueToObject(new TestDataSource(), null,
+																		  LiteralTest.class.getDeclaredField("date"), null);
+		for (String aDate : new String[] { "1980-01-01", "2012-02-29T13:14:15", "2012-02-29T13:14:15.123-05:00", "2012-02-29 13:14:15" }) {
+			assertEquals(Dates.asDate(aDate), aFunc.apply(ValueFactoryImpl.getInstance().createLiteral(aDate, XMLSchema.DATETIME)));
+		}
+
+		// and calendars are read the same way as dates
+		Calendar aBirthday = (Calendar) LiteralConverters.forDatatype(XMLSchema.DATE, Calendar.class)
+				.fromLiteral(ValueFactoryImpl.getInstance().createLiteral("1980-01-01", XMLSchema.DATE));
+
+		assertEquals(aObj.birthday, aBirthday.getTime());
+	}
+
+	@Test
+	public void testFindInOneQuery() throws Exception {
+		TestPerson aPerson = new TestPerson();
+		aPerson.setMBox("mailto:find@example.org");
+		aPerson.setFirstName("Find");
+		aPerson.setWeight(42f);
+
+		CountingDataSource aSource = new CountingDataSource(RdfGenerator.asRdf(aPerson));
+
+		EntityManagerImpl aManager = new EntityManagerImpl(aSource);
+
+		TestPerson aFound = aManager.find(TestPerson.class, aPerson.getRdfId());
+
+		assertEquals(aPerson, aFound);
+		assertEquals(1, aSource.mQueries.get());
+
+		aSource.mQueries.set(0);
+
+		assertNull(aManager.find(TestPerson.class, ValueFactoryImpl.getInstance().createURI("urn:not:found")));
+		assertEquals(1, aSource.mQueries.get());
+	}
+
+	@Test
+	public void testBatchFetchRelations() throws Exception {
+		TestPerson aPerson = new TestPerson();
+		aPerson.setMBox("mailto:batch@example.org");
+		aPerson.setFirstName("Batch");
+
+		Graph aGraph = new GraphImpl();
+
+		for (int i = 0; i < 5; i++) {
+			TestPerson aFriend = new TestPerson();
+			aFriend.setMBox("mailto:friend" + i + "@example.org");
+			aFriend.setFirstName("Friend" + i);
+
+			aPerson.getKnows().add(aFriend);
+
+			aGraph.addAll(RdfGenerator.asRdf(aFriend));
+		}
+
+		aGraph.addAll(RdfGenerator.asRdf(aPerson));
+
+		int aBatchSize = EmpireOptions.BATCH_FETCH_SIZE;
+
+		try {
+			// the person, and then all the people they know in a single query
+			CountingDataSource aSource = new CountingDataSource(aGraph);
+
+			assertEquals(aPerson, RdfGenerator.fromRdf(TestPerson.class, aPerson.getRdfId(), aSource));
+			assertEquals(2, aSource.mQueries.get());
+
+			EmpireOptions.BATCH_FETCH_SIZE = 2;
+
+			aSource = new CountingDataSource(aGraph);
+
+			assertEquals(aPerson, RdfGenerator.fromRdf(TestPerson.class, aPerson.getRdfId(), aSource));
+			assertEquals(4, aSource.mQueries.get());
+
+			EmpireOptions.BATCH_FETCH_SIZE = 1;
+
+			aSource = new CountingDataSource(aGraph);
+
+			assertEquals(aPerson, RdfGenerator.fromRdf(TestPerson.class, aPerson.getRdfId(), aSource));
+			assertEquals(6, aSource.mQueries.get());
+		}
+		finally {
+			EmpireOptions.BATCH_FETCH_SIZE = aBatchSize;
+		}
+	}
+
+	@Test
+	public void testBatchFetchNamedGraphRelations() throws Exception {
+		GraphOwner aOwner = new GraphOwner();
+		aOwner.setRdfId(asPrimaryKey(URI.create("urn:graph:owner")));
+
+		Graph aMembers = new GraphImpl();
+
+		for (int i = 0; i < 5; i++) {
+			GraphMember aMember = new GraphMember();
+			aMember.setRdfId(asPrimaryKey(URI.create("urn:graph:member" + i)));
+			aMember.label = "Member" + i;
+
+			aOwner.members.add(aMember);
+
+			aMembers.addAll(RdfGenerator.asRdf(aMember));
+		}
+
+		NamedGraphDataSource aSource = new NamedGraphDataSource(RdfGenerator.asRdf(aOwner));
+		aSource.add(URI.create("urn:graph:members"), aMembers);
+
+		// the owner, and then all of its members in a single query against their named graph
+		GraphOwner aLoaded = RdfGenerator.fromRdf(GraphOwner.class, aOwner.getRdfId(), aSource);
+
+		assertEquals(2, ((CountingDataSource) aSource).mQueries.get());
+		assertEquals(5, aLoaded.members.size());
+
+		for (GraphMember aMember : aLoaded.members) {
+			assertEquals(aMember.getRdfId().toString().replace("urn:graph:member", "Member"), aMember.label);
+		}
+	}
+
+	@Test
+	public void testConcurrentLoads() throws Exception {
+		final int aThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final int aLoadsPerThread = 50;
+
+		final List<TestPerson> aPeople = Lists.newArrayList();
+		final Graph aSourceGraph = new GraphImpl();
+
+		for (int i = 0; i < 20; i++) {
+			TestPerson aPerson = new TestPerson();
+			aPerson.setMBox("mailto:person" + i + "@example.org");
+			aPerson.setFirstName("Person" + i);
+			aPerson.setWeight(100f + i);
+
+			if (!aPeople.isEmpty()) {
+				aPerson.getKnows().add(aPeople.get(aPeople.size() - 1));
+			}
+
+			aPeople.add(aPerson);
+		}
+
+		for (TestPerson aPerson : aPeople) {
+			aSourceGraph.addAll(RdfGenerator.asRdf(aPerson));
+		}
+
+		// every thread has to be inside a load before any of them can finish theirs, so this will only complete
+		// if loads on separate threads, against separate data sources, are not serialized
+		final CyclicBarrier aBarrier = new CyclicBarrier(aThreads);
+		final List<Throwable> aErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicInteger aLoads = new AtomicInteger();
+
+		List<Thread> aWorkers = Lists.newArrayList();
+		for (int i = 0; i < aThreads; i++) {
+			aWorkers.add(new Thread() {
+				public void run() {
+					try {
+						DataSource aSource = new BarrierDataSource(aSourceGraph, aBarrier);
+
+						for (int j = 0; j < aLoadsPerThread; j++) {
+							TestPerson aExpected = aPeople.get(j % aPeople.size());
+
+							assertEquals(aExpected, RdfGenerator.fromRdf(TestPerson.class, aExpected.getRdfId(), aSource));
+
+							aLoads.incrementAndGet();
+						}
+					}
+					catch (Throwable e) {
+						aErrors.add(e);
+					}
+				}
+			});
+		}
+
+		for (Thread aWorker : aWorkers) {
+			aWorker.start();
+		}
+
+		for (Thread aWorker : aWorkers) {
+			aWorker.join();
+		}
+
+		if (!aErrors.isEmpty()) {
+			AssertionError aError = new AssertionError(aErrors.size() + " concurrent load(s) failed, the first with: " + aErrors.get(0));
+			aError.initCause(aErrors.get(0));
+			throw aError;
+		}
+
+		assertEquals(aThreads * aLoadsPerThread, aLoads.get());
+	}
+
 	@RdfsClass("urn:TestClass")
 	@Entity
 	private static class NoDefaultConstructor extends BaseTestClass {
@@ -400,4 +739,148 @@ public class TestRdfConvert {
 		@RdfProperty("urn:baz")
 		private String baz;
 	}
+
+	@RdfsClass("urn:AccessorTest")
+	public static class AccessorTest extends BaseTestClass {
+		@RdfProperty("urn:count")
+		int count;
+
+		@RdfProperty("urn:total")
+		long total;
+
+		@RdfProperty("urn:label")
+		final String label;
+
+		private String name;
+
+		public AccessorTest() {
+			label = null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(final String theName) {
+			name = theName;
+		}
+	}
+
+	@RdfsClass("urn:LiteralTest")
+	@Entity
+	public static class LiteralTest extends BaseTestClass {
+		@RdfProperty("urn:locale")
+		Locale locale;
+
+		@RdfProperty("urn:calendar")
+		Calendar calendar;
+
+		@RdfProperty("urn:date")
+		Date date;
+
+		@RdfProperty("urn:birthday")
+		Date birthday;
+	}
+
+	@RdfsClass("urn:GraphOwner")
+	@Entity
+	public static class GraphOwner extends BaseTestClass {
+		@RdfProperty("urn:member")
+		List<GraphMember> members = new ArrayList<GraphMember>();
+	}
+
+	@RdfsClass("urn:GraphMember")
+	@Entity
+	@NamedGraph(type = NamedGraph.NamedGraphType.Static, value = "urn:graph:members")
+	public static class GraphMember extends BaseTestClass {
+		@RdfProperty("urn:label")
+		String label;
+	}
+
+	/**
+	 * DataSource which counts the queries made against it
+	 */
+	private static class CountingDataSource extends MutableTestDataSource {
+		private final AtomicInteger mQueries = new AtomicInteger();
+
+		private CountingDataSource(final Graph theGraph) {
+			super(theGraph);
+		}
+
+		@Override
+		public ResultSet selectQuery(final String theQuery) throws QueryException {
+			mQueries.incrementAndGet();
+			return super.selectQuery(theQuery);
+		}
+
+		@Override
+		public Graph graphQuery(final String theQuery) throws QueryException {
+			mQueries.incrementAndGet();
+			return super.graphQuery(theQuery);
+		}
+	}
+
+	/**
+	 * DataSource supporting named graphs which counts the queries made against it
+	 */
+	private static class NamedGraphDataSource extends CountingDataSource implements SupportsNamedGraphs {
+		private NamedGraphDataSource(final Graph theGraph) {
+			super(theGraph);
+		}
+
+		public void add(final URI theGraphURI, final Graph theGraph) throws DataSourceException {
+			try {
+				RepositoryConnection aConn = getRepository().getConnection();
+
+				try {
+					aConn.add(theGraph, ValueFactoryImpl.getInstance().createURI(theGraphURI.toString()));
+				}
+				finally {
+					aConn.close();
+				}
+			}
+			catch (RepositoryException e) {
+				throw new DataSourceException(e);
+			}
+		}
+
+		public void remove(final URI theGraphURI) throws DataSourceException {
+			throw new UnsupportedOperationException();
+		}
+
+		public void remove(final URI theGraphURI, final Graph theGraph) throws DataSourceException {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * DataSource which blocks the first graph query made on it until every other BarrierDataSource sharing the barrier
+	 * is also inside a query.
+	 */
+	private static class BarrierDataSource extends TestDataSource {
+		private final CyclicBarrier mBarrier;
+		private boolean mWaited = false;
+
+		private BarrierDataSource(final Graph theGraph, final CyclicBarrier theBarrier) {
+			super(theGraph);
+
+			mBarrier = theBarrier;
+		}
+
+		@Override
+		public Graph graphQuery(final String theQuery) throws QueryException {
+			if (!mWaited) {
+				mWaited = true;
+
+				try {
+					mBarrier.await(30, TimeUnit.SECONDS);
+				}
+				catch (Exception e) {
+					throw new QueryException("Concurrent loads did not run in parallel", e);
+				}
+			}
+
+			return super.graphQuery(theQuery);
+		}
+	}
 }
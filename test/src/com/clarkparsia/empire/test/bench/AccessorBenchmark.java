@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.test.bench;
+
+import com.clarkparsia.empire.codegen.AccessorGenerator;
+import com.clarkparsia.empire.codegen.PropertyAccessor;
+import com.clarkparsia.empire.util.BeanReflectUtil;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * <p>Compares the ways properties of a bean can be read and written: {@link BeanReflectUtil#safeGet} and
+ * {@link BeanReflectUtil#safeSet} which toggle the accessibility of the accessor on each call, reflection on an
+ * accessor which was made accessible once, and accessors generated by {@link AccessorGenerator}.</p>
+ *
+ * <p>Run with <code>java com.clarkparsia.empire.test.bench.AccessorBenchmark [iterations]</code></p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class AccessorBenchmark {
+
+	private AccessorBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int aIterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		final Bean aBean = new Bean();
+
+		final Field aToggledField = Bean.class.getDeclaredField("count");
+		final Method aToggledSetter = Bean.class.getDeclaredMethod("setName", String.class);
+
+		final Field aField = Bean.class.getDeclaredField("count");
+		aField.setAccessible(true);
+
+		final Method aSetter = Bean.class.getDeclaredMethod("setName", String.class);
+		aSetter.setAccessible(true);
+
+		final PropertyAccessor aGeneratedField = AccessorGenerator.generateAccessor(aField);
+		final PropertyAccessor aGeneratedSetter = AccessorGenerator.generateAccessor(Bean.class.getDeclaredMethod("getName"), aSetter);
+
+		final Integer[] aInts = new Integer[256];
+		for (int i = 0; i < aInts.length; i++) {
+			aInts[i] = i;
+		}
+
+		Benchmark aBench = new Benchmark("accessors", 10, 20);
+
+		aBench.run(new Benchmark.Case("int field, safeGet/safeSet", aIterations) {
+			public Object run() throws Exception {
+				long aSum = 0;
+				for (int i = 0; i < aIterations; i++) {
+					BeanReflectUtil.safeSet(aToggledField, aBean, aInts[i & 0xFF]);
+					aSum += (Integer) BeanReflectUtil.safeGet(aToggledField, aBean);
+				}
+				return aSum;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("int field, accessible reflection", aIterations) {
+			public Object run() throws Exception {
+				long aSum = 0;
+				for (int i = 0; i < aIterations; i++) {
+					aField.set(aBean, aInts[i & 0xFF]);
+					aSum += (Integer) aField.get(aBean);
+				}
+				return aSum;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("int field, generated", aIterations) {
+			public Object run() throws Exception {
+				long aSum = 0;
+				for (int i = 0; i < aIterations; i++) {
+					aGeneratedField.set(aBean, aInts[i & 0xFF]);
+					aSum += (Integer) aGeneratedField.get(aBean);
+				}
+				return aSum;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("setter method, safeSet", aIterations) {
+			public Object run() throws Exception {
+				for (int i = 0; i < aIterations; i++) {
+					BeanReflectUtil.safeSet(aToggledSetter, aBean, "name");
+				}
+				return aBean.getName();
+			}
+		});
+
+		aBench.run(new Benchmark.Case("setter method, accessible reflection", aIterations) {
+			public Object run() throws Exception {
+				for (int i = 0; i < aIterations; i++) {
+					aSetter.invoke(aBean, "name");
+				}
+				return aBean.getName();
+			}
+		});
+
+		aBench.run(new Benchmark.Case("setter method, generated", aIterations) {
+			public Object run() throws Exception {
+				for (int i = 0; i < aIterations; i++) {
+					aGeneratedSetter.set(aBean, "name");
+				}
+				return aBean.getName();
+			}
+		});
+	}
+
+	public static class Bean {
+		int count;
+
+		private String name;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(final String theName) {
+			name = theName;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.test.bench;
+
+import java.io.PrintStream;
+
+/**
+ * <p>Minimal harness for the micro-benchmarks in this package.  Each case is run for a number of warmup rounds, so the
+ * JIT has compiled it, then timed over a number of measured rounds, reporting the best and average time per
+ * operation.  This is not a replacement for a proper benchmarking framework, but is enough to compare alternative
+ * implementations of the same operation on one machine.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class Benchmark {
+	private final String mName;
+	private final int mWarmupRounds;
+	private final int mRounds;
+	private final PrintStream mOut;
+
+	/**
+	 * Sink for the results of the benchmarked operations so the JIT cannot eliminate them as dead code
+	 */
+	private volatile Object mSink;
+
+	public Benchmark(final String theName, final int theWarmupRounds, final int theRounds) {
+		this(theName, theWarmupRounds, theRounds, System.out);
+	}
+
+	public Benchmark(final String theName, final int theWarmupRounds, final int theRounds, final PrintStream theOut) {
+		mName = theName;
+		mWarmupRounds = theWarmupRounds;
+		mRounds = theRounds;
+		mOut = theOut;
+	}
+
+	/**
+	 * Run a benchmark case and report its timings
+	 * @param theCase the case to run
+	 * @throws Exception if the case fails
+	 */
+	public void run(final Case theCase) throws Exception {
+		for (int i = 0; i < mWarmupRounds; i++) {
+			mSink = theCase.run();
+		}
+
+		long aBest = Long.MAX_VALUE;
+		long aTotal = 0;
+
+		for (int i = 0; i < mRounds; i++) {
+			long aStart = System.nanoTime();
+
+			mSink = theCase.run();
+
+			long aElapsed = System.nanoTime() - aStart;
+
+			aBest = Math.min(aBest, aElapsed);
+			aTotal += aElapsed;
+		}
+
+		mOut.println(String.format("%-20s %-45s best %10.2f ns/op   avg %10.2f ns/op",
+								   mName, theCase.name(),
+								   aBest / (double) theCase.operations(),
+								   aTotal / (double) mRounds / theCase.operations()));
+	}
+
+	/**
+	 * A single benchmarked operation
+	 */
+	public static abstract class Case {
+		private final String mName;
+		private final long mOperations;
+
+		/**
+		 * Create a new case
+		 * @param theName the name of the case, used in the report
+		 * @param theOperations the number of operations performed by each call to {@link #run}
+		 */
+		protected Case(final String theName, final long theOperations) {
+			mName = theName;
+			mOperations = theOperations;
+		}
+
+		public String name() {
+			return mName;
+		}
+
+		public long operations() {
+			return mOperations;
+		}
+
+		/**
+		 * Perform the operations of one round
+		 * @return a value computed from the operations so they are not optimized away
+		 * @throws Exception if there is an error
+		 */
+		public abstract Object run() throws Exception;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.test.bench;
+
+import com.clarkparsia.empire.Empire;
+import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.annotation.SupportsRdfIdImpl;
+import com.clarkparsia.empire.config.ConfigKeys;
+import com.clarkparsia.empire.ds.BulkLoader;
+import com.clarkparsia.empire.ds.DataSource;
+import com.clarkparsia.empire.ds.DataSourceUtil;
+import com.clarkparsia.empire.ds.MutableDataSource;
+import com.clarkparsia.empire.ds.TripleSource;
+import com.clarkparsia.empire.ds.impl.DelegatingDataSource;
+import com.clarkparsia.empire.jena.JenaEmpireModule;
+import com.clarkparsia.empire.sesametwo.RepositoryDataSourceFactory;
+import com.clarkparsia.empire.sesametwo.RepositoryFactoryKeys;
+import com.clarkparsia.empire.util.DefaultEmpireModule;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Compares the describe and exists queries {@link DataSourceUtil} generates, with the subject bound in the triple
+ * pattern, against the <code>filter(?s = &lt;x&gt;)</code> form they used before, which most engines evaluate as a
+ * scan of every statement.  Both are run against Jena and Sesame memory stores loaded with the nasa dataset.  The
+ * sources are wrapped so {@link DataSourceUtil} queries them rather than using their statement level access.</p>
+ *
+ * <p>Run with <code>java com.clarkparsia.empire.test.bench.DescribeBenchmark [resources]</code> from the root of the
+ * project, the default is 100 resources per round.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class DescribeBenchmark {
+
+	private DescribeBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int aResources = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+		Empire.init(new DefaultEmpireModule(), new JenaEmpireModule());
+
+		DataSource aJena = Empire.get().persistenceProvider().createDataSource("describe-benchmark",
+																			   Collections.singletonMap(ConfigKeys.FACTORY, "jena"));
+		aJena.connect();
+
+		Repository aRepository = new SailRepository(new MemoryStore());
+		aRepository.initialize();
+
+		DataSource aSesame = new RepositoryDataSourceFactory().create(Collections.<String, Object>singletonMap(RepositoryFactoryKeys.REPO_HANDLE, aRepository));
+		aSesame.connect();
+
+		run("jena", aJena, aResources);
+		run("sesame", aSesame, aResources);
+	}
+
+	private static void run(final String theName, final DataSource theSource, final int theResources) throws Exception {
+		new BulkLoader((MutableDataSource) theSource).load(new File("test/data/nasa.nt.gz"));
+
+		final List<Resource> aSubjects = new ArrayList<Resource>();
+		for (Statement aStmt : ((TripleSource) theSource).getStatements(null, RDF.TYPE, null)) {
+			if (aStmt.getSubject() instanceof URI) {
+				aSubjects.add(aStmt.getSubject());
+			}
+
+			if (aSubjects.size() == 1024) {
+				break;
+			}
+		}
+
+		final DataSource aQueried = new DelegatingDataSource(theSource);
+
+		Benchmark aBench = new Benchmark(theName, 2, 5);
+
+		aBench.run(new Benchmark.Case("describe, filter", theResources) {
+			public Object run() throws Exception {
+				int aSize = 0;
+				for (int i = 0; i < theResources; i++) {
+					aSize += aQueried.graphQuery("construct {?s ?p ?o}\nwhere {?s ?p ?o. filter(?s = <" + subject(aSubjects, i) + ">) }").size();
+				}
+				return aSize;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("describe, bound subject", theResources) {
+			public Object run() throws Exception {
+				int aSize = 0;
+				for (int i = 0; i < theResources; i++) {
+					aSize += DataSourceUtil.describe(aQueried, new SupportsRdfIdImpl(new SupportsRdfId.URIKey(subject(aSubjects, i)))).size();
+				}
+				return aSize;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("exists, filter", theResources) {
+			public Object run() throws Exception {
+				int aCount = 0;
+				for (int i = 0; i < theResources; i++) {
+					if (aQueried.selectQuery("select distinct ?s\nwhere {?s ?p ?o. filter(?s = <" + subject(aSubjects, i) + ">) } limit 1").hasNext()) {
+						aCount++;
+					}
+				}
+				return aCount;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("exists, bound subject", theResources) {
+			public Object run() throws Exception {
+				int aCount = 0;
+				for (int i = 0; i < theResources; i++) {
+					if (DataSourceUtil.exists(aQueried, new SupportsRdfIdImpl(new SupportsRdfId.URIKey(subject(aSubjects, i))))) {
+						aCount++;
+					}
+				}
+				return aCount;
+			}
+		});
+	}
+
+	private static java.net.URI subject(final List<Resource> theSubjects, final int theIndex) {
+		return java.net.URI.create(theSubjects.get(theIndex % theSubjects.size()).stringValue());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.test.bench;
+
+import com.clarkparsia.empire.EmpireGenerated;
+import com.clarkparsia.empire.annotation.RdfGenerator;
+import com.clarkparsia.empire.test.api.TestDataSource;
+import com.clarkparsia.empire.test.lazyload.BusinessObject;
+import com.clarkparsia.empire.test.lazyload.Event;
+
+import com.google.common.collect.ObjectArrays;
+
+import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyFactory;
+import javassist.util.proxy.ProxyObject;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>Measures the cost of creating lazy references, as is done for each value of a <code>FetchType.LAZY</code>
+ * relation when an object is loaded.  The cost of creating the proxy class for every reference, as was done
+ * before the proxy classes were cached, is included for comparison.</p>
+ *
+ * <p>Run with <code>java com.clarkparsia.empire.test.bench.LazyReferenceBenchmark [references]</code>, the default
+ * is 1M references per round.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class LazyReferenceBenchmark {
+
+	private static final MethodFilter FILTER = new MethodFilter() {
+		public boolean isHandled(final Method theMethod) {
+			return !theMethod.getName().equals("finalize");
+		}
+	};
+
+	private static final MethodHandler HANDLER = new MethodHandler() {
+		public Object invoke(final Object theThis, final Method theMethod, final Method theProxyMethod, final Object[] theArgs) throws Throwable {
+			return null;
+		}
+	};
+
+	private LazyReferenceBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int aReferences = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		final TestDataSource aSource = new TestDataSource();
+		final URI aSubject = ValueFactoryImpl.getInstance().createURI("urn:business");
+		final URI aProperty = ValueFactoryImpl.getInstance().createURI("https://github.com/mhgrove/Empire/event");
+
+		final URI[] aEvents = new URI[1024];
+		for (int i = 0; i < aEvents.length; i++) {
+			aEvents[i] = ValueFactoryImpl.getInstance().createURI("urn:event:" + i);
+		}
+
+		Benchmark aBench = new Benchmark("lazy references", 3, 5);
+
+		aBench.run(new Benchmark.Case("proxy class per reference", aReferences / 100) {
+			public Object run() throws Exception {
+				Object aObj = null;
+				for (int i = 0; i < aReferences / 100; i++) {
+					ProxyFactory aFactory = new ProxyFactory();
+					aFactory.setInterfaces(ObjectArrays.concat(Event.class.getInterfaces(), EmpireGenerated.class));
+					aFactory.setSuperclass(Event.class);
+					aFactory.setFilter(FILTER);
+					aFactory.setHandler(HANDLER);
+
+					aObj = aFactory.createClass(FILTER).newInstance();
+
+					((ProxyObject) aObj).setHandler(HANDLER);
+				}
+				return aObj;
+			}
+		});
+
+		aBench.run(new Benchmark.Case("cached proxy class", aReferences) {
+			public Object run() throws Exception {
+				// one load of an object with a lazy collection of events
+				RdfGenerator.ValueToObject aFunc = new RdfGenerator.ValueToObject(aSource, aSubject,
+																				  BusinessObject.class.getDeclaredField("events"),
+																				  aProperty);
+				Object aObj = null;
+				for (int i = 0; i < aReferences; i++) {
+					aObj = aFunc.apply(aEvents[i & 1023]);
+				}
+				return aObj;
+			}
+		});
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2009-2012 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarkparsia.empire.test.bench;
+
+import com.clarkparsia.empire.SupportsRdfId;
+import com.clarkparsia.empire.annotation.RdfGenerator;
+import com.clarkparsia.empire.test.api.TestPerson;
+
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * <p>Measures the throughput of {@link RdfGenerator#asRdf}, which is called for every object persisted or merged.
+ * Each operation serializes a person with a handful of literal properties and two related people.</p>
+ *
+ * <p>Run with <code>java com.clarkparsia.empire.test.bench.SerializationBenchmark [objects]</code>, the default is
+ * 100k objects per round.</p>
+ *
+ * @author Michael Grove
+ * @since 0.8
+ * @version 0.8
+ */
+public final class SerializationBenchmark {
+
+	private SerializationBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int aObjects = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		final TestPerson[] aPeople = new TestPerson[1024];
+
+		for (int i = 0; i < aPeople.length; i++) {
+			TestPerson aPerson = new TestPerson();
+			aPerson.setMBox("mailto:person" + i + "@example.org");
+			aPerson.setFirstName("First" + i);
+			aPerson.setLastName("Last" + i);
+			aPerson.setTitle("");
+			aPerson.setBirthday(new Date(i * 86400000L));
+			aPerson.setWeight(150f + i);
+			aPerson.setLikesVideoGames(i % 2 == 0);
+			aPerson.setWeblogURI(URI.create("http://example.org/blog/" + i));
+			aPerson.setRdfId(new SupportsRdfId.URIKey(URI.create("urn:person:" + i)));
+
+			aPeople[i] = aPerson;
+		}
+
+		for (int i = 0; i < aPeople.length; i++) {
+			aPeople[i].getKnows().add(aPeople[(i + 1) % aPeople.length]);
+			aPeople[i].getKnows().add(aPeople[(i + 2) % aPeople.length]);
+		}
+
+		Benchmark aBench = new Benchmark("serialization", 5, 10);
+
+		aBench.run(new Benchmark.Case("asRdf", aObjects) {
+			public Object run() throws Exception {
+				int aSize = 0;
+				for (int i = 0; i < aObjects; i++) {
+					aSize += RdfGenerator.asRdf(aPeople[i & 1023]).size();
+				}
+				return aSize;
+			}
+		});
+	}
+}
@@ -16,20 +16,32 @@
 package com.clarkparsia.empire.test.lazyload;
 
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
 import com.clarkparsia.empire.Empire;
+import com.clarkparsia.empire.EmpireOptions;
+import com.clarkparsia.empire.annotation.RdfGenerator;
+import com.clarkparsia.empire.ds.QueryException;
+import com.clarkparsia.empire.test.api.TestDataSource;
 import com.clarkparsia.empire.sesametwo.OpenRdfEmpireModule;
 
 import com.clarkparsia.empire.test.lazyload.Event.Status;
 
+import org.openrdf.model.Graph;
+import org.openrdf.model.impl.GraphImpl;
+import org.openrdf.model.util.ModelUtil;
+
+import javassist.util.proxy.ProxyObject;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestLazyCollectionLoad {
 
@@ -97,6 +109,92 @@ public class TestLazyCollectionLoad {
 		assertEvent3(aIter.next());
     }
 
+	@Test
+	public void testBatchProxyLoad() throws Exception {
+		BusinessObject aBusinessObject = new BusinessObject("http://localhost:8080/empire/batch");
+		aBusinessObject.setTitle(TITLE);
+
+		for (int i = 0; i < 5; i++) {
+			aBusinessObject.add(new Event(aBusinessObject.getUri(), "Event #" + i, Status.Complete, null));
+		}
+
+		final Graph aGraph = new GraphImpl();
+
+		aGraph.addAll(RdfGenerator.asRdf(aBusinessObject));
+
+		for (Event aEvent : aBusinessObject.getEvents()) {
+			aGraph.addAll(RdfGenerator.asRdf(aEvent));
+		}
+
+		int aBatchSize = EmpireOptions.BATCH_FETCH_SIZE;
+
+		try {
+			// the business object, and all of its events together the first time one of them is used
+			assertEquals(2, countLoadQueries(aBusinessObject, aGraph));
+
+			EmpireOptions.BATCH_FETCH_SIZE = 2;
+
+			assertEquals(4, countLoadQueries(aBusinessObject, aGraph));
+
+			EmpireOptions.BATCH_FETCH_SIZE = 1;
+
+			assertEquals(6, countLoadQueries(aBusinessObject, aGraph));
+		}
+		finally {
+			EmpireOptions.BATCH_FETCH_SIZE = aBatchSize;
+		}
+	}
+
+	@Test
+	public void testProxySerialization() throws Exception {
+		BusinessObject aBusinessObject = new BusinessObject("http://localhost:8080/empire/serialize");
+		aBusinessObject.setTitle(TITLE);
+		aBusinessObject.add(new Event(aBusinessObject.getUri(), "Event #1", Status.Complete, null));
+		aBusinessObject.add(new Event(aBusinessObject.getUri(), "Event #2", Status.Complete, null));
+
+		Graph aGraph = new GraphImpl();
+
+		aGraph.addAll(RdfGenerator.asRdf(aBusinessObject));
+
+		for (Event aEvent : aBusinessObject.getEvents()) {
+			aGraph.addAll(RdfGenerator.asRdf(aEvent));
+		}
+
+		BusinessObject aLoaded = RdfGenerator.fromRdf(BusinessObject.class, aBusinessObject.getRdfId(), new TestDataSource(aGraph));
+
+		assertTrue(ModelUtil.equals(RdfGenerator.asRdf(aBusinessObject), RdfGenerator.asRdf(aLoaded)));
+
+		Iterator<Event> aExpected = aBusinessObject.getEvents().iterator();
+		for (Event aEvent : aLoaded.getEvents()) {
+			// lazy references are serialized as the object they stand in for
+			assertTrue(aEvent instanceof ProxyObject);
+			assertTrue(ModelUtil.equals(RdfGenerator.asRdf(aExpected.next()), RdfGenerator.asRdf(aEvent)));
+		}
+	}
+
+	private static int countLoadQueries(final BusinessObject theObj, final Graph theGraph) throws Exception {
+		final AtomicInteger aQueries = new AtomicInteger();
+
+		TestDataSource aSource = new TestDataSource(theGraph) {
+			@Override
+			public Graph graphQuery(final String theQuery) throws QueryException {
+				aQueries.incrementAndGet();
+				return super.graphQuery(theQuery);
+			}
+		};
+
+		BusinessObject aLoaded = RdfGenerator.fromRdf(BusinessObject.class, theObj.getRdfId(), aSource);
+
+		assertEquals(theObj.getEvents().size(), aLoaded.getEvents().size());
+
+		Iterator<Event> aExpected = theObj.getEvents().iterator();
+		for (Event aEvent : aLoaded.getEvents()) {
+			assertEquals(aExpected.next().getParameters(), aEvent.getParameters());
+		}
+
+		return aQueries.get();
+	}
+
 	private void assertEvent1(final Event theEvent) {
 		assertEquals(Status.Complete, theEvent.getStatus());
 		assertEquals("Event #1", theEvent.getParameters());